@@ -28,6 +28,7 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -42,9 +43,10 @@ import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.archive.checkpointing.Checkpoint;
-import org.archive.checkpointing.Checkpointable;
+import org.archive.checkpointing.IncrementalCheckpointable;
 import org.archive.spring.ConfigPath;
 import org.archive.util.IdentityCacheable;
+import org.archive.util.ObjectIdentityBdbBoundedCache;
 import org.archive.util.ObjectIdentityBdbManualCache;
 import org.archive.util.ObjectIdentityCache;
 import org.archive.util.TextUtils;
@@ -71,7 +73,7 @@ import com.sleepycat.je.util.DbBackup;
  * @author pjack
  * @author gojomo
  */
-public class BdbModule implements Lifecycle, Checkpointable, Closeable, DisposableBean {
+public class BdbModule implements Lifecycle, IncrementalCheckpointable, Closeable, DisposableBean {
     final private static Logger LOGGER = 
         Logger.getLogger(BdbModule.class.getName()); 
 
@@ -165,6 +167,39 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
         this.cacheSize = cacheSize;
     }
 
+    /**
+     * If positive, the memory budget, in estimated bytes, of each object
+     * cache from {@link #getObjectCache(String, boolean, Class, Class)}:
+     * separately, the work queues, the servers, the hosts and the seed
+     * records each get this much. Such caches are written back
+     * incrementally in the background, and evict as objectCacheEviction
+     * says. If 0 (the default), object caches hold objects by soft
+     * references, released as the heap runs low. BdbServerCache's own
+     * maxBytes, if set, takes the place of this for servers and hosts.
+     */
+    protected long objectCacheMaxBytes = 0;
+    public long getObjectCacheMaxBytes() {
+        return objectCacheMaxBytes;
+    }
+    public void setObjectCacheMaxBytes(long objectCacheMaxBytes) {
+        this.objectCacheMaxBytes = objectCacheMaxBytes;
+    }
+
+    /**
+     * How object caches choose what to leave on disk when over
+     * objectCacheMaxBytes: SEGMENTED_LRU (the default), keeping what's
+     * been used again recently, or TINY_LFU, keeping what's been used
+     * most often recently, even across evictions.
+     */
+    protected ObjectIdentityBdbBoundedCache.Eviction objectCacheEviction =
+        ObjectIdentityBdbBoundedCache.Eviction.SEGMENTED_LRU;
+    public ObjectIdentityBdbBoundedCache.Eviction getObjectCacheEviction() {
+        return objectCacheEviction;
+    }
+    public void setObjectCacheEviction(ObjectIdentityBdbBoundedCache.Eviction objectCacheEviction) {
+        this.objectCacheEviction = objectCacheEviction;
+    }
+
     protected boolean useSharedCache = true; 
     public boolean getUseSharedCache() {
         return useSharedCache;
@@ -469,6 +504,55 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
         oiCaches.put(dbName, oic);
         return oic;
     }
+
+    /**
+     * Get an ObjectIdentityBdbBoundedCache, backed by a BDB Database of
+     * the given name, with the given value class type, holding in memory
+     * at most objectCacheMaxBytes' worth (as estimated) of objects,
+     * evicting by objectCacheEviction. If 'recycle' is true, reuse values
+     * already in the database; otherwise start with an empty cache.
+     *
+     * @param <V>
+     * @param dbName
+     * @param recycle
+     * @param valueClass
+     * @throws DatabaseException
+     */
+    public <V extends IdentityCacheable> ObjectIdentityBdbBoundedCache<V> getBoundedCache(
+            String dbName, boolean recycle, Class<? extends V> valueClass)
+    throws DatabaseException {
+        return getBoundedCache(dbName, recycle, valueClass, getObjectCacheMaxBytes());
+    }
+
+    /**
+     * Get an ObjectIdentityBdbBoundedCache as above, but holding in memory
+     * at most maxBytes' worth of objects.
+     *
+     * @param <V>
+     * @param dbName
+     * @param recycle
+     * @param valueClass
+     * @param maxBytes
+     * @throws DatabaseException
+     */
+    public <V extends IdentityCacheable> ObjectIdentityBdbBoundedCache<V> getBoundedCache(
+            String dbName, boolean recycle, Class<? extends V> valueClass,
+            long maxBytes)
+    throws DatabaseException {
+        if (!recycle) {
+            try {
+                bdbEnvironment.truncateDatabase(null, dbName, false);
+            } catch (DatabaseNotFoundException e) {
+                // ignored
+            }
+        }
+        ObjectIdentityBdbBoundedCache<V> oic = new ObjectIdentityBdbBoundedCache<V>();
+        oic.setMaxBytes(maxBytes);
+        oic.setEviction(getObjectCacheEviction());
+        oic.initialize(bdbEnvironment, dbName, valueClass, classCatalog);
+        oiCaches.put(dbName, oic);
+        return oic;
+    }
   
     public <V extends IdentityCacheable> ObjectIdentityCache<V> getObjectCache(String dbName, boolean recycle,
             Class<V> valueClass) 
@@ -496,7 +580,11 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
         if(oic!=null) {
             return oic; 
         }
-        oic =  getOIBCCache(dbName, recycle, valueClass);
+        if (getObjectCacheMaxBytes() > 0) {
+            oic = getBoundedCache(dbName, recycle, valueClass);
+        } else {
+            oic =  getOIBCCache(dbName, recycle, valueClass);
+        }
         return oic; 
     }
     
@@ -504,9 +592,23 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
         out.defaultWriteObject();
     }
     
+    public void prepareCheckpoint(Checkpoint checkpointInProgress) throws IOException {
+        // flush ahead, while crawling continues, so that little is left
+        // dirty for doCheckpoint()
+        long start = System.currentTimeMillis();
+        syncAll();
+        LOGGER.info("flushed ahead of checkpoint in " 
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
     public void startCheckpoint(Checkpoint checkpointInProgress) {}
 
-    public void doCheckpoint(final Checkpoint checkpointInProgress) throws IOException {
+    /**
+     * Sync all object caches and databases, then force a bdb checkpoint. 
+     * 
+     * @throws IOException
+     */
+    protected void syncAll() throws IOException {
         // First sync objectCaches
         for (@SuppressWarnings("rawtypes") ObjectIdentityCache oic : oiCaches.values()) {
             oic.sync();
@@ -537,8 +639,22 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
             // random I/O."
             // chkptConfig.setMinimizeRecoveryTime(true);
             bdbEnvironment.checkpoint(chkptConfig);
-            LOGGER.fine("Finished bdb checkpoint.");
-        
+        } catch (DatabaseException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /** backup held open from an incremental checkpoint's doCheckpoint() 
+     * until its completeCheckpoint(), so its log files aren't deleted */
+    protected transient DbBackup pendingBackup;
+    /** the log files of pendingBackup, as "name,length" */
+    protected transient String[] pendingLogfiles;
+
+    public void doCheckpoint(final Checkpoint checkpointInProgress) throws IOException {
+        syncAll();
+        LOGGER.fine("Finished bdb checkpoint.");
+
+        try {
             DbBackup dbBackup = new DbBackup(bdbEnvironment);
             try {
                 dbBackup.startBackup();
@@ -550,10 +666,10 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
                 for (int i=0; i<filedata.length;i++) {
                     File f = new File(dir.getFile(),filedata[i]);
                     filedata[i] += ","+f.length();
-                    if(getUseHardLinkCheckpoints()) {
+                    if(getUseHardLinkCheckpoints() && !checkpointInProgress.isIncremental()) {
                         File hardLink = new File(envCpDir,filedata[i]);
                         try {
-                            Files.createLink(hardLink.toPath(), f.toPath().toAbsolutePath());
+                            createLink(hardLink.toPath(), f.toPath().toAbsolutePath());
                         } catch (IOException | UnsupportedOperationException e) {
                             LOGGER.log(Level.SEVERE, "unable to create required checkpoint link " + hardLink, e);
                         }
@@ -561,13 +677,93 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
                 }
                 FileUtils.writeLines(logfilesList,Arrays.asList(filedata));
                 LOGGER.fine("Finished processing bdb log files.");
+                if (checkpointInProgress.isIncremental()) {
+                    // files are listed; link them after the pause
+                    pendingBackup = dbBackup;
+                    pendingLogfiles = filedata;
+                    return;
+                }
             } finally {
-                dbBackup.endBackup();
+                if (pendingBackup != dbBackup) {
+                    dbBackup.endBackup();
+                }
             }
         } catch (DatabaseException e) {
             throw new IOException(e);
         }
         
+        forgetOtherCheckpoints(checkpointInProgress);
+    }
+
+    public void completeCheckpoint(Checkpoint checkpointInProgress) throws IOException {
+        DbBackup dbBackup = pendingBackup;
+        String[] filedata = pendingLogfiles;
+        pendingBackup = null;
+        pendingLogfiles = null;
+        if (dbBackup == null) {
+            return;
+        }
+        try {
+            if (!checkpointInProgress.getSuccess()) {
+                return;
+            }
+            if (getUseHardLinkCheckpoints()) {
+                File envCpDir = new File(dir.getFile(),checkpointInProgress.getName());
+                for (String logfile : filedata) {
+                    retainLogfile(logfile, envCpDir, checkpointInProgress);
+                }
+                LOGGER.info("retained " + filedata.length + " bdb log files, copying " 
+                        + checkpointInProgress.getBytesCopied() + " bytes");
+            }
+            // earlier checkpoints are forgotten only once this one is
+            // stamped valid, in checkpointStamped()
+        } finally {
+            dbBackup.endBackup();
+        }
+    }
+
+    public void checkpointStamped(Checkpoint checkpointInProgress) throws IOException {
+        forgetOtherCheckpoints(checkpointInProgress);
+    }
+
+    /**
+     * Hard-link the given log file of a backup set into an incremental
+     * checkpoint's directory; where that's impossible (for example on a
+     * filesystem without hard links), copy it there. Either way the 
+     * checkpoint holds all its own files, needing no other checkpoint's. 
+     * 
+     * @param logfile log file name and length, as in jdbfiles.manifest
+     * @param envCpDir checkpoint directory
+     * @param checkpointInProgress Checkpoint, to which bytes copied are added
+     * @throws IOException if the file could be neither linked nor copied
+     */
+    protected void retainLogfile(String logfile, File envCpDir,
+            Checkpoint checkpointInProgress) throws IOException {
+        File f = new File(dir.getFile(),logfile.substring(0, logfile.lastIndexOf(',')));
+        File target = new File(envCpDir,logfile);
+        try {
+            createLink(target.toPath(), f.toPath().toAbsolutePath());
+            return;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOGGER.log(Level.FINE, "unable to link " + target + "; copying", e);
+        }
+        Files.copy(f.toPath(), target.toPath());
+        checkpointInProgress.addBytesCopied(target.length());
+    }
+
+    /**
+     * Create a hard link; overridable so that filesystems without them 
+     * can be simulated. 
+     */
+    protected void createLink(Path link, Path existing) throws IOException {
+        Files.createLink(link, existing);
+    }
+
+    /**
+     * Delete all but the given checkpoint's directory, if it is to be
+     * the only one kept. 
+     */
+    protected void forgetOtherCheckpoints(final Checkpoint checkpointInProgress) throws IOException {
         if (checkpointInProgress.getForgetAllButLatest()) {
             File[] oldEnvCpDirs = dir.getFile().listFiles(new FilenameFilter() {
                 @Override
@@ -607,9 +803,10 @@ public class BdbModule implements Lifecycle, Checkpointable, Closeable, Disposab
                     }
                 }
                 try {
-                    Files.createLink(destFile.toPath(), cpFile.toPath().toAbsolutePath());
+                    createLink(destFile.toPath(), cpFile.toPath().toAbsolutePath());
                 } catch (IOException | UnsupportedOperationException e) {
-                    LOGGER.log(Level.SEVERE, "unable to create required restore link " + destFile, e);
+                    LOGGER.log(Level.WARNING, "unable to create restore link " + destFile + "; copying", e);
+                    Files.copy(cpFile.toPath(), destFile.toPath());
                 }
             }
             
@@ -25,6 +25,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -181,4 +182,35 @@ public class Checkpoint implements InitializingBean {
     public boolean getForgetAllButLatest() {
         return forgetAllButLatest;
     }
+
+    /**
+     * Whether this checkpoint is incremental: prepared beforehand and
+     * completed afterwards while crawling continues (see 
+     * {@link IncrementalCheckpointable}). 
+     */
+    protected boolean incremental = false;
+    public void setIncremental(boolean b) {
+        this.incremental = b;
+    }
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /** how long dispositions were held up for this checkpoint */
+    protected long pauseMs = 0;
+    public void setPauseMs(long pauseMs) {
+        this.pauseMs = pauseMs;
+    }
+    public long getPauseMs() {
+        return pauseMs;
+    }
+
+    /** bytes copied (rather than linked) into this checkpoint */
+    protected AtomicLong bytesCopied = new AtomicLong(0);
+    public void addBytesCopied(long bytes) {
+        bytesCopied.addAndGet(bytes);
+    }
+    public long getBytesCopied() {
+        return bytesCopied.get();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.checkpointing;
+
+import java.io.IOException;
+
+/**
+ * A {@link Checkpointable} which can do part of its checkpoint work while
+ * crawling continues, when checkpoints are incremental. 
+ * 
+ * <p>Before the usual start/do/finish steps (during which the frontier
+ * holds up dispositions), prepareCheckpoint() is called, to flush whatever
+ * can be flushed ahead of time, so that doCheckpoint() has less left to do.
+ * After them, once crawling has resumed, completeCheckpoint() is called, to
+ * finish from what doCheckpoint() captured -- for example to copy files 
+ * frozen during the pause. completeCheckpoint() is called even if the
+ * checkpoint failed (see {@link Checkpoint#getSuccess()}), so that it may
+ * release anything held since doCheckpoint(). Only once all have completed
+ * and the checkpoint is stamped valid is checkpointStamped() called, so
+ * that nothing an earlier checkpoint needs is discarded before then.
+ */
+public interface IncrementalCheckpointable extends Checkpointable {
+
+    /**
+     * Flush state ahead of an incremental checkpoint, while crawling
+     * continues. 
+     * 
+     * @param checkpointInProgress Checkpoint
+     * @throws IOException
+     */
+    void prepareCheckpoint(Checkpoint checkpointInProgress) throws IOException;
+
+    /**
+     * Complete an incremental checkpoint, after the pause. 
+     * 
+     * @param checkpointInProgress Checkpoint
+     * @throws IOException
+     */
+    void completeCheckpoint(Checkpoint checkpointInProgress) throws IOException;
+
+    /**
+     * Discard what's kept only for earlier checkpoints, now that the
+     * incremental checkpoint has succeeded and been stamped valid. 
+     * 
+     * @param checkpointInProgress Checkpoint
+     * @throws IOException
+     */
+    void checkpointStamped(Checkpoint checkpointInProgress) throws IOException;
+}
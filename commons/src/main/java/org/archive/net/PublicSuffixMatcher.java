@@ -0,0 +1,402 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.net;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the registrable domain -- public suffix plus one label, AKA
+ * 'assignment-level domain' or 'topmost assigned SURT' -- of hostnames and
+ * SURT authorities, without regexes and without allocating.
+ *
+ * <p>The public suffix rules are held as a trie of labels, read from the
+ * top-level domain down, so a lookup visits each label of the host at
+ * most once. As with {@link PublicSuffixes}, there's no implicit "*" rule:
+ * a host under an unlisted top-level domain has no registrable domain.
+ *
+ * <p>The shared {@link #getDefault()} matcher is built from the very list
+ * file PublicSuffixes reads, bundled with webarchive-commons, and like it
+ * takes the rules as written: internationalized rules are matched only in
+ * their unicode form, never as the punycode found in crawled URIs. So
+ * queue keys and crawl mapping are as they were with the PublicSuffixes
+ * regex. One difference remains: the regex only took a final label of
+ * letters, digits, '_' and '-', where the trie takes any label.
+ *
+ * <p>Layout: node 0 is the root; each other node has its parent, its label
+ * (a range of a shared char array) and flags for the rules ending there.
+ * Children are found through a single open-addressed hash table keyed by
+ * parent and label.
+ */
+public class PublicSuffixMatcher {
+    /** a public suffix */
+    protected static final byte EXACT = 1;
+    /** all its children are public suffixes ("*.ck") */
+    protected static final byte WILDCARD = 2;
+    /** not a public suffix, though its parent is a wildcard ("!www.ck") */
+    protected static final byte EXCEPTION = 4;
+
+    protected final int[] parent;
+    protected final int[] labelStart;
+    protected final int[] labelLength;
+    protected final byte[] flags;
+    protected final char[] labels;
+    /** node ids by hash of parent and label; 0 (the root) for empty */
+    protected final int[] table;
+    protected final int mask;
+
+    protected PublicSuffixMatcher(List<Integer> parents, List<String> nodeLabels,
+            byte[] flags) {
+        int n = parents.size();
+        this.parent = new int[n];
+        this.labelStart = new int[n];
+        this.labelLength = new int[n];
+        this.flags = flags;
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            parent[i] = parents.get(i);
+            labelStart[i] = chars.length();
+            labelLength[i] = nodeLabels.get(i).length();
+            chars.append(nodeLabels.get(i));
+        }
+        this.labels = chars.toString().toCharArray();
+
+        int size = Integer.highestOneBit(Math.max(n, 8) * 2) * 2;
+        this.table = new int[size];
+        this.mask = size - 1;
+        for (int i = 1; i < n; i++) {
+            int slot = hash(parent[i], labels, labelStart[i],
+                    labelStart[i] + labelLength[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i;
+        }
+    }
+
+    /**
+     * Build a matcher of the given rules, in the format of the published
+     * list: "co.uk", "*.ck", "!www.ck".
+     */
+    public static PublicSuffixMatcher build(Collection<String> rules) {
+        List<Integer> parents = new ArrayList<Integer>();
+        List<String> nodeLabels = new ArrayList<String>();
+        List<Byte> nodeFlags = new ArrayList<Byte>();
+        Map<String,Integer> children = new HashMap<String,Integer>();
+        parents.add(-1);
+        nodeLabels.add("");
+        nodeFlags.add((byte) 0);
+
+        for (String rule : rules) {
+            byte flag = EXACT;
+            String domain = rule.toLowerCase(Locale.ROOT);
+            if (domain.startsWith("!")) {
+                flag = EXCEPTION;
+                domain = domain.substring(1);
+            } else if (domain.startsWith("*.")) {
+                flag = WILDCARD;
+                domain = domain.substring(2);
+            }
+            if (domain.isEmpty()) {
+                continue;
+            }
+            String[] parts = domain.split("\\.");
+            int node = 0;
+            for (int i = parts.length - 1; i >= 0; i--) {
+                String key = node + "/" + parts[i];
+                Integer child = children.get(key);
+                if (child == null) {
+                    child = parents.size();
+                    parents.add(node);
+                    nodeLabels.add(parts[i]);
+                    nodeFlags.add((byte) 0);
+                    children.put(key, child);
+                }
+                node = child;
+            }
+            nodeFlags.set(node, (byte) (nodeFlags.get(node) | flag));
+        }
+
+        byte[] flags = new byte[nodeFlags.size()];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = nodeFlags.get(i);
+        }
+        return new PublicSuffixMatcher(parents, nodeLabels, flags);
+    }
+
+    /**
+     * Build a matcher from the published public suffix list
+     * (https://publicsuffix.org/list/public_suffix_list.dat).
+     */
+    public static PublicSuffixMatcher fromPublishedList(Reader reader) throws IOException {
+        return build(readRules(reader, true));
+    }
+
+    /**
+     * The rules of a list in the published format.
+     * @param withAscii whether to add the punycode form of internationalized
+     *        rules
+     */
+    protected static Set<String> readRules(Reader reader, boolean withAscii)
+    throws IOException {
+        Set<String> rules = new LinkedHashSet<String>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("//")) {
+                continue;
+            }
+            // rule is the first whitespace-delimited token; as in
+            // PublicSuffixes, a stray '?' stands for '_'
+            String rule = line.split("\\s+")[0].replace('?', '_');
+            if (withAscii) {
+                addWithAscii(rules, rule);
+            } else {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Add the rule and, if it has non-ascii labels, their punycode form,
+     * which is how they appear in crawled URIs.
+     */
+    protected static void addWithAscii(Set<String> rules, String rule) {
+        rules.add(rule);
+        try {
+            String ascii = IDN.toASCII(rule);
+            if (!ascii.equals(rule)) {
+                rules.add(ascii);
+            }
+        } catch (IllegalArgumentException e) {
+            // keep just the unicode form
+        }
+    }
+
+    /** the list file PublicSuffixes reads, at the classpath root */
+    protected static final String BUNDLED_LIST = "effective_tld_names.dat";
+
+    private static class DefaultHolder {
+        static final PublicSuffixMatcher INSTANCE = fromBundledList();
+    }
+
+    /**
+     * The shared matcher, of the public suffix list PublicSuffixes uses.
+     */
+    public static PublicSuffixMatcher getDefault() {
+        return DefaultHolder.INSTANCE;
+    }
+
+    protected static PublicSuffixMatcher fromBundledList() {
+        InputStream in = PublicSuffixes.class.getClassLoader()
+                .getResourceAsStream(BUNDLED_LIST);
+        if (in == null) {
+            throw new IllegalStateException("no " + BUNDLED_LIST + " on classpath");
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return build(readRules(reader, false));
+        } catch (IOException e) {
+            throw new IllegalStateException("problem reading " + BUNDLED_LIST, e);
+        }
+    }
+
+    /** number of rule labels held, for reporting */
+    public int size() {
+        return parent.length - 1;
+    }
+
+    protected static char lower(char c) {
+        return (c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    protected static int hash(int parent, CharSequence s, int start, int end) {
+        int h = parent * 0x9E3779B1;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + lower(s.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    protected static int hash(int parent, char[] s, int start, int end) {
+        int h = parent * 0x9E3779B1;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + s[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The child of the given node labeled s[start,end), or -1.
+     */
+    protected int child(int node, CharSequence s, int start, int end) {
+        int length = end - start;
+        int slot = hash(node, s, start, end) & mask;
+        for (int candidate; (candidate = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (parent[candidate] != node || labelLength[candidate] != length) {
+                continue;
+            }
+            int offset = labelStart[candidate] - start;
+            int i = start;
+            while (i < end && labels[offset + i] == lower(s.charAt(i))) {
+                i++;
+            }
+            if (i == end) {
+                return candidate;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Both lookups visit labels from the top-level domain down, tracking
+     * the node reached. Once a public suffix is found, the next label
+     * read begins (or ends) the registrable domain, unless a longer
+     * public suffix turns up.
+     */
+
+    /**
+     * Where the registrable domain of the given (dotted) hostname begins:
+     * for "www.example.co.uk", the index of "example.co.uk".
+     *
+     * @return index into host, or -1 if it has no registrable domain (it is
+     *         itself a public suffix, its top-level domain is unlisted, or
+     *         it's an IP address)
+     */
+    public int registrableDomainStart(CharSequence host) {
+        int end = host.length();
+        if (end > 0 && host.charAt(end - 1) == '.') {
+            end--;
+        }
+        int node = 0;
+        int found = -1;
+        boolean wantNext = false;
+        for (int pos = end; pos > 0;) {
+            int labelEnd = pos;
+            while (pos > 0 && host.charAt(pos - 1) != '.') {
+                pos--;
+            }
+            int labelStart = pos;
+            pos--; // past the dot
+            if (wantNext) {
+                found = labelStart;
+                wantNext = false;
+            }
+            if (node < 0) {
+                break;
+            }
+            int child = child(node, host, labelStart, labelEnd);
+            if (child >= 0 && (flags[child] & EXCEPTION) != 0) {
+                return labelStart;
+            }
+            if ((flags[node] & WILDCARD) != 0
+                    || (child >= 0 && (flags[child] & EXACT) != 0)) {
+                found = -1;
+                wantNext = true;
+            }
+            node = child;
+        }
+        return found;
+    }
+
+    /**
+     * Registrable domain of the given hostname, or null if none.
+     * @see #registrableDomainStart(CharSequence)
+     */
+    public String registrableDomain(String host) {
+        int start = registrableDomainStart(host);
+        if (start < 0) {
+            return null;
+        }
+        int end = host.endsWith(".") ? host.length() - 1 : host.length();
+        return host.substring(start, end);
+    }
+
+    /**
+     * Where the assignment-level part of the given SURT authority ends:
+     * for "uk,co,example,www,", the index just past "uk,co,example,". Only
+     * comma-terminated labels are considered, so any port or other suffix
+     * is ignored.
+     *
+     * @param surt string holding a SURT authority, as "com,example,www,"
+     * @param start index of the authority in surt
+     * @param end index of the end of the authority
+     * @return index into surt, or -1 if it has no registrable domain
+     */
+    public int assignmentLevelEnd(CharSequence surt, int start, int end) {
+        int node = 0;
+        int found = -1;
+        boolean wantNext = false;
+        for (int pos = start; pos < end;) {
+            int labelStart = pos;
+            while (pos < end && surt.charAt(pos) != ',') {
+                pos++;
+            }
+            if (pos == end) {
+                // not a comma-terminated label
+                break;
+            }
+            int labelEnd = pos;
+            pos++; // past the comma
+            if (wantNext) {
+                found = pos;
+                wantNext = false;
+            }
+            if (node < 0) {
+                break;
+            }
+            int child = child(node, surt, labelStart, labelEnd);
+            if (child >= 0 && (flags[child] & EXCEPTION) != 0) {
+                return pos;
+            }
+            if ((flags[node] & WILDCARD) != 0
+                    || (child >= 0 && (flags[child] & EXACT) != 0)) {
+                found = -1;
+                wantNext = true;
+            }
+            node = child;
+        }
+        return found;
+    }
+
+    /**
+     * Reduce the given SURT authority (or classKey starting with one) to
+     * its assignment-level domain, as "com,example," for
+     * "com,example,www,"; or return it unchanged if it has none. A
+     * drop-in replacement for PublicSuffixes.reduceSurtToAssignmentLevel().
+     */
+    public String reduceSurtToAssignmentLevel(String surt) {
+        int end = assignmentLevelEnd(surt, 0, surt.length());
+        return end < 0 ? surt : surt.substring(0, end);
+    }
+}
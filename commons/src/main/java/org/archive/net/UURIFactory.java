@@ -18,30 +18,58 @@
  */
 package org.archive.net;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.archive.url.URIException;
 import org.archive.url.UsableURI;
 import org.archive.url.UsableURIFactory;
 
 /**
  * Factory that returns UURIs. Mostly wraps {@link UsableURIFactory}.
- * 
+ *
+ * <p>Each thread remembers the UURIs it most recently made, so that the
+ * same link met again -- in the navigation repeated across a site's pages,
+ * or several times on one page -- is neither fixed up nor parsed again.
+ * UURIs are treated as immutable everywhere, so may be shared. (The
+ * number remembered per thread may be set with the system property
+ * <code>org.archive.net.UURIFactory.recentSize</code>; 0 disables this.)
  */
 public class UURIFactory extends UsableURIFactory {
-        
+
     private static final long serialVersionUID = -7969477276065915936L;
-    
+
     /**
      * The single instance of this factory.
      */
     private static final UURIFactory factory = new UURIFactory();
 
+    /**
+     * Number of UURIs each thread remembers, by the string they were made
+     * from; half as many again are remembered relative to the current base.
+     */
+    protected static final int RECENT_SIZE =
+        Integer.getInteger(UURIFactory.class.getName() + ".recentSize", 256);
+
+    protected static final ThreadLocal<RecentUURIs> RECENT =
+        ThreadLocal.withInitial(() -> new RecentUURIs(RECENT_SIZE));
+
     /**
      * @param uri URI as string.
      * @return An instance of UURI
      * @throws URIException
      */
     public static UURI getInstance(String uri) throws URIException {
-        return (UURI) UURIFactory.factory.create(uri);
+        if (RECENT_SIZE <= 0) {
+            return (UURI) UURIFactory.factory.create(uri);
+        }
+        RecentUURIs recent = RECENT.get();
+        UURI uuri = recent.absolute(uri, UsableURI.getDefaultProtocolCharset());
+        if (uuri == null) {
+            uuri = (UURI) UURIFactory.factory.create(uri);
+            recent.byUri.put(uri, uuri);
+        }
+        return uuri;
     }
 
     /**
@@ -52,7 +80,163 @@ public class UURIFactory extends UsableURIFactory {
      */
     public static UURI getInstance(UURI base, String relative)
             throws URIException {
-        return (UURI) UURIFactory.factory.create(base, relative);
+        if (RECENT_SIZE <= 0 || base == null || relative == null) {
+            return (UURI) UURIFactory.factory.create(base, relative);
+        }
+        RecentUURIs recent = RECENT.get();
+        boolean clean = isCleanAbsolute(relative);
+        UURI uuri = clean
+                ? recent.absolute(relative, base.getProtocolCharset())
+                : recent.relative(base, relative);
+        if (uuri == null) {
+            uuri = (UURI) UURIFactory.factory.create(base, relative);
+            if (clean) {
+                recent.byUri.put(relative, uuri);
+            } else {
+                recent.byRelative.put(relative, uuri);
+            }
+        }
+        return uuri;
+    }
+
+    /**
+     * Whether the given string is an absolute http(s) URI simple enough
+     * that the UURI made from it can't depend on the base it's resolved
+     * against (other than the base's charset): lowercase scheme and host,
+     * with no userinfo, port, fragment, escapes, dot-segments or empty
+     * path segments, and only ASCII characters that never need escaping.
+     *
+     * Quick, and allocation-free; URIs failing it are still remembered,
+     * but only relative to their base.
+     */
+    protected static boolean isCleanAbsolute(String uri) {
+        int start;
+        if (uri.startsWith("http://")) {
+            start = 7;
+        } else if (uri.startsWith("https://")) {
+            start = 8;
+        } else {
+            return false;
+        }
+        int length = uri.length();
+        // host: dot-separated labels of [a-z0-9-]
+        int i = start;
+        char prev = '.';
+        for (; i < length; i++) {
+            char c = uri.charAt(i);
+            if (c == '/') {
+                break;
+            }
+            if (c == '.') {
+                if (prev == '.') {
+                    return false;
+                }
+            } else if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-')) {
+                return false;
+            }
+            prev = c;
+        }
+        if (i == start || prev == '.' || i == length) {
+            // no host, a trailing dot, or no path
+            return false;
+        }
+        // path and query
+        boolean inQuery = false;
+        for (; i < length; i++) {
+            char c = uri.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9')) {
+                continue;
+            }
+            switch (c) {
+            case '/':
+                if (!inQuery && !cleanSegmentEnd(uri, i, true)) {
+                    return false;
+                }
+                break;
+            case '?':
+                if (!inQuery && !cleanSegmentEnd(uri, i, false)) {
+                    return false;
+                }
+                inQuery = true;
+                break;
+            case '-': case '_': case '.': case '~': case '=': case '&':
+            case ',': case ';': case ':': case '+': case '!': case '*':
+            case '(': case ')': case '@': case '$':
+                break;
+            default:
+                return false;
+            }
+        }
+        return inQuery || cleanSegmentEnd(uri, length, false);
+    }
+
+    /**
+     * Whether the path segment ending at end (at a '/' if slash, else at
+     * a '?' or the end of uri) is other than '.' or '..', and isn't an
+     * empty one between two slashes.
+     */
+    private static boolean cleanSegmentEnd(String uri, int end, boolean slash) {
+        int segment = uri.lastIndexOf('/', end - 1) + 1;
+        if (segment == end) {
+            return !slash;
+        }
+        int length = end - segment;
+        return !(length == 1 && uri.charAt(segment) == '.')
+                && !(length == 2 && uri.charAt(segment) == '.'
+                        && uri.charAt(segment + 1) == '.');
+    }
+
+    /**
+     * A thread's recently made UURIs.
+     */
+    protected static class RecentUURIs {
+        /** by the string they were made from, whatever the base */
+        final Map<String,UURI> byUri;
+        /** by the (relative) string they were made from, for lastBase */
+        final Map<String,UURI> byRelative;
+        UURI lastBase;
+
+        RecentUURIs(int size) {
+            byUri = lru(size);
+            byRelative = lru(size / 2);
+        }
+
+        static Map<String,UURI> lru(final int size) {
+            return new LinkedHashMap<String,UURI>(size * 2, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String,UURI> eldest) {
+                    return size() > size;
+                }
+            };
+        }
+
+        /**
+         * Remembered UURI made from the given string with the given
+         * protocol charset, or null.
+         */
+        UURI absolute(String uri, String charset) {
+            UURI uuri = byUri.get(uri);
+            if (uuri != null && !uuri.getProtocolCharset().equals(charset)) {
+                return null;
+            }
+            return uuri;
+        }
+
+        /**
+         * Remembered UURI made from the given string against the given
+         * base, or null.
+         */
+        UURI relative(UURI base, String relative) {
+            if (base != lastBase) {
+                byRelative.clear();
+                lastBase = base;
+                return null;
+            }
+            return byRelative.get(relative);
+        }
     }
 
     @Override
@@ -60,7 +244,7 @@ public class UURIFactory extends UsableURIFactory {
             throws URIException {
         return new UURI(fixedUpUri, escaped, charset);
     }
-    
+
     @Override
     protected UsableURI makeOne(UsableURI base, UsableURI relative) throws URIException {
         // return new UURI(base, relative);
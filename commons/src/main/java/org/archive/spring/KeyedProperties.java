@@ -151,4 +151,18 @@ public class KeyedProperties extends ConcurrentSkipListMap<String,Object> {
     public static boolean overridesActiveFrom(OverlayContext ocontext) {
         return threadOverrides.get().contains(ocontext);
     }
+
+    /**
+     * Whether any overlays are in effect for the current thread, such
+     * that a property's value may differ from its local value.
+     */
+    public static boolean anyOverridesActive() {
+        for (OverlayContext ocontext : threadOverrides.get()) {
+            if (ocontext.getOverlayNames() != null
+                    && !ocontext.getOverlayNames().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
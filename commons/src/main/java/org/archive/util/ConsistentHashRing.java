@@ -0,0 +1,113 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+import st.ata.util.FPGenerator;
+
+/**
+ * Consistent hash of keys to named nodes, as {@link LongToIntConsistentHash}
+ * but over an arbitrary set of names, so that any node may join or leave:
+ * only the keys of the node leaving (or about 1/N of all keys, to a node
+ * joining) change nodes.
+ *
+ * <p>Immutable, and so safe for concurrent lookups; a changed set of nodes
+ * is a new ring. The replica points are held in a sorted array, searched
+ * without allocating.
+ */
+public class ConsistentHashRing {
+    protected static final int DEFAULT_REPLICAS = 128;
+
+    protected final List<String> nodes;
+    /** replica points, ascending */
+    protected final long[] points;
+    /** index into nodes of the node owning each point */
+    protected final int[] owners;
+
+    public ConsistentHashRing(Collection<String> nodes) {
+        this(nodes, DEFAULT_REPLICAS);
+    }
+
+    public ConsistentHashRing(Collection<String> nodes, int numReplicas) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("no nodes");
+        }
+        this.nodes = Collections.unmodifiableList(
+                new ArrayList<String>(new TreeSet<String>(nodes)));
+        long[][] pairs = new long[this.nodes.size() * numReplicas][];
+        int p = 0;
+        for (int n = 0; n < this.nodes.size(); n++) {
+            for (int i = 0; i < numReplicas; i++) {
+                pairs[p++] = new long[] {replicaLocation(this.nodes.get(n), i), n};
+            }
+        }
+        // ties (vanishingly unlikely) go to the lesser name, on every node
+        Arrays.sort(pairs, (a, b) -> a[0] != b[0]
+                ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[pairs.length];
+        this.owners = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            points[i] = pairs[i][0];
+            owners[i] = (int) pairs[i][1];
+        }
+    }
+
+    protected long replicaLocation(String node, int replicaNumber) {
+        return FPGenerator.std64.fp(node + "." + replicaNumber);
+    }
+
+    protected long hash(CharSequence cs) {
+        return FPGenerator.std64.fp(cs);
+    }
+
+    /**
+     * The nodes of the ring, in name order.
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * The node owning the given hash: that of the first replica point at
+     * or after it, wrapping around.
+     */
+    public String nodeFor(long longHash) {
+        int i = Arrays.binarySearch(points, longHash);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        if (i == points.length) {
+            i = 0;
+        }
+        return nodes.get(owners[i]);
+    }
+
+    /**
+     * Convenience alternative which creates longHash from CharSequence
+     */
+    public String nodeFor(CharSequence cs) {
+        return nodeFor(hash(cs));
+    }
+}
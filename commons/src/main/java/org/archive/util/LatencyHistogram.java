@@ -0,0 +1,228 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies, cheap enough to record on every
+ * processor invocation.
+ *
+ * <p>Values are kept in microseconds, in log-linear buckets (each power of
+ * two split into 8 sub-buckets, as in HdrHistogram with one significant
+ * digit), so any reported value is within 12.5% of the true value.
+ * Recording threads are spread over a small number of stripes, each with
+ * its own counts, so that concurrent recorders rarely contend; stripes are
+ * merged when a {@link Snapshot} is taken.
+ */
+public class LatencyHistogram {
+    protected static final int SUB_BITS = 3;
+    protected static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** values above 2^36 microseconds (about 19 hours) share the top bucket */
+    protected static final int MAX_EXPONENT = 36;
+    protected static final int BUCKETS =
+        (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+    protected static final int STRIPES = stripesFor(
+            Runtime.getRuntime().availableProcessors());
+
+    /** per stripe: BUCKETS counts, then count and sum */
+    protected final AtomicLongArray[] stripes;
+
+    public LatencyHistogram() {
+        stripes = new AtomicLongArray[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS + 2);
+        }
+    }
+
+    protected static int stripesFor(int processors) {
+        int stripes = Integer.highestOneBit(Math.max(1, processors));
+        return Math.min(stripes < processors ? stripes * 2 : stripes, 16);
+    }
+
+    /**
+     * @return bucket index for the given value (in microseconds)
+     */
+    protected static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int mantissa = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    /**
+     * @return smallest value (in microseconds) falling in the given bucket
+     */
+    protected static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long mantissa = bucket % SUB_BUCKETS;
+        return (SUB_BUCKETS + mantissa) << (exponent - SUB_BITS);
+    }
+
+    /**
+     * @return value (in microseconds) just above those in the given bucket
+     */
+    protected static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        return lowerBound(bucket) + (1L << (exponent - SUB_BITS));
+    }
+
+    /**
+     * Record an elapsed time.
+     *
+     * @param nanos elapsed time in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        AtomicLongArray stripe = stripes[
+            (int) Thread.currentThread().getId() & (STRIPES - 1)];
+        stripe.incrementAndGet(bucketFor(micros));
+        stripe.incrementAndGet(BUCKETS);
+        stripe.addAndGet(BUCKETS + 1, Math.max(micros, 0));
+    }
+
+    /**
+     * Record the time elapsed since the given start.
+     *
+     * @param startNanos start time, from {@link System#nanoTime()}
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return merged counts of all stripes, as of now
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+            count += stripe.get(BUCKETS);
+            sum += stripe.get(BUCKETS + 1);
+        }
+        return new Snapshot(counts, count, sum);
+    }
+
+    /**
+     * Point-in-time view of a histogram. (As stripes are read one after
+     * another, the count may not exactly match the bucket totals under
+     * concurrent recording.)
+     */
+    public static class Snapshot {
+        protected final long[] counts;
+        protected final long count;
+        protected final long sum;
+
+        protected Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /** @return number of values recorded */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return sum of values recorded, in microseconds */
+        public long getSum() {
+            return sum;
+        }
+
+        /** @return mean value, in microseconds */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return approximate value (in microseconds) below which the given
+         * percentage of recorded values fall
+         */
+        public long getValueAtPercentile(double percentile) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * Math.min(percentile, 100) / 100);
+            rank = Math.max(rank, 1);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // middle of the bucket
+                    return (lowerBound(i) + upperBound(i) - 1) / 2;
+                }
+            }
+            return upperBound(counts.length - 1);
+        }
+
+        /** @return approximate largest value recorded, in microseconds */
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return upperBound(i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return short summary, eg "n=1234 mean=1.2ms p50=0.9ms p99=12ms
+         * max=15ms"
+         */
+        public String toSummaryString() {
+            return "n=" + count
+                    + " mean=" + format(Math.round(getMean()))
+                    + " p50=" + format(getValueAtPercentile(50))
+                    + " p90=" + format(getValueAtPercentile(90))
+                    + " p99=" + format(getValueAtPercentile(99))
+                    + " max=" + format(getMax());
+        }
+
+        protected static String format(long micros) {
+            if (micros < 1000) {
+                return micros + "us";
+            } else if (micros < 1000000) {
+                return ArchiveUtils.doubleToString(micros / 1000.0, 1) + "ms";
+            } else {
+                return ArchiveUtils.doubleToString(micros / 1000000.0, 2) + "s";
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free queue for many producer threads and a single
+ * consumer thread.
+ *
+ * <p>Producers claim a sequence number by compare-and-set on the tail,
+ * only once there is room for it, then publish into the claimed slot.
+ * The consumer takes items strictly in sequence order; an item claimed
+ * but not yet published holds up those behind it (briefly). Items are
+ * therefore consumed in an order consistent with each producer's own
+ * order of insertion.
+ *
+ * <p>Only one thread may call {@link #poll()}.
+ */
+public class MpscRingBuffer<T> {
+    protected final AtomicReferenceArray<T> slots;
+    protected final int capacity;
+    protected final int mask;
+    /** next sequence to be claimed by a producer */
+    protected final AtomicLong tail = new AtomicLong(0);
+    /** next sequence to be taken by the consumer */
+    protected final AtomicLong head = new AtomicLong(0);
+
+    /**
+     * @param minCapacity capacity, rounded up to a power of two
+     */
+    public MpscRingBuffer(int minCapacity) {
+        int cap = Integer.highestOneBit(Math.max(minCapacity, 2) - 1) << 1;
+        this.capacity = cap;
+        this.mask = cap - 1;
+        this.slots = new AtomicReferenceArray<T>(cap);
+    }
+
+    /**
+     * Add an item if there is room.
+     *
+     * @return false if the buffer is full
+     */
+    public boolean offer(T item) {
+        if (item == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long t = tail.get();
+            if (t - head.get() >= capacity) {
+                return false;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.lazySet((int) t & mask, item);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Add an item, waiting for room if necessary. Interruption does not
+     * end the wait, but is preserved in the thread's interrupt status.
+     */
+    public void put(T item) {
+        int attempts = 0;
+        boolean interrupted = false;
+        while (!offer(item)) {
+            if (attempts++ < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(50000);
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Take the next item. Consumer thread only.
+     *
+     * @return next item, or null if none is (yet) available
+     */
+    public T poll() {
+        long h = head.get();
+        int index = (int) h & mask;
+        T item = slots.get(index);
+        if (item == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        head.lazySet(h + 1);
+        return item;
+    }
+
+    /**
+     * @return approximate number of items waiting
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,823 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import java.io.Closeable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.bdb.KryoBinding;
+
+import com.sleepycat.bind.EntryBinding;
+import com.sleepycat.bind.serial.StoredClassCatalog;
+import com.sleepycat.bind.tuple.TupleBinding;
+import com.sleepycat.collections.StoredSortedMap;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseConfig;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.LockMode;
+import com.sleepycat.je.OperationStatus;
+
+/**
+ * A BDB JE backed object cache holding in memory at most a budgeted number
+ * of bytes of objects, rather than whatever soft references the garbage
+ * collector happens to leave, as {@link ObjectIdentityBdbManualCache} does.
+ * <p>
+ * Each object's memory is estimated from its serialized size (known
+ * whenever it's read or written), times an expansion factor, plus a fixed
+ * per-entry overhead. Entries are split by key hash into stripes, each
+ * with an equal share of the budget and its own lock, so threads evicting
+ * from different stripes don't wait on each other. Which objects leave a
+ * stripe past its share is up to a pluggable {@link EvictionPolicy}:
+ * {@link SegmentedLruEvictionPolicy} by default, or
+ * {@link TinyLfuEvictionPolicy}. Hits only count a use of the object,
+ * without locking; the policy takes note of uses lazily, in the thread
+ * that evicts.
+ * <p>
+ * An object missing from memory is loaded by one thread at a time per
+ * key, outside of any map lock; others wanting the same key meanwhile
+ * wait for its result.
+ * <p>
+ * Dirty objects are never evicted. They're written back incrementally by
+ * a background thread, oldest first, at intervals or whenever enough
+ * collect; {@link #sync()} only writes what's left. Evicted objects are
+ * remembered weakly, so an object still in use elsewhere is still the one
+ * returned for its key.
+ *
+ * @param <V>
+ */
+public class ObjectIdentityBdbBoundedCache<V extends IdentityCacheable>
+implements ObjectIdentityCache<V>, Closeable {
+    private static final Logger logger =
+        Logger.getLogger(ObjectIdentityBdbBoundedCache.class.getName());
+
+    /** estimated memory of an entry apart from its object and key chars */
+    protected static final int ENTRY_OVERHEAD = 128;
+
+    /** The BDB JE database used for this instance. */
+    protected Database db;
+
+    /** The Collection view of the BDB JE database, for keySet(). */
+    protected StoredSortedMap<String, V> diskMap;
+
+    protected EntryBinding<String> keyBinding;
+    protected EntryBinding<V> valueBinding;
+
+    /** objects in memory, by key */
+    protected ConcurrentHashMap<String,Entry<V>> memMap =
+        new ConcurrentHashMap<String,Entry<V>>();
+
+    /** loads in progress, by key, for others to wait on */
+    protected ConcurrentHashMap<String,CompletableFuture<Entry<V>>> loads =
+        new ConcurrentHashMap<String,CompletableFuture<Entry<V>>>();
+
+    /** evicted objects, weakly held */
+    protected ConcurrentHashMap<String,ReleasedRef<V>> released =
+        new ConcurrentHashMap<String,ReleasedRef<V>>();
+    protected ReferenceQueue<V> collected = new ReferenceQueue<V>();
+
+    /** independently evicting parts of memMap, by key hash */
+    protected List<Stripe> stripes;
+
+    /** dirty entries, oldest first */
+    protected ConcurrentLinkedQueue<Entry<V>> dirtyQueue =
+        new ConcurrentLinkedQueue<Entry<V>>();
+    protected AtomicInteger dirtyCount = new AtomicInteger();
+
+    /** held while writing back */
+    protected ReentrantLock flushLock = new ReentrantLock();
+    protected AtomicBoolean flushRequested = new AtomicBoolean();
+    protected ScheduledExecutorService flusher;
+
+    protected AtomicLong count;
+
+    //
+    // USAGE STATS
+    //
+    protected AtomicLong countOfGets = new AtomicLong();
+    protected AtomicLong cacheHit = new AtomicLong();
+    /** found among evicted but still-referenced objects */
+    protected AtomicLong weakHit = new AtomicLong();
+    protected AtomicLong diskHit = new AtomicLong();
+    protected AtomicLong supplierUsed = new AtomicLong();
+    protected AtomicLong evictions = new AtomicLong();
+    protected AtomicLong flushed = new AtomicLong();
+    protected AtomicLong syncs = new AtomicLong();
+
+    protected long maxBytes = 256L * 1024 * 1024;
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    /**
+     * Memory budget, in estimated bytes, for the objects held.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    protected int expansionFactor = 4;
+    public int getExpansionFactor() {
+        return expansionFactor;
+    }
+    /**
+     * Ratio of an object's estimated memory to its serialized size.
+     */
+    public void setExpansionFactor(int expansionFactor) {
+        this.expansionFactor = expansionFactor;
+    }
+
+    protected Eviction eviction = Eviction.SEGMENTED_LRU;
+    public Eviction getEviction() {
+        return eviction;
+    }
+    /**
+     * Policy choosing the objects to evict once over budget, one instance
+     * per stripe. Set before initializing.
+     */
+    public void setEviction(Eviction eviction) {
+        this.eviction = eviction;
+    }
+
+    protected int stripeCount = 16;
+    public int getStripeCount() {
+        return stripeCount;
+    }
+    /**
+     * Number of stripes the budget and eviction are split into. Set
+     * before initializing.
+     */
+    public void setStripeCount(int stripeCount) {
+        this.stripeCount = stripeCount;
+    }
+
+    protected long flushIntervalMs = 1000;
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+    /**
+     * Interval between background write-backs of dirty objects. Set
+     * before initializing.
+     */
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    protected int flushBatch = 1000;
+    public int getFlushBatch() {
+        return flushBatch;
+    }
+    /**
+     * Most dirty objects written back at once in the background; also the
+     * number at which a write-back is started early.
+     */
+    public void setFlushBatch(int flushBatch) {
+        this.flushBatch = flushBatch;
+    }
+
+    public ObjectIdentityBdbBoundedCache() {
+        super();
+    }
+
+    /**
+     * Finish construction, opening (or creating) the named database, and
+     * start writing back in the background.
+     */
+    @SuppressWarnings("unchecked")
+    public void initialize(final Environment env, String dbName,
+            final Class valueClass, final StoredClassCatalog classCatalog)
+    throws DatabaseException {
+        this.db = openDatabase(env, dbName);
+        this.keyBinding = TupleBinding.getPrimitiveBinding(String.class);
+        this.valueBinding = TupleBinding.getPrimitiveBinding(valueClass);
+        if (valueBinding == null) {
+            valueBinding = new KryoBinding<V>(valueClass);
+        }
+        this.diskMap = new StoredSortedMap<String,V>(db, keyBinding, valueBinding, true);
+        this.count = new AtomicLong(diskMap.size());
+        this.stripes = new ArrayList<Stripe>();
+        for (int i = 0; i < Math.max(stripeCount, 1); i++) {
+            stripes.add(new Stripe());
+        }
+
+        final String threadName = "ObjectIdentityBdbBoundedCache flusher: " + dbName;
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::backgroundFlush,
+                flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    protected Database openDatabase(final Environment environment,
+            final String dbName) throws DatabaseException {
+        DatabaseConfig dbConfig = new DatabaseConfig();
+        dbConfig.setTransactional(false);
+        dbConfig.setAllowCreate(true);
+        dbConfig.setDeferredWrite(true);
+        return environment.openDatabase(null, dbName, dbConfig);
+    }
+
+    public V get(final String key) {
+        return getOrUse(key, null);
+    }
+
+    public V getOrUse(final String key, final Supplier<V> supplierOrNull) {
+        if (countOfGets.incrementAndGet() % 10000 == 0) {
+            logCacheSummary();
+        }
+        Entry<V> entry = memMap.get(key);
+        if (entry != null) {
+            // the concurrent garden path: in memory, just note the use
+            cacheHit.incrementAndGet();
+            entry.used();
+            entry.value.setIdentityCache(this);
+            return entry.value;
+        }
+        entry = entryFor(key, k -> load(k, supplierOrNull));
+        if (entry == null) {
+            return null;
+        }
+        Stripe stripe = stripeFor(key);
+        if (stripe.isOver()) {
+            stripe.evictIfOver(false);
+        }
+        entry.value.setIdentityCache(this);
+        return entry.value;
+    }
+
+    /**
+     * The entry in memory for the key, if need be made by the given loader
+     * (and then admitted). Only one thread at a time loads each key, and
+     * outside of any map lock, so disk reads for different keys don't
+     * block each other; other threads wanting the key meanwhile wait for
+     * the result, or if it's null, try again themselves.
+     */
+    protected Entry<V> entryFor(String key, Function<String,Entry<V>> loader) {
+        while (true) {
+            Entry<V> entry = memMap.get(key);
+            if (entry != null) {
+                return entry;
+            }
+            CompletableFuture<Entry<V>> mine = new CompletableFuture<Entry<V>>();
+            CompletableFuture<Entry<V>> other = loads.putIfAbsent(key, mine);
+            if (other != null) {
+                try {
+                    entry = other.join();
+                } catch (CompletionException e) {
+                    // that loader failed; try again
+                    entry = null;
+                }
+                if (entry != null) {
+                    return entry;
+                }
+                continue;
+            }
+            try {
+                // perhaps loaded by another, just before
+                entry = memMap.get(key);
+                if (entry == null) {
+                    entry = loader.apply(key);
+                    if (entry != null) {
+                        // in memMap before evictable, so an eviction
+                        // always finds it there to remove
+                        memMap.put(key, entry);
+                        admit(entry);
+                    }
+                }
+                mine.complete(entry);
+                return entry;
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw e;
+            } finally {
+                loads.remove(key, mine);
+            }
+        }
+    }
+
+    /**
+     * A new entry for the key's object: recalled if still referenced
+     * elsewhere, else read from disk, else (if a supplier is given) newly
+     * created; or null. Called only by the one loader of the key, while
+     * no entry for it is in memMap.
+     */
+    protected Entry<V> load(String key, Supplier<V> supplierOrNull) {
+        // an evicted object may be recalled only while referenced, which
+        // also means any write-back of it is complete
+        Entry<V> entry = recall(key);
+        if (entry != null) {
+            weakHit.incrementAndGet();
+            return entry;
+        }
+        DatabaseEntry keyEntry = new DatabaseEntry();
+        keyBinding.objectToEntry(key, keyEntry);
+        DatabaseEntry valueEntry = new DatabaseEntry();
+        V val;
+        if (db.get(null, keyEntry, valueEntry, LockMode.DEFAULT) == OperationStatus.SUCCESS) {
+            diskHit.incrementAndGet();
+            val = valueBinding.entryToObject(valueEntry);
+        } else {
+            // never yet created, consider creating
+            if (supplierOrNull == null) {
+                return null;
+            }
+            val = supplierOrNull.get();
+            supplierUsed.incrementAndGet();
+            // as with ObjectIdentityBdbManualCache, put the initial value
+            // directly on disk, so keySet() is complete
+            valueBinding.objectToEntry(val, valueEntry);
+            if (db.putNoOverwrite(null, keyEntry, valueEntry) == OperationStatus.SUCCESS) {
+                count.incrementAndGet();
+            } else {
+                // already there after all; use the disk version
+                db.get(null, keyEntry, valueEntry, LockMode.DEFAULT);
+                diskHit.incrementAndGet();
+                val = valueBinding.entryToObject(valueEntry);
+            }
+        }
+        return newEntry(key, val, valueEntry.getSize());
+    }
+
+    /**
+     * A new entry for the key's evicted object, if still referenced
+     * elsewhere; else null.
+     */
+    protected Entry<V> recall(String key) {
+        expungeCollected();
+        ReleasedRef<V> ref = released.remove(key);
+        if (ref == null) {
+            return null;
+        }
+        V val = ref.get();
+        if (val == null) {
+            return null;
+        }
+        return newEntry(key, val, ref.serializedBytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void expungeCollected() {
+        Reference<? extends V> ref;
+        while ((ref = collected.poll()) != null) {
+            ReleasedRef<V> releasedRef = (ReleasedRef<V>) ref;
+            released.remove(releasedRef.key, releasedRef);
+        }
+    }
+
+    protected Entry<V> newEntry(String key, V val, int serializedBytes) {
+        return new Entry<V>(key, val, serializedBytes,
+                estimateBytes(key, serializedBytes));
+    }
+
+    /**
+     * Count a newly loaded entry, now in memMap, against its stripe's
+     * budget, and queue it for the stripe's eviction policy.
+     */
+    protected void admit(Entry<V> entry) {
+        Stripe stripe = stripeFor(entry.key);
+        stripe.memBytes.addAndGet(entry.bytes.get());
+        stripe.admitted.add(entry);
+    }
+
+    protected Stripe stripeFor(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return stripes.get(Math.floorMod(h, stripes.size()));
+    }
+
+    /**
+     * Estimated memory held by the object for the given key, serialized
+     * in the given number of bytes.
+     */
+    protected int estimateBytes(String key, int serializedBytes) {
+        long estimate = ENTRY_OVERHEAD + 2L * key.length()
+                + (long) serializedBytes * expansionFactor;
+        return (int) Math.min(Integer.MAX_VALUE, estimate);
+    }
+
+    public void dirtyKey(String key) {
+        Entry<V> entry = memMap.get(key);
+        if (entry == null) {
+            // evicted since got, but necessarily still referenced
+            entry = entryFor(key, this::recall);
+            if (entry == null) {
+                logger.severe("dirty key not in memory should be impossible");
+                return;
+            }
+        }
+        if (entry.dirty.compareAndSet(false, true)) {
+            dirtyQueue.add(entry);
+            if (dirtyCount.incrementAndGet() >= flushBatch
+                    && flushRequested.compareAndSet(false, true)) {
+                try {
+                    flusher.execute(this::backgroundFlush);
+                } catch (RejectedExecutionException e) {
+                    // closing; written by the final sync()
+                }
+            }
+        }
+    }
+
+    /**
+     * Write back a batch of dirty objects, then evict any excess they
+     * were keeping in memory.
+     */
+    protected void backgroundFlush() {
+        flushRequested.set(false);
+        try {
+            flush(flushBatch);
+            evictIfOver(true);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "problem writing back " + getDatabaseName(), e);
+        }
+    }
+
+    /**
+     * Write back up to max of the oldest dirty objects.
+     */
+    protected void flush(int max) {
+        flushLock.lock();
+        try {
+            DatabaseEntry keyEntry = new DatabaseEntry();
+            DatabaseEntry valueEntry = new DatabaseEntry();
+            int written = 0;
+            Entry<V> entry;
+            while (written < max && (entry = dirtyQueue.poll()) != null) {
+                // clean before writing, so any later change is written again
+                entry.dirty.set(false);
+                dirtyCount.decrementAndGet();
+                keyBinding.objectToEntry(entry.key, keyEntry);
+                valueBinding.objectToEntry(entry.value, valueEntry);
+                db.put(null, keyEntry, valueEntry);
+                entry.resize(valueEntry.getSize(),
+                        estimateBytes(entry.key, valueEntry.getSize()),
+                        stripeFor(entry.key).memBytes);
+                written++;
+            }
+            flushed.addAndGet(written);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Evict, in each stripe over its share of the budget, the clean
+     * objects its policy chooses until within it.
+     * @param wait whether to wait for another thread already evicting
+     */
+    protected void evictIfOver(boolean wait) {
+        for (Stripe stripe : stripes) {
+            if (stripe.isOver()) {
+                stripe.evictIfOver(wait);
+            }
+        }
+    }
+
+    public synchronized void sync() {
+        syncs.incrementAndGet();
+        long startTime = System.currentTimeMillis();
+        // most dirty objects are usually written already; the rest now
+        flush(Math.max(dirtyCount.get(), 0));
+        try {
+            this.db.sync();
+        } catch (DatabaseException e) {
+            throw new RuntimeException(e);
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(getDatabaseName() + " sync took "
+                    + (System.currentTimeMillis() - startTime) + "ms; "
+                    + composeCacheSummary());
+        }
+    }
+
+    public synchronized void close() {
+        if (this.db != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                sync();
+                this.db.close();
+            } catch (DatabaseException e) {
+                logger.log(Level.WARNING, "problem closing ObjectIdentityBdbBoundedCache", e);
+            } finally {
+                this.db = null;
+            }
+        }
+    }
+
+    public int size() {
+        if (db == null) {
+            return 0;
+        }
+        return (int) count.get();
+    }
+
+    public Set<String> keySet() {
+        return diskMap.keySet();
+    }
+
+    /**
+     * @return estimated bytes of the objects now held in memory
+     */
+    public long memoryBytes() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.memBytes.get();
+        }
+        return total;
+    }
+
+    protected String getDatabaseName() {
+        String name = "DbName-Lookup-Failed";
+        try {
+            if (this.db != null) {
+                name = this.db.getDatabaseName();
+            }
+        } catch (DatabaseException e) {
+            // Ignore.
+        }
+        return name;
+    }
+
+    private void logCacheSummary() {
+        if (logger.isLoggable((Level.FINE))) {
+            logger.fine(composeCacheSummary());
+        }
+    }
+
+    protected String composeCacheSummary() {
+        long gets = countOfGets.get();
+        StringBuilder sb = new StringBuilder(200);
+        sb.append("DB name:").append(getDatabaseName())
+          .append(", eviction: ").append(eviction)
+          .append(", stripes: ").append(stripes.size())
+          .append(", hit%: ").append(percent(cacheHit.get() + weakHit.get(), gets))
+          .append("%, miss%: ").append(percent(diskHit.get() + supplierUsed.get(), gets))
+          .append("%, eviction%: ").append(percent(evictions.get(), gets))
+          .append("%, gets=").append(gets)
+          .append(" memHits=").append(cacheHit.get())
+          .append(" weakHits=").append(weakHit.get())
+          .append(" diskHits=").append(diskHit.get())
+          .append(" supplieds=").append(supplierUsed.get())
+          .append(" inMemItems=").append(memMap.size())
+          .append(" inMemBytes=").append(memoryBytes())
+          .append(" dirtyItems=").append(dirtyCount.get())
+          .append(" evictions=").append(evictions.get())
+          .append(" flushed=").append(flushed.get())
+          .append(" syncs=").append(syncs.get());
+        return sb.toString();
+    }
+
+    protected static long percent(long part, long whole) {
+        return whole < 1 ? 0 : (part * 100) / whole;
+    }
+
+    /**
+     * One stripe's share of the budget, the entries it's tracking and its
+     * eviction policy.
+     */
+    protected class Stripe {
+        /** entries new to memMap, not yet handed to the policy */
+        final ConcurrentLinkedQueue<Entry<V>> admitted =
+            new ConcurrentLinkedQueue<Entry<V>>();
+        /** estimated bytes of this stripe's objects in memMap */
+        final AtomicLong memBytes = new AtomicLong();
+        /** held while consulting the policy and evicting */
+        final ReentrantLock lock = new ReentrantLock();
+        final EvictionPolicy<V> policy = eviction.<V>newPolicy();
+
+        boolean isOver() {
+            return memBytes.get() > maxBytes / stripes.size();
+        }
+
+        /**
+         * Evict the clean objects the policy chooses until within this
+         * stripe's share of the budget.
+         * @param wait whether to wait for another thread already evicting
+         */
+        void evictIfOver(boolean wait) {
+            if (wait) {
+                lock.lock();
+            } else if (!lock.tryLock()) {
+                return;
+            }
+            try {
+                expungeCollected();
+                Entry<V> entry;
+                while ((entry = admitted.poll()) != null) {
+                    policy.add(entry);
+                }
+                policy.beginPass();
+                while (isOver()) {
+                    entry = policy.nextVictim();
+                    if (entry == null) {
+                        // all pinned until written back
+                        return;
+                    }
+                    released.put(entry.key, new ReleasedRef<V>(entry.key, entry.value,
+                            entry.serializedBytes, collected));
+                    memMap.remove(entry.key, entry);
+                    memBytes.addAndGet(-entry.bytes.getAndSet(-1));
+                    evictions.incrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Chooses which objects leave memory once over budget. Only ever
+     * called while holding its stripe's eviction lock, so needs no locking
+     * of its own; but an entry's uses and dirtiness change concurrently.
+     *
+     * @param <V>
+     */
+    public interface EvictionPolicy<V> {
+        /**
+         * Start keeping track of an entry newly in memory.
+         */
+        void add(Entry<V> entry);
+
+        /**
+         * Start a pass of evictions: calls of {@link #nextVictim()}, until
+         * within budget or out of victims.
+         */
+        void beginPass();
+
+        /**
+         * Stop keeping track of, and return, the entry to evict next:
+         * never a dirty one. Null if there's none, or none but those
+         * found dirty since {@link #beginPass()}.
+         */
+        Entry<V> nextVictim();
+    }
+
+    /** the eviction policies, by name, as configured */
+    public enum Eviction {
+        /** see {@link SegmentedLruEvictionPolicy} */
+        SEGMENTED_LRU,
+        /** see {@link TinyLfuEvictionPolicy} */
+        TINY_LFU;
+
+        public <V> EvictionPolicy<V> newPolicy() {
+            if (this == TINY_LFU) {
+                return new TinyLfuEvictionPolicy<V>();
+            }
+            return new SegmentedLruEvictionPolicy<V>();
+        }
+    }
+
+    /** an object held in memory */
+    public static class Entry<V> {
+        /** most uses counted between looks by the eviction policy */
+        static final int MAX_USES = 15;
+
+        final String key;
+        final V value;
+        /** serialized size when last read or written */
+        volatile int serializedBytes;
+        /** estimated memory, or -1 once evicted */
+        final AtomicInteger bytes;
+        /** uses since last taken by the eviction policy */
+        final AtomicInteger uses = new AtomicInteger();
+        final AtomicBoolean dirty = new AtomicBoolean();
+        // the eviction policy's: which of its lists the entry's in, and
+        // the links there
+        int list;
+        Entry<V> prev;
+        Entry<V> next;
+
+        Entry(String key, V value, int serializedBytes, int bytes) {
+            this.key = key;
+            this.value = value;
+            this.serializedBytes = serializedBytes;
+            this.bytes = new AtomicInteger(bytes);
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public boolean isDirty() {
+            return dirty.get();
+        }
+
+        void used() {
+            if (uses.get() < MAX_USES) {
+                uses.incrementAndGet();
+            }
+        }
+
+        /** uses since last taken, now reset */
+        public int takeUses() {
+            return uses.getAndSet(0);
+        }
+
+        /** update the estimate, unless already evicted */
+        void resize(int newSerializedBytes, int newBytes, AtomicLong total) {
+            serializedBytes = newSerializedBytes;
+            int old;
+            do {
+                old = bytes.get();
+                if (old < 0) {
+                    return;
+                }
+            } while (!bytes.compareAndSet(old, newBytes));
+            total.addAndGet(newBytes - old);
+        }
+    }
+
+    /**
+     * Doubly-linked list of entries, for eviction policies; first is least
+     * recently added.
+     */
+    public static class EntryList<V> {
+        final Entry<V> head = new Entry<V>(null, null, 0, 0);
+        int size;
+        public EntryList() {
+            head.prev = head;
+            head.next = head;
+        }
+        public int size() {
+            return size;
+        }
+        public Entry<V> first() {
+            return head.next == head ? null : head.next;
+        }
+        public Entry<V> last() {
+            return head.prev == head ? null : head.prev;
+        }
+        public void addLast(Entry<V> entry) {
+            entry.prev = head.prev;
+            entry.next = head;
+            head.prev.next = entry;
+            head.prev = entry;
+            size++;
+        }
+        public void remove(Entry<V> entry) {
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+            entry.prev = null;
+            entry.next = null;
+            size--;
+        }
+        public void moveToLast(Entry<V> entry) {
+            remove(entry);
+            addLast(entry);
+        }
+    }
+
+    /** weak reference to an evicted object, remembering its key and size */
+    protected static class ReleasedRef<V> extends WeakReference<V> {
+        final String key;
+        final int serializedBytes;
+        ReleasedRef(String key, V value, int serializedBytes, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+            this.serializedBytes = serializedBytes;
+        }
+    }
+}
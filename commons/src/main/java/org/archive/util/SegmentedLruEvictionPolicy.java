@@ -0,0 +1,139 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import org.archive.util.ObjectIdentityBdbBoundedCache.Entry;
+import org.archive.util.ObjectIdentityBdbBoundedCache.EntryList;
+import org.archive.util.ObjectIdentityBdbBoundedCache.EvictionPolicy;
+
+/**
+ * Segmented LRU eviction for {@link ObjectIdentityBdbBoundedCache}: new
+ * objects enter a probation segment, and those used again while there
+ * are promoted to a protected one, which holds at most a share of all.
+ * Victims are the least-recently-placed clean objects on probation, else
+ * in the protected segment. Dirty objects passed over are moved to the
+ * back of their segment.
+ *
+ * @param <V>
+ */
+public class SegmentedLruEvictionPolicy<V> implements EvictionPolicy<V> {
+    protected static final int PROBATION = 1;
+    protected static final int PROTECTED = 2;
+
+    protected EntryList<V> probation = new EntryList<V>();
+    protected EntryList<V> protectedSegment = new EntryList<V>();
+
+    /** dirty entries passed over in each segment this pass */
+    protected int pinnedProbation;
+    protected int pinnedProtected;
+
+    protected int protectedPercent = 80;
+    public int getProtectedPercent() {
+        return protectedPercent;
+    }
+    /**
+     * Largest share of the objects, as a percentage, kept in the protected
+     * segment.
+     */
+    public void setProtectedPercent(int protectedPercent) {
+        this.protectedPercent = protectedPercent;
+    }
+
+    public void add(Entry<V> entry) {
+        takeUses(entry);
+        entry.list = PROBATION;
+        probation.addLast(entry);
+    }
+
+    public void beginPass() {
+        pinnedProbation = 0;
+        pinnedProtected = 0;
+    }
+
+    public Entry<V> nextVictim() {
+        Entry<V> victim = leastValued();
+        if (victim != null) {
+            remove(victim);
+        }
+        return victim;
+    }
+
+    /**
+     * The least-recently-used clean entry, after first promoting any
+     * found used since last looked at; or null.
+     */
+    protected Entry<V> leastValued() {
+        while (true) {
+            EntryList<V> segment;
+            if (probation.size() > pinnedProbation) {
+                segment = probation;
+            } else if (protectedSegment.size() > pinnedProtected) {
+                segment = protectedSegment;
+            } else {
+                return null;
+            }
+            Entry<V> entry = segment.first();
+            if (takeUses(entry) > 0) {
+                // used again since placed: (re)enter the protected segment
+                segment.remove(entry);
+                entry.list = PROTECTED;
+                protectedSegment.addLast(entry);
+                demoteIfOver();
+                continue;
+            }
+            if (entry.isDirty()) {
+                // pinned until written back
+                segment.moveToLast(entry);
+                if (segment == probation) {
+                    pinnedProbation++;
+                } else {
+                    pinnedProtected++;
+                }
+                continue;
+            }
+            return entry;
+        }
+    }
+
+    protected void demoteIfOver() {
+        long maxProtected = (long) (probation.size() + protectedSegment.size())
+                * protectedPercent / 100;
+        while (protectedSegment.size() > maxProtected) {
+            Entry<V> demoted = protectedSegment.first();
+            protectedSegment.remove(demoted);
+            demoted.list = PROBATION;
+            probation.addLast(demoted);
+        }
+    }
+
+    protected void remove(Entry<V> entry) {
+        if (entry.list == PROBATION) {
+            probation.remove(entry);
+        } else {
+            protectedSegment.remove(entry);
+        }
+    }
+
+    /**
+     * Uses of the entry since last looked at, now reset.
+     */
+    protected int takeUses(Entry<V> entry) {
+        return entry.takeUses();
+    }
+}
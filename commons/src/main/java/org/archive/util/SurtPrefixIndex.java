@@ -0,0 +1,280 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import org.archive.util.iterator.LineReadingIterator;
+import org.archive.util.iterator.RegexLineIterator;
+
+/**
+ * Set of SURT prefixes, as {@link SurtPrefixSet}, but held mostly in a
+ * compact {@link SurtPrefixTrie}: a fraction of the memory for millions of
+ * prefixes, and a prefix test that doesn't allocate.
+ *
+ * <p>Added prefixes collect in a small sorted set until there are enough
+ * to be worth merging into a new trie (or until {@link #compact()}). As
+ * with SurtPrefixSet, a prefix already covered by a shorter one isn't
+ * added, and longer prefixes a new one covers are dropped (at the next
+ * merge).
+ *
+ * <p>The trie can be saved with {@link #writeTo(File)} and memory-mapped
+ * back with {@link #load(File)}.
+ */
+public class SurtPrefixIndex extends AbstractSet<String> {
+    public static final String SURT_PREFIX_DIRECTIVE = "+";
+
+    /** fewest pending prefixes worth merging into the trie */
+    protected static final int MIN_MERGE = 10000;
+
+    protected volatile SurtPrefixTrie trie = SurtPrefixTrie.EMPTY;
+    /** added since the last merge; kept prefix-free */
+    protected final ConcurrentSkipListSet<String> pending =
+        new ConcurrentSkipListSet<String>();
+    protected final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * Whether any prefix in the set is a prefix of (or equal to) s.
+     */
+    public boolean containsPrefixOf(CharSequence s) {
+        if (trie.containsPrefixOf(s)) {
+            return true;
+        }
+        if (pendingCount.get() == 0) {
+            return false;
+        }
+        // pending is prefix-free, so any prefix of s is the greatest
+        // element not after it
+        String candidate = s.toString();
+        String floor = pending.floor(candidate);
+        return floor != null && candidate.startsWith(floor);
+    }
+
+    @Override
+    public boolean add(String prefix) {
+        if (containsPrefixOf(prefix)) {
+            return false;
+        }
+        if (pending.add(prefix)) {
+            pendingCount.incrementAndGet();
+        }
+        // drop pending prefixes the new one covers
+        for (Iterator<String> iter = pending.tailSet(prefix, false).iterator(); iter.hasNext();) {
+            if (!iter.next().startsWith(prefix)) {
+                break;
+            }
+            iter.remove();
+            pendingCount.decrementAndGet();
+        }
+        if (pendingCount.get() >= Math.max(MIN_MERGE, trie.size() / 8)) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Merge all pending prefixes into a new trie.
+     */
+    public synchronized void compact() {
+        if (pendingCount.get() == 0) {
+            return;
+        }
+        List<String> added = new ArrayList<String>(pending);
+        List<String> merged = new ArrayList<String>(trie.size() + added.size());
+        Iterator<String> a = trie.keys();
+        Iterator<String> b = added.iterator();
+        String x = a.hasNext() ? a.next() : null;
+        String y = b.hasNext() ? b.next() : null;
+        String last = null;
+        while (x != null || y != null) {
+            String next;
+            if (y == null || (x != null && x.compareTo(y) <= 0)) {
+                next = x;
+                x = a.hasNext() ? a.next() : null;
+            } else {
+                next = y;
+                y = b.hasNext() ? b.next() : null;
+            }
+            if (last != null && next.startsWith(last)) {
+                // covered by a shorter prefix
+                continue;
+            }
+            merged.add(next);
+            last = next;
+        }
+        trie = SurtPrefixTrie.build(merged);
+        for (String prefix : added) {
+            if (pending.remove(prefix)) {
+                pendingCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Replace all prefixes with the given ones.
+     */
+    protected synchronized void replaceAll(List<String> prefixes) {
+        Collections.sort(prefixes);
+        List<String> kept = new ArrayList<String>(prefixes.size());
+        String last = null;
+        for (String prefix : prefixes) {
+            if (last != null && prefix.startsWith(last)) {
+                continue;
+            }
+            kept.add(prefix);
+            last = prefix;
+        }
+        pending.clear();
+        pendingCount.set(0);
+        trie = SurtPrefixTrie.build(kept);
+    }
+
+    protected void convertAll(UnaryOperator<String> conversion) {
+        compact();
+        List<String> converted = new ArrayList<String>(size());
+        for (Iterator<String> iter = trie.keys(); iter.hasNext();) {
+            converted.add(conversion.apply(iter.next()));
+        }
+        replaceAll(converted);
+    }
+
+    /**
+     * Widen all prefixes to their domains.
+     * @see SurtPrefixSet#convertPrefixToDomain(String)
+     */
+    public void convertAllPrefixesToDomains() {
+        convertAll(SurtPrefixSet::convertPrefixToDomain);
+    }
+
+    /**
+     * Widen (or narrow) all prefixes to their hosts.
+     * @see SurtPrefixSet#convertPrefixToHost(String)
+     */
+    public void convertAllPrefixesToHosts() {
+        convertAll(SurtPrefixSet::convertPrefixToHost);
+    }
+
+    /**
+     * Consider the given line as a prefix to add: a SURT prefix if it
+     * looks like one, otherwise a URI or hostname from which to deduce one.
+     * @see SurtPrefixSet#considerAsAddDirective(String)
+     */
+    public boolean considerAsAddDirective(String line) {
+        SurtPrefixSet one = new SurtPrefixSet();
+        boolean added = one.considerAsAddDirective(line);
+        for (String prefix : one) {
+            add(prefix);
+        }
+        return added;
+    }
+
+    /**
+     * Add prefixes from the given Reader: lines beginning with '+' as add
+     * directives, and (if deduceFromSeeds) other lines as URIs from which
+     * to deduce prefixes.
+     * @see SurtPrefixSet#importFromMixed(Reader, boolean)
+     */
+    public void importFromMixed(Reader r, boolean deduceFromSeeds) {
+        Iterator<String> iter = new RegexLineIterator(
+                new LineReadingIterator(new BufferedReader(r)),
+                RegexLineIterator.COMMENT_LINE,
+                RegexLineIterator.NONWHITESPACE_ENTRY_TRAILING_COMMENT,
+                RegexLineIterator.ENTRY);
+        while (iter.hasNext()) {
+            String s = iter.next();
+            if (s.startsWith(SURT_PREFIX_DIRECTIVE)) {
+                considerAsAddDirective(s.substring(SURT_PREFIX_DIRECTIVE.length()));
+            } else if (deduceFromSeeds) {
+                add(SurtPrefixSet.prefixFromPlainForceHttp(s));
+            }
+        }
+    }
+
+    /**
+     * Write the prefixes, one per line.
+     */
+    public void exportTo(Writer w) throws IOException {
+        for (String prefix : this) {
+            w.write(prefix + "\n");
+        }
+    }
+
+    /**
+     * Save the prefixes, for loading by {@link #load(File)}.
+     */
+    public void writeTo(File file) throws IOException {
+        compact();
+        trie.writeTo(file);
+    }
+
+    /**
+     * Replace the prefixes with those saved in the given file, which is
+     * memory-mapped rather than read.
+     */
+    public synchronized void load(File file) throws IOException {
+        SurtPrefixTrie loaded = SurtPrefixTrie.map(file);
+        pending.clear();
+        pendingCount.set(0);
+        trie = loaded;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        return trie.get((String) o) >= 0 || pending.contains(o);
+    }
+
+    @Override
+    public void clear() {
+        replaceAll(new ArrayList<String>());
+    }
+
+    /**
+     * Number of prefixes; until the next merge, this may count some
+     * prefixes that a later-added shorter prefix covers.
+     */
+    @Override
+    public int size() {
+        return trie.size() + pendingCount.get();
+    }
+
+    /**
+     * Iterate over the prefixes, in ascending order. (Merges pending
+     * prefixes first.)
+     */
+    @Override
+    public Iterator<String> iterator() {
+        compact();
+        return trie.keys();
+    }
+}
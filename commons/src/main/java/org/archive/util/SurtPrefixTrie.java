@@ -0,0 +1,404 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable radix trie of (SURT prefix) strings, each with an int value,
+ * held in a single flat buffer: compact, and looked up without allocating.
+ * The buffer can be written to a file and later memory-mapped, so a large
+ * trie loads almost instantly and may be shared by several crawls.
+ *
+ * <p>Layout (big-endian): a header of magic, node count, key count and
+ * label char count; then a record per node of label start, label length,
+ * first child, child count and value (-1 if the node ends no key); then
+ * the label chars. Node 0 is the root, with an empty label. A node's
+ * children are contiguous, in order of their labels' first chars.
+ *
+ * @see SurtPrefixIndex
+ */
+public class SurtPrefixTrie {
+    protected static final int MAGIC = 0x53505431; // "SPT1"
+    protected static final int HEADER_BYTES = 16;
+    protected static final int NODE_BYTES = 20;
+
+    protected static final int LABEL_START = 0;
+    protected static final int LABEL_LENGTH = 4;
+    protected static final int FIRST_CHILD = 8;
+    protected static final int CHILD_COUNT = 12;
+    protected static final int VALUE = 16;
+
+    public static final SurtPrefixTrie EMPTY =
+        build(new ArrayList<String>(), new int[0]);
+
+    protected final ByteBuffer buf;
+    protected final int nodeCount;
+    protected final int keyCount;
+    protected final int charsOffset;
+
+    protected SurtPrefixTrie(ByteBuffer buf) {
+        this.buf = buf;
+        if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not a SURT prefix trie");
+        }
+        this.nodeCount = buf.getInt(4);
+        this.keyCount = buf.getInt(8);
+        this.charsOffset = HEADER_BYTES + nodeCount * NODE_BYTES;
+        if ((long) charsOffset + 2L * buf.getInt(12) != buf.capacity()) {
+            throw new IllegalArgumentException("truncated SURT prefix trie");
+        }
+    }
+
+    /** growable int array, for building */
+    protected static class Ints {
+        int[] a = new int[16];
+        int size = 0;
+        void add(int v) {
+            if (size == a.length) {
+                a = Arrays.copyOf(a, a.length * 2);
+            }
+            a[size++] = v;
+        }
+    }
+
+    /**
+     * Build a trie of the given keys.
+     *
+     * @param sortedKeys distinct keys, in ascending order
+     * @param values value for each key (non-negative)
+     */
+    public static SurtPrefixTrie build(List<String> sortedKeys, int[] values) {
+        int n = sortedKeys.size();
+        Ints labelStart = new Ints();
+        Ints labelLength = new Ints();
+        Ints firstChild = new Ints();
+        Ints childCount = new Ints();
+        Ints value = new Ints();
+        // keys range and depth of each node, for building its children
+        Ints lo = new Ints();
+        Ints hi = new Ints();
+        Ints depth = new Ints();
+        StringBuilder chars = new StringBuilder();
+
+        labelStart.add(0);
+        labelLength.add(0);
+        value.add(n > 0 && sortedKeys.get(0).isEmpty() ? values[0] : -1);
+        lo.add(0);
+        hi.add(n);
+        depth.add(0);
+        // nodes are built breadth-first, so each node's children are
+        // created together, after all earlier nodes' children
+        for (int node = 0; node < lo.size; node++) {
+            int d = depth.a[node];
+            int a = lo.a[node];
+            int end = hi.a[node];
+            if (a < end && sortedKeys.get(a).length() == d) {
+                // this node's own key
+                a++;
+            }
+            firstChild.add(lo.size);
+            int children = 0;
+            while (a < end) {
+                String first = sortedKeys.get(a);
+                char c = first.charAt(d);
+                int b = a + 1;
+                while (b < end && sortedKeys.get(b).charAt(d) == c) {
+                    b++;
+                }
+                String last = sortedKeys.get(b - 1);
+                int common = d + 1;
+                int max = Math.min(first.length(), last.length());
+                while (common < max && first.charAt(common) == last.charAt(common)) {
+                    common++;
+                }
+                labelStart.add(chars.length());
+                labelLength.add(common - d);
+                chars.append(first, d, common);
+                value.add(first.length() == common ? values[a] : -1);
+                lo.add(a);
+                hi.add(b);
+                depth.add(common);
+                children++;
+                a = b;
+            }
+            childCount.add(children);
+        }
+
+        long bytes = HEADER_BYTES + (long) lo.size * NODE_BYTES + 2L * chars.length();
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many keys for one trie: " + n);
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) bytes);
+        buf.putInt(MAGIC).putInt(lo.size).putInt(n).putInt(chars.length());
+        for (int i = 0; i < lo.size; i++) {
+            buf.putInt(labelStart.a[i]).putInt(labelLength.a[i])
+                .putInt(firstChild.a[i]).putInt(childCount.a[i]).putInt(value.a[i]);
+        }
+        for (int i = 0; i < chars.length(); i++) {
+            buf.putChar(chars.charAt(i));
+        }
+        buf.clear();
+        return new SurtPrefixTrie(buf);
+    }
+
+    /**
+     * Build a trie of the given keys, each valued by its position.
+     */
+    public static SurtPrefixTrie build(List<String> sortedKeys) {
+        int[] values = new int[sortedKeys.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        return build(sortedKeys, values);
+    }
+
+    /**
+     * Memory-map a trie previously saved with {@link #writeTo(File)}.
+     */
+    public static SurtPrefixTrie map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return new SurtPrefixTrie(raf.getChannel().map(
+                    FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        }
+    }
+
+    /**
+     * Save this trie to the given file, replacing it atomically.
+     */
+    public void writeTo(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.setLength(0);
+            ByteBuffer all = buf.duplicate();
+            all.clear();
+            FileChannel channel = raf.getChannel();
+            while (all.hasRemaining()) {
+                channel.write(all);
+            }
+            channel.force(false);
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("unable to rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    public int size() {
+        return keyCount;
+    }
+
+    protected int field(int node, int field) {
+        return buf.getInt(HEADER_BYTES + node * NODE_BYTES + field);
+    }
+
+    protected char labelChar(int node, int i) {
+        return buf.getChar(charsOffset + 2 * (field(node, LABEL_START) + i));
+    }
+
+    /**
+     * The child of the given node whose label appears in s at pos, or -1.
+     */
+    protected int matchChild(int node, CharSequence s, int pos) {
+        if (pos >= s.length()) {
+            return -1;
+        }
+        char c = s.charAt(pos);
+        int first = field(node, FIRST_CHILD);
+        int low = 0;
+        int high = field(node, CHILD_COUNT) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int child = first + mid;
+            char cc = labelChar(child, 0);
+            if (cc < c) {
+                low = mid + 1;
+            } else if (cc > c) {
+                high = mid - 1;
+            } else {
+                int len = field(child, LABEL_LENGTH);
+                if (pos + len > s.length()) {
+                    return -1;
+                }
+                for (int i = 1; i < len; i++) {
+                    if (labelChar(child, i) != s.charAt(pos + i)) {
+                        return -1;
+                    }
+                }
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether any key is a prefix of (or equal to) s.
+     */
+    public boolean containsPrefixOf(CharSequence s) {
+        int node = 0;
+        int pos = 0;
+        while (true) {
+            if (field(node, VALUE) >= 0) {
+                return true;
+            }
+            int child = matchChild(node, s, pos);
+            if (child < 0) {
+                return false;
+            }
+            pos += field(child, LABEL_LENGTH);
+            node = child;
+        }
+    }
+
+    /**
+     * Value of the given key, or -1 if absent.
+     */
+    public int get(CharSequence key) {
+        int node = 0;
+        int pos = 0;
+        while (pos < key.length()) {
+            node = matchChild(node, key, pos);
+            if (node < 0) {
+                return -1;
+            }
+            pos += field(node, LABEL_LENGTH);
+        }
+        return field(node, VALUE);
+    }
+
+    /**
+     * Value of the longest key that is a prefix of s, or -1 if none.
+     */
+    public int longestPrefixValue(CharSequence s) {
+        int found = -1;
+        int node = 0;
+        int pos = 0;
+        while (node >= 0) {
+            int v = field(node, VALUE);
+            if (v >= 0) {
+                found = v;
+            }
+            node = matchChild(node, s, pos);
+            if (node >= 0) {
+                pos += field(node, LABEL_LENGTH);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Values of all keys that are prefixes of s, shortest first.
+     *
+     * @param found filled with up to its length of values
+     * @return the number of keys that are prefixes of s (which may exceed
+     *         the length of found)
+     */
+    public int prefixValues(CharSequence s, int[] found) {
+        int count = 0;
+        int node = 0;
+        int pos = 0;
+        while (node >= 0) {
+            int v = field(node, VALUE);
+            if (v >= 0) {
+                if (count < found.length) {
+                    found[count] = v;
+                }
+                count++;
+            }
+            node = matchChild(node, s, pos);
+            if (node >= 0) {
+                pos += field(node, LABEL_LENGTH);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Iterate over the keys, in ascending order.
+     */
+    public Iterator<String> keys() {
+        return new Iterator<String>() {
+            // path of nodes from the root, and the next child to visit at each
+            int[] path = new int[16];
+            int[] nextChild = new int[16];
+            int[] prefixLength = new int[16];
+            int top = 0;
+            StringBuilder key = new StringBuilder();
+            String next;
+            {
+                path[0] = 0;
+                nextChild[0] = 0;
+                prefixLength[0] = 0;
+                next = field(0, VALUE) >= 0 ? "" : advance();
+            }
+
+            protected String advance() {
+                while (top >= 0) {
+                    int node = path[top];
+                    if (nextChild[top] >= field(node, CHILD_COUNT)) {
+                        top--;
+                        continue;
+                    }
+                    int child = field(node, FIRST_CHILD) + nextChild[top]++;
+                    key.setLength(prefixLength[top]);
+                    int len = field(child, LABEL_LENGTH);
+                    for (int i = 0; i < len; i++) {
+                        key.append(labelChar(child, i));
+                    }
+                    if (++top == path.length) {
+                        path = Arrays.copyOf(path, top * 2);
+                        nextChild = Arrays.copyOf(nextChild, top * 2);
+                        prefixLength = Arrays.copyOf(prefixLength, top * 2);
+                    }
+                    path[top] = child;
+                    nextChild[top] = 0;
+                    prefixLength[top] = key.length();
+                    if (field(child, VALUE) >= 0) {
+                        return key.toString();
+                    }
+                }
+                return null;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                String result = next;
+                next = advance();
+                return result;
+            }
+        };
+    }
+}
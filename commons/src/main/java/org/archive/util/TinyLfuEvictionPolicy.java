@@ -0,0 +1,209 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import org.archive.util.ObjectIdentityBdbBoundedCache.Entry;
+import org.archive.util.ObjectIdentityBdbBoundedCache.EntryList;
+
+/**
+ * W-TinyLFU eviction for {@link ObjectIdentityBdbBoundedCache}: new
+ * objects enter a small window, then a segmented-LRU main area; there
+ * the newest arrival competes, by estimated recent frequency of use, with
+ * the least-recently-used, and the less used is evicted. Frequencies are
+ * kept by a count-min sketch, so outlive the objects' time in memory.
+ *
+ * @param <V>
+ */
+public class TinyLfuEvictionPolicy<V> extends SegmentedLruEvictionPolicy<V> {
+    protected static final int WINDOW = 0;
+
+    protected EntryList<V> window = new EntryList<V>();
+    protected FrequencySketch sketch = new FrequencySketch(16);
+
+    protected int windowPercent = 1;
+    public int getWindowPercent() {
+        return windowPercent;
+    }
+    /**
+     * Share of the objects, as a percentage, held in the window before
+     * competing for a place in the main area.
+     */
+    public void setWindowPercent(int windowPercent) {
+        this.windowPercent = windowPercent;
+    }
+
+    @Override
+    public void add(Entry<V> entry) {
+        // being loaded is a use too
+        sketch.increment(hash(entry));
+        takeUses(entry);
+        entry.list = WINDOW;
+        window.addLast(entry);
+    }
+
+    @Override
+    public void beginPass() {
+        super.beginPass();
+        sketch.ensureCapacity(window.size() + probation.size() + protectedSegment.size());
+        drainWindow();
+    }
+
+    @Override
+    public Entry<V> nextVictim() {
+        drainWindow();
+        Entry<V> victim = leastValued();
+        if (victim == null) {
+            // the main area is all pinned; the window's turn
+            return firstCleanInWindow();
+        }
+        // the newest arrival from the window competes with the
+        // least-recently-used of the main area
+        Entry<V> candidate = probation.last();
+        if (candidate != null && candidate != victim && !candidate.isDirty()) {
+            takeUses(candidate);
+            if (sketch.frequency(hash(candidate)) <= sketch.frequency(hash(victim))) {
+                victim = candidate;
+            }
+        }
+        remove(victim);
+        return victim;
+    }
+
+    /**
+     * Move objects beyond the window's share onto probation.
+     */
+    protected void drainWindow() {
+        while (window.size() > windowMax()) {
+            Entry<V> entry = window.first();
+            window.remove(entry);
+            takeUses(entry);
+            addToMain(entry);
+        }
+    }
+
+    protected Entry<V> firstCleanInWindow() {
+        Entry<V> entry = window.first();
+        for (int i = window.size(); i > 0; i--) {
+            Entry<V> next = entry.next;
+            if (!entry.isDirty()) {
+                window.remove(entry);
+                return entry;
+            }
+            entry = next;
+        }
+        return null;
+    }
+
+    protected int windowMax() {
+        long all = window.size() + probation.size() + protectedSegment.size();
+        return (int) Math.max(1, all * windowPercent / 100);
+    }
+
+    protected void addToMain(Entry<V> entry) {
+        entry.list = PROBATION;
+        probation.addLast(entry);
+    }
+
+    @Override
+    protected int takeUses(Entry<V> entry) {
+        int uses = entry.takeUses();
+        if (uses > 0) {
+            int hash = hash(entry);
+            for (int i = 0; i < uses; i++) {
+                sketch.increment(hash);
+            }
+        }
+        return uses;
+    }
+
+    protected static int hash(Entry<?> entry) {
+        int h = entry.getKey().hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, estimating how often each key
+     * (by hash) was used recently; all counts are halved periodically, so
+     * old popularity fades.
+     */
+    protected static class FrequencySketch {
+        long[] table;
+        int sampleSize;
+        int additions;
+
+        FrequencySketch(int maxSize) {
+            table = new long[tableLength(maxSize)];
+            sampleSize = 10 * Math.max(maxSize, 16);
+        }
+
+        /** a long, of 16 counters, per key */
+        static int tableLength(int maxSize) {
+            return Integer.highestOneBit(Math.max(16, maxSize - 1) << 1);
+        }
+
+        /**
+         * Grow, starting over, if too small for this many keys.
+         */
+        void ensureCapacity(int maxSize) {
+            int length = tableLength(maxSize);
+            if (length > table.length) {
+                table = new long[length];
+                sampleSize = 10 * Math.max(maxSize, 16);
+                additions = 0;
+            }
+        }
+
+        int indexOf(int hash, int i) {
+            int h = (hash + i * 0x5bd1e995) * 0x27d4eb2d;
+            h ^= h >>> 15;
+            return h & (table.length - 1);
+        }
+
+        int shiftOf(int hash, int i) {
+            return (((hash >>> (i << 3)) & 15) << 2);
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int shift = shiftOf(hash, i);
+                if (((table[index] >>> shift) & 15) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) {
+                int count = (int) ((table[indexOf(hash, i)] >>> shiftOf(hash, i)) & 15);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Simple benchmark of reducing SURT authorities to their assignment-level
+ * domains, in ns per authority: PublicSuffixMatcher against the
+ * PublicSuffixes regex it replaces. Also counts the authorities on which
+ * the two disagree; as both read the same list, there should be none.
+ *
+ * Take care when interpreting results; the effect of GC, dynamic
+ * compilation, and any other activity on test machine may affect
+ * relative time tallies in unpredictable ways.
+ */
+public class BenchmarkPublicSuffixMatcher {
+
+    protected static final String[] SUFFIXES = {
+        "com,", "org,", "net,", "uk,co,", "uk,ac,", "jp,co,", "de,", "fr,",
+        "au,com,", "br,com,", "cn,com,", "ru,", "io,", "info,", "ck,foo,",
+    };
+
+    public static void main(String[] args) {
+        (new BenchmarkPublicSuffixMatcher()).instanceMain(args);
+    }
+
+    public void instanceMain(String[] args) {
+        int reps =
+            (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+        int count =
+            (args.length > 1) ? Integer.parseInt(args[1]) : 200000;
+
+        Random random = new Random(0);
+        List<String> surts = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder surt = new StringBuilder(SUFFIXES[random.nextInt(SUFFIXES.length)]);
+            surt.append("site").append(random.nextInt(count)).append(',');
+            for (int sub = random.nextInt(3); sub > 0; sub--) {
+                surt.append(sub == 1 ? "www" : "s" + random.nextInt(100)).append(',');
+            }
+            if (random.nextInt(10) == 0) {
+                surt.append("#8080");
+            }
+            surts.add(surt.toString());
+        }
+
+        long start = System.nanoTime();
+        PublicSuffixMatcher matcher = PublicSuffixMatcher.getDefault();
+        System.out.println("built matcher of " + matcher.size() + " labels in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+        start = System.nanoTime();
+        PublicSuffixes.getTopmostAssignedSurtPrefixRegex();
+        System.out.println("built regex in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+
+        int differ = 0;
+        for (String surt : surts) {
+            if (!matcher.reduceSurtToAssignmentLevel(surt).equals(
+                    PublicSuffixes.reduceSurtToAssignmentLevel(surt))) {
+                differ++;
+            }
+        }
+        System.out.println(count + " surts, " + differ + " reduced differently");
+
+        for (int r = 0; r < reps; r++) {
+            System.gc();
+            long ignored = 0;
+            start = System.nanoTime();
+            for (String surt : surts) {
+                ignored += PublicSuffixes.reduceSurtToAssignmentLevel(surt).length();
+            }
+            long regex = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (String surt : surts) {
+                ignored += matcher.assignmentLevelEnd(surt, 0, surt.length());
+            }
+            long trie = System.nanoTime() - start;
+            System.out.println("rep " + r + ": regex " + (regex / count)
+                    + "ns, trie " + (trie / count) + "ns per surt ("
+                    + ignored + ")");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.net;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.archive.url.URIException;
+
+/**
+ * Simple benchmark of UURIFactory.getInstance(base, relative), in ns per
+ * link, over a synthetic outlink corpus shaped like a site crawl: pages
+ * sharing a navigation block of absolute and relative links, plus links
+ * of their own. Run once with the system property
+ * <code>org.archive.net.UURIFactory.recentSize=0</code> to compare with
+ * every link being fixed up and parsed.
+ *
+ * Take care when interpreting results; the effect of GC, dynamic
+ * compilation, and any other activity on test machine may affect
+ * relative time tallies in unpredictable ways.
+ */
+public class BenchmarkUURIFactory {
+
+    public static void main(String[] args) throws URIException {
+        (new BenchmarkUURIFactory()).instanceMain(args);
+    }
+
+    public void instanceMain(String[] args) throws URIException {
+        int reps =
+            (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+        int pages =
+            (args.length > 1) ? Integer.parseInt(args[1]) : 2000;
+        int navLinks =
+            (args.length > 2) ? Integer.parseInt(args[2]) : 60;
+        int ownLinks =
+            (args.length > 3) ? Integer.parseInt(args[3]) : 40;
+
+        System.out.println("reps=" + reps + " pages=" + pages
+                + " navLinks=" + navLinks + " ownLinks=" + ownLinks
+                + " recentSize=" + UURIFactory.RECENT_SIZE);
+
+        Random random = new Random(0);
+        List<String> nav = new ArrayList<String>();
+        for (int i = 0; i < navLinks; i++) {
+            switch (i % 3) {
+            case 0:
+                nav.add("http://www.example.com/section" + i + "/");
+                break;
+            case 1:
+                nav.add("/section" + i + "/index.html");
+                break;
+            default:
+                nav.add("https://cdn" + (i % 4) + ".example.net/static/" + i + ".css");
+            }
+        }
+        List<UURI> bases = new ArrayList<UURI>(pages);
+        List<String[]> links = new ArrayList<String[]>(pages);
+        for (int p = 0; p < pages; p++) {
+            bases.add(UURIFactory.getInstance("http://www.example.com/section"
+                    + (p % navLinks) + "/article" + p + ".html"));
+            String[] pageLinks = new String[navLinks + ownLinks];
+            for (int i = 0; i < navLinks; i++) {
+                pageLinks[i] = nav.get(i);
+            }
+            for (int i = navLinks; i < pageLinks.length; i++) {
+                pageLinks[i] = "article" + random.nextInt(pages * 10)
+                    + ".html?ref=" + p;
+            }
+            links.add(pageLinks);
+        }
+
+        for (int r = 0; r < reps; r++) {
+            System.gc();
+            long count = 0;
+            long start = System.nanoTime();
+            for (int p = 0; p < pages; p++) {
+                UURI base = bases.get(p);
+                for (String link : links.get(p)) {
+                    UURIFactory.getInstance(base, link);
+                    count++;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println("rep " + r + ": " + count + " links, "
+                    + (elapsed / count) + "ns per link");
+        }
+    }
+}
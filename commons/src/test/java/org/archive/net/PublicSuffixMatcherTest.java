@@ -0,0 +1,122 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+public class PublicSuffixMatcherTest {
+
+    protected static final String LIST =
+        "// comment\n"
+        + "com\n"
+        + "uk\n"
+        + "co.uk\n"
+        + "\n"
+        + "*.ck\n"
+        + "!www.ck\n"
+        + "jp\n"
+        + "*.kawasaki.jp\n"
+        + "!city.kawasaki.jp\n"
+        + "\u516c\u53f8.cn   trailing text ignored\n";
+
+    protected PublicSuffixMatcher matcher() throws IOException {
+        return PublicSuffixMatcher.fromPublishedList(new StringReader(LIST));
+    }
+
+    @Test
+    public void testRegistrableDomain() throws IOException {
+        PublicSuffixMatcher matcher = matcher();
+        assertEquals("example.com", matcher.registrableDomain("www.example.com"));
+        assertEquals("example.com", matcher.registrableDomain("example.com"));
+        // matched ignoring case, returned as given
+        assertEquals("Example.COM", matcher.registrableDomain("WWW.Example.COM."));
+        assertEquals("example.co.uk", matcher.registrableDomain("a.b.example.co.uk"));
+        assertNull(matcher.registrableDomain("co.uk."));
+        assertNull(matcher.registrableDomain("com"));
+        assertNull(matcher.registrableDomain("example.unlisted"));
+        assertNull(matcher.registrableDomain("192.168.1.1"));
+        assertNull(matcher.registrableDomain(""));
+
+        // wildcards and their exceptions
+        assertNull(matcher.registrableDomain("foo.ck"));
+        assertEquals("bar.foo.ck", matcher.registrableDomain("www.bar.foo.ck"));
+        assertEquals("www.ck", matcher.registrableDomain("a.www.ck"));
+        assertEquals("city.kawasaki.jp", matcher.registrableDomain("www.city.kawasaki.jp"));
+        assertEquals("x.ward.kawasaki.jp", matcher.registrableDomain("x.ward.kawasaki.jp"));
+        assertEquals("kawasaki.jp", matcher.registrableDomain("kawasaki.jp"));
+
+        // unicode rules also match as punycode
+        assertEquals("example.xn--55qx5d.cn",
+                matcher.registrableDomain("www.example.xn--55qx5d.cn"));
+        assertEquals("\u4f8b\u5b50.\u516c\u53f8.cn", matcher.registrableDomain("\u4f8b\u5b50.\u516c\u53f8.cn"));
+        assertEquals(4, matcher.registrableDomainStart("www.example.com"));
+    }
+
+    @Test
+    public void testReduceSurt() throws IOException {
+        PublicSuffixMatcher matcher = matcher();
+        assertEquals("com,example,", matcher.reduceSurtToAssignmentLevel("com,example,www,"));
+        assertEquals("com,example,", matcher.reduceSurtToAssignmentLevel("com,example,"));
+        assertEquals("uk,co,example,",
+                matcher.reduceSurtToAssignmentLevel("uk,co,example,www,#8080"));
+        assertEquals("ck,www,", matcher.reduceSurtToAssignmentLevel("ck,www,a,"));
+        assertEquals("ck,foo,bar,", matcher.reduceSurtToAssignmentLevel("ck,foo,bar,www,"));
+        // unchanged if there's no registrable domain
+        assertEquals("uk,co,", matcher.reduceSurtToAssignmentLevel("uk,co,"));
+        assertEquals("unlisted,example,",
+                matcher.reduceSurtToAssignmentLevel("unlisted,example,"));
+        assertEquals("192.168.1.1", matcher.reduceSurtToAssignmentLevel("192.168.1.1"));
+        assertEquals("www.example.com", matcher.reduceSurtToAssignmentLevel("www.example.com"));
+        assertEquals("default...", matcher.reduceSurtToAssignmentLevel("default..."));
+
+        String surt = "http://(com,example,www,)/path";
+        assertEquals(20, matcher.assignmentLevelEnd(surt, 8, surt.indexOf(')')));
+    }
+
+    @Test
+    public void testDefault() {
+        PublicSuffixMatcher matcher = PublicSuffixMatcher.getDefault();
+        assertEquals("example.co.uk", matcher.registrableDomain("www.example.co.uk"));
+        assertEquals("example.com", matcher.registrableDomain("www.example.com"));
+        assertEquals("org,archive,", matcher.reduceSurtToAssignmentLevel("org,archive,www,"));
+        assertNull(matcher.registrableDomain("co.uk"));
+    }
+
+    @Test
+    public void testDefaultAgreesWithPublicSuffixes() {
+        PublicSuffixMatcher matcher = PublicSuffixMatcher.getDefault();
+        String[] surts = {
+            "com,example,www,", "org,archive,", "uk,co,example,www,",
+            "jp,co,example,", "au,com,example,www,", "de,example,www,#8080",
+            "uk,co,", "com,", "unlisted,example,",
+            // rules listed only in unicode don't match punycode hosts
+            "xn--p1ai,example,www,", "cn,xn--55qx5d,example,",
+        };
+        for (String surt : surts) {
+            assertEquals(PublicSuffixes.reduceSurtToAssignmentLevel(surt),
+                    matcher.reduceSurtToAssignmentLevel(surt), surt);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.archive.url.URIException;
+import org.junit.jupiter.api.Test;
+
+public class UURIFactoryTest {
+
+    @Test
+    public void testIsCleanAbsolute() {
+        assertTrue(UURIFactory.isCleanAbsolute("http://www.example.com/"));
+        assertTrue(UURIFactory.isCleanAbsolute("https://example.com/a/b.html?x=1&y=/./"));
+        assertTrue(UURIFactory.isCleanAbsolute("http://example.com/a/"));
+        assertTrue(UURIFactory.isCleanAbsolute("http://example.com/a/?q"));
+
+        assertFalse(UURIFactory.isCleanAbsolute("/relative"));
+        assertFalse(UURIFactory.isCleanAbsolute("HTTP://example.com/"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://Example.com/"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com./"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com:8080/"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://user@example.com/"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com/a//b"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com/a/../b"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com/a/."));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com/a b"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com/%20"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com/#top"));
+        assertFalse(UURIFactory.isCleanAbsolute("http://example.com/\u00e9"));
+    }
+
+    @Test
+    public void testRecentUURIs() throws URIException {
+        UURI base = UURIFactory.getInstance("http://www.example.com/dir/page.html");
+        UURI a = UURIFactory.getInstance(base, "other.html");
+        assertEquals("http://www.example.com/dir/other.html", a.toString());
+        assertSame(a, UURIFactory.getInstance(base, "other.html"));
+
+        // relative links are only shared for the same base
+        UURI base2 = UURIFactory.getInstance("http://www.example.com/elsewhere/");
+        UURI b = UURIFactory.getInstance(base2, "other.html");
+        assertEquals("http://www.example.com/elsewhere/other.html", b.toString());
+        assertNotSame(a, b);
+
+        // clean absolute links are shared across bases
+        UURI c = UURIFactory.getInstance(base, "http://www.example.org/x");
+        assertSame(c, UURIFactory.getInstance(base2, "http://www.example.org/x"));
+        assertSame(c, UURIFactory.getInstance("http://www.example.org/x"));
+
+        // others still get fixed up
+        assertEquals("http://www.example.org/x",
+                UURIFactory.getInstance(base2, "  http://WWW.example.org/x#frag ").toString());
+    }
+}
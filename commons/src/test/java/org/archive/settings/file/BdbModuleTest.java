@@ -30,10 +30,15 @@ import org.archive.util.Supplier;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
 import java.nio.file.Path;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test BdbModule.
@@ -123,4 +128,175 @@ public class BdbModuleTest {
         bdb2.stop();
         bdb2.destroy();
     }
+
+    protected void fill(ObjectIdentityBdbManualCache<IdentityCacheableWrapper> cache,
+            int from, int to) {
+        for (int i = from; i < to; i++) {
+            String key = String.valueOf(i);
+            cache.getOrUse(key, new Supplier<IdentityCacheableWrapper>(
+                    new IdentityCacheableWrapper(key, key)));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testIncrementalCheckpoint() throws Exception {
+        ConfigPath basePath = new ConfigPath("testBase", tempDir.toAbsolutePath().toString());
+        ConfigPath bdbDir = new ConfigPath("bdb", "bdb");
+        bdbDir.setBase(basePath);
+        ConfigPath checkpointsPath = new ConfigPath("checkpoints", "checkpoints");
+        checkpointsPath.setBase(basePath);
+
+        BdbModule bdb = new BdbModule();
+        bdb.setDir(bdbDir);
+        bdb.start();
+        ObjectIdentityBdbManualCache<IdentityCacheableWrapper> testData =
+                bdb.getOIBCCache("testData", false, IdentityCacheableWrapper.class);
+        fill(testData, 0, 1000);
+
+        Checkpoint first = new Checkpoint();
+        first.setIncremental(true);
+        first.generateFrom(checkpointsPath, 1);
+        bdb.prepareCheckpoint(first);
+        bdb.startCheckpoint(first);
+        bdb.doCheckpoint(first);
+        bdb.finishCheckpoint(first);
+        // after the pause, crawling continues while the checkpoint completes
+        fill(testData, 1000, 2000);
+        first.setSuccess(true);
+        bdb.completeCheckpoint(first);
+
+        File firstDir = new File(bdbDir.getFile(), first.getName());
+        List<String> firstLogfiles = FileUtils.readLines(new File(firstDir, "jdbfiles.manifest"));
+        assertTrue(firstLogfiles.size() > 0);
+        for (String logfile : firstLogfiles) {
+            File link = new File(firstDir, logfile);
+            assertTrue(link.exists(), "missing " + link);
+            assertEquals(Long.parseLong(logfile.split(",")[1]), link.length());
+        }
+        // hard links, nothing copied
+        assertEquals(0, first.getBytesCopied());
+
+        Checkpoint second = new Checkpoint();
+        second.setIncremental(true);
+        second.generateFrom(checkpointsPath, 2);
+        bdb.prepareCheckpoint(second);
+        bdb.doCheckpoint(second);
+        second.setSuccess(true);
+        bdb.completeCheckpoint(second);
+        File secondDir = new File(bdbDir.getFile(), second.getName());
+        List<String> secondLogfiles = FileUtils.readLines(new File(secondDir, "jdbfiles.manifest"));
+        // including those written since the first
+        assertNotEquals(firstLogfiles, secondLogfiles);
+        for (String logfile : secondLogfiles) {
+            assertTrue(new File(secondDir, logfile).exists());
+        }
+
+        // a failed checkpoint releases its backup, linking nothing
+        Checkpoint failed = new Checkpoint();
+        failed.setIncremental(true);
+        failed.generateFrom(checkpointsPath, 3);
+        bdb.doCheckpoint(failed);
+        bdb.completeCheckpoint(failed);
+        File failedDir = new File(bdbDir.getFile(), failed.getName());
+        assertEquals(1, failedDir.list().length, "only the manifest expected");
+
+        bdb.stop();
+        bdb.destroy();
+
+        BdbModule bdb2 = new BdbModule();
+        bdb2.setDir(bdbDir);
+        Checkpoint recoveryCheckpoint = new Checkpoint();
+        ConfigPath recoverPath = new ConfigPath("recover", first.getName());
+        recoverPath.setBase(checkpointsPath);
+        recoveryCheckpoint.setCheckpointDir(recoverPath);
+        recoveryCheckpoint.afterPropertiesSet();
+        bdb2.setRecoveryCheckpoint(recoveryCheckpoint);
+        bdb2.start();
+
+        ObjectIdentityBdbManualCache<IdentityCacheableWrapper> restoreData =
+                bdb2.getOIBCCache("testData", true, IdentityCacheableWrapper.class);
+        // not what was written after the pause
+        assertEquals(1000, restoreData.size(), "unexpected size");
+
+        bdb2.stop();
+        bdb2.destroy();
+    }
+
+    /** as on a filesystem without hard links */
+    static class NoLinkBdbModule extends BdbModule {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected void createLink(Path link, Path existing) {
+            throw new UnsupportedOperationException("no links here");
+        }
+    }
+
+    protected Checkpoint incrementalCheckpoint(BdbModule bdb, ConfigPath checkpointsPath,
+            int number) throws Exception {
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.setIncremental(true);
+        checkpoint.setForgetAllButLatest(true);
+        checkpoint.generateFrom(checkpointsPath, number);
+        bdb.prepareCheckpoint(checkpoint);
+        bdb.doCheckpoint(checkpoint);
+        checkpoint.setSuccess(true);
+        bdb.completeCheckpoint(checkpoint);
+        return checkpoint;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void testIncrementalCheckpointWithoutLinks() throws Exception {
+        ConfigPath basePath = new ConfigPath("testBase", tempDir.toAbsolutePath().toString());
+        ConfigPath bdbDir = new ConfigPath("bdb", "bdb");
+        bdbDir.setBase(basePath);
+        ConfigPath checkpointsPath = new ConfigPath("checkpoints", "checkpoints");
+        checkpointsPath.setBase(basePath);
+
+        BdbModule bdb = new NoLinkBdbModule();
+        bdb.setDir(bdbDir);
+        bdb.start();
+        ObjectIdentityBdbManualCache<IdentityCacheableWrapper> testData =
+                bdb.getOIBCCache("testData", false, IdentityCacheableWrapper.class);
+        fill(testData, 0, 1000);
+        Checkpoint first = incrementalCheckpoint(bdb, checkpointsPath, 1);
+        File firstDir = new File(bdbDir.getFile(), first.getName());
+        assertTrue(first.getBytesCopied() > 0);
+
+        fill(testData, 1000, 2000);
+        Checkpoint second = incrementalCheckpoint(bdb, checkpointsPath, 2);
+        File secondDir = new File(bdbDir.getFile(), second.getName());
+        // copied again, each checkpoint holding all its own files
+        for (String logfile : FileUtils.readLines(new File(secondDir, "jdbfiles.manifest"))) {
+            File copy = new File(secondDir, logfile);
+            assertTrue(copy.exists(), "missing " + copy);
+            assertEquals(Long.parseLong(logfile.split(",")[1]), copy.length());
+        }
+        // the first is only forgotten once the second is stamped valid
+        assertTrue(firstDir.exists());
+        bdb.checkpointStamped(second);
+        assertFalse(firstDir.exists());
+
+        bdb.stop();
+        bdb.destroy();
+
+        // recovered by copying, too
+        BdbModule bdb2 = new NoLinkBdbModule();
+        bdb2.setDir(bdbDir);
+        Checkpoint recoveryCheckpoint = new Checkpoint();
+        ConfigPath recoverPath = new ConfigPath("recover", second.getName());
+        recoverPath.setBase(checkpointsPath);
+        recoveryCheckpoint.setCheckpointDir(recoverPath);
+        recoveryCheckpoint.afterPropertiesSet();
+        bdb2.setRecoveryCheckpoint(recoveryCheckpoint);
+        bdb2.start();
+
+        ObjectIdentityBdbManualCache<IdentityCacheableWrapper> restoreData =
+                bdb2.getOIBCCache("testData", true, IdentityCacheableWrapper.class);
+        assertEquals(2000, restoreData.size(), "unexpected size");
+
+        bdb2.stop();
+        bdb2.destroy();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class ConsistentHashRingTest {
+
+    protected List<String> names(int count) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            names.add("crawler" + i);
+        }
+        return names;
+    }
+
+    @Test
+    public void testDistribution() {
+        ConsistentHashRing ring = new ConsistentHashRing(names(4));
+        int[] landings = new int[4];
+        for (int in = 0; in < 100000; in++) {
+            landings[ring.getNodes().indexOf(ring.nodeFor("key" + in))]++;
+        }
+        for (int landing : landings) {
+            assertTrue(Math.abs(landing - 25000) < 5000,
+                    "uneven distribution: " + Arrays.toString(landings));
+        }
+    }
+
+    @Test
+    public void testNodeJoining() {
+        ConsistentHashRing before = new ConsistentHashRing(names(10));
+        ConsistentHashRing after = new ConsistentHashRing(names(11));
+        int changedCount = 0;
+        for (int in = 0; in < 10000; in++) {
+            String first = before.nodeFor("key" + in);
+            String second = after.nodeFor("key" + in);
+            if (!first.equals(second)) {
+                // keys only ever move to the new node
+                assertEquals("crawler10", second);
+                changedCount++;
+            }
+        }
+        assertTrue(changedCount < 2000, "excessive changes: " + changedCount);
+    }
+
+    @Test
+    public void testNodeLeaving() {
+        List<String> names = names(10);
+        ConsistentHashRing before = new ConsistentHashRing(names);
+        names.remove("crawler3");
+        ConsistentHashRing after = new ConsistentHashRing(names);
+        for (int in = 0; in < 10000; in++) {
+            String first = before.nodeFor("key" + in);
+            String second = after.nodeFor("key" + in);
+            if (!first.equals("crawler3")) {
+                // only the departed node's keys move
+                assertEquals(first, second);
+            }
+        }
+    }
+
+    @Test
+    public void testOrderIndependent() {
+        List<String> names = names(5);
+        ConsistentHashRing ring = new ConsistentHashRing(names);
+        Collections.reverse(names);
+        ConsistentHashRing reversed = new ConsistentHashRing(names);
+        for (int in = 0; in < 1000; in++) {
+            assertEquals(ring.nodeFor("key" + in), reversed.nodeFor("key" + in));
+        }
+    }
+}
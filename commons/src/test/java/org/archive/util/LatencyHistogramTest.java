@@ -0,0 +1,85 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long v = 0; v < 1L << 20; v = v * 2 + 1) {
+            int bucket = LatencyHistogram.bucketFor(v);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= v, "lower bound of " + v);
+            assertTrue(LatencyHistogram.upperBound(bucket) > v, "upper bound of " + v);
+        }
+        for (int bucket = 1; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            assertEquals(LatencyHistogram.upperBound(bucket - 1),
+                    LatencyHistogram.lowerBound(bucket), "contiguous at " + bucket);
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1,
+                LatencyHistogram.bucketFor(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500500000L, snapshot.getSum());
+        assertWithin(500000, snapshot.getValueAtPercentile(50));
+        assertWithin(990000, snapshot.getValueAtPercentile(99));
+        assertWithin(1000000, snapshot.getMax());
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(1000);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(80000, snapshot.getCount());
+        assertEquals(80000, snapshot.getSum());
+    }
+
+    protected void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(expected - actual) <= expected / 8,
+                "expected about " + expected + ", got " + actual);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.util.bdbje.EnhancedEnvironment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * What the eviction policies share; see their own tests for how they
+ * choose.
+ */
+public class ObjectIdentityBdbBoundedCacheTest {
+    @TempDir
+    File tempDir;
+    EnhancedEnvironment env;
+    ObjectIdentityBdbBoundedCache<IdentityCacheableWrapper<AtomicInteger>> cache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        env = EnhancedEnvironment.getTestEnvironment(tempDir);
+        cache = new ObjectIdentityBdbBoundedCache<IdentityCacheableWrapper<AtomicInteger>>();
+        cache.setMaxBytes(64 * 1024);
+        // write back only when asked, so tests see what's dirty
+        cache.setFlushIntervalMs(60 * 60 * 1000);
+        cache.setFlushBatch(100000);
+        cache.initialize(env, "boundedCache", IdentityCacheableWrapper.class,
+                env.getClassCatalog());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        cache.close();
+        env.close();
+    }
+
+    protected IdentityCacheableWrapper<AtomicInteger> getOrCreate(String key) {
+        return cache.getOrUse(key,
+                new Supplier<IdentityCacheableWrapper<AtomicInteger>>(
+                        new IdentityCacheableWrapper<AtomicInteger>(key, new AtomicInteger())));
+    }
+
+    @Test
+    public void testUpdatesSurviveEviction() {
+        int keys = 2000;
+        for (int level = 0; level < 5; level++) {
+            for (int k = 0; k < keys; k++) {
+                IdentityCacheableWrapper<AtomicInteger> wrap = getOrCreate("" + k);
+                assertEquals(level, wrap.get().getAndIncrement(), "stale value for key " + k);
+                wrap.makeDirty();
+            }
+            cache.backgroundFlush();
+        }
+        assertEquals(keys, cache.size());
+        cache.sync();
+        assertTrue(cache.memoryBytes() <= cache.getMaxBytes(), "holding " + cache.memoryBytes());
+    }
+
+    @Test
+    public void testDirtyPinnedUntilFlushed() {
+        for (int k = 0; k < 200; k++) {
+            getOrCreate("" + k).makeDirty();
+        }
+        // nothing evictable yet
+        assertEquals(200, cache.memMap.size());
+        assertEquals(200, cache.dirtyCount.get());
+
+        cache.flush(50);
+        assertEquals(150, cache.dirtyCount.get());
+        assertEquals(50, cache.flushed.get());
+
+        cache.backgroundFlush();
+        assertEquals(0, cache.dirtyCount.get());
+        assertTrue(cache.memoryBytes() <= cache.getMaxBytes(), "holding " + cache.memoryBytes());
+        assertTrue(cache.memMap.size() < 200);
+    }
+
+    @Test
+    public void testStripesHeldToTheirShares() {
+        for (int k = 0; k < 2000; k++) {
+            getOrCreate("" + k);
+        }
+        long share = cache.getMaxBytes() / cache.getStripeCount();
+        for (ObjectIdentityBdbBoundedCache<IdentityCacheableWrapper<AtomicInteger>>.Stripe stripe
+                : cache.stripes) {
+            assertTrue(stripe.memBytes.get() <= share, "stripe holding " + stripe.memBytes.get());
+            assertTrue(stripe.memBytes.get() > 0, "stripe left empty");
+        }
+    }
+
+    @Test
+    public void testIdentityWhileReferenced() {
+        IdentityCacheableWrapper<AtomicInteger> held = getOrCreate("held");
+        for (int k = 0; k < 1000; k++) {
+            getOrCreate("" + k);
+        }
+        assertSame(held, cache.get("held"));
+    }
+
+    @Test
+    public void testOneLoaderPerKey() throws Exception {
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger supplied = new AtomicInteger();
+        final Supplier<IdentityCacheableWrapper<AtomicInteger>> slow =
+                new Supplier<IdentityCacheableWrapper<AtomicInteger>>() {
+            public IdentityCacheableWrapper<AtomicInteger> get() {
+                supplied.incrementAndGet();
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return new IdentityCacheableWrapper<AtomicInteger>("slow", new AtomicInteger());
+            }
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        try {
+            Future<IdentityCacheableWrapper<AtomicInteger>> first =
+                    pool.submit(() -> cache.getOrUse("slow", slow));
+            assertTrue(loading.await(10, TimeUnit.SECONDS));
+            Future<IdentityCacheableWrapper<AtomicInteger>> second =
+                    pool.submit(() -> cache.getOrUse("slow", slow));
+            // other keys load meanwhile
+            Future<IdentityCacheableWrapper<AtomicInteger>> other =
+                    pool.submit(() -> getOrCreate("other"));
+            assertEquals("other", other.get(10, TimeUnit.SECONDS).getKey());
+            assertFalse(second.isDone());
+
+            release.countDown();
+            assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+            assertEquals(1, supplied.get());
+            assertEquals(0, cache.loads.size());
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+}
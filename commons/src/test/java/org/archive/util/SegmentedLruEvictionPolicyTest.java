@@ -0,0 +1,90 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.archive.util.ObjectIdentityBdbBoundedCache.Entry;
+import org.archive.util.ObjectIdentityBdbBoundedCache.EvictionPolicy;
+import org.junit.jupiter.api.Test;
+
+public class SegmentedLruEvictionPolicyTest {
+    protected EvictionPolicy<String> policy = newPolicy();
+    protected Map<String,Entry<String>> held = new HashMap<String,Entry<String>>();
+
+    protected EvictionPolicy<String> newPolicy() {
+        return new SegmentedLruEvictionPolicy<String>();
+    }
+
+    /**
+     * Use the key, as the cache would, holding at most max entries.
+     */
+    protected Entry<String> use(String key, int max) {
+        Entry<String> entry = held.get(key);
+        if (entry != null) {
+            entry.used();
+            return entry;
+        }
+        entry = new Entry<String>(key, key, 0, 1);
+        held.put(key, entry);
+        policy.add(entry);
+        policy.beginPass();
+        while (held.size() > max) {
+            Entry<String> victim = policy.nextVictim();
+            if (victim == null) {
+                break;
+            }
+            held.remove(victim.getKey());
+        }
+        return entry;
+    }
+
+    @Test
+    public void testReusedStay() {
+        for (int k = 0; k < 10000; k++) {
+            // a few popular keys, among many used once
+            use("popular" + (k % 8), 64);
+            use("once" + k, 64);
+        }
+        for (int i = 0; i < 8; i++) {
+            assertTrue(held.containsKey("popular" + i), "popular" + i + " evicted");
+        }
+    }
+
+    @Test
+    public void testDirtyPassedOver() {
+        for (int k = 0; k < 10; k++) {
+            use("" + k, 100).dirty.set(true);
+        }
+        use("clean", 100);
+        policy.beginPass();
+        assertEquals("clean", policy.nextVictim().getKey());
+        assertNull(policy.nextVictim());
+
+        // written back since
+        held.get("3").dirty.set(false);
+        policy.beginPass();
+        assertEquals("3", policy.nextVictim().getKey());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SurtPrefixIndexTest {
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void testTrieLookups() {
+        List<String> keys = Arrays.asList(
+                "http://(is,",
+                "http://(org,archive,",
+                "http://(org,archive,www,)/about/",
+                "http://(org,example,");
+        SurtPrefixTrie trie = SurtPrefixTrie.build(keys);
+        assertEquals(4, trie.size());
+        assertTrue(trie.containsPrefixOf("http://(org,archive,www,)/"));
+        assertFalse(trie.containsPrefixOf("http://(org,archiv"));
+        assertFalse(trie.containsPrefixOf("http://(com,example,)/"));
+        assertEquals(1, trie.longestPrefixValue("http://(org,archive,www,)/"));
+        assertEquals(2, trie.longestPrefixValue("http://(org,archive,www,)/about/me"));
+        assertEquals(-1, trie.get("http://(org,"));
+        assertEquals(3, trie.get("http://(org,example,"));
+
+        int[] found = new int[4];
+        assertEquals(2, trie.prefixValues("http://(org,archive,www,)/about/", found));
+        assertEquals(1, found[0]);
+        assertEquals(2, found[1]);
+
+        List<String> iterated = new ArrayList<String>();
+        trie.keys().forEachRemaining(iterated::add);
+        assertEquals(keys, iterated);
+    }
+
+    @Test
+    public void testAddAndCompact() {
+        SurtPrefixIndex index = new SurtPrefixIndex();
+        assertTrue(index.add("http://(org,archive,www,)/"));
+        assertTrue(index.add("http://(org,example,"));
+        index.compact();
+        // covered by an existing prefix
+        assertFalse(index.add("http://(org,example,www,)/"));
+        // covers an existing prefix, which is dropped on merge
+        assertTrue(index.add("http://(org,archive,"));
+        assertTrue(index.containsPrefixOf("http://(org,archive,web,)/"));
+        index.compact();
+        assertEquals(Arrays.asList("http://(org,archive,", "http://(org,example,"),
+                new ArrayList<String>(index));
+    }
+
+    @Test
+    public void testSaveAndMap() throws IOException {
+        Random random = new Random(42);
+        SurtPrefixIndex index = new SurtPrefixIndex();
+        List<String> hosts = new ArrayList<String>();
+        for (int i = 0; i < 50000; i++) {
+            String host = "http://(com,h" + Integer.toString(random.nextInt(1000000), 36)
+                    + ",www,)/";
+            hosts.add(host);
+            index.add(host);
+        }
+        File file = new File(tempDir, "surts.trie");
+        index.writeTo(file);
+
+        SurtPrefixIndex mapped = new SurtPrefixIndex();
+        mapped.load(file);
+        assertEquals(index.size(), mapped.size());
+        for (String host : hosts) {
+            assertTrue(mapped.containsPrefixOf(host + "index.html"));
+        }
+        assertFalse(mapped.containsPrefixOf("http://(com,absent,www,)/"));
+        // still growable after loading
+        mapped.add("http://(com,absent,");
+        assertTrue(mapped.containsPrefixOf("http://(com,absent,www,)/"));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.archive.util.ObjectIdentityBdbBoundedCache.EvictionPolicy;
+import org.junit.jupiter.api.Test;
+
+public class TinyLfuEvictionPolicyTest extends SegmentedLruEvictionPolicyTest {
+    @Override
+    protected EvictionPolicy<String> newPolicy() {
+        return new TinyLfuEvictionPolicy<String>();
+    }
+
+    @Test
+    public void testNewcomersMustEarnPlace() {
+        for (int k = 0; k < 64; k++) {
+            use("old" + k, 64);
+        }
+        for (int k = 0; k < 64; k++) {
+            use("old" + k, 64);
+        }
+        // each newcomer, once out of the window, competes with the least
+        // recently used old key, and as less used, loses
+        for (int k = 0; k < 100; k++) {
+            use("once" + k, 64);
+        }
+        int newcomers = 0;
+        for (String key : held.keySet()) {
+            if (key.startsWith("once")) {
+                newcomers++;
+            }
+        }
+        assertTrue(newcomers <= 4, newcomers + " newcomers held");
+        assertEquals(64, held.size());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class VarLongUtilsTest {
+
+    protected static byte[] encode(long value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        VarLongUtils.writeVarLong(out, value);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        long[] values = {0, 1, -1, 63, -64, 64, 1000, -1000,
+                Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            byte[] bytes = encode(value);
+            assertEquals(value, VarLongUtils.readVarLong(
+                    new ByteArrayInputStream(bytes)));
+        }
+    }
+
+    @Test
+    public void testLengths() throws IOException {
+        // zigzag: small values of either sign take one byte
+        assertEquals(1, encode(0).length);
+        assertEquals(1, encode(-64).length);
+        assertEquals(1, encode(63).length);
+        assertEquals(2, encode(64).length);
+        assertEquals(10, encode(Long.MIN_VALUE).length);
+    }
+
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] bytes = encode(1000);
+        assertThrows(EOFException.class, () -> VarLongUtils.readVarLong(
+                new ByteArrayInputStream(bytes, 0, bytes.length - 1)));
+    }
+
+    @Test
+    public void testMalformed() {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0x80);
+        assertThrows(IOException.class, () -> VarLongUtils.readVarLong(
+                new ByteArrayInputStream(bytes)));
+    }
+}
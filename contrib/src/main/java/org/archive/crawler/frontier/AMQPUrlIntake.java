@@ -0,0 +1,428 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.frontier;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.crawler.postprocessor.CandidatesProcessor;
+import org.archive.modules.CrawlURI;
+import org.archive.util.ArchiveUtils;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * Parallel intake for {@link AMQPUrlReceiver}. Messages handed over by the
+ * AMQP consumer are appended to a local journal by a single journal thread,
+ * which syncs the journal to disk and only then acknowledges the messages,
+ * a group at a time. A pool of worker threads then decodes the journaled
+ * messages, runs them through the candidate chain, and schedules those
+ * that pass to the frontier in batches.
+ *
+ * <p>The journal is a series of segment files, each a sequence of
+ * length-prefixed message bodies. A segment is deleted once it has been
+ * rotated out and all its messages have been handed to the frontier.
+ * Segments left by an interrupted run are replayed on start, so a message
+ * that has been acknowledged is never lost, though it may be processed
+ * twice.
+ */
+public class AMQPUrlIntake {
+    private static final Logger logger =
+            Logger.getLogger(AMQPUrlIntake.class.getName());
+
+    public static final String SEGMENT_PREFIX = "amqp-intake-";
+    public static final String SEGMENT_SUFFIX = ".journal";
+
+    /** most messages journaled (and synced) together */
+    protected static final int MAX_GROUP = 1000;
+
+    protected static class Delivery {
+        final Channel channel;
+        final long deliveryTag;
+        final byte[] body;
+        Delivery(Channel channel, long deliveryTag, byte[] body) {
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+            this.body = body;
+        }
+    }
+
+    protected static class Work {
+        final byte[] body;
+        final Segment segment;
+        Work(byte[] body, Segment segment) {
+            this.body = body;
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * One journal file, with tallies of its messages written and fully
+     * processed.
+     */
+    protected static class Segment {
+        final File file;
+        DataOutputStream out;
+        FileOutputStream fileOut;
+        long written = 0;
+        long processed = 0;
+        boolean closed = false;
+
+        Segment(File file) {
+            this.file = file;
+        }
+
+        synchronized void open() throws IOException {
+            fileOut = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        }
+
+        synchronized void append(byte[] body) throws IOException {
+            out.writeInt(body.length);
+            out.write(body);
+            written++;
+        }
+
+        synchronized void sync() throws IOException {
+            out.flush();
+            fileOut.getChannel().force(false);
+        }
+
+        synchronized long length() {
+            return out == null ? file.length() : out.size();
+        }
+
+        synchronized void processed() {
+            processed++;
+            deleteIfDone();
+        }
+
+        synchronized void close() {
+            closed = true;
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "problem closing " + file, e);
+                }
+                out = null;
+            }
+            deleteIfDone();
+        }
+
+        protected void deleteIfDone() {
+            if (closed && processed >= written && file.exists()) {
+                if (!file.delete()) {
+                    logger.warning("unable to delete " + file);
+                }
+            }
+        }
+    }
+
+    protected final AMQPUrlReceiver.UrlConsumer decoder;
+    protected final CandidatesProcessor candidates;
+    protected final File dir;
+    protected final int threads;
+    protected final int batchSize;
+    protected final long segmentBytes;
+
+    protected final BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<Delivery>();
+    protected final BlockingQueue<Work> work;
+
+    protected Thread journalThread;
+    protected List<Thread> workers = new ArrayList<Thread>();
+    protected Segment segment;
+    protected AtomicInteger segmentSerial = new AtomicInteger();
+    protected volatile boolean stopping = false;
+    protected volatile boolean journalDone = false;
+
+    /**
+     * @param decoder turns messages into candidate URIs
+     * @param candidates schedules URIs that pass the candidate chain
+     * @param dir directory for journal segments
+     * @param threads number of worker threads
+     * @param batchSize most URIs scheduled to the frontier at once
+     * @param segmentBytes size at which a journal segment is rotated
+     * @param capacity number of journaled messages that may wait for a
+     *        worker before the journal thread waits
+     */
+    public AMQPUrlIntake(AMQPUrlReceiver.UrlConsumer decoder,
+            CandidatesProcessor candidates, File dir, int threads,
+            int batchSize, long segmentBytes, int capacity) {
+        this.decoder = decoder;
+        this.candidates = candidates;
+        this.dir = dir;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.segmentBytes = segmentBytes;
+        this.work = new ArrayBlockingQueue<Work>(capacity);
+    }
+
+    public void start() {
+        dir.mkdirs();
+        journalThread = new Thread(AMQPUrlIntake.class.getSimpleName() + "-journal") {
+            @Override
+            public void run() {
+                journalLoop();
+            }
+        };
+        journalThread.start();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(AMQPUrlIntake.class.getSimpleName() + "-worker-" + i) {
+                @Override
+                public void run() {
+                    workerLoop();
+                }
+            };
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Accept a message from the AMQP consumer. Never blocks; the channel's
+     * prefetch count bounds how many messages can be waiting.
+     */
+    public void deliver(Channel channel, long deliveryTag, byte[] body) {
+        deliveries.add(new Delivery(channel, deliveryTag, body));
+    }
+
+    /**
+     * Journal and acknowledge everything delivered, then wait up to the
+     * given time for the workers to schedule everything journaled. Whatever
+     * they don't get to stays in the journal for the next start.
+     */
+    public void stop(long timeoutMillis) {
+        stopping = true;
+        try {
+            journalThread.join();
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            for (Thread worker : workers) {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+                if (worker.isAlive()) {
+                    worker.interrupt();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    protected void journalLoop() {
+        replayJournal();
+        List<Delivery> group = new ArrayList<Delivery>();
+        try {
+            while (!stopping || !deliveries.isEmpty()) {
+                Delivery first = deliveries.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                deliveries.drainTo(group, MAX_GROUP - 1);
+                journalGroup(group);
+                group.clear();
+            }
+        } catch (InterruptedException e) {
+            logger.warning("interrupted with " + deliveries.size()
+                    + " messages not journaled (the broker will redeliver them)");
+        } finally {
+            journalDone = true;
+        }
+    }
+
+    /**
+     * Append a group of messages to the journal, sync it, and acknowledge
+     * them; then queue them for the workers. If they can't be journaled,
+     * they're rejected back to the broker's queue instead.
+     */
+    protected void journalGroup(List<Delivery> group) throws InterruptedException {
+        Segment current;
+        try {
+            current = currentSegment();
+            for (Delivery delivery : group) {
+                current.append(delivery.body);
+            }
+            current.sync();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "unable to journal " + group.size()
+                    + " messages; returning them to the broker", e);
+            acknowledge(group, false);
+            return;
+        }
+        acknowledge(group, true);
+        for (Delivery delivery : group) {
+            work.put(new Work(delivery.body, current));
+        }
+    }
+
+    /**
+     * Ack (or nack with requeue) each channel's deliveries in the group
+     * with one call, using the highest tag and 'multiple'. This thread is
+     * the only one acknowledging, and deliveries arrive in tag order, so
+     * all lower tags are in this or an earlier group.
+     */
+    protected void acknowledge(List<Delivery> group, boolean ack) {
+        int start = 0;
+        for (int i = 1; i <= group.size(); i++) {
+            if (i == group.size() || group.get(i).channel != group.get(start).channel) {
+                Delivery last = group.get(i - 1);
+                try {
+                    if (ack) {
+                        last.channel.basicAck(last.deliveryTag, true);
+                    } else {
+                        last.channel.basicNack(last.deliveryTag, true, true);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // channel gone: the broker redelivers unacked messages
+                    logger.log(Level.WARNING, "problem acknowledging "
+                            + (i - start) + " messages", e);
+                }
+                start = i;
+            }
+        }
+    }
+
+    protected Segment currentSegment() throws IOException {
+        if (segment != null && segment.length() >= segmentBytes) {
+            segment.close();
+            segment = null;
+        }
+        if (segment == null) {
+            File file = new File(dir, SEGMENT_PREFIX
+                    + ArchiveUtils.get17DigitDate() + "-"
+                    + segmentSerial.incrementAndGet() + SEGMENT_SUFFIX);
+            segment = newSegment(file);
+            segment.open();
+        }
+        return segment;
+    }
+
+    protected Segment newSegment(File file) {
+        return new Segment(file);
+    }
+
+    /**
+     * Queue the messages of any segments left from an earlier run.
+     */
+    protected void replayJournal() {
+        File[] files = dir.listFiles((d, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null || files.length == 0) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            Segment old = new Segment(file);
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    byte[] body;
+                    try {
+                        body = new byte[in.readInt()];
+                        in.readFully(body);
+                    } catch (EOFException e) {
+                        // end, or partial write never acknowledged
+                        break;
+                    }
+                    synchronized (old) {
+                        old.written++;
+                    }
+                    work.put(new Work(body, old));
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "problem replaying " + file, e);
+            } catch (InterruptedException e) {
+                return;
+            }
+            logger.info("replayed " + old.written + " messages from " + file);
+            old.close();
+        }
+    }
+
+    protected void workerLoop() {
+        List<CrawlURI> batch = new ArrayList<CrawlURI>(batchSize);
+        List<Segment> pending = new ArrayList<Segment>(batchSize);
+        try {
+            while (true) {
+                Work next = pending.isEmpty()
+                        ? work.poll(100, TimeUnit.MILLISECONDS) : work.poll();
+                if (next == null) {
+                    if (!pending.isEmpty()) {
+                        schedule(batch, pending);
+                    } else if (journalDone && work.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    decoder.processMessage(next.body, batch);
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "problem decoding message; skipped", e);
+                }
+                pending.add(next.segment);
+                if (batch.size() >= batchSize || pending.size() >= batchSize) {
+                    schedule(batch, pending);
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warning(Thread.currentThread().getName()
+                    + " interrupted; unscheduled messages remain journaled");
+        }
+    }
+
+    /**
+     * Schedule the batch and mark its messages processed. A batch that
+     * can't be scheduled is logged and dropped, rather than ending the
+     * worker with the journal left unprocessed behind it.
+     */
+    protected void schedule(List<CrawlURI> batch, List<Segment> pending) {
+        try {
+            candidates.scheduleBatch(batch, null);
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "problem scheduling batch of " 
+                    + batch.size() + " urls; dropped", e);
+        }
+        batch.clear();
+        for (Segment s : pending) {
+            s.processed();
+        }
+        pending.clear();
+    }
+}
@@ -20,10 +20,11 @@
 package org.archive.crawler.frontier;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
@@ -42,6 +43,7 @@ import org.archive.modules.extractor.Hop;
 import org.archive.modules.extractor.LinkContext;
 import org.archive.net.UURI;
 import org.archive.net.UURIFactory;
+import org.archive.spring.ConfigPath;
 import org.archive.spring.KeyedProperties;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -63,6 +65,15 @@ import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.ShutdownSignalException;
 
 /**
+ * Receives urls to crawl as JSON messages from an AMQP queue.
+ *
+ * <p>By default each message is decoded, run through the candidate chain
+ * and scheduled on the AMQP consumer's thread, then acknowledged. If
+ * {@link #setIntakeThreads(int)} is set, messages are instead journaled
+ * locally and acknowledged as soon as the journal is synced, and a pool
+ * of threads decodes, scopes and schedules them in batches; see
+ * {@link AMQPUrlIntake}.
+ *
  * @author nlevitt
  */
 public class AMQPUrlReceiver
@@ -155,9 +166,68 @@ public class AMQPUrlReceiver
     /**
      * The maximum prefetch count to use, meaning the maximum number of messages
      * to be consumed without being acknowledged. Using 'null' would specify
-     * there should be no upper limit (the default).
+     * there should be no upper limit.
      */
     private Integer prefetchCount = 1000;
+    public Integer getPrefetchCount() {
+        return prefetchCount;
+    }
+    public void setPrefetchCount(Integer prefetchCount) {
+        this.prefetchCount = prefetchCount;
+    }
+
+    protected int intakeThreads = 0;
+    public int getIntakeThreads() {
+        return intakeThreads;
+    }
+    /**
+     * If greater than zero, the number of threads decoding, scoping and
+     * scheduling received urls, which are journaled and acknowledged first.
+     * Otherwise urls are handled one at a time on the consumer thread.
+     */
+    public void setIntakeThreads(int intakeThreads) {
+        this.intakeThreads = intakeThreads;
+    }
+
+    protected int scheduleBatchSize = 100;
+    public int getScheduleBatchSize() {
+        return scheduleBatchSize;
+    }
+    /**
+     * With intake threads, the most urls each thread schedules to the
+     * frontier at once.
+     */
+    public void setScheduleBatchSize(int scheduleBatchSize) {
+        this.scheduleBatchSize = scheduleBatchSize;
+    }
+
+    protected ConfigPath intakeJournalDir =
+        new ConfigPath("AMQP intake journal directory", "amqp-intake");
+    public ConfigPath getIntakeJournalDir() {
+        return intakeJournalDir;
+    }
+    /**
+     * With intake threads, where received urls are journaled until
+     * scheduled. Not specific to a launch, so that urls received but not
+     * scheduled before a crash are scheduled on the next start.
+     */
+    public void setIntakeJournalDir(ConfigPath intakeJournalDir) {
+        this.intakeJournalDir = intakeJournalDir;
+    }
+
+    protected long intakeJournalSegmentBytes = 64 * 1024 * 1024;
+    public long getIntakeJournalSegmentBytes() {
+        return intakeJournalSegmentBytes;
+    }
+    /**
+     * Size at which an intake journal file is closed and a new one started.
+     * Closed files are deleted once all their urls are scheduled.
+     */
+    public void setIntakeJournalSegmentBytes(long intakeJournalSegmentBytes) {
+        this.intakeJournalSegmentBytes = intakeJournalSegmentBytes;
+    }
+
+    transient protected AMQPUrlIntake intake;
 
     private transient Lock lock = new ReentrantLock(true);
 
@@ -231,6 +301,17 @@ public class AMQPUrlReceiver
         try {
             // spawn off a thread to start up the amqp consumer, and try to restart it if it dies 
             if (!isRunning) {
+                if (getIntakeThreads() > 0) {
+                    int capacity = prefetchCount != null ? prefetchCount : 1000;
+                    // the decoder isn't attached to a channel; it only
+                    // turns journaled messages into candidates
+                    intake = new AMQPUrlIntake(new UrlConsumer(null),
+                            getCandidates(),
+                            getIntakeJournalDir().getFile(), getIntakeThreads(),
+                            getScheduleBatchSize(),
+                            getIntakeJournalSegmentBytes(), capacity);
+                    intake.start();
+                }
                 starterRestarter = new StarterRestarter(AMQPUrlReceiver.class.getSimpleName() + "-starter-restarter");
                 try {
                     // try to synchronously start the consumer right now, so
@@ -261,6 +342,12 @@ public class AMQPUrlReceiver
             }
             starterRestarter = null;
 
+            if (intake != null) {
+                // acknowledges what's been delivered, so before closing
+                intake.stop(60 * 1000);
+                intake = null;
+            }
+
             if (connection != null && connection.isOpen()) {
                 try {
                     connection.close();
@@ -338,40 +425,53 @@ public class AMQPUrlReceiver
         @Override
         public void handleDelivery(String consumerTag, Envelope envelope,
                 BasicProperties properties, byte[] body) throws IOException {
-            String decodedBody;
-            try {
-                decodedBody = new String(body, "UTF-8");
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException(e); // can't happen
+            AMQPUrlIntake intake = AMQPUrlReceiver.this.intake;
+            if (intake != null) {
+                // journaled and acknowledged by the intake
+                intake.deliver(getChannel(), envelope.getDeliveryTag(), body);
+                return;
             }
-            JSONObject jo = new JSONObject(decodedBody);
 
-            if ("GET".equals(jo.getString("method"))) {
-                try {
+            processMessage(body, null);
+
+            logger.finest("Now ACKing delivery " + envelope.getDeliveryTag());
+            this.getChannel().basicAck(envelope.getDeliveryTag(), false);
+        }
+
+        /**
+         * Decode a received message and run the url through the candidate chain.
+         *
+         * @param body the message
+         * @param batch if non-null, collects urls that pass the candidate chain,
+         *        to be scheduled later; otherwise they are scheduled right away
+         */
+        protected void processMessage(byte[] body, List<CrawlURI> batch) {
+            String decodedBody = new String(body, StandardCharsets.UTF_8);
+            try {
+                JSONObject jo = new JSONObject(decodedBody);
+
+                if ("GET".equals(jo.getString("method"))) {
                     CrawlURI curi = makeCrawlUri(jo);
                     KeyedProperties.clearAllOverrideContexts();
-                    candidates.runCandidateChain(curi, null);
+                    candidates.runCandidateChain(curi, null, batch);
                     appCtx.publishEvent(new AMQPUrlReceivedEvent(AMQPUrlReceiver.this, curi));
-                } catch (URIException e) {
-                    logger.log(Level.WARNING,
-                            "problem creating CrawlURI from json received via AMQP "
-                                    + decodedBody, e);
-                } catch (JSONException e) {
-                    logger.log(Level.SEVERE,
-                            "problem creating CrawlURI from json received via AMQP "
-                                    + decodedBody, e);
-                } catch (Exception e) {
-                    logger.log(Level.SEVERE,
-                            "Unanticipated problem creating CrawlURI from json received via AMQP "
-                                    + decodedBody, e);
+                } else {
+                    logger.info("ignoring url with method other than GET - "
+                            + decodedBody);
                 }
-            } else {
-                logger.info("ignoring url with method other than GET - "
-                        + decodedBody);
+            } catch (URIException e) {
+                logger.log(Level.WARNING,
+                        "problem creating CrawlURI from json received via AMQP "
+                                + decodedBody, e);
+            } catch (JSONException e) {
+                logger.log(Level.SEVERE,
+                        "problem creating CrawlURI from json received via AMQP "
+                                + decodedBody, e);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE,
+                        "Unanticipated problem creating CrawlURI from json received via AMQP "
+                                + decodedBody, e);
             }
-
-            logger.finest("Now ACKing: " + decodedBody);
-            this.getChannel().basicAck(envelope.getDeliveryTag(), false);
         }
 
         @Override
@@ -0,0 +1,167 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.postprocessor;
+
+import static org.archive.util.VarLongUtils.readVarLong;
+import static org.archive.util.VarLongUtils.writeVarLong;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Compact binary encoding of a batch of crawl log records, as built by
+ * {@link CrawlLogJsonBuilder}, for {@link KafkaCrawlLogFeed}'s batch mode.
+ *
+ * <p>A batch is self-describing: it carries its own schema, the list of
+ * field names used by its records, so each record refers to its fields by
+ * index instead of repeating their names. Layout (all counts and integers
+ * zigzag varints):
+ * <pre>
+ * version(byte) fieldCount (fieldName)* recordCount record*
+ * record: valueCount (fieldIndex value)*
+ * value:  type(byte) [long | length utf8-bytes]
+ * </pre>
+ * where type is one of {@link #NULL}, {@link #LONG}, {@link #STRING}, or
+ * {@link #JSON} (a nested object or other value, as JSON text).
+ */
+public class CrawlLogBatchCodec {
+    public static final byte VERSION = 1;
+
+    public static final byte NULL = 0;
+    public static final byte LONG = 1;
+    public static final byte STRING = 2;
+    public static final byte JSON = 3;
+
+    public static byte[] encode(List<JSONObject> records) {
+        Map<String,Integer> fieldIndexes = new HashMap<String,Integer>();
+        List<String> fields = new ArrayList<String>();
+        for (JSONObject record : records) {
+            for (String key : record.keySet()) {
+                if (!fieldIndexes.containsKey(key)) {
+                    fieldIndexes.put(key, fields.size());
+                    fields.add(key);
+                }
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 * records.size());
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            writeVarLong(out, fields.size());
+            for (String field : fields) {
+                writeString(out, field);
+            }
+            writeVarLong(out, records.size());
+            for (JSONObject record : records) {
+                writeVarLong(out, record.length());
+                for (Iterator<String> keys = record.keys(); keys.hasNext();) {
+                    String key = keys.next();
+                    writeVarLong(out, fieldIndexes.get(key));
+                    writeValue(out, record.get(key));
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // not possible writing to memory
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<JSONObject> decode(byte[] message) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported crawl log batch version " + version);
+        }
+        String[] fields = new String[(int) readVarLong(in)];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = readString(in);
+        }
+        int count = (int) readVarLong(in);
+        List<JSONObject> records = new ArrayList<JSONObject>(count);
+        for (int r = 0; r < count; r++) {
+            JSONObject record = new JSONObject();
+            int valueCount = (int) readVarLong(in);
+            for (int v = 0; v < valueCount; v++) {
+                String key = fields[(int) readVarLong(in)];
+                record.put(key, readValue(in));
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    protected static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            out.writeByte(NULL);
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            out.writeByte(LONG);
+            writeVarLong(out, ((Number) value).longValue());
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else {
+            out.writeByte(JSON);
+            writeString(out, value instanceof JSONObject ? value.toString()
+                    : JSONObject.valueToString(value));
+        }
+    }
+
+    protected static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return JSONObject.NULL;
+        case LONG:
+            return readVarLong(in);
+        case STRING:
+            return readString(in);
+        case JSON:
+            return new JSONObject("{\"v\":" + readString(in) + "}").get("v");
+        default:
+            throw new IOException("unknown value type " + type);
+        }
+    }
+
+    protected static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, utf8.length);
+        out.write(utf8);
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[(int) readVarLong(in)];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
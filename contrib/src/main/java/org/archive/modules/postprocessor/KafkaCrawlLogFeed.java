@@ -18,20 +18,42 @@
  */
 package org.archive.modules.postprocessor;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.commons.collections.Closure;
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
@@ -43,6 +65,7 @@ import org.archive.crawler.io.UriProcessingFormatter;
 import org.archive.modules.CrawlURI;
 import org.archive.modules.Processor;
 import org.archive.modules.net.ServerCache;
+import org.archive.spring.ConfigPath;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.Lifecycle;
@@ -51,6 +74,14 @@ import org.springframework.context.Lifecycle;
  * For Kafka 0.8.x. Sends messages in asynchronous mode (producer.type=async)
  * and does not wait for acknowledgment from kafka (request.required.acks=0).
  * Sends messages with no key. These things could be configurable if needed.
+ *
+ * <p>If {@link #setBatchSize(int)} is set, instead of sending one JSON
+ * message per URI from the ToeThread, records are put on a bounded queue
+ * and a separate sender thread sends them in batches, encoded with
+ * {@link CrawlLogBatchCodec}. What happens when the queue is full is set
+ * by {@link #setOverflowPolicy(OverflowPolicy)}. Records spilled to the
+ * journal, and batches the broker fails to accept, are sent again once
+ * the broker is accepting batches again, including after a restart.
  * 
  * @see UriProcessingFormatter
  * @author nlevitt
@@ -118,6 +149,100 @@ public class KafkaCrawlLogFeed extends Processor implements Lifecycle {
         return topic;
     }
 
+    protected String compressionType = "none";
+    public String getCompressionType() {
+        return compressionType;
+    }
+    /**
+     * Compression of messages sent (kafka property "compression.type":
+     * none, gzip, snappy, lz4 or zstd).
+     */
+    public void setCompressionType(String compressionType) {
+        this.compressionType = compressionType;
+    }
+
+    protected int batchSize = 0;
+    public int getBatchSize() {
+        return batchSize;
+    }
+    /**
+     * If greater than zero, queue records and send them up to this many at
+     * a time, in the compact binary format of {@link CrawlLogBatchCodec},
+     * from a separate thread. Otherwise send each as a JSON message as it
+     * is processed.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    protected long batchLingerMs = 1000;
+    public long getBatchLingerMs() {
+        return batchLingerMs;
+    }
+    /**
+     * Longest time to wait for a batch to fill before sending it anyway.
+     */
+    public void setBatchLingerMs(long batchLingerMs) {
+        this.batchLingerMs = batchLingerMs;
+    }
+
+    protected int queueCapacity = 10000;
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+    /**
+     * Number of records that can wait to be batched and sent, in batch mode.
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public enum OverflowPolicy {
+        /** wait for room on the queue, slowing the crawl to kafka's pace */
+        BLOCK,
+        /** append records that don't fit to the journal, to send later */
+        SPILL,
+        /** discard records that don't fit, counting them */
+        DROP
+    }
+
+    protected OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+    /**
+     * What to do with a record when the batch-mode queue is full. Unless
+     * DROP, batches the broker fails to accept are also journaled.
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    protected ConfigPath journalPath =
+        new ConfigPath("kafka feed journal", "kafka-crawl-log-journal");
+    public ConfigPath getJournalPath() {
+        return journalPath;
+    }
+    /**
+     * File of batches waiting to be sent again. Not specific to a launch, so
+     * that batches left at the end of one are sent by the next.
+     */
+    public void setJournalPath(ConfigPath journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    protected AtomicLong droppedCount = new AtomicLong();
+    /** Records discarded, by the DROP policy or after a failure to send. */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    protected AtomicLong journaledCount = new AtomicLong();
+    /** Records written to the journal. */
+    public long getJournaledCount() {
+        return journaledCount.get();
+    }
+
     protected byte[] buildMessage(CrawlURI curi) {
         JSONObject jo = CrawlLogJsonBuilder.buildJson(curi, getExtraFields(), getServerCache());
         try {
@@ -164,6 +289,15 @@ public class KafkaCrawlLogFeed extends Processor implements Lifecycle {
             }
         }
 
+        if (sender != null) {
+            sender.finish();
+            sender = null;
+        }
+        if (getBatchSize() > 0) {
+            logger.info("dropped " + droppedCount + " records, journaled "
+                    + journaledCount + " records");
+        }
+
         String rateStr = String.format("%1.1f", 0.01 * stats.errors / stats.total);
         logger.info("final error count: " + stats.errors + "/" + stats.total + " (" + rateStr + "%)");
 
@@ -181,8 +315,8 @@ public class KafkaCrawlLogFeed extends Processor implements Lifecycle {
 
     private transient ThreadGroup kafkaProducerThreads;
 
-    transient protected KafkaProducer<String, byte[]> kafkaProducer;
-    protected KafkaProducer<String, byte[]> kafkaProducer() {
+    transient protected Producer<String, byte[]> kafkaProducer;
+    protected Producer<String, byte[]> kafkaProducer() {
         if (kafkaProducer == null) {
             synchronized (this) {
                 if (kafkaProducer == null) {
@@ -190,6 +324,7 @@ public class KafkaCrawlLogFeed extends Processor implements Lifecycle {
                     props.put("bootstrap.servers", getBrokerList());
                     props.put("acks", "1");
                     props.put("producer.type", "async");
+                    props.put("compression.type", getCompressionType());
                     props.put("key.serializer", StringSerializer.class.getName());
                     props.put("value.serializer", ByteArraySerializer.class.getName());
 
@@ -248,8 +383,315 @@ public class KafkaCrawlLogFeed extends Processor implements Lifecycle {
 
     @Override
     protected void innerProcess(CrawlURI curi) throws InterruptedException {
+        if (getBatchSize() > 0) {
+            enqueue(CrawlLogJsonBuilder.buildJson(curi, getExtraFields(), getServerCache()));
+            return;
+        }
         byte[] message = buildMessage(curi);
         ProducerRecord<String, byte[]> producerRecord = new ProducerRecord<String,byte[]>(getTopic(), message);
         kafkaProducer().send(producerRecord, stats);
     }
+
+    private transient volatile BatchSender sender;
+    protected BatchSender sender() {
+        if (sender == null) {
+            synchronized (this) {
+                if (sender == null) {
+                    // creates kafkaProducerThreads for the sender to join
+                    kafkaProducer();
+                    BatchSender newSender = new BatchSender();
+                    newSender.start();
+                    sender = newSender;
+                }
+            }
+        }
+        return sender;
+    }
+
+    /**
+     * Queue a record for the batch sender, applying the overflow policy if
+     * the queue is full.
+     */
+    protected void enqueue(JSONObject record) throws InterruptedException {
+        BatchSender s = sender();
+        BlockingQueue<JSONObject> queue = s.queue;
+        switch (getOverflowPolicy()) {
+        case BLOCK:
+            // a sender that has died can't make room, so journal instead
+            // of parking the calling thread forever
+            while (!queue.offer(record, 1, TimeUnit.SECONDS)) {
+                if (!s.isAlive()) {
+                    unsent(CrawlLogBatchCodec.encode(Collections.singletonList(record)), 1);
+                    break;
+                }
+            }
+            break;
+        case SPILL:
+            if (!queue.offer(record)) {
+                journal(CrawlLogBatchCodec.encode(Collections.singletonList(record)), 1);
+            }
+            break;
+        case DROP:
+            if (!queue.offer(record)) {
+                droppedCount.incrementAndGet();
+            }
+            break;
+        }
+    }
+
+    /** set by each send's completion, so journal replay waits for the broker */
+    protected transient volatile boolean brokerFailing = false;
+
+    protected void sendBatch(final byte[] message, final int count) {
+        ProducerRecord<String, byte[]> producerRecord = new ProducerRecord<String,byte[]>(getTopic(), message);
+        Callback callback = new Callback() {
+            public void onCompletion(RecordMetadata metadata, Exception exception) {
+                stats.onCompletion(metadata, exception);
+                brokerFailing = exception != null;
+                if (exception != null) {
+                    unsent(message, count);
+                }
+            }
+        };
+        try {
+            kafkaProducer().send(producerRecord, callback);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "failed to send batch of " + count + " records", e);
+            brokerFailing = true;
+            unsent(message, count);
+        }
+    }
+
+    protected void unsent(byte[] message, int count) {
+        if (getOverflowPolicy() == OverflowPolicy.DROP) {
+            droppedCount.addAndGet(count);
+        } else {
+            journal(message, count);
+        }
+    }
+
+    protected final Object journalLock = new Object();
+    private transient DataOutputStream journalOut;
+
+    /**
+     * Append a batch to the journal, as its record count, length and bytes.
+     */
+    protected void journal(byte[] message, int count) {
+        synchronized (journalLock) {
+            try {
+                if (journalOut == null) {
+                    File file = getJournalPath().getFile();
+                    file.getAbsoluteFile().getParentFile().mkdirs();
+                    journalOut = new DataOutputStream(new BufferedOutputStream(
+                            new FileOutputStream(file, true)));
+                }
+                journalOut.writeInt(count);
+                journalOut.writeInt(message.length);
+                journalOut.write(message);
+                journalOut.flush();
+                journaledCount.addAndGet(count);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "unable to journal " + count + " records", e);
+                droppedCount.addAndGet(count);
+            }
+        }
+    }
+
+    protected void closeJournal() {
+        synchronized (journalLock) {
+            if (journalOut != null) {
+                try {
+                    journalOut.close();
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "problem closing journal", e);
+                }
+                journalOut = null;
+            }
+        }
+    }
+
+    /**
+     * If the broker is accepting batches, send everything in the journal.
+     * The journal is first moved aside, so batches that fail again are
+     * journaled anew.
+     */
+    protected void replayJournal() {
+        if (brokerFailing) {
+            return;
+        }
+        File journal = getJournalPath().getFile();
+        File replay = new File(journal.getPath() + ".replay");
+        synchronized (journalLock) {
+            if (!replay.exists()) {
+                if (!journal.exists() || journal.length() == 0) {
+                    return;
+                }
+                closeJournal();
+                if (!journal.renameTo(replay)) {
+                    logger.warning("unable to move " + journal + " aside for replay");
+                    return;
+                }
+            }
+        }
+
+        long records = 0;
+        // bytes of the replay file already sent or journaled anew
+        long consumed = 0;
+        boolean complete = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(replay)))) {
+            while (true) {
+                int count;
+                byte[] message;
+                try {
+                    count = in.readInt();
+                    message = new byte[in.readInt()];
+                    in.readFully(message);
+                } catch (EOFException e) {
+                    // clean end, or a final record cut short by a crash
+                    complete = true;
+                    break;
+                }
+                if (brokerFailing) {
+                    // stopped accepting partway: keep the rest for later
+                    journal(message, count);
+                } else {
+                    sendBatch(message, count);
+                    records += count;
+                }
+                consumed += 8 + message.length;
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "problem reading " + replay
+                    + "; keeping the unreplayed remainder", e);
+        }
+        // completes all sends, journaling again any that failed
+        kafkaProducer().flush();
+        if (complete) {
+            if (!replay.delete()) {
+                logger.warning("unable to delete " + replay);
+            }
+        } else {
+            keepTail(replay, consumed);
+        }
+        logger.info("replayed " + records + " journaled records");
+    }
+
+    /**
+     * Cut the first {@code offset} bytes, already replayed, from the replay
+     * file, so the next replay resumes after them. If that fails the whole
+     * file is kept: records sent twice are better than records lost.
+     */
+    protected void keepTail(File replay, long offset) {
+        if (offset == 0) {
+            return;
+        }
+        File tmp = new File(replay.getPath() + ".tmp");
+        try {
+            try (FileChannel in = FileChannel.open(replay.toPath(), StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(tmp.toPath(),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = offset;
+                long end = in.size();
+                while (position < end) {
+                    position += in.transferTo(position, end - position, out);
+                }
+                out.force(true);
+            }
+            Files.move(tmp.toPath(), replay.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "unable to trim " + replay
+                    + "; its replayed records will be sent again", e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Takes records off the queue and sends them in batches of up to
+     * {@link #getBatchSize()}, or whatever has arrived within
+     * {@link #getBatchLingerMs()}. When idle, replays the journal.
+     */
+    protected class BatchSender extends Thread {
+        protected final BlockingQueue<JSONObject> queue =
+            new ArrayBlockingQueue<JSONObject>(getQueueCapacity());
+        protected volatile boolean finishing = false;
+
+        protected BatchSender() {
+            super(kafkaProducerThreads, "KafkaCrawlLogFeedSender");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<JSONObject> batch = new ArrayList<JSONObject>(getBatchSize());
+            // keeps running until finished: producers may be blocked on
+            // the queue, waiting for this thread to make room
+            while (!finishing || !queue.isEmpty()) {
+                try {
+                    JSONObject first = queue.poll(getBatchLingerMs(), TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        if (!finishing) {
+                            replayJournal();
+                        }
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.currentTimeMillis() + getBatchLingerMs();
+                    while (batch.size() < getBatchSize()) {
+                        long wait = deadline - System.currentTimeMillis();
+                        JSONObject next = wait > 0
+                                ? queue.poll(wait, TimeUnit.MILLISECONDS) : queue.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    sendBatch(CrawlLogBatchCodec.encode(batch), batch.size());
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    logger.warning("interrupted with " + queue.size()
+                            + " records queued; continuing");
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "batch sender failed with "
+                            + queue.size() + " records queued; continuing", e);
+                }
+                if (!batch.isEmpty()) {
+                    failed(batch);
+                    batch.clear();
+                }
+            }
+        }
+
+        /** journal (or drop) a batch that couldn't be handed to the producer */
+        protected void failed(List<JSONObject> batch) {
+            try {
+                unsent(CrawlLogBatchCodec.encode(batch), batch.size());
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "unable to encode batch of "
+                        + batch.size() + " records; dropping it", e);
+                droppedCount.addAndGet(batch.size());
+            }
+        }
+
+        /**
+         * Send everything queued, wait for the sends to complete, and
+         * journal anything that couldn't be sent.
+         */
+        protected void finish() {
+            finishing = true;
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            List<JSONObject> left = new ArrayList<JSONObject>();
+            queue.drainTo(left);
+            if (!left.isEmpty()) {
+                unsent(CrawlLogBatchCodec.encode(left), left.size());
+            }
+            kafkaProducer().flush();
+            closeJournal();
+        }
+    }
 }
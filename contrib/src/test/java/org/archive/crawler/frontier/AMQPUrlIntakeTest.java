@@ -0,0 +1,265 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.frontier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.archive.crawler.framework.Frontier;
+import org.archive.crawler.postprocessor.CandidatesProcessor;
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+import org.easymock.EasyMock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.rabbitmq.client.Channel;
+
+/**
+ * Tests {@link AMQPUrlIntake}'s journal, with messages that are just urls
+ * and a candidates processor that records what it's asked to schedule.
+ */
+public class AMQPUrlIntakeTest {
+    @TempDir
+    File tempDir;
+
+    protected Set<String> scheduled = Collections.synchronizedSet(new HashSet<String>());
+    /** syncs and acks, in the order they happened */
+    protected List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    protected AMQPUrlIntake makeIntake(int threads, long segmentBytes) {
+        CandidatesProcessor candidates = new CandidatesProcessor() {
+            @Override
+            public void scheduleBatch(List<CrawlURI> batch, CrawlURI source) {
+                for (CrawlURI curi : batch) {
+                    scheduled.add(curi.getURI());
+                }
+            }
+        };
+        return makeIntake(threads, segmentBytes, candidates);
+    }
+
+    protected AMQPUrlIntake makeIntake(int threads, long segmentBytes,
+            CandidatesProcessor candidates) {
+        AMQPUrlReceiver.UrlConsumer decoder = new AMQPUrlReceiver().new UrlConsumer(null) {
+            @Override
+            protected void processMessage(byte[] body, List<CrawlURI> batch) {
+                try {
+                    batch.add(new CrawlURI(UURIFactory.getInstance(
+                            new String(body, StandardCharsets.UTF_8))));
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        return new AMQPUrlIntake(decoder, candidates, tempDir, threads, 10,
+                segmentBytes, 100) {
+            @Override
+            protected Segment newSegment(File file) {
+                return new Segment(file) {
+                    @Override
+                    synchronized void sync() throws IOException {
+                        super.sync();
+                        events.add("sync " + written);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * A channel that records each ack, along with how many messages the
+     * journal held on disk at that moment.
+     */
+    protected Channel makeChannel() throws IOException {
+        Channel channel = EasyMock.createMock(Channel.class);
+        channel.basicAck(EasyMock.anyLong(), EasyMock.eq(true));
+        EasyMock.expectLastCall().andAnswer(() -> {
+            long tag = (Long) EasyMock.getCurrentArguments()[0];
+            events.add("ack " + tag + " with " + journaled().size() + " journaled");
+            return null;
+        }).anyTimes();
+        EasyMock.replay(channel);
+        return channel;
+    }
+
+    protected File[] segments() {
+        return tempDir.listFiles((d, name) ->
+                name.startsWith(AMQPUrlIntake.SEGMENT_PREFIX)
+                && name.endsWith(AMQPUrlIntake.SEGMENT_SUFFIX));
+    }
+
+    /** the messages in the journal, as read back from disk */
+    protected List<String> journaled() throws IOException {
+        List<String> messages = new ArrayList<String>();
+        for (File file : segments()) {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int pos = 0;
+            while (pos + 4 <= bytes.length) {
+                int length = ((bytes[pos] & 0xff) << 24) | ((bytes[pos + 1] & 0xff) << 16)
+                        | ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+                if (pos + 4 + length > bytes.length) {
+                    break;
+                }
+                messages.add(new String(bytes, pos + 4, length, StandardCharsets.UTF_8));
+                pos += 4 + length;
+            }
+        }
+        return messages;
+    }
+
+    protected byte[] message(int i) {
+        return ("http://example.com/" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    protected void waitForAck(long tag) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            synchronized (events) {
+                for (String event : events) {
+                    if (event.startsWith("ack " + tag + " ")) {
+                        return;
+                    }
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("no ack of " + tag + " in " + events);
+    }
+
+    @Test
+    public void testJournaledAndSyncedBeforeAck() throws Exception {
+        // no workers, so nothing is scheduled and the journal stays
+        AMQPUrlIntake intake = makeIntake(0, 1024 * 1024);
+        intake.start();
+        Channel channel = makeChannel();
+        for (int i = 1; i <= 10; i++) {
+            intake.deliver(channel, i, message(i));
+        }
+        waitForAck(10);
+        intake.stop(1000);
+
+        long synced = 0;
+        for (String event : new ArrayList<String>(events)) {
+            if (event.startsWith("sync ")) {
+                synced = Long.parseLong(event.substring(5));
+            } else {
+                // "ack <tag> with <n> journaled"
+                String[] parts = event.split(" ");
+                long tag = Long.parseLong(parts[1]);
+                assertTrue(synced >= tag, "acked " + tag + " with " + synced + " synced");
+                assertTrue(Long.parseLong(parts[3]) >= tag, event);
+            }
+        }
+        assertEquals(10, journaled().size());
+        assertEquals(0, scheduled.size());
+    }
+
+    @Test
+    public void testSegmentsDeletedWhenScheduled() throws Exception {
+        // small segments, rotated every few messages
+        AMQPUrlIntake intake = makeIntake(2, 64);
+        intake.start();
+        Channel channel = makeChannel();
+        for (int i = 1; i <= 30; i++) {
+            // one at a time, so each is its own group
+            intake.deliver(channel, i, message(i));
+            waitForAck(i);
+        }
+        intake.stop(10 * 1000);
+
+        assertEquals(30, scheduled.size());
+        assertTrue(intake.segmentSerial.get() > 1, "segments never rotated");
+        assertEquals(0, segments().length);
+    }
+
+    @Test
+    public void testWorkerOutlivesFailedBatch() throws Exception {
+        // the real scheduleBatch(), onto a frontier refusing the first batch
+        Frontier frontier = EasyMock.createMock(Frontier.class);
+        frontier.scheduleAll(EasyMock.<Collection<CrawlURI>>anyObject());
+        EasyMock.expectLastCall()
+                .andThrow(new IllegalStateException("simulated"))
+                .andAnswer(() -> {
+                    for (Object curi : (Collection<?>) EasyMock.getCurrentArguments()[0]) {
+                        scheduled.add(((CrawlURI) curi).getURI());
+                    }
+                    return null;
+                }).anyTimes();
+        EasyMock.replay(frontier);
+        CandidatesProcessor candidates = new CandidatesProcessor();
+        candidates.setFrontier(frontier);
+
+        AMQPUrlIntake intake = makeIntake(1, 64, candidates);
+        intake.start();
+        Channel channel = makeChannel();
+        for (int i = 1; i <= 30; i++) {
+            intake.deliver(channel, i, message(i));
+            waitForAck(i);
+        }
+        intake.stop(10 * 1000);
+
+        // only the first batch lost; the rest scheduled, journal cleared
+        assertTrue(scheduled.size() > 0);
+        assertTrue(scheduled.contains("http://example.com/30"));
+        assertEquals(0, segments().length);
+    }
+
+    @Test
+    public void testReplayAfterCrash() throws Exception {
+        // no workers: everything acked is left in the journal
+        AMQPUrlIntake crashed = makeIntake(0, 1024 * 1024);
+        crashed.start();
+        Channel channel = makeChannel();
+        for (int i = 1; i <= 5; i++) {
+            crashed.deliver(channel, i, message(i));
+        }
+        waitForAck(5);
+        crashed.stop(1000);
+        assertEquals(0, scheduled.size());
+        // plus a write cut short, never acked
+        File[] left = segments();
+        assertEquals(1, left.length);
+        try (FileOutputStream out = new FileOutputStream(left[0], true)) {
+            out.write(new byte[] {0, 0, 0, 20, 'h', 't'});
+        }
+
+        AMQPUrlIntake restarted = makeIntake(1, 1024 * 1024);
+        restarted.start();
+        restarted.stop(10 * 1000);
+
+        assertEquals(5, scheduled.size());
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(scheduled.contains("http://example.com/" + i));
+        }
+        assertEquals(0, segments().length);
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.postprocessor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.archive.spring.ConfigPath;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests batch mode against kafka's {@link MockProducer}, standing in for
+ * a broker.
+ */
+public class KafkaCrawlLogFeedTest {
+    @TempDir
+    File tempDir;
+
+    protected KafkaCrawlLogFeed makeFeed(MockProducer<String,byte[]> producer) {
+        KafkaCrawlLogFeed feed = new KafkaCrawlLogFeed();
+        feed.kafkaProducer = producer;
+        feed.setBatchSize(10);
+        feed.setBatchLingerMs(50);
+        feed.setOverflowPolicy(KafkaCrawlLogFeed.OverflowPolicy.SPILL);
+        feed.setJournalPath(new ConfigPath("journal",
+                new File(tempDir, "journal").getAbsolutePath()));
+        feed.start();
+        return feed;
+    }
+
+    protected JSONObject record(int i) {
+        JSONObject record = new JSONObject();
+        record.put("url", "http://example.com/" + i);
+        record.put("status_code", 200);
+        record.put("size", JSONObject.NULL);
+        record.put("extra_info", new JSONObject().put("i", i));
+        return record;
+    }
+
+    protected List<JSONObject> sent(MockProducer<String,byte[]> producer) throws Exception {
+        List<JSONObject> records = new ArrayList<JSONObject>();
+        for (ProducerRecord<String,byte[]> message : producer.history()) {
+            records.addAll(CrawlLogBatchCodec.decode(message.value()));
+        }
+        return records;
+    }
+
+    protected void waitFor(MockProducer<String,byte[]> producer, int messages)
+            throws InterruptedException {
+        for (int i = 0; i < 200 && producer.history().size() < messages; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(messages, producer.history().size());
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        MockProducer<String,byte[]> producer = new MockProducer<String,byte[]>(
+                true, new StringSerializer(), new ByteArraySerializer());
+        KafkaCrawlLogFeed feed = makeFeed(producer);
+        for (int i = 0; i < 25; i++) {
+            feed.enqueue(record(i));
+        }
+        feed.stop();
+
+        List<JSONObject> sent = sent(producer);
+        assertEquals(25, sent.size());
+        assertTrue(producer.history().size() >= 3);
+        for (int i = 0; i < 25; i++) {
+            assertEquals("http://example.com/" + i, sent.get(i).getString("url"));
+            assertEquals(200L, sent.get(i).getLong("status_code"));
+            assertTrue(sent.get(i).isNull("size"));
+            assertEquals(i, sent.get(i).getJSONObject("extra_info").getInt("i"));
+        }
+    }
+
+    @Test
+    public void testJournalReplay() throws Exception {
+        MockProducer<String,byte[]> producer = new MockProducer<String,byte[]>(
+                false, new StringSerializer(), new ByteArraySerializer());
+        KafkaCrawlLogFeed feed = makeFeed(producer);
+        for (int i = 0; i < 10; i++) {
+            feed.enqueue(record(i));
+        }
+        waitFor(producer, 1);
+        producer.errorNext(new RuntimeException("broker unavailable"));
+        assertEquals(10, feed.getJournaledCount());
+
+        // broker back: a successful send lets the journal be replayed
+        for (int i = 10; i < 20; i++) {
+            feed.enqueue(record(i));
+        }
+        waitFor(producer, 2);
+        producer.completeNext();
+        waitFor(producer, 3);
+        feed.stop();
+
+        List<JSONObject> sent = sent(producer);
+        assertEquals(30, sent.size());
+        // the failed batch, the second batch, then the failed batch again
+        assertEquals("http://example.com/0", sent.get(20).getString("url"));
+        assertEquals("http://example.com/19", sent.get(19).getString("url"));
+        assertEquals(0, feed.getDroppedCount());
+    }
+
+    @Test
+    public void testSenderSurvivesFailure() throws Exception {
+        MockProducer<String,byte[]> producer = new MockProducer<String,byte[]>(
+                true, new StringSerializer(), new ByteArraySerializer());
+        KafkaCrawlLogFeed feed = new KafkaCrawlLogFeed() {
+            boolean failed = false;
+            @Override
+            protected void sendBatch(byte[] message, int count) {
+                if (!failed) {
+                    failed = true;
+                    throw new IllegalStateException("unexpected");
+                }
+                super.sendBatch(message, count);
+            }
+        };
+        feed.kafkaProducer = producer;
+        feed.setBatchSize(10);
+        feed.setBatchLingerMs(50);
+        feed.setQueueCapacity(5);
+        feed.setOverflowPolicy(KafkaCrawlLogFeed.OverflowPolicy.BLOCK);
+        feed.setJournalPath(new ConfigPath("journal",
+                new File(tempDir, "journal").getAbsolutePath()));
+        feed.start();
+
+        // would block forever on the full queue if the sender had died
+        for (int i = 0; i < 30; i++) {
+            feed.enqueue(record(i));
+        }
+        assertTrue(feed.sender().isAlive());
+        // the failed batch is journaled, and replayed once the sender idles
+        for (int i = 0; i < 200 && sent(producer).size() < 30; i++) {
+            Thread.sleep(10);
+        }
+        feed.stop();
+
+        assertEquals(30, sent(producer).size());
+        assertEquals(0, feed.getDroppedCount());
+    }
+
+    protected byte[] batch(int from, int to) {
+        List<JSONObject> records = new ArrayList<JSONObject>();
+        for (int i = from; i < to; i++) {
+            records.add(record(i));
+        }
+        return CrawlLogBatchCodec.encode(records);
+    }
+
+    protected File replayFile(KafkaCrawlLogFeed feed) {
+        feed.closeJournal();
+        File journal = new File(tempDir, "journal");
+        File replay = new File(tempDir, "journal.replay");
+        assertTrue(journal.renameTo(replay));
+        return replay;
+    }
+
+    @Test
+    public void testReplayKeepsUnreplayedTail() throws Exception {
+        MockProducer<String,byte[]> producer = new MockProducer<String,byte[]>(
+                true, new StringSerializer(), new ByteArraySerializer());
+        KafkaCrawlLogFeed feed = makeFeed(producer);
+        byte[] first = batch(0, 10);
+        feed.journal(first, 10);
+        feed.journal(batch(10, 20), 10);
+        File replay = replayFile(feed);
+
+        // as left by a replay that failed after sending the first batch
+        feed.keepTail(replay, 8 + first.length);
+        feed.replayJournal();
+
+        List<JSONObject> sent = sent(producer);
+        assertEquals(10, sent.size());
+        assertEquals("http://example.com/10", sent.get(0).getString("url"));
+        assertFalse(replay.exists());
+    }
+
+    @Test
+    public void testReplayTruncatedJournal() throws Exception {
+        MockProducer<String,byte[]> producer = new MockProducer<String,byte[]>(
+                true, new StringSerializer(), new ByteArraySerializer());
+        KafkaCrawlLogFeed feed = makeFeed(producer);
+        feed.journal(batch(0, 10), 10);
+        feed.journal(CrawlLogBatchCodec.encode(Collections.singletonList(record(10))), 1);
+        File replay = replayFile(feed);
+        // a final record cut short by a crash
+        try (FileOutputStream out = new FileOutputStream(replay, true)) {
+            out.write(new byte[] {0, 0, 0, 1, 0, 0});
+        }
+
+        feed.replayJournal();
+        assertEquals(11, sent(producer).size());
+        assertFalse(replay.exists());
+    }
+}
@@ -19,6 +19,7 @@
 package org.archive.crawler.datamodel;
 
 import java.io.File;
+import java.util.List;
 
 import org.archive.modules.CrawlURI;
 
@@ -74,6 +75,21 @@ public interface UriUniqFilter {
      * @param value item to add.
      */
     public void add(String key, CrawlURI value);
+
+    /**
+     * Add each of the given uris, if not already present, as if by 
+     * {@link #add(String, CrawlURI)}; implementations may test the batch
+     * together, and pass those found new to the receiver together (via
+     * {@link CrawlUriReceiver#receiveAll(List)}). This default adds each
+     * in turn. 
+     * @param keys keys of the values, in the same order
+     * @param values items to add
+     */
+    public default void addAll(List<String> keys, List<CrawlURI> values) {
+        for (int i = 0; i < keys.size(); i++) {
+            add(keys.get(i), values.get(i));
+        }
+    }
     
     /**
      * Immediately add uri.
@@ -146,5 +162,15 @@ public interface UriUniqFilter {
          * @param item CrawlURI that passed uniqueness testing
          */
         public void receive(CrawlURI item);
+
+        /**
+         * @param items CrawlURIs that passed uniqueness testing together,
+         * in the order added
+         */
+        public default void receiveAll(List<CrawlURI> items) {
+            for (CrawlURI item : items) {
+                receive(item);
+            }
+        }
     }
 }
@@ -38,6 +38,7 @@ import org.apache.commons.io.comparator.LastModifiedFileComparator;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.archive.checkpointing.Checkpoint;
 import org.archive.checkpointing.Checkpointable;
+import org.archive.checkpointing.IncrementalCheckpointable;
 import org.archive.crawler.reporting.CrawlStatSnapshot;
 import org.archive.spring.ConfigPath;
 import org.archive.spring.ConfigPathConfigurer;
@@ -141,6 +142,25 @@ public class CheckpointService implements Lifecycle, ApplicationContextAware, Ha
         }
     }
     
+    protected boolean incrementalCheckpoints = false;
+    public boolean getIncrementalCheckpoints() {
+        return incrementalCheckpoints;
+    }
+
+    /**
+     * Whether to take checkpoints incrementally: beans which can (such as
+     * BdbModule and BdbFrontier) flush ahead of the pause, during which
+     * they capture only what they must for a consistent checkpoint, and 
+     * complete after it, while crawling continues. In particular, BDB log
+     * files are only listed during the pause, and linked (or, where they
+     * can't be, copied) afterwards, so that each checkpoint holds all its
+     * own files. Earlier checkpoints are forgotten (if forgetAllButLatest)
+     * only once the new one is stamped valid. Default is false. 
+     */
+    public void setIncrementalCheckpoints(boolean incrementalCheckpoints) {
+        this.incrementalCheckpoints = incrementalCheckpoints;
+    }
+
     protected Checkpoint recoveryCheckpoint;
     @Autowired(required=false)
     public void setRecoveryCheckpoint(Checkpoint checkpoint) {
@@ -302,13 +322,30 @@ public class CheckpointService implements Lifecycle, ApplicationContextAware, Ha
         }
         
         checkpointInProgress = new Checkpoint();
+        boolean incremental = getIncrementalCheckpoints();
+        long pauseStart = 0;
+        String progressStamp = null;
         try {
             checkpointInProgress.setForgetAllButLatest(getForgetAllButLatest());
+            checkpointInProgress.setIncremental(incremental);
             checkpointInProgress.generateFrom(getCheckpointsDir(),
                     getNextCheckpointNumber());
 
+            if (incremental) {
+                // flush ahead, while crawling continues
+                long prepareStart = System.currentTimeMillis();
+                for (Checkpointable c : toCheckpoint.values()) {
+                    if (c instanceof IncrementalCheckpointable) {
+                        ((IncrementalCheckpointable) c).prepareCheckpoint(checkpointInProgress);
+                    }
+                }
+                LOGGER.info("all prepareCheckpoint() completed in "
+                        + (System.currentTimeMillis() - prepareStart) + "ms");
+            }
+
             // pre (incl. acquire necessary locks)
             long startStart = System.currentTimeMillis();
+            pauseStart = startStart;
             for (Checkpointable c : toCheckpoint.values()) {
                 c.startCheckpoint(checkpointInProgress);
             }
@@ -326,6 +363,59 @@ public class CheckpointService implements Lifecycle, ApplicationContextAware, Ha
             LOGGER.info("all doCheckpoint() completed in "
                     + (System.currentTimeMillis() - doStart) + "ms");
             
+            checkpointInProgress.setSuccess(true);
+        } catch (Exception e) {
+            checkpointFailed(e);
+        } finally {
+            // progress as of the pause, which is what's checkpointed
+            progressStamp = controller.getStatisticsTracker().getProgressStamp();
+            if (!incremental) {
+                checkpointInProgress.writeValidity(progressStamp);
+            }
+            // close (incl. release locks), unless failed before starting
+            if (pauseStart > 0) {
+                long finishStart = System.currentTimeMillis();
+                for (Checkpointable c : toCheckpoint.values()) {
+                    c.finishCheckpoint(checkpointInProgress);
+                }
+                LOGGER.info("all finishCheckpoint() completed in "
+                        + (System.currentTimeMillis() - finishStart) + "ms");
+                checkpointInProgress.setPauseMs(System.currentTimeMillis() - pauseStart);
+            }
+        }
+
+        if (incremental) {
+            // complete (even if failed, to release anything held)
+            long completeStart = System.currentTimeMillis();
+            for (Checkpointable c : toCheckpoint.values()) {
+                if (c instanceof IncrementalCheckpointable) {
+                    try {
+                        ((IncrementalCheckpointable) c).completeCheckpoint(checkpointInProgress);
+                    } catch (Exception e) {
+                        checkpointFailed(e);
+                        checkpointInProgress.setSuccess(false);
+                    }
+                }
+            }
+            LOGGER.info("all completeCheckpoint() completed in "
+                    + (System.currentTimeMillis() - completeStart) + "ms");
+            checkpointInProgress.writeValidity(progressStamp);
+            if (checkpointInProgress.getSuccess() && Checkpoint.hasValidStamp(
+                    checkpointInProgress.getCheckpointDir().getFile())) {
+                for (Checkpointable c : toCheckpoint.values()) {
+                    if (c instanceof IncrementalCheckpointable) {
+                        try {
+                            ((IncrementalCheckpointable) c).checkpointStamped(checkpointInProgress);
+                        } catch (Exception e) {
+                            // the checkpoint stands; only clean-up failed
+                            LOGGER.log(Level.WARNING, "problem forgetting earlier checkpoints", e);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (checkpointInProgress.getSuccess()) {
             if (getForgetAllButLatest() && lastCheckpoint != null) {
                 try {
                     long deleteStart = System.currentTimeMillis();
@@ -341,28 +431,16 @@ public class CheckpointService implements Lifecycle, ApplicationContextAware, Ha
                 }
             }
             
-            checkpointInProgress.setSuccess(true);
-            
             appCtx.publishEvent(new CheckpointSuccessEvent(this,
                     checkpointInProgress));
             
             // Record the stats associated with this successfully-completed checkpoint:
             lastCheckpointSnapshot = controller.getStatisticsTracker().getSnapshot();
-        } catch (Exception e) {
-            checkpointFailed(e);
-        } finally {
-            checkpointInProgress.writeValidity(
-                controller.getStatisticsTracker().getProgressStamp());
-            // close (incl. release locks)
-            long finishStart = System.currentTimeMillis();
-            for (Checkpointable c : toCheckpoint.values()) {
-                c.finishCheckpoint(checkpointInProgress);
-            }
-            LOGGER.info("all finishCheckpoint() completed in "
-                    + (System.currentTimeMillis() - finishStart) + "ms");
         }
         LOGGER.info("completed checkpoint " + checkpointInProgress.getName()
-                + " in " + (System.currentTimeMillis() - checkpointStart) + "ms");
+                + " in " + (System.currentTimeMillis() - checkpointStart) + "ms"
+                + " (paused " + checkpointInProgress.getPauseMs() + "ms, copied "
+                + checkpointInProgress.getBytesCopied() + " bytes)");
         
         this.nextCheckpointNumber++;
         String nameToReport = checkpointInProgress.getSuccess() ? checkpointInProgress.getName() : null;
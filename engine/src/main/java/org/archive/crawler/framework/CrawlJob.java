@@ -57,6 +57,7 @@ import org.apache.commons.collections.ListUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
+import org.archive.checkpointing.Checkpoint;
 import org.archive.crawler.event.CrawlStateEvent;
 import org.archive.crawler.framework.CrawlController.StopCompleteEvent;
 import org.archive.crawler.frontier.WorkQueue;
@@ -717,7 +718,10 @@ public class CrawlJob implements Comparable<CrawlJob>, ApplicationListener<Appli
         }
         
         if(event instanceof CheckpointSuccessEvent) {
-            getJobLogger().log(Level.INFO, "CHECKPOINTED "+((CheckpointSuccessEvent)event).getCheckpoint().getName());
+            Checkpoint checkpoint = ((CheckpointSuccessEvent)event).getCheckpoint();
+            getJobLogger().log(Level.INFO, "CHECKPOINTED "+checkpoint.getName()
+                    +" (paused "+checkpoint.getPauseMs()+"ms, copied "
+                    +checkpoint.getBytesCopied()+" bytes)");
         }
     }
 
@@ -908,6 +912,18 @@ public class CrawlJob implements Comparable<CrawlJob>, ApplicationListener<Appli
         return ArchiveUtils.formatMillisecondsToConventional(timeElapsed);
     }
 
+    public Map<String,Long> largestHostsReportData() {
+        StatisticsTracker stats = getStats();
+        if(stats==null) {
+            return null;
+        }
+        Map<String,Long> map = new LinkedHashMap<String,Long>();
+        for (Map.Entry<?,Long> entry : stats.getLargestHosts().getEntriesDescending()) {
+            map.put(entry.getKey().toString(), entry.getValue());
+        }
+        return map;
+    }
+
     public Map<String,Object> threadReportData() {
         CrawlController cc = getCrawlController();
         if (cc == null) {
@@ -21,6 +21,7 @@ package org.archive.crawler.framework;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 
@@ -134,6 +135,16 @@ public interface Frontier extends Lifecycle, Reporter {
      */
     public void schedule(CrawlURI caURI);
 
+    /**
+     * Schedules a batch of CrawlURIs, as if by {@link #schedule(CrawlURI)}
+     * on each. Implementations may reorder the batch (for example, to group
+     * URIs bound for the same queue) but must otherwise treat each URI
+     * exactly as an individual schedule() would.
+     *
+     * @param caURIs The URIs to schedule.
+     */
+    public void scheduleAll(Collection<CrawlURI> caURIs);
+
     /**
      * Report a URI being processed as having finished processing.
      *
@@ -274,7 +285,7 @@ public interface Frontier extends Lifecycle, Reporter {
      * <p>"scopeSchedules": if non-null, any URI imported be checked
      * against the frontier's configured scope before scheduling 
      * 
-     * <p>If the "format" is "recoveryLog", 7 more keys are significant:
+     * <p>If the "format" is "recoveryLog", 8 more keys are significant:
      * 
      * <p>"includeSuccesses": if non-null, success lines ("Fs") in the log
      * will be considered-included. (Usually, this is the aim of
@@ -296,6 +307,10 @@ public interface Frontier extends Lifecycle, Reporter {
      * <p>"scheduleScheduleds": if non-null, scheduled lines ("F+") in the 
      * log will be considered-included. (Usually, this is the aim of a
      * recovery-log import.)
+     * <p>"progressPath": if non-null, a file in which to save progress
+     * through the log, so an import interrupted partway (along with a
+     * frontier that persists, as when resuming from a checkpoint) resumes
+     * where it left off. Ignored if the frontier is empty.
      * 
      * TODO: add parameter for auto-unpause-at-good-time
      * 
@@ -34,18 +34,17 @@ import static org.archive.modules.fetcher.FetchStatusCodes.S_TOO_MANY_LINK_HOPS;
 import static org.archive.modules.fetcher.FetchStatusCodes.S_UNATTEMPTED;
 
 import java.io.BufferedReader;
-import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.http.HttpStatus;
@@ -69,6 +68,7 @@ import org.archive.spring.HasKeyedProperties;
 import org.archive.spring.KeyedProperties;
 import org.archive.url.URIException;
 import org.archive.util.ArchiveUtils;
+import org.archive.util.LatencyHistogram;
 import org.archive.util.ReportUtils;
 import org.archive.util.iterator.LineReadingIterator;
 import org.archive.util.iterator.RegexLineIterator;
@@ -450,6 +450,7 @@ public abstract class AbstractFrontier
      * @see org.archive.crawler.framework.Frontier#next()
      */
     public CrawlURI next() throws InterruptedException {
+        long startNanos = System.nanoTime();
         CrawlURI crawlable = null;
         while(crawlable==null) {
             outboundLock.readLock().lockInterruptibly();
@@ -457,9 +458,18 @@ public abstract class AbstractFrontier
             crawlable = findEligibleURI();
             outboundLock.readLock().unlock();
         }
+        nextLatency.recordSince(startNanos);
         return crawlable;
     }
 
+    /**
+     * Time ToeThreads spend waiting in next() for a URI to crawl.
+     */
+    protected LatencyHistogram nextLatency = new LatencyHistogram();
+    public LatencyHistogram getNextLatency() {
+        return nextLatency;
+    }
+
     /**
      * Find a CrawlURI eligible to be put on the outbound queue for 
      * processing. If none, return null. 
@@ -539,6 +549,18 @@ public abstract class AbstractFrontier
         }
     }
 
+    /**
+     * Arrange for each of the given CrawlURIs to be visited, if not already
+     * scheduled/completed. This implementation simply schedules each in turn.
+     *
+     * @see org.archive.crawler.framework.Frontier#scheduleAll(java.util.Collection)
+     */
+    public void scheduleAll(Collection<CrawlURI> curis) {
+        for (CrawlURI curi : curis) {
+            schedule(curi);
+        }
+    }
+
     /**
      * Accept the given CrawlURI for scheduling, as it has
      * passed the alreadyIncluded filter. 
@@ -805,6 +827,15 @@ public abstract class AbstractFrontier
     public void addedSeed(CrawlURI puri) {
         schedule(puri);
     }
+
+    /**
+     * Schedule a batch of seeds together.
+     * @see org.archive.modules.seeds.SeedListener#addedSeeds(java.util.List)
+     */
+    @Override
+    public void addedSeeds(List<CrawlURI> puris) {
+        scheduleAll(puris);
+    }
     
     /** 
      * Do nothing with non-seed lines
@@ -883,9 +914,6 @@ public abstract class AbstractFrontier
         return false;
     }
     
-    //  show import progress every this many lines
-    private final static int PROGRESS_INTERVAL = 1000000; 
-
     /**
      * Import URIs from the given file (in recover-log-like format, with
      * a 3-character 'type' tag preceding a URI with optional hops/via).
@@ -896,6 +924,9 @@ public abstract class AbstractFrontier
      * Only imports URIs if their first tag field matches the acceptTags 
      * pattern.
      * 
+     * Lines are parsed (and scoped) in parallel, and handed to the
+     * frontier in batches; see {@link RecoverLogImporter}.
+     * 
      * @param source File recovery log file to use (may be .gz compressed)
      * @param applyScope whether to apply crawl scope to URIs
      * @param includeOnly whether to only add to included filter, not schedule
@@ -909,61 +940,14 @@ public abstract class AbstractFrontier
     public long importRecoverFormat(File source, boolean applyScope, 
             boolean includeOnly, boolean forceFetch, String acceptTags) 
     throws IOException {
-        DecideRule scope = (applyScope) ? getScope() : null;
-        FrontierJournal newJournal = getFrontierJournal();
-        Matcher m = Pattern.compile(acceptTags).matcher(""); 
-        BufferedReader br = ArchiveUtils.getBufferedReader(source);
-        String read;
-        int lineCount = 0; 
-        try {
-            while ((read = br.readLine())!=null) {
-                lineCount++;
-                if(read.length()<4) {
-                    continue;
-                }
-                String lineType = read.substring(0, 3);
-                m.reset(lineType);
-                if(m.matches()) {
-                    try {
-                        String uriHopsViaString = read.substring(3).trim();
-                        CrawlURI curi = CrawlURI.fromHopsViaString(uriHopsViaString);
-                        if(scope!=null) {
-                            sheetOverlaysManager.applyOverlaysTo(curi);
-                            try {
-                                KeyedProperties.loadOverridesFrom(curi);
-                                if(!scope.accepts(curi)) {
-                                    // skip out-of-scope URIs if so configured
-                                    continue;
-                                }
-                            } finally {
-                                KeyedProperties.clearOverridesFrom(curi); 
-                            }
-                        }
-                        if(includeOnly) {
-                            considerIncluded(curi);
-                            newJournal.included(curi);
-                        } else {
-                            curi.setForceFetch(forceFetch);
-                            schedule(curi);
-                        }
-                    } catch (URIException e) {
-                        logger.log(Level.WARNING,"Problem line: "+read, e);
-                    }
-                }
-                if((lineCount%PROGRESS_INTERVAL)==0) {
-                    // every 1 million lines, print progress
-                    logger.info(
-                            "at line " + lineCount + (includeOnly?" (include-only)":"")
-                            + " alreadyIncluded count = " +
-                            discoveredUriCount());
-                }
-            }
-        } catch (EOFException e) {
-            // expected in some uncleanly-closed recovery logs; ignore
-        } finally {
-            br.close();
+        RecoverLogImporter importer = new RecoverLogImporter(this, source);
+        importer.setAcceptTags(Pattern.compile(acceptTags));
+        if (applyScope) {
+            importer.setScope(getScope(), sheetOverlaysManager);
         }
-        return lineCount;
+        importer.setIncludeOnly(includeOnly);
+        importer.setForceFetch(forceFetch);
+        return importer.run();
     }
     
     /* (non-Javadoc)
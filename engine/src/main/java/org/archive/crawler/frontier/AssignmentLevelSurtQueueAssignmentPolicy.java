@@ -20,8 +20,8 @@ package org.archive.crawler.frontier;
 
 import org.apache.commons.lang.StringUtils;
 import org.archive.modules.CrawlURI;
+import org.archive.net.PublicSuffixMatcher;
 import org.archive.net.UURI;
-import org.archive.net.PublicSuffixes;
 
 /**
  * Create a queueKey based on the SURT authority, reduced to the 
@@ -41,7 +41,7 @@ public class AssignmentLevelSurtQueueAssignmentPolicy extends
 
 	UURI basis = curi.getPolicyBasisUURI();
 	String candidate =  super.getClassKey(curi);
-        candidate = PublicSuffixes.reduceSurtToAssignmentLevel(candidate);
+        candidate = PublicSuffixMatcher.getDefault().reduceSurtToAssignmentLevel(candidate);
 
 	if(!StringUtils.isEmpty(getForceQueueAssignment())) {
 	    candidate = getForceQueueAssignment();
@@ -21,6 +21,8 @@ package org.archive.crawler.frontier;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
 import java.util.Set;
@@ -41,9 +43,10 @@ import org.archive.bdb.BdbModule;
 import org.archive.bdb.DisposableStoredSortedMap;
 import org.archive.bdb.StoredQueue;
 import org.archive.checkpointing.Checkpoint;
-import org.archive.checkpointing.Checkpointable;
+import org.archive.checkpointing.IncrementalCheckpointable;
 import org.archive.modules.CrawlURI;
 import org.archive.util.ArchiveUtils;
+import org.archive.util.LatencyHistogram;
 import org.archive.util.ObjectIdentityCache;
 import org.archive.util.Supplier;
 import org.json.JSONArray;
@@ -62,7 +65,7 @@ import com.sleepycat.je.DatabaseException;
  * @author Gordon Mohr
  */
 public class BdbFrontier extends WorkQueueFrontier 
-implements Checkpointable, BeanNameAware {
+implements IncrementalCheckpointable, BeanNameAware {
     @SuppressWarnings("unused")
     private static final long serialVersionUID = 1L;
 
@@ -214,6 +217,20 @@ implements Checkpointable, BeanNameAware {
         return pendingUris;
     }
 
+    /**
+     * @return timings of pending-URI database operations, by operation
+     */
+    public Map<String,LatencyHistogram> getBdbLatencies() {
+        Map<String,LatencyHistogram> latencies = 
+            new LinkedHashMap<String,LatencyHistogram>();
+        if (pendingUris != null) {
+            latencies.put("get", pendingUris.getGetLatency());
+            latencies.put("put", pendingUris.getPutLatency());
+            latencies.put("delete", pendingUris.getDeleteLatency());
+        }
+        return latencies;
+    }
+
     protected boolean workQueueDataOnDisk() {
         return true;
     }
@@ -222,6 +239,12 @@ implements Checkpointable, BeanNameAware {
         super();
     }
     
+    public void prepareCheckpoint(Checkpoint checkpointInProgress) {
+        // flush ahead, while crawling continues, so that doCheckpoint()'s 
+        // sync (while dispositions wait) has little left to write
+        this.pendingUris.sync();
+    }
+
     public void startCheckpoint(Checkpoint checkpointInProgress) {
         dispositionInProgressLock.writeLock().lock();
     }
@@ -280,6 +303,10 @@ implements Checkpointable, BeanNameAware {
         dispositionInProgressLock.writeLock().unlock();
     }
 
+    public void completeCheckpoint(Checkpoint checkpointInProgress) {}
+
+    public void checkpointStamped(Checkpoint checkpointInProgress) {}
+
     protected Checkpoint recoveryCheckpoint;
     @Autowired(required=false)
     public void setRecoveryCheckpoint(Checkpoint checkpoint) {
@@ -35,6 +35,7 @@ import org.apache.commons.collections.Closure;
 import org.archive.bdb.KryoBinding;
 import org.archive.modules.CrawlURI;
 import org.archive.util.ArchiveUtils;
+import org.archive.util.LatencyHistogram;
 
 import com.google.common.base.Charsets;
 import com.sleepycat.bind.EntryBinding;
@@ -72,6 +73,11 @@ public class BdbMultipleWorkQueues {
     /**  Supporting bdb serialization of CrawlURIs */
     private EntryBinding<CrawlURI> crawlUriBinding;
 
+    /** Timings of the basic database operations */
+    protected LatencyHistogram getLatency = new LatencyHistogram();
+    protected LatencyHistogram putLatency = new LatencyHistogram();
+    protected LatencyHistogram deleteLatency = new LatencyHistogram();
+
     /**
      * Create the multi queue in the given environment. 
      * 
@@ -241,6 +247,16 @@ public class BdbMultipleWorkQueues {
      * @throws DatabaseException
      */
     public CrawlURI get(DatabaseEntry headKey)
+    throws DatabaseException {
+        long startNanos = System.nanoTime();
+        try {
+            return getNearest(headKey);
+        } finally {
+            getLatency.recordSince(startNanos);
+        }
+    }
+
+    protected CrawlURI getNearest(DatabaseEntry headKey)
     throws DatabaseException {
         DatabaseEntry result = new DatabaseEntry();
         
@@ -325,6 +341,7 @@ public class BdbMultipleWorkQueues {
      */
     public void put(CrawlURI curi, boolean overwriteIfPresent) 
     throws DatabaseException {
+        long startNanos = System.nanoTime();
         DatabaseEntry insertKey = (DatabaseEntry)curi.getHolderKey();
         if (insertKey == null) {
             insertKey = calculateInsertKey(curi);
@@ -343,6 +360,7 @@ public class BdbMultipleWorkQueues {
             status = pendingUrisDB.putNoOverwrite(null, insertKey, value);
         }
         
+        putLatency.recordSince(startNanos);
         if (status!=OperationStatus.SUCCESS) {
             LOGGER.log(Level.SEVERE,"URI enqueueing failed; "+status+ " "+curi, new RuntimeException());
         }
@@ -480,7 +498,9 @@ public class BdbMultipleWorkQueues {
     public void delete(CrawlURI item) throws DatabaseException {
         OperationStatus status;
         DatabaseEntry de = (DatabaseEntry)item.getHolderKey();
+        long startNanos = System.nanoTime();
         status = pendingUrisDB.delete(null, de);
+        deleteLatency.recordSince(startNanos);
         if (status != OperationStatus.SUCCESS) {
             LOGGER.severe("expected item not present: "
                     + item
@@ -490,6 +510,18 @@ public class BdbMultipleWorkQueues {
         }
     }
     
+    public LatencyHistogram getGetLatency() {
+        return getLatency;
+    }
+
+    public LatencyHistogram getPutLatency() {
+        return putLatency;
+    }
+
+    public LatencyHistogram getDeleteLatency() {
+        return deleteLatency;
+    }
+
     /**
      * Method used by BdbFrontier during checkpointing.
      * <p>The backing bdbje database has been marked deferred write so we save
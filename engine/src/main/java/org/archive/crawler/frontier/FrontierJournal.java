@@ -18,20 +18,19 @@
  */
 package org.archive.crawler.frontier;
 
-import java.io.BufferedReader;
-import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
-import org.archive.url.URIException;
 import org.archive.crawler.framework.Frontier;
+import org.archive.crawler.spring.SheetOverlaysManager;
 import org.archive.io.CrawlerJournal;
 import org.archive.modules.CrawlURI;
-import org.archive.modules.deciderules.DecideRule;
-import org.archive.util.ArchiveUtils;
 import org.json.JSONObject;
 
 /**
@@ -59,9 +58,6 @@ public class FrontierJournal extends CrawlerJournal {
     public final static String F_SUCCESS = "Fs ";
     public final static String F_FAILURE = "Ff ";
     
-    //  show recovery progress every this many lines
-    private final static int PROGRESS_INTERVAL = 1000000; 
-    
     // once this many URIs are queued during recovery, allow 
     // crawl to begin, while enqueuing of other URIs from log
     // continues in background
@@ -119,11 +115,21 @@ public class FrontierJournal extends CrawlerJournal {
      * Utility method for scanning a recovery journal and applying it to
      * a Frontier.
      * 
+     * The log is read twice: first to fill alreadyIncluded with successes
+     * (and possibly failures), then to re-add anything that was in the old
+     * frontier and not already registered as finished. If the
+     * "progressPath" param is given, progress through each pass is saved
+     * to that file, so a recovery interrupted partway resumes where it
+     * left off. That progress describes what was applied to this frontier,
+     * so it's discarded if the frontier is found empty, as after a fresh
+     * launch rather than a resume from checkpoint.
+     * 
      * @param params JSONObject of import parameters; see Frontier.importURIS()
      * @param frontier
      * @throws IOException
      * 
      * @see org.archive.crawler.framework.Frontier#importURIs(String)
+     * @see RecoverLogImporter
      */
     public static void importRecoverLog(final JSONObject params, final Frontier frontier)
     throws IOException {
@@ -132,12 +138,22 @@ public class FrontierJournal extends CrawlerJournal {
             throw new IllegalArgumentException("Passed source file is null.");
         }
         final File source = new File(path);
+        final File progress = params.isNull("progressPath")
+                ? null : new File(params.getString("progressPath"));
+        if (progress != null && progress.exists()
+                && frontier.discoveredUriCount() == 0) {
+            LOGGER.warning("frontier is empty, so ignoring progress of an "
+                    + "earlier import in " + progress);
+            if (!progress.delete()) {
+                LOGGER.warning("unable to delete " + progress);
+            }
+        }
         LOGGER.info("recovering frontier completion state from "+source);
         
         // first, fill alreadyIncluded with successes (and possibly failures),
         // and count the total lines
-        final int lines =
-            importCompletionInfoFromLog(source, frontier, params);
+        final long lines =
+            importCompletionInfoFromLog(source, frontier, params, progress);
         
         LOGGER.info("finished completion state; recovering queues from " +
             source);
@@ -149,7 +165,7 @@ public class FrontierJournal extends CrawlerJournal {
         new Thread(new Runnable() {
             public void run() {
                 importQueuesFromLog(source, frontier, params, lines, 
-                        recoveredEnough);
+                        progress, recoveredEnough);
             }
         }, "queuesRecoveryThread").start();
         
@@ -161,6 +177,25 @@ public class FrontierJournal extends CrawlerJournal {
         }
     }
     
+    /**
+     * Regex matching the tags of the lines selected by the given
+     * params, or null if none are.
+     */
+    protected static Pattern tagsPattern(JSONObject params, String successes,
+            String failures, String scheduleds) {
+        List<String> tags = new ArrayList<String>();
+        if (!params.isNull(successes)) {
+            tags.add(Pattern.quote(F_SUCCESS));
+        }
+        if (!params.isNull(failures)) {
+            tags.add(Pattern.quote(F_FAILURE));
+        }
+        if (!params.isNull(scheduleds)) {
+            tags.add(Pattern.quote(F_ADD));
+        }
+        return tags.isEmpty() ? null : Pattern.compile(String.join("|", tags));
+    }
+
     /**
      * Import just the SUCCESS (and possibly FAILURE) URIs from the given
      * recovery log into the frontier as considered included. 
@@ -169,63 +204,21 @@ public class FrontierJournal extends CrawlerJournal {
      * @return number of lines in recovery log (for reference)
      * @throws IOException
      */
-    private static int importCompletionInfoFromLog(File source, 
-            Frontier frontier, JSONObject params) throws IOException {
+    private static long importCompletionInfoFromLog(File source, 
+            Frontier frontier, JSONObject params, File progress) throws IOException {
         // Scan log for 'Fs' (+maybe 'Ff') lines: add as 'alreadyIncluded'
-        boolean includeSuccesses = !params.isNull("includeSuccesses");
-        boolean includeFailures = !params.isNull("includeFailures");
-        boolean includeScheduleds = !params.isNull("includeScheduleds");
-        boolean scopeIncludes = !params.isNull("scopeIncludes");
-        
-        DecideRule scope = (scopeIncludes) ? frontier.getScope() : null;
-        FrontierJournal newJournal = frontier.getFrontierJournal();
-        
-        BufferedReader br = ArchiveUtils.getBufferedReader(source);
-        String read;
-        int lines = 0; 
-        try {
-            while ((read = br.readLine())!=null) {
-                lines++;
-                if(read.length()<4) {
-                    continue;
-                }
-                String lineType = read.substring(0, 3);
-                if(includeSuccesses && F_SUCCESS.equals(lineType) 
-                        || includeFailures && F_FAILURE.equals(lineType) 
-                        || includeScheduleds && F_ADD.equals(lineType)) {
-                    try {
-                        CrawlURI caUri = CrawlURI.fromHopsViaString(read.substring(3));
-                        if(scope!=null) {
-                            //TODO:SPRINGY
-///                            caUri.setStateProvider(controller.getSheetManager());
-                            // skip out-of-scope URIs if so configured
-                            if(!scope.accepts(caUri)) {
-                                continue;
-                            }
-                        }
-                        frontier.considerIncluded(caUri);
-                        if (newJournal != null) {
-                            // write same line as read
-                            newJournal.writeLine(read);
-                        }
-                    } catch (URIException e) {
-                        LOGGER.log(Level.WARNING,"bad hopsViaString: "+read.substring(3),e);
-                    }
-                }
-                if((lines%PROGRESS_INTERVAL)==0) {
-                    // every 1 million lines, print progress
-                    LOGGER.info(
-                            "at line " + lines 
-                            + " alreadyIncluded count = " +
-                            frontier.discoveredUriCount());
-                }
-            }
-        } catch (EOFException e) {
-            // expected in some uncleanly-closed recovery logs; ignore
-        } finally {
-            br.close();
+        Pattern tags = tagsPattern(params, 
+                "includeSuccesses", "includeFailures", "includeScheduleds");
+        RecoverLogImporter importer = new RecoverLogImporter(frontier, source);
+        importer.setAcceptTags(tags != null ? tags : Pattern.compile("(?!)"));
+        if (!params.isNull("scopeIncludes")) {
+            importer.setScope(frontier.getScope(), sheetOverlaysManager(frontier));
         }
-        return lines;
+        importer.setIncludeOnly(true);
+        // write same line as read
+        importer.setCopyIncludedLines(true);
+        importer.setProgressFile(progress, "include");
+        return importer.run();
     }
 
     /**
@@ -236,91 +229,44 @@ public class FrontierJournal extends CrawlerJournal {
      * @param params Map of options to apply
      * @param enough latch signalling 'enough' URIs queued to begin crawling
      */
-    private static void importQueuesFromLog(File source, Frontier frontier,
-            JSONObject params, int lines, CountDownLatch enough) {
-        BufferedReader br;
-        String read;
-        
-        long queuedAtStart = frontier.queuedUriCount();
-        long queuedDuringRecovery = 0;
-        int qLines = 0;
-        
-        boolean scheduleSuccesses = !params.isNull("scheduleSuccesses");
-        boolean scheduleFailures = !params.isNull("scheduleFailures");
-        boolean scheduleScheduleds = !params.isNull("scheduleScheduleds");
-        boolean scopeScheduleds = !params.isNull("scopeScheduleds");
-        boolean forceRevisit = !params.isNull("forceRevisit");
+    private static void importQueuesFromLog(File source, final Frontier frontier,
+            JSONObject params, final long lines, File progress,
+            final CountDownLatch enough) {
+        final long queuedAtStart = frontier.queuedUriCount();
         
-        DecideRule scope = (scopeScheduleds) ? frontier.getScope() : null;
-        
-        try {
-            // Scan log for all 'F+' lines: if not alreadyIncluded, schedule for
-            // visitation
-            br = ArchiveUtils.getBufferedReader(source);
-            try {
-                while ((read = br.readLine())!=null) {
-                    qLines++;
-                    if(read.length()<4) {
-                        continue;
-                    }
-                    String lineType = read.substring(0, 3);
-                    if(scheduleSuccesses && F_SUCCESS.equals(lineType) 
-                            || scheduleFailures && F_FAILURE.equals(lineType) 
-                            || scheduleScheduleds && F_ADD.equals(lineType)) {
-                        
-                        try {
-                            CrawlURI caUri = CrawlURI.fromHopsViaString(read.substring(3));
-                            
-                            //TODO:SPRINGY
-//                            caUri.setStateProvider(controller.getSheetManager());
-                            if(scope!=null) {
-                                // skip out-of-scope URIs if so configured
-                                if(!scope.accepts(caUri)) {
-                                    continue;
-                                }
-                            }
-                            
-                            caUri.setForceFetch(forceRevisit);
-                            
-                            frontier.schedule(caUri);
-                            
-                            queuedDuringRecovery =
-                                frontier.queuedUriCount() - queuedAtStart;
-                            if(((queuedDuringRecovery + 1) %
-                                    ENOUGH_TO_START_CRAWLING) == 0) {
-                                enough.countDown();
-                            }
-                        } catch (URIException e) {
-                            LOGGER.log(Level.WARNING, "bad URI during " +
-                                "log-recovery of queue contents ",e);
-                            // and continue...
-                        } catch (RuntimeException e) {
-                            LOGGER.log(Level.SEVERE, "exception during " +
-                                    "log-recovery of queue contents ",e);
-                            // and continue, though this may be risky
-                            // if the exception wasn't a trivial NPE 
-                            // or wrapped interrupted-exception...
-                        }
-                    }
-                    if((qLines%PROGRESS_INTERVAL)==0) {
-                        // every 1 million lines, print progress
-                        LOGGER.info(
-                                "through line " 
-                                + qLines + "/" + lines 
-                                + " queued count = " +
-                                frontier.queuedUriCount());
-                    }
+        // Scan log for all 'F+' lines: if not alreadyIncluded, schedule for
+        // visitation
+        Pattern tags = tagsPattern(params, 
+                "scheduleSuccesses", "scheduleFailures", "scheduleScheduleds");
+        RecoverLogImporter importer = new RecoverLogImporter(frontier, source) {
+            @Override
+            protected void chunkApplied(Chunk chunk) {
+                long queuedDuringRecovery =
+                    frontier.queuedUriCount() - queuedAtStart;
+                if (queuedDuringRecovery >= ENOUGH_TO_START_CRAWLING) {
+                    enough.countDown();
                 }
-            } catch (EOFException e) {
-                // no problem: untidy end of recovery journal
-            } finally {
-        	    br.close(); 
             }
+        };
+        importer.setAcceptTags(tags != null ? tags : Pattern.compile("(?!)"));
+        if (!params.isNull("scopeScheduleds")) {
+            importer.setScope(frontier.getScope(), sheetOverlaysManager(frontier));
+        }
+        importer.setForceFetch(!params.isNull("forceRevisit"));
+        importer.setProgressFile(progress, "schedule");
+        try {
+            importer.run();
+            importer.clearProgress();
         } catch (IOException e) {
             LOGGER.log(Level.WARNING,"problem importQueuesFromLog",e);
         }
         LOGGER.info("finished recovering frontier from "+source+" "
-                +qLines+" lines processed");
+                +importer.getLinesApplied()+"/"+lines+" lines processed");
         enough.countDown();
     }
+
+    private static SheetOverlaysManager sheetOverlaysManager(Frontier frontier) {
+        return (frontier instanceof AbstractFrontier)
+            ? ((AbstractFrontier) frontier).getSheetOverlaysManager() : null;
+    }
 }
@@ -48,7 +48,7 @@ extends URIAuthorityBasedQueueAssignmentPolicy {
         if (UURIFactory.HTTPS.equals(scheme)) {
             // If https and no port specified, add default https port to
             // distinguish https from http server without a port.
-            if (!candidate.matches(".+:[0-9]+")) {
+            if (!hasPort(candidate)) {
                 candidate += UURIFactory.HTTPS_PORT;
             }
         }
@@ -56,5 +56,23 @@ extends URIAuthorityBasedQueueAssignmentPolicy {
         return candidate.replace(':','#');
     }
 
+    /**
+     * Whether the authority ends with a port, as ":8443" (without
+     * compiling a regex per URI, as String.matches() would).
+     */
+    protected static boolean hasPort(String authority) {
+        int colon = authority.lastIndexOf(':');
+        if (colon < 1 || colon == authority.length() - 1) {
+            return false;
+        }
+        for (int i = colon + 1; i < authority.length(); i++) {
+            char c = authority.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
 
 }
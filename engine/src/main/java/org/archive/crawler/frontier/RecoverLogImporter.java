@@ -0,0 +1,482 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.frontier;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.archive.crawler.framework.Frontier;
+import org.archive.crawler.spring.SheetOverlaysManager;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.deciderules.DecideRule;
+import org.archive.spring.KeyedProperties;
+import org.archive.url.URIException;
+import org.archive.util.ArchiveUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Imports a recover-format log (a 3-character tag, then a URI with optional
+ * hops and via, per line; see {@link FrontierJournal}) into a frontier,
+ * either marking the URIs as already included or scheduling them.
+ *
+ * <p>The work is pipelined: one thread reads (and, for a .gz log,
+ * decompresses) the log in chunks of lines; a pool of threads parses the
+ * chunks' URIs and applies the scope; and the calling thread hands each
+ * chunk's URIs to the frontier, in log order, as one batch sorted so that
+ * URIs of the same host (and so, usually, the same queue and the same
+ * region of the already-included filter) are adjacent.
+ *
+ * <p>If a progress file is set, the number of lines applied is saved
+ * there after every chunk, so an interrupted import resumes where it left
+ * off. An import of several passes over one log (as
+ * {@link FrontierJournal#importRecoverLog} makes) names each pass, and
+ * passes already completed are skipped.
+ */
+public class RecoverLogImporter {
+    private static final Logger logger =
+        Logger.getLogger(RecoverLogImporter.class.getName());
+
+    protected static final int PROGRESS_INTERVAL = 1000000;
+
+    protected final Frontier frontier;
+    protected final File source;
+
+    protected int threads = Runtime.getRuntime().availableProcessors();
+    protected int chunkLines = 10000;
+    protected Pattern acceptTags = Pattern.compile(".*");
+    protected DecideRule scope;
+    protected SheetOverlaysManager sheetOverlaysManager;
+    protected boolean includeOnly = false;
+    protected boolean forceFetch = false;
+    protected boolean copyIncludedLines = false;
+    protected File progressFile;
+    protected String passName = "import";
+
+    protected long linesApplied = 0;
+    protected long urisApplied = 0;
+
+    public RecoverLogImporter(Frontier frontier, File source) {
+        this.frontier = frontier;
+        this.source = source;
+    }
+
+    /** Number of threads parsing and scoping lines. */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Lines per chunk, and so at most the URIs per frontier batch. */
+    public void setChunkLines(int chunkLines) {
+        this.chunkLines = chunkLines;
+    }
+
+    /** Only lines whose tag matches are imported. */
+    public void setAcceptTags(Pattern acceptTags) {
+        this.acceptTags = acceptTags;
+    }
+
+    /**
+     * Scope URIs must pass to be imported, or null to import all; if a
+     * SheetOverlaysManager is also given, overlays apply to the scope.
+     */
+    public void setScope(DecideRule scope, SheetOverlaysManager sheetOverlaysManager) {
+        this.scope = scope;
+        this.sheetOverlaysManager = sheetOverlaysManager;
+    }
+
+    /**
+     * Whether URIs are only marked as included, rather than scheduled.
+     */
+    public void setIncludeOnly(boolean includeOnly) {
+        this.includeOnly = includeOnly;
+    }
+
+    /** Whether scheduled URIs are force-fetched. */
+    public void setForceFetch(boolean forceFetch) {
+        this.forceFetch = forceFetch;
+    }
+
+    /**
+     * Whether included URIs are written to the frontier's journal as the
+     * line read, rather than as an "included" line.
+     */
+    public void setCopyIncludedLines(boolean copyIncludedLines) {
+        this.copyIncludedLines = copyIncludedLines;
+    }
+
+    /**
+     * File to save progress to, and resume from; null (the default) for
+     * none.
+     *
+     * @param passName name distinguishing this pass from others over the
+     *        same log saving progress to the same file
+     */
+    public void setProgressFile(File progressFile, String passName) {
+        this.progressFile = progressFile;
+        this.passName = passName;
+    }
+
+    public long getLinesApplied() {
+        return linesApplied;
+    }
+
+    public long getUrisApplied() {
+        return urisApplied;
+    }
+
+    /** A chunk of lines, and then the URIs parsed from them. */
+    protected static class Chunk {
+        final long firstLine;
+        final List<String> lines;
+        List<CrawlURI> uris;
+        List<String> uriLines;
+        Chunk(long firstLine, List<String> lines) {
+            this.firstLine = firstLine;
+            this.lines = lines;
+        }
+    }
+
+    /** marks the end of the log in the queue of chunks */
+    protected static final Future<Chunk> END = new FutureTask<Chunk>(() -> null);
+
+    /**
+     * Run the import.
+     *
+     * @return number of lines in the log
+     */
+    public long run() throws IOException {
+        JSONObject progress = loadProgress();
+        JSONObject completed = progress.optJSONObject("completed");
+        if (completed != null && completed.has(passName)) {
+            logger.info("skipping already-completed pass '" + passName
+                    + "' of import of " + source);
+            return completed.getLong(passName);
+        }
+        long skipLines = passName.equals(progress.optString("pass"))
+                ? progress.optLong("lines", 0) : 0;
+        if (skipLines > 0) {
+            logger.info("resuming import of " + source + " after line " + skipLines);
+        }
+        linesApplied = skipLines;
+
+        final ExecutorService parsers = Executors.newFixedThreadPool(threads);
+        final BlockingQueue<Future<Chunk>> chunks =
+            new ArrayBlockingQueue<Future<Chunk>>(threads * 2);
+        final IOException[] readFailure = new IOException[1];
+        final long skip = skipLines;
+        final long[] lineCount = new long[1];
+        Thread reader = new Thread(source.getName() + " reader") {
+            @Override
+            public void run() {
+                try {
+                    lineCount[0] = readChunks(skip, parsers, chunks);
+                } catch (IOException e) {
+                    readFailure[0] = e;
+                } catch (InterruptedException e) {
+                    // applier gave up
+                } finally {
+                    try {
+                        chunks.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        reader.start();
+
+        long nextReport = (linesApplied / PROGRESS_INTERVAL + 1) * PROGRESS_INTERVAL;
+        boolean finished = false;
+        try {
+            while (true) {
+                Future<Chunk> next = chunks.take();
+                if (next == END) {
+                    break;
+                }
+                Chunk chunk = next.get();
+                apply(chunk);
+                linesApplied = chunk.firstLine + chunk.lines.size();
+                saveProgress(linesApplied, false);
+                if (linesApplied >= nextReport) {
+                    logger.info("at line " + linesApplied
+                            + (includeOnly ? " (include-only)" : "")
+                            + " of " + source + "; discovered count = "
+                            + frontier.discoveredUriCount());
+                    nextReport += PROGRESS_INTERVAL;
+                }
+                chunkApplied(chunk);
+            }
+            finished = true;
+        } catch (InterruptedException e) {
+            throw new IOException("import of " + source + " interrupted at line "
+                    + linesApplied, e);
+        } catch (ExecutionException e) {
+            throw new IOException("import of " + source + " failed after line "
+                    + linesApplied, e.getCause());
+        } finally {
+            parsers.shutdownNow();
+            if (!finished) {
+                // stop the reader, which may be waiting to queue a chunk
+                reader.interrupt();
+            }
+        }
+        if (readFailure[0] != null) {
+            throw readFailure[0];
+        }
+        saveProgress(lineCount[0], true);
+        return lineCount[0];
+    }
+
+    /**
+     * Read the log in chunks, submitting each for parsing and queueing its
+     * future in log order.
+     *
+     * @return number of lines in the log
+     */
+    protected long readChunks(long skipLines, ExecutorService parsers,
+            BlockingQueue<Future<Chunk>> chunks) throws IOException, InterruptedException {
+        long lineNumber = 0;
+        BufferedReader br = ArchiveUtils.getBufferedReader(source);
+        try {
+            String line;
+            while (lineNumber < skipLines && (line = br.readLine()) != null) {
+                lineNumber++;
+            }
+            List<String> lines = new ArrayList<String>(chunkLines);
+            long firstLine = lineNumber;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                lines.add(line);
+                if (lines.size() >= chunkLines) {
+                    submit(new Chunk(firstLine, lines), parsers, chunks);
+                    lines = new ArrayList<String>(chunkLines);
+                    firstLine = lineNumber;
+                }
+            }
+            if (!lines.isEmpty()) {
+                submit(new Chunk(firstLine, lines), parsers, chunks);
+            }
+        } catch (EOFException e) {
+            // expected in some uncleanly-closed recovery logs; ignore
+        } finally {
+            br.close();
+        }
+        return lineNumber;
+    }
+
+    protected void submit(final Chunk chunk, ExecutorService parsers,
+            BlockingQueue<Future<Chunk>> chunks) throws InterruptedException {
+        chunks.put(parsers.submit(new Callable<Chunk>() {
+            public Chunk call() {
+                return parse(chunk);
+            }
+        }));
+    }
+
+    /**
+     * Parse (and scope) a chunk's lines, on a parser thread.
+     */
+    protected Chunk parse(Chunk chunk) {
+        Matcher m = acceptTags.matcher("");
+        chunk.uris = new ArrayList<CrawlURI>(chunk.lines.size());
+        chunk.uriLines = new ArrayList<String>(chunk.lines.size());
+        for (String line : chunk.lines) {
+            if (line.length() < 4) {
+                continue;
+            }
+            m.reset(line.substring(0, 3));
+            if (!m.matches()) {
+                continue;
+            }
+            try {
+                CrawlURI curi = CrawlURI.fromHopsViaString(line.substring(3).trim());
+                if (scope != null && !inScope(curi)) {
+                    continue;
+                }
+                chunk.uris.add(curi);
+                chunk.uriLines.add(line);
+            } catch (URIException e) {
+                logger.log(Level.WARNING, "Problem line: " + line, e);
+            }
+        }
+        chunk.lines.clear();
+        return chunk;
+    }
+
+    protected boolean inScope(CrawlURI curi) {
+        if (sheetOverlaysManager == null) {
+            return scope.accepts(curi);
+        }
+        sheetOverlaysManager.applyOverlaysTo(curi);
+        try {
+            KeyedProperties.loadOverridesFrom(curi);
+            return scope.accepts(curi);
+        } finally {
+            KeyedProperties.clearOverridesFrom(curi);
+        }
+    }
+
+    /** orders URIs by host (then path), grouping them by queue */
+    protected static final Comparator<CrawlURI> BY_URI =
+        Comparator.comparing(CrawlURI::getURI);
+
+    /**
+     * Hand a parsed chunk's URIs to the frontier, on the calling thread.
+     */
+    protected void apply(Chunk chunk) {
+        if (includeOnly) {
+            FrontierJournal journal = frontier.getFrontierJournal();
+            if (journal != null) {
+                // journal in log order
+                for (int i = 0; i < chunk.uris.size(); i++) {
+                    if (copyIncludedLines) {
+                        journal.writeLine(chunk.uriLines.get(i));
+                    } else {
+                        journal.included(chunk.uris.get(i));
+                    }
+                }
+            }
+            List<CrawlURI> sorted = new ArrayList<CrawlURI>(chunk.uris);
+            sorted.sort(BY_URI);
+            for (CrawlURI curi : sorted) {
+                frontier.considerIncluded(curi);
+            }
+            urisApplied += chunk.uris.size();
+        } else {
+            for (CrawlURI curi : chunk.uris) {
+                curi.setForceFetch(forceFetch);
+            }
+            chunk.uris.sort(BY_URI);
+            try {
+                frontier.scheduleAll(chunk.uris);
+                urisApplied += chunk.uris.size();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "exception scheduling batch of "
+                        + chunk.uris.size() + " from line " + chunk.firstLine
+                        + " of " + source + "; scheduling singly", e);
+                // so that only the offending URIs are lost (any already
+                // scheduled are dropped as already seen)
+                for (CrawlURI curi : chunk.uris) {
+                    try {
+                        frontier.schedule(curi);
+                        urisApplied++;
+                    } catch (RuntimeException ex) {
+                        logger.log(Level.SEVERE, "exception scheduling " 
+                                + curi + " from " + source, ex);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Called after each chunk is applied; by default does nothing.
+     */
+    protected void chunkApplied(Chunk chunk) {
+    }
+
+    protected JSONObject loadProgress() {
+        if (progressFile == null || !progressFile.exists()) {
+            return new JSONObject();
+        }
+        try {
+            JSONObject progress = new JSONObject(new String(
+                    Files.readAllBytes(progressFile.toPath()), StandardCharsets.UTF_8));
+            if (!source.getAbsolutePath().equals(progress.optString("source"))
+                    || source.length() != progress.optLong("length")
+                    || source.lastModified() != progress.optLong("lastModified")) {
+                logger.warning("ignoring " + progressFile
+                        + ", which is for a different or changed log");
+                return new JSONObject();
+            }
+            return progress;
+        } catch (IOException | JSONException e) {
+            logger.log(Level.WARNING, "ignoring unreadable " + progressFile, e);
+            return new JSONObject();
+        }
+    }
+
+    /**
+     * Save progress, if a progress file is set. If it can't be written,
+     * the import carries on without saving progress.
+     */
+    protected void saveProgress(long lines, boolean passComplete) {
+        if (progressFile == null) {
+            return;
+        }
+        JSONObject progress = loadProgress();
+        progress.put("source", source.getAbsolutePath());
+        progress.put("length", source.length());
+        progress.put("lastModified", source.lastModified());
+        if (passComplete) {
+            JSONObject completed = progress.optJSONObject("completed");
+            if (completed == null) {
+                completed = new JSONObject();
+                progress.put("completed", completed);
+            }
+            completed.put(passName, lines);
+            progress.remove("pass");
+            progress.remove("lines");
+        } else {
+            progress.put("pass", passName);
+            progress.put("lines", lines);
+        }
+        File tmp = new File(progressFile.getPath() + ".tmp");
+        try {
+            Files.write(tmp.toPath(), progress.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), progressFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "unable to save progress to " + progressFile
+                    + "; continuing without", e);
+            progressFile = null;
+        }
+    }
+
+    /**
+     * Forget all progress, once every pass of an import is done.
+     */
+    public void clearProgress() {
+        if (progressFile != null && progressFile.exists() && !progressFile.delete()) {
+            logger.warning("unable to delete " + progressFile);
+        }
+    }
+}
@@ -35,6 +35,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
@@ -358,6 +359,64 @@ implements Closeable,
         }
     }
 
+    /**
+     * Arrange for each of the given CrawlURIs to be visited, if not already
+     * enqueued/completed. The URIs not forced are offered to the 
+     * already-seen filter as one batch; those it passes come back together
+     * to {@link #receiveAll(List)}, to be enqueued a queue at a time.
+     *
+     * @see org.archive.crawler.framework.Frontier#scheduleAll(java.util.Collection)
+     */
+    @Override
+    public void scheduleAll(Collection<CrawlURI> curis) {
+        List<String> keys = new ArrayList<String>(curis.size());
+        List<CrawlURI> unforced = new ArrayList<CrawlURI>(curis.size());
+        for (CrawlURI curi : curis) {
+            sheetOverlaysManager.applyOverlaysTo(curi);
+            try {
+                KeyedProperties.loadOverridesFrom(curi);
+                if(curi.getClassKey()==null) {
+                    // remedial processing
+                    preparer.prepare(curi);
+                }
+                if (curi.forceFetch()) {
+                    processScheduleIfUnique(curi);
+                } else {
+                    keys.add(curi.getCanonicalString());
+                    unforced.add(curi);
+                }
+            } finally {
+                KeyedProperties.clearOverridesFrom(curi); 
+            }
+        }
+        if (!unforced.isEmpty()) {
+            uriUniqFilter.addAll(keys, unforced);
+        }
+    }
+
+    /**
+     * Accept the given CrawlURIs for scheduling, as they have passed the
+     * already-seen filter together. Those bound for the same queue are
+     * enqueued under a single lookup and lock of the queue, in the order
+     * given. 
+     */
+    @Override
+    public void receiveAll(List<CrawlURI> curis) {
+        Map<String, List<CrawlURI>> byClassKey =
+            new LinkedHashMap<String, List<CrawlURI>>();
+        for (CrawlURI curi : curis) {
+            List<CrawlURI> group = byClassKey.get(curi.getClassKey());
+            if (group == null) {
+                group = new ArrayList<CrawlURI>();
+                byClassKey.put(curi.getClassKey(), group);
+            }
+            group.add(curi);
+        }
+        for (List<CrawlURI> group : byClassKey.values()) {
+            sendAllToQueue(group);
+        }
+    }
+
     /**
      * Arrange for the given CrawlURI to be visited, if it is not
      * already scheduled/completed.
@@ -411,6 +470,48 @@ implements Closeable,
         largestQueues.update(wq.getClassKey(), wq.getCount());
     }
 
+    /**
+     * Send CrawlURIs all of the same classKey to their queue, as if by
+     * {@link #receive(CrawlURI)} on each. 
+     * 
+     * @param curis
+     */
+    protected void sendAllToQueue(List<CrawlURI> curis) {
+        WorkQueue wq = getQueueFor(curis.get(0).getClassKey());
+        synchronized(wq) {
+            int originalPrecedence = wq.getPrecedence();
+            for (CrawlURI curi : curis) {
+                sheetOverlaysManager.applyOverlaysTo(curi);
+                try {
+                    KeyedProperties.loadOverridesFrom(curi);
+                    prepForFrontier(curi);
+                    wq.enqueue(this, curi);
+                    // always take budgeting values from current curi
+                    // (whose overlay settings should be active here)
+                    wq.setSessionBudget(getBalanceReplenishAmount());
+                    wq.setTotalBudget(getQueueTotalBudget());
+                    if(!wq.isRetired()) {
+                        incrementQueuedUriCount();
+                    }
+                    // Update recovery log.
+                    doJournalAdded(curi);
+                } finally {
+                    KeyedProperties.clearOverridesFrom(curi); 
+                }
+            }
+            if(!wq.isRetired()) {
+                int currentPrecedence = wq.getPrecedence();
+                if(!wq.isManaged() || currentPrecedence < originalPrecedence) {
+                    // queue newly filled or bumped up in precedence; ensure enqueuing
+                    // at precedence level (perhaps duplicate; if so that's handled elsewhere)
+                    deactivateQueue(wq);
+                }
+            }
+            wq.makeDirty();
+        }
+        largestQueues.update(wq.getClassKey(), wq.getCount());
+    }
+
     /**
      * Put the given queue on the readyClassQueues queue
      * @param wq
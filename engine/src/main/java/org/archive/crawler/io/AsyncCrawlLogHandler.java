@@ -0,0 +1,500 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.archive.modules.CrawlURI;
+import org.archive.util.ArchiveUtils;
+import org.archive.util.MpscRingBuffer;
+
+/**
+ * Log handler (for crawl.log) which hands each line, already formatted and
+ * encoded as UTF-8 by the logging thread, to a single writer thread
+ * through a lock-free ring buffer. The writer appends to a large buffered
+ * (and optionally gzip-compressed) stream.
+ *
+ * <p>Guarantees:
+ * <ul>
+ * <li>Ordering: lines from any one thread are written in the order that
+ * thread logged them. Lines from different threads are written in the
+ * order they entered the buffer, which may differ slightly from the order
+ * of their timestamps.
+ * <li>Completeness: no line is dropped while the handler is open. When
+ * the buffer is full, logging threads wait for the writer to catch up.
+ * Lines logged after {@link #close()} are discarded. A failure writing
+ * or rotating is reported to the ErrorManager and the writer carries on
+ * with the next line; should the writer thread nonetheless die, lines
+ * are discarded (and counted) rather than left waiting forever.
+ * <li>Durability: lines are passed to the operating system whenever the
+ * writer finds the buffer empty, and in any case at least every
+ * {@link #getFlushIntervalMs()}. On {@link #rotate(String, boolean)} and
+ * {@link #close()}, every line logged before the call is written and
+ * forced to disk before the call returns. Lines still in memory are lost
+ * if the JVM dies.
+ * </ul>
+ *
+ * <p>Besides explicit (checkpoint) rotation, the log may be rotated when it
+ * exceeds {@link #getRotateBytes()} or has been open longer than
+ * {@link #getRotateIntervalMs()}; such generations take a timestamp
+ * suffix.
+ */
+public class AsyncCrawlLogHandler extends Handler {
+    protected static final int OUTPUT_BUFFER_SIZE = 256 * 1024;
+    protected static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** base name of log, eg ".../crawl.log" */
+    protected final File baseFile;
+    protected final boolean compress;
+    protected final MpscRingBuffer<Object> ring;
+    protected final Consumer<File> rotationListener;
+
+    protected long flushIntervalMs = 1000;
+    protected long rotateBytes = 0;
+    protected long rotateIntervalMs = 0;
+
+    protected volatile boolean closed = false;
+    protected Thread writerThread;
+    /** set once the writer thread has ended, normally or not */
+    protected volatile boolean writerDone = false;
+    protected AtomicLong droppedLines = new AtomicLong(0);
+
+    // writer thread state
+    protected FileOutputStream fileOut;
+    protected GZIPOutputStream gzipOut;
+    protected OutputStream out;
+    protected long bytesWritten = 0;
+    protected long openedTime;
+    protected long lastFlushTime;
+    protected boolean dirty = false;
+    protected List<File> generations = new ArrayList<File>();
+
+    /**
+     * A rotation request, carried through the ring so that it takes effect
+     * after exactly the lines logged before it.
+     */
+    protected static class Rotation {
+        final String suffix;
+        final boolean mergeOld;
+        final CountDownLatch done = new CountDownLatch(1);
+        File result;
+        IOException failure;
+
+        Rotation(String suffix, boolean mergeOld) {
+            this.suffix = suffix;
+            this.mergeOld = mergeOld;
+        }
+    }
+
+    /**
+     * @param baseFile log file name, eg crawl.log (".gz" is appended to the
+     * active and rotated files if compressing)
+     * @param formatter formatter for log lines
+     * @param bufferLines number of lines the ring buffer can hold
+     * @param compress whether to gzip the output
+     * @param rotationListener told of each newly rotated-off file; may be
+     * null
+     */
+    public AsyncCrawlLogHandler(File baseFile, Formatter formatter,
+            int bufferLines, boolean compress, Consumer<File> rotationListener)
+            throws IOException {
+        this.baseFile = baseFile;
+        this.compress = compress;
+        this.ring = new MpscRingBuffer<Object>(bufferLines);
+        this.rotationListener = rotationListener;
+        setFormatter(formatter);
+        open();
+        writerThread = new Thread(this::runWriter,
+                "AsyncCrawlLogHandler " + baseFile.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+
+    /** size beyond which the log is rotated; 0 means never */
+    public long getRotateBytes() {
+        return rotateBytes;
+    }
+    public void setRotateBytes(long rotateBytes) {
+        this.rotateBytes = rotateBytes;
+    }
+
+    /** age beyond which the log is rotated; 0 means never */
+    public long getRotateIntervalMs() {
+        return rotateIntervalMs;
+    }
+    public void setRotateIntervalMs(long rotateIntervalMs) {
+        this.rotateIntervalMs = rotateIntervalMs;
+    }
+
+    /**
+     * @return number of lines discarded because the writer thread died
+     */
+    public long getDroppedLines() {
+        return droppedLines.get();
+    }
+
+    /**
+     * @return the file currently written
+     */
+    public File getActiveFile() {
+        return new File(baseFile.getPath() + (compress ? ".gz" : ""));
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        byte[] line;
+        try {
+            line = encode(record);
+        } catch (RuntimeException e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+        if (!enqueue(line)) {
+            if (droppedLines.getAndIncrement() == 0) {
+                reportError("log writer thread has stopped; discarding lines",
+                        null, ErrorManager.WRITE_FAILURE);
+            }
+        }
+    }
+
+    /**
+     * Add an item to the ring, waiting for room unless the writer thread
+     * has ended (when the item could never be taken).
+     *
+     * @return false if the item was not added
+     */
+    protected boolean enqueue(Object item) {
+        int attempts = 0;
+        while (!ring.offer(item)) {
+            if (writerDone) {
+                return false;
+            }
+            if (attempts++ < 100) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(50000);
+            }
+        }
+        return true;
+    }
+
+    protected byte[] encode(LogRecord record) {
+        Formatter formatter = getFormatter();
+        Object[] params = record.getParameters();
+        if (formatter instanceof UriProcessingFormatter && params != null
+                && params.length > 0 && params[0] instanceof CrawlURI) {
+            // skip the intermediate String
+            return utf8(((UriProcessingFormatter) formatter)
+                    .formatToBuffer((CrawlURI) params[0]));
+        }
+        return formatter.format(record).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encode chars as UTF-8, sizing the result exactly. (An unpaired
+     * surrogate becomes '?', as with String.getBytes().)
+     */
+    protected static byte[] utf8(CharSequence cs) {
+        int len = cs.length();
+        int size = 0;
+        for (int i = 0; i < len; i++) {
+            char c = cs.charAt(i);
+            if (c < 0x80) {
+                size += 1;
+            } else if (c < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                    && Character.isLowSurrogate(cs.charAt(i + 1))) {
+                size += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                size += 1;
+            } else {
+                size += 3;
+            }
+        }
+        byte[] bytes = new byte[size];
+        int j = 0;
+        for (int i = 0; i < len; i++) {
+            char c = cs.charAt(i);
+            if (c < 0x80) {
+                bytes[j++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[j++] = (byte) (0xc0 | (c >> 6));
+                bytes[j++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                    && Character.isLowSurrogate(cs.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, cs.charAt(++i));
+                bytes[j++] = (byte) (0xf0 | (cp >> 18));
+                bytes[j++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                bytes[j++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                bytes[j++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                bytes[j++] = (byte) '?';
+            } else {
+                bytes[j++] = (byte) (0xe0 | (c >> 12));
+                bytes[j++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                bytes[j++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Rotate the log: once all lines logged before this call are written,
+     * the active file is closed and renamed with the given suffix, and a
+     * new active file begun.
+     *
+     * @param suffix suffix for the rotated file, eg ".cp00001-..."
+     * @param mergeOld if true, previously rotated files are concatenated
+     * into the newly rotated one, and deleted
+     * @return the rotated file
+     */
+    public File rotate(String suffix, boolean mergeOld) throws IOException {
+        Rotation rotation = new Rotation(suffix, mergeOld);
+        if (!enqueue(rotation)) {
+            throw new IOException("log writer thread has stopped");
+        }
+        try {
+            while (!rotation.done.await(1, TimeUnit.SECONDS)) {
+                if (writerDone) {
+                    throw new IOException("log writer thread has stopped");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted awaiting rotation", e);
+        }
+        if (rotation.failure != null) {
+            throw rotation.failure;
+        }
+        return rotation.result;
+    }
+
+    /**
+     * Lines are flushed by the writer thread; this is a no-op.
+     */
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    protected void open() throws IOException {
+        fileOut = new FileOutputStream(getActiveFile(), false);
+        gzipOut = compress
+                ? new GZIPOutputStream(fileOut, OUTPUT_BUFFER_SIZE, true)
+                : null;
+        out = new BufferedOutputStream(gzipOut != null ? gzipOut : fileOut,
+                OUTPUT_BUFFER_SIZE);
+        bytesWritten = 0;
+        openedTime = System.currentTimeMillis();
+        lastFlushTime = openedTime;
+    }
+
+    protected void closeStream() throws IOException {
+        out.flush();
+        if (gzipOut != null) {
+            gzipOut.finish();
+        }
+        fileOut.getChannel().force(false);
+        out.close();
+    }
+
+    protected void runWriter() {
+        try {
+            writeLoop();
+        } finally {
+            writerDone = true;
+        }
+    }
+
+    protected void writeLoop() {
+        while (true) {
+            Object item = ring.poll();
+            try {
+                if (item == null) {
+                    if (closed && ring.isEmpty()) {
+                        try {
+                            closeStream();
+                        } catch (IOException e) {
+                            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+                        }
+                        return;
+                    }
+                    idle();
+                    continue;
+                }
+                if (item instanceof byte[]) {
+                    byte[] line = (byte[]) item;
+                    out.write(line);
+                    bytesWritten += line.length;
+                    dirty = true;
+                    long now = System.currentTimeMillis();
+                    if (now - lastFlushTime >= flushIntervalMs) {
+                        out.flush();
+                        dirty = false;
+                        lastFlushTime = now;
+                    }
+                    if (rotateBytes > 0 && bytesWritten >= rotateBytes) {
+                        notifyRotated(doRotate(timestampSuffix(), false));
+                    }
+                } else {
+                    Rotation rotation = (Rotation) item;
+                    try {
+                        rotation.result = doRotate(rotation.suffix, rotation.mergeOld);
+                    } catch (IOException e) {
+                        rotation.failure = e;
+                    } catch (RuntimeException e) {
+                        rotation.failure = new IOException(e);
+                    } finally {
+                        rotation.done.countDown();
+                    }
+                }
+            } catch (IOException e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+            } catch (RuntimeException e) {
+                // eg from a rotation listener: carry on with the next item,
+                // as logging threads depend on this one to drain the ring
+                reportError(null, e, ErrorManager.GENERIC_FAILURE);
+            }
+        }
+    }
+
+    /**
+     * Nothing to write: flush, rotate if due, then pause briefly.
+     */
+    protected void idle() throws IOException {
+        long now = System.currentTimeMillis();
+        if (dirty) {
+            // cleared first, so a failing flush is reported once, not
+            // on every idle pass
+            dirty = false;
+            lastFlushTime = now;
+            out.flush();
+        }
+        if (rotateIntervalMs > 0 && now - openedTime >= rotateIntervalMs
+                && bytesWritten > 0) {
+            notifyRotated(doRotate(timestampSuffix(), false));
+        }
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+    }
+
+    /**
+     * @return suffix for a size- or age-triggered rotation: the time, and
+     * if a file of that name already exists (more than one rotation in a
+     * second), a serial number
+     */
+    protected String timestampSuffix() {
+        String suffix = "." + ArchiveUtils.get14DigitDate();
+        String unique = suffix;
+        for (int i = 1; new File(baseFile.getPath() + unique
+                + (compress ? ".gz" : "")).exists(); i++) {
+            unique = suffix + "-" + i;
+        }
+        return unique;
+    }
+
+    protected void notifyRotated(File rotated) {
+        if (rotationListener != null) {
+            rotationListener.accept(rotated);
+        }
+    }
+
+    /**
+     * Close and rename the active file, and open a new one. Writer thread
+     * only.
+     */
+    protected File doRotate(String suffix, boolean mergeOld) throws IOException {
+        closeStream();
+        File rotated = new File(baseFile.getPath() + suffix
+                + (compress ? ".gz" : ""));
+        try {
+            if (mergeOld && !generations.isEmpty()) {
+                // concatenated gzip members form a valid gzip file
+                try (OutputStream merged = new BufferedOutputStream(
+                        new FileOutputStream(rotated), OUTPUT_BUFFER_SIZE)) {
+                    for (File old : generations) {
+                        copy(old, merged);
+                    }
+                    copy(getActiveFile(), merged);
+                }
+                for (File old : generations) {
+                    old.delete();
+                }
+                getActiveFile().delete();
+                generations.clear();
+            } else if (!getActiveFile().renameTo(rotated)) {
+                throw new IOException("unable to rename " + getActiveFile()
+                        + " to " + rotated);
+            }
+            generations.add(rotated);
+        } finally {
+            open();
+        }
+        return rotated;
+    }
+
+    protected static void copy(File file, OutputStream out) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            IOUtils.copy(in, out);
+        }
+    }
+}
@@ -75,6 +75,17 @@ extends Formatter implements Preformatter, CoreAttributeConstants {
             return cachedFormat.get();
         }
         CrawlURI curi = (CrawlURI)lr.getParameters()[0];
+        return formatToBuffer(curi).toString();
+    }
+
+    /**
+     * Assemble the log line for the given URI in this thread's reusable
+     * buffer.
+     * 
+     * @param curi completed CrawlURI
+     * @return buffer holding the line (valid until this thread's next use)
+     */
+    protected StringBuilder formatToBuffer(CrawlURI curi) {
         String length = NA;
         String mime = null;
         if (curi.isHttpTransaction()) {
@@ -155,7 +166,7 @@ extends Formatter implements Preformatter, CoreAttributeConstants {
         }
         
         buffer.append("\n");
-        return buffer.toString(); 
+        return buffer; 
     }
 
     /**
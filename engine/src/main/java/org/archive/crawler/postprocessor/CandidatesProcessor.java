@@ -23,6 +23,12 @@ package org.archive.crawler.postprocessor;
 import static org.archive.modules.fetcher.FetchStatusCodes.S_DEFERRED;
 import static org.archive.modules.fetcher.FetchStatusCodes.S_PREREQUISITE_UNSCHEDULABLE_FAILURE;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.archive.url.URIException;
 import org.archive.crawler.framework.Frontier;
 import org.archive.crawler.reporting.CrawlerLoggerModule;
@@ -131,6 +137,25 @@ public class CandidatesProcessor extends Processor {
         kp.put("processErrorOutlinks",errorOutlinks);
     }
     
+    {
+        setScheduleBatchSize(0);
+    }
+    public int getScheduleBatchSize() {
+        return (Integer) kp.get("scheduleBatchSize");
+    }
+    /**
+     * If greater than zero, outlinks which pass the candidate chain are not
+     * scheduled one at a time, but collected into batches of up to this many
+     * URIs. Within a page's batch, candidates with the same canonical form are
+     * passed to the frontier only once, and the rest are handed over in a
+     * single {@link Frontier#scheduleAll(Collection)} call, which may group
+     * them by target queue. Default is 0 (schedule each candidate as soon
+     * as it passes the candidate chain).
+     */
+    public void setScheduleBatchSize(int batchSize) {
+        kp.put("scheduleBatchSize",batchSize);
+    }
+
     protected SeedModule seeds;
     public SeedModule getSeeds() {
         return this.seeds;
@@ -176,6 +201,24 @@ public class CandidatesProcessor extends Processor {
      * @throws InterruptedException
      */
     public int runCandidateChain(CrawlURI candidate, CrawlURI source) throws InterruptedException {
+        return runCandidateChain(candidate, source, null);
+    }
+
+    /**
+     * Run candidatesChain on a single candidate CrawlURI; if its reported
+     * status is nonnegative, either schedule to frontier or, if a batch is
+     * supplied, add it to the batch for later scheduling.
+     *
+     * @param candidate CrawlURI to consider
+     * @param source CrawlURI from which candidate was discovered/derived (or
+     * null)
+     * @param batch if non-null, collects candidates to be scheduled later
+     * via {@link #scheduleBatch(List, CrawlURI)}
+     * @return candidate's status code at end of candidate chain execution
+     * @throws InterruptedException
+     */
+    public int runCandidateChain(CrawlURI candidate, CrawlURI source,
+            List<CrawlURI> batch) throws InterruptedException {
         // at least for duration of candidatechain, offer
         // access to full CrawlURI of via
         candidate.setFullVia(source); 
@@ -204,6 +247,8 @@ public class CandidatesProcessor extends Processor {
                      */
                     candidate.setForceFetch(true);
                     getSeeds().addSeed(candidate); // triggers scheduling
+                } else if (batch != null) {
+                    batch.add(candidate);
                 } else {
                     
                     frontier.schedule(candidate);
@@ -213,7 +258,9 @@ public class CandidatesProcessor extends Processor {
             return statusAfterCandidateChain;
         } finally {
             KeyedProperties.clearOverridesFrom(candidate); 
-            KeyedProperties.loadOverridesFrom(source);
+            if (source != null) {
+                KeyedProperties.loadOverridesFrom(source);
+            }
         }        
     }
     
@@ -254,12 +301,58 @@ public class CandidatesProcessor extends Processor {
         }
 
         // (3) Handle outlinks (usual bulk of discoveries) 
-        for (CrawlURI candidate: curi.getOutLinks()) {
-            
-            runCandidateChain(candidate, curi);
+        int batchSize = getScheduleBatchSize();
+        if (batchSize <= 0) {
+            for (CrawlURI candidate: curi.getOutLinks()) {
+                
+                runCandidateChain(candidate, curi);
 
+            }
+            return;
         }
 
+        List<CrawlURI> batch = new ArrayList<CrawlURI>(
+                Math.min(batchSize, curi.getOutLinks().size()));
+        Set<String> batchedCanonicals = new HashSet<String>();
+        for (CrawlURI candidate: curi.getOutLinks()) {
+            int sizeBefore = batch.size();
+            runCandidateChain(candidate, curi, batch);
+            if (batch.size() > sizeBefore && !candidate.forceFetch()
+                    && !batchedCanonicals.add(candidate.getCanonicalString())) {
+                // same canonical URI already headed to frontier from this page
+                batch.remove(batch.size() - 1);
+            }
+            if (batch.size() >= batchSize) {
+                scheduleBatch(batch, curi);
+                batch.clear();
+            }
+        }
+        scheduleBatch(batch, curi);
+    }
+
+    /**
+     * Hand a batch of candidates that have passed the candidate chain to the
+     * frontier. As when scheduling individually, the source's overrides are
+     * not in effect while the frontier handles the candidates.
+     *
+     * @param batch candidates to schedule
+     * @param source CrawlURI from which candidates were discovered (or
+     * null)
+     */
+    public void scheduleBatch(List<CrawlURI> batch, CrawlURI source) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            if (source != null) {
+                KeyedProperties.clearOverridesFrom(source);
+            }
+            frontier.scheduleAll(batch);
+        } finally {
+            if (source != null) {
+                KeyedProperties.loadOverridesFrom(source);
+            }
+        }
     }
     
     /**
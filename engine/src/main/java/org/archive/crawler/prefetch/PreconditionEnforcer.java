@@ -35,6 +35,7 @@ import org.archive.modules.ProcessResult;
 import org.archive.modules.Processor;
 import org.archive.modules.credential.Credential;
 import org.archive.modules.credential.CredentialStore;
+import org.archive.modules.net.CachingDnsResolver;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.CrawlServer;
 import org.archive.modules.net.RobotsPolicy;
@@ -135,6 +136,21 @@ public class PreconditionEnforcer extends Processor  {
         this.serverCache = serverCache;
     }
     
+    /**
+     * Optional shared DNS resolver. If set, a host whose IP has expired is
+     * refreshed from the resolver's still-current cached answer, if any,
+     * rather than deferred for another 'dns:' lookup. (A host's first
+     * lookup always goes through a 'dns:' URI, so it is recorded.)
+     */
+    protected CachingDnsResolver dnsResolver;
+    public CachingDnsResolver getDnsResolver() {
+        return this.dnsResolver;
+    }
+    @Autowired(required=false)
+    public void setDnsResolver(CachingDnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+    }
+    
     protected CrawlerLoggerModule loggerModule;
     public CrawlerLoggerModule getLoggerModule() {
         return this.loggerModule;
@@ -291,7 +307,10 @@ public class PreconditionEnforcer extends Processor  {
         // cancel further fetch-processing of this URI, because
         // the domain is unresolvable
         CrawlHost ch = serverCache.getHostFor(curi.getUURI());
-        if (ch == null || ch.getIP() == null && !isIpExpired(curi)) {
+        // checked only once, as it may refresh the host's IP from the
+        // resolver's cache
+        boolean ipExpired = ch != null && isIpExpired(curi);
+        if (ch == null || ch.getIP() == null && !ipExpired) {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine( "no dns for " + ch +
                     " cancelling processing for CrawlURI " + curi.toString());
@@ -303,7 +322,7 @@ public class PreconditionEnforcer extends Processor  {
 
         // If we haven't done a dns lookup  and this isn't a dns uri
         // shoot that off and defer further processing
-        if (isIpExpired(curi) && !curi.getUURI().getScheme().equals("dns")) {
+        if (ipExpired && !curi.getUURI().getScheme().equals("dns")) {
             logger.fine("Deferring processing of CrawlURI " + curi.toString()
                 + " for dns lookup.");
             String preq = "dns:" + ch.getHostName();
@@ -355,7 +374,30 @@ public class PreconditionEnforcer extends Processor  {
             duration *= 1000;
         }
 
-        return (duration + host.getIpFetched()) < System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        if ((duration + host.getIpFetched()) >= now) {
+            return false;
+        }
+        return !refreshFromResolverCache(host, now);
+    }
+
+    /**
+     * Update the host's IP from the shared resolver's cached answer, if
+     * there is an unexpired one with an address.
+     *
+     * @return true if the host was updated
+     */
+    protected boolean refreshFromResolverCache(CrawlHost host, long now) {
+        if (dnsResolver == null) {
+            return false;
+        }
+        CachingDnsResolver.DnsResult cached =
+            dnsResolver.getCached(host.getHostName());
+        if (cached == null || cached.isFailure() || cached.isNegative()) {
+            return false;
+        }
+        host.setIP(cached.getAddress(), cached.getRemainingTtlSeconds(now));
+        return true;
     }
 
    /**
@@ -0,0 +1,368 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.prefetch;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.crawler.postprocessor.CandidatesProcessor;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.Processor;
+import org.archive.modules.SchedulingConstants;
+import org.archive.modules.extractor.Hop;
+import org.archive.modules.extractor.LinkContext;
+import org.archive.modules.net.CrawlHost;
+import org.archive.modules.net.CrawlServer;
+import org.archive.modules.net.ServerCache;
+import org.archive.modules.net.ServerCacheListener;
+import org.archive.url.URIException;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Speculatively schedules the DNS lookup and robots.txt fetch for each
+ * newly-discovered host and server, rather than waiting for the first
+ * URI of that host to reach the {@link PreconditionEnforcer} and be
+ * deferred behind them.
+ *
+ * <p>Placed in the CandidateChain (after scoping), this processor makes
+ * sure the {@link ServerCache} entries for each in-scope candidate exist
+ * at discovery time. As a {@link ServerCacheListener}, it is told of every
+ * CrawlHost and CrawlServer created while it processes a candidate, and
+ * queues a 'dns:' URI or a '/robots.txt' URI (with the candidate's scheme)
+ * for it; hosts and servers created elsewhere, such as for out-of-scope
+ * URIs, are ignored. A background thread runs these through the
+ * candidate chain as ordinary high-priority prerequisites of the
+ * candidate, so they are scoped, fetched, logged and written (as the usual
+ * dns: and robots.txt records) just as PreconditionEnforcer's would be.
+ *
+ * <p>DNS lookups go to the frontier's own 'dns:' queue, and so proceed
+ * while the host's first URI is still waiting its turn; the robots.txt
+ * is placed ahead of that first URI in the host's queue. Either way the
+ * first URI usually finds its preconditions already satisfied, rather
+ * than costing an extra trip through its queue (and politeness delay).
+ * A robots.txt whose host's 'dns:' lookup has been prefetched is held back
+ * until that lookup completes (or maxDnsWaitSeconds pass), so it does not
+ * trigger a second lookup of its own.
+ *
+ * <p>If the pending queue is full, further speculative prerequisites are
+ * dropped (and counted); the PreconditionEnforcer still ensures they are
+ * fetched when actually needed.
+ */
+public class PreconditionPrefetcher extends Processor
+implements ServerCacheListener {
+    @SuppressWarnings("unused")
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger =
+        Logger.getLogger(PreconditionPrefetcher.class.getName());
+
+    /**
+     * Whether to schedule 'dns:' lookups for new hosts.
+     */
+    protected boolean prefetchDns = true;
+    public boolean getPrefetchDns() {
+        return prefetchDns;
+    }
+    public void setPrefetchDns(boolean prefetchDns) {
+        this.prefetchDns = prefetchDns;
+    }
+
+    /**
+     * Whether to schedule '/robots.txt' fetches for new servers.
+     */
+    protected boolean prefetchRobots = true;
+    public boolean getPrefetchRobots() {
+        return prefetchRobots;
+    }
+    public void setPrefetchRobots(boolean prefetchRobots) {
+        this.prefetchRobots = prefetchRobots;
+    }
+
+    /**
+     * Maximum number of speculative prerequisites awaiting scheduling.
+     */
+    protected int maxPending = 10000;
+    public int getMaxPending() {
+        return maxPending;
+    }
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Longest time, in seconds, to hold back a robots.txt prefetch while
+     * waiting for its host's prefetched 'dns:' lookup to complete.
+     */
+    protected int maxDnsWaitSeconds = 60;
+    public int getMaxDnsWaitSeconds() {
+        return maxDnsWaitSeconds;
+    }
+    public void setMaxDnsWaitSeconds(int maxDnsWaitSeconds) {
+        this.maxDnsWaitSeconds = maxDnsWaitSeconds;
+    }
+
+    protected ServerCache serverCache;
+    public ServerCache getServerCache() {
+        return this.serverCache;
+    }
+    @Autowired
+    public void setServerCache(ServerCache serverCache) {
+        this.serverCache = serverCache;
+    }
+
+    protected CandidatesProcessor candidates;
+    public CandidatesProcessor getCandidates() {
+        return this.candidates;
+    }
+    @Autowired
+    public void setCandidates(CandidatesProcessor candidates) {
+        this.candidates = candidates;
+    }
+
+    protected BlockingQueue<CrawlURI> pending;
+    protected Thread schedulerThread;
+
+    /** candidate being processed on this thread, if any */
+    protected ThreadLocal<CrawlURI> creatingUri = new ThreadLocal<CrawlURI>();
+
+    /** robots.txt prefetch held back since a given time */
+    protected static class Held {
+        final CrawlURI curi;
+        final long since;
+        Held(CrawlURI curi, long since) {
+            this.curi = curi;
+            this.since = since;
+        }
+    }
+
+    /** robots.txt prefetches awaiting their host's dns: lookup; only
+     * touched by the scheduler thread */
+    protected Deque<Held> awaitingDns = new ArrayDeque<Held>();
+    protected AtomicInteger awaitingDnsCount = new AtomicInteger(0);
+
+    protected AtomicLong dnsQueued = new AtomicLong(0);
+    protected AtomicLong robotsQueued = new AtomicLong(0);
+    protected AtomicLong dropped = new AtomicLong(0);
+
+    public PreconditionPrefetcher() {
+        super();
+    }
+
+    @Override
+    public void start() {
+        if (isRunning()) {
+            return;
+        }
+        super.start();
+        pending = new ArrayBlockingQueue<CrawlURI>(getMaxPending());
+        schedulerThread = new Thread(getBeanName() + ".schedulerThread") {
+            public void run() {
+                schedulePending();
+            }
+        };
+        schedulerThread.setDaemon(true);
+        schedulerThread.start();
+        serverCache.addListener(this);
+    }
+
+    @Override
+    public void stop() {
+        if (!isRunning()) {
+            return;
+        }
+        serverCache.removeListener(this);
+        schedulerThread.interrupt();
+        schedulerThread = null;
+        super.stop();
+    }
+
+    /**
+     * Main loop of scheduler thread: run queued prerequisites through the
+     * candidate chain (and so to the frontier), holding back any robots.txt
+     * whose host's dns: lookup is still outstanding.
+     */
+    protected void schedulePending() {
+        try {
+            while (true) {
+                CrawlURI curi = pending.poll(1, TimeUnit.SECONDS);
+                if (curi != null) {
+                    if (isAwaitingDns(curi)) {
+                        awaitingDns.add(
+                                new Held(curi, System.currentTimeMillis()));
+                        awaitingDnsCount.incrementAndGet();
+                    } else {
+                        schedule(curi);
+                    }
+                }
+                if (curi == null || pending.isEmpty()) {
+                    releaseAwaitingDns();
+                }
+            }
+        } catch (InterruptedException e) {
+            // exit
+        }
+    }
+
+    /**
+     * Schedule any held-back robots.txt prefetches that need wait no longer.
+     */
+    protected void releaseAwaitingDns() throws InterruptedException {
+        long oldest = System.currentTimeMillis()
+                - getMaxDnsWaitSeconds() * 1000L;
+        Iterator<Held> iter = awaitingDns.iterator();
+        while (iter.hasNext()) {
+            Held held = iter.next();
+            if (held.since <= oldest || !isAwaitingDns(held.curi)) {
+                iter.remove();
+                awaitingDnsCount.decrementAndGet();
+                schedule(held.curi);
+            }
+        }
+    }
+
+    /**
+     * Whether the given prefetched robots.txt should still wait for its
+     * host's prefetched dns: lookup.
+     */
+    protected boolean isAwaitingDns(CrawlURI curi) {
+        if (!getPrefetchDns() || curi.getUURI().getScheme().equals("dns")) {
+            return false;
+        }
+        CrawlHost host = serverCache.getHostFor(curi.getUURI());
+        return host != null && !host.hasBeenLookedUp();
+    }
+
+    /**
+     * Run a prefetched prerequisite through the candidate chain, which
+     * schedules it if it remains in scope.
+     */
+    protected void schedule(CrawlURI curi) throws InterruptedException {
+        try {
+            candidates.runCandidateChain(curi, null);
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "unable to schedule " + curi, e);
+        }
+    }
+
+    @Override
+    protected boolean shouldProcess(CrawlURI curi) {
+        String scheme = curi.getUURI().getScheme();
+        return curi.getFetchStatus() >= 0
+            && ("http".equals(scheme) || "https".equals(scheme));
+    }
+
+    /**
+     * Ensure the candidate's host and server are known to the ServerCache,
+     * triggering speculative prerequisites if either is new.
+     */
+    @Override
+    protected void innerProcess(CrawlURI curi) {
+        creatingUri.set(curi);
+        try {
+            serverCache.getHostFor(curi.getUURI());
+            serverCache.getServerFor(curi.getUURI());
+        } finally {
+            creatingUri.remove();
+        }
+    }
+
+    @Override
+    public void hostCreated(CrawlHost host) {
+        CrawlURI source = creatingUri.get();
+        if (source == null || !getPrefetchDns() || host.hasBeenLookedUp()) {
+            // not created for an in-scope candidate, or a numeric IP
+            // ('looked up' at creation)
+            return;
+        }
+        if (offer(source, "dns:" + host.getHostName())) {
+            dnsQueued.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void serverCreated(CrawlServer server) {
+        CrawlURI source = creatingUri.get();
+        if (source == null || !getPrefetchRobots()) {
+            return;
+        }
+        try {
+            if (!server.getName().equals(
+                    CrawlServer.getServerKey(source.getUURI()))) {
+                return;
+            }
+            String authority = source.getUURI().getAuthorityMinusUserinfo();
+            if (offer(source, source.getUURI().getScheme() + "://"
+                    + authority + "/robots.txt")) {
+                robotsQueued.incrementAndGet();
+            }
+        } catch (URIException e) {
+            logger.log(Level.FINE, "unable to prefetch robots for " + source, e);
+        }
+    }
+
+    /**
+     * Queue a prerequisite URI of the given candidate for scheduling, if
+     * there is room.
+     * @return true if queued
+     */
+    protected boolean offer(CrawlURI source, String uri) {
+        BlockingQueue<CrawlURI> queue = pending;
+        if (queue == null) {
+            return false;
+        }
+        if (queue.size() + awaitingDnsCount.get() >= getMaxPending()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        CrawlURI curi;
+        try {
+            curi = source.createCrawlURI(uri, LinkContext.PREREQ_MISC,
+                    Hop.PREREQ);
+        } catch (URIException e) {
+            logger.log(Level.FINE, "unable to prefetch " + uri, e);
+            return false;
+        }
+        curi.setPrerequisite(true);
+        curi.setSchedulingDirective(SchedulingConstants.HIGH);
+        if (!queue.offer(curi)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String report() {
+        StringBuilder ret = new StringBuilder();
+        ret.append(super.report());
+        ret.append("  " + dnsQueued + " dns lookups, " + robotsQueued
+                + " robots.txt fetches prefetched; " + dropped
+                + " dropped; " + (pending == null ? 0 : pending.size())
+                + " pending, " + awaitingDnsCount + " awaiting dns\n");
+        return ret.toString();
+    }
+}
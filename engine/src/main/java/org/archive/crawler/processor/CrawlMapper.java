@@ -25,10 +25,15 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import org.archive.crawler.framework.Frontier;
+import org.archive.crawler.postprocessor.CandidatesProcessor;
 import org.archive.modules.CrawlURI;
 import org.archive.modules.ProcessResult;
 import org.archive.modules.Processor;
@@ -38,6 +43,8 @@ import org.archive.modules.deciderules.DecideRule;
 import org.archive.spring.ConfigPath;
 import org.archive.util.ArchiveUtils;
 import org.archive.util.fingerprint.ArrayLongFPCache;
+import org.archive.url.URIException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.Lifecycle;
 
 import st.ata.util.FPGenerator;
@@ -59,11 +66,20 @@ import st.ata.util.FPGenerator;
  *
  * <p>If using the JMX importUris operation importing URLs dropped by
  * a {@link CrawlMapper} instance, use <code>recoveryLog</code> style.
+ *
+ * <p>Alternatively, with a {@link DiversionTransport} configured, diverted
+ * URIs are sent directly to the crawlers they're mapped to, and URIs sent
+ * here by other crawlers are run through the candidates processor, so
+ * scoped like any discovered URI before being scheduled (the frontier's
+ * already-seen filter then drops any this crawler has already had); only
+ * URIs the transport can't deliver go to diversion logs.
  * 
  * @author gojomo
  * @version $Date$, $Revision$
  */
 public abstract class CrawlMapper extends Processor implements Lifecycle {
+    private static final Logger logger =
+        Logger.getLogger(CrawlMapper.class.getName());
 
     /**
      * PrintWriter which remembers the File to which it writes. 
@@ -80,6 +96,42 @@ public abstract class CrawlMapper extends Processor implements Lifecycle {
     }
     
 
+    protected Frontier frontier;
+    public Frontier getFrontier() {
+        return this.frontier;
+    }
+    @Autowired
+    public void setFrontier(Frontier frontier) {
+        this.frontier = frontier;
+    }
+
+    protected CandidatesProcessor candidates;
+    public CandidatesProcessor getCandidates() {
+        return this.candidates;
+    }
+    /**
+     * URIs received by the transport are run through the supplied
+     * CandidatesProcessor, which checks scope and schedules them. By
+     * default the crawl job's normal candidates processor is autowired in.
+     */
+    @Autowired
+    public void setCandidates(CandidatesProcessor candidates) {
+        this.candidates = candidates;
+    }
+
+    /**
+     * Transport by which to send diverted URIs directly to the crawlers
+     * they're mapped to, and receive URIs mapped here. If unset (the
+     * default), all diverted URIs go to diversion logs.
+     */
+    protected DiversionTransport transport;
+    public DiversionTransport getTransport() {
+        return this.transport;
+    }
+    public void setTransport(DiversionTransport transport) {
+        this.transport = transport;
+    }
+
     /**
      * Whether to apply the mapping to a URI being processed itself, for example
      * early in processing (while its status is still 'unattempted').
@@ -167,6 +219,9 @@ public abstract class CrawlMapper extends Processor implements Lifecycle {
     protected String logGeneration = "";
         
     protected ArrayLongFPCache cache;
+
+    /** URIs recently received from other crawlers */
+    protected ArrayLongFPCache receivedCache;
    
     /**
      * Constructor.
@@ -281,6 +336,16 @@ public abstract class CrawlMapper extends Processor implements Lifecycle {
         if(recentlySeen(cauri)) {
             return;
         }
+        if (transport != null && transport.send(target, hopsViaLine(cauri))) {
+            return;
+        }
+        writeDiversion(cauri, target);
+    }
+
+    /**
+     * Write the given CrawlURI to the diversion log for the given target. 
+     */
+    protected synchronized void writeDiversion(CrawlURI cauri, String target) {
         PrintWriter diversionLog = getDiversionLog(target);
         diversionLog.print(cauri.getClassKey());
         diversionLog.print(" ");
@@ -288,6 +353,52 @@ public abstract class CrawlMapper extends Processor implements Lifecycle {
         diversionLog.println();
     }
     
+    /**
+     * The given CrawlURI as sent by a transport, in recover-log style.
+     */
+    protected String hopsViaLine(CrawlURI cauri) {
+        return cauri.toString() + " " + cauri.getPathFromSeed() + " "
+                + cauri.flattenVia();
+    }
+
+    /**
+     * Scope and schedule a URI received from another crawler (or handed
+     * back by the transport for mapping afresh, its target having left the
+     * crawl).
+     * 
+     * @param line URI in recover-log style
+     */
+    protected void received(String line) {
+        int space = line.indexOf(' ');
+        long fp = FPGenerator.std64.fp(space < 0 ? line : line.substring(0, space));
+        synchronized (receivedCache) {
+            if (!receivedCache.add(fp)) {
+                return;
+            }
+        }
+        try {
+            CrawlURI curi = CrawlURI.fromHopsViaString(line);
+            candidates.runCandidateChain(curi, null);
+        } catch (URIException e) {
+            logger.log(Level.WARNING, "unable to schedule received " + line, e);
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "interrupted scheduling received " + line, e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Log a URI the transport could not deliver before closing, for
+     * import by hand as before.
+     */
+    protected void undeliverable(String target, String line) {
+        try {
+            writeDiversion(CrawlURI.fromHopsViaString(line), target);
+        } catch (URIException e) {
+            logger.log(Level.WARNING, "unable to log undelivered " + line, e);
+        }
+    }
+
     /**
      * Consult the cache to determine if the given URI
      * has been recently seen -- entering it if not. 
@@ -332,6 +443,18 @@ public abstract class CrawlMapper extends Processor implements Lifecycle {
             return; 
         }
         cache = new ArrayLongFPCache();
+        receivedCache = new ArrayLongFPCache();
+        if (transport != null) {
+            if (candidates == null) {
+                throw new IllegalStateException(
+                        "a transport needs candidates to scope received URIs");
+            }
+            try {
+                transport.open(getLocalName(), this::received, this::undeliverable);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
     
     public boolean isRunning() {
@@ -340,6 +463,11 @@ public abstract class CrawlMapper extends Processor implements Lifecycle {
     
     public void stop() {
         // XXX this happens at finish; move to teardown?
+        if (transport != null && isRunning()) {
+            transport.close();
+        }
+        // close any diversion logs, undelivered URIs included
+        updateGeneration(logGeneration);
         cache = null;
     }
 }
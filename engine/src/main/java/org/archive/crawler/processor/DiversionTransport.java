@@ -0,0 +1,69 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.processor;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Carries URIs diverted by a {@link CrawlMapper} directly to the crawler
+ * nodes they're mapped to, rather than leaving them in diversion logs to
+ * be shipped and imported by hand.
+ *
+ * <p>URIs travel as lines in recover-log style ("uri hopsPath viaUri"),
+ * for {@link org.archive.modules.CrawlURI#fromHopsViaString(String)}.
+ *
+ * @see SocketDiversionTransport
+ */
+public interface DiversionTransport {
+
+    /**
+     * Start exchanging URIs as the named node.
+     *
+     * @param localName name of this node, as known to its peers
+     * @param receiver takes each line received from any peer, and any
+     *            queued for a peer that has left the crawl (to be mapped
+     *            afresh); called from the transport's own threads
+     * @param undeliverable takes the target and line of any URI that could
+     *            not be delivered before {@link #close()}
+     */
+    void open(String localName, Consumer<String> receiver,
+            BiConsumer<String,String> undeliverable) throws IOException;
+
+    /**
+     * Queue a line for delivery to the named node, without blocking.
+     *
+     * @return false if the node is unknown, or too far behind to queue
+     *         more, in which case the caller should keep the line
+     */
+    boolean send(String target, String line);
+
+    /**
+     * Names of all the nodes now in the crawl, this one included. The same
+     * collection is returned until the membership changes.
+     */
+    Collection<String> getNodes();
+
+    /**
+     * Stop exchanging URIs, after a last attempt to deliver any queued.
+     */
+    void close();
+}
@@ -18,19 +18,29 @@
  */
 package org.archive.crawler.processor;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 
-import org.archive.crawler.framework.Frontier;
 import org.archive.modules.CrawlURI;
-import org.archive.net.PublicSuffixes;
+import org.archive.net.PublicSuffixMatcher;
+import org.archive.util.ConsistentHashRing;
 import org.archive.util.TextUtils;
-import org.springframework.beans.factory.annotation.Autowired;
 
 import st.ata.util.FPGenerator;
 
 /**
  * Maps URIs to one of N crawler names by applying a hash to the
  * URI's (possibly-transformed) classKey. 
+ *
+ * <p>With consistentHash set, or a {@link DiversionTransport} configured
+ * (whose nodes are then the crawler names), the hash is consistent: when
+ * a crawler joins or leaves, only the classKeys of that crawler change
+ * hands. Queued URIs whose classKeys have moved are diverted to their new
+ * crawler as they come up (given checkUri), so queues rebalance without
+ * any files being moved by hand.
  * 
  * @author gojomo
  * @version $Date$, $Revision$
@@ -39,16 +49,10 @@ public class HashCrawlMapper extends CrawlMapper {
 
     @SuppressWarnings("unused")
     private static final long serialVersionUID = 2L;
-    
-    protected Frontier frontier;
-    public Frontier getFrontier() {
-        return this.frontier;
-    }
-    @Autowired
-    public void setFrontier(Frontier frontier) {
-        this.frontier = frontier;
-    }
 
+    private static final Logger logger =
+        Logger.getLogger(HashCrawlMapper.class.getName());
+    
     /**
      * Number of crawlers among which to split up the URIs. Their names are
      * assumed to be 0..N-1.
@@ -61,6 +65,34 @@ public class HashCrawlMapper extends CrawlMapper {
         this.crawlerCount = count;
     }
 
+    /**
+     * Whether to map classKeys to crawlers by consistent hashing, so that
+     * changing the crawlerCount moves only the classKeys of the crawlers
+     * added or removed. (Otherwise, as in earlier crawls, the classKey's
+     * hash modulo crawlerCount is used, and nearly all move.) Always used
+     * with a transport.
+     */
+    protected boolean consistentHash = false;
+    public boolean getConsistentHash() {
+        return this.consistentHash;
+    }
+    public void setConsistentHash(boolean consistentHash) {
+        this.consistentHash = consistentHash;
+    }
+
+    /** the consistent hash, and the crawler names it was built from */
+    protected static class Ring {
+        final Collection<String> basis;
+        final ConsistentHashRing ring;
+        Ring(Collection<String> basis) {
+            this.basis = basis;
+            this.ring = new ConsistentHashRing(basis);
+        }
+    }
+    protected volatile Ring ring;
+    /** crawler names 0..N-1, for the current crawlerCount */
+    protected volatile List<String> countedNames;
+
     {
         setUsePublicSuffixesRegex(true);
     }
@@ -68,7 +100,9 @@ public class HashCrawlMapper extends CrawlMapper {
         return (Boolean) kp.get("usePublicSuffixesRegex");
     }
     /**
-     * Whether to use the PublicSuffixes-supplied reduce regex.
+     * Whether to reduce the classKey to its assignment-level domain, per
+     * the public suffix list, instead of applying reducePrefixRegex. (Once
+     * done with a regex, hence the name.)
      *
      */
     public void setUsePublicSuffixesRegex(boolean usePublicSuffixes) {
@@ -107,21 +141,54 @@ public class HashCrawlMapper extends CrawlMapper {
     protected String map(CrawlURI cauri) {
         // get classKey, via frontier to generate if necessary
         String key = frontier.getClassKey(cauri);
-        String reduceRegex = getReduceRegex(cauri);
-        return mapString(key, reduceRegex, getCrawlerCount()); 
+        if (getUsePublicSuffixesRegex()) {
+            key = PublicSuffixMatcher.getDefault().reduceSurtToAssignmentLevel(key);
+        } else {
+            key = reduce(key, getReducePrefixRegex());
+        }
+        if (getTransport() != null || getConsistentHash()) {
+            return ring().nodeFor(key);
+        }
+        return mapString(key, null, getCrawlerCount()); 
     }
 
-    protected String getReduceRegex(CrawlURI cauri) {
-        if(getUsePublicSuffixesRegex()) {
-            return PublicSuffixes.getTopmostAssignedSurtPrefixRegex();
+    /**
+     * The consistent hash of the current crawler names: the transport's
+     * nodes if there is a transport, otherwise 0..crawlerCount-1.
+     */
+    protected ConsistentHashRing ring() {
+        Collection<String> names;
+        if (getTransport() != null) {
+            // same collection until the nodes change
+            names = getTransport().getNodes();
         } else {
-            return getReducePrefixRegex();
+            List<String> counted = countedNames;
+            if (counted == null || counted.size() != getCrawlerCount()) {
+                counted = new ArrayList<String>();
+                for (long i = 0; i < getCrawlerCount(); i++) {
+                    counted.add(Long.toString(i));
+                }
+                countedNames = counted;
+            }
+            names = counted;
         }
+        Ring current = ring;
+        if (current == null || current.basis != names) {
+            if (current != null) {
+                logger.info("crawlers now " + names + " (were "
+                        + current.basis + "); rebalancing");
+            }
+            current = new Ring(names);
+            ring = current;
+        }
+        return current.ring;
     }
 
-    public static String mapString(String key, String reducePattern,
-            long bucketCount) {
-
+    /**
+     * Apply the given regex to the key, returning its first match, or the
+     * whole key if none (or if the regex is empty).
+     */
+    protected static String reduce(String key, String reducePattern) {
         if (reducePattern != null && reducePattern.length()>0) {
             Matcher matcher = TextUtils.getMatcher(reducePattern,key);
             if(matcher.find()) {
@@ -129,6 +196,12 @@ public class HashCrawlMapper extends CrawlMapper {
             }
             TextUtils.recycleMatcher(matcher);
         }
+        return key;
+    }
+
+    public static String mapString(String key, String reducePattern,
+            long bucketCount) {
+        key = reduce(key, reducePattern);
         long fp = FPGenerator.std64.fp(key);
         long bucket = fp % bucketCount;
         return Long.toString(bucket >= 0 ? bucket : -bucket);
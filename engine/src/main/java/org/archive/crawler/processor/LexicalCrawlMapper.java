@@ -30,12 +30,10 @@ import java.util.Iterator;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
-import org.archive.crawler.framework.Frontier;
 import org.archive.modules.CrawlURI;
 import org.archive.spring.ConfigPath;
 import org.archive.util.iterator.LineReadingIterator;
 import org.archive.util.iterator.RegexLineIterator;
-import org.springframework.beans.factory.annotation.Autowired;
 
 
 /**
@@ -111,15 +109,6 @@ public class LexicalCrawlMapper extends CrawlMapper {
         this.mapUri = uri; 
     }
 
-    protected Frontier frontier;
-    public Frontier getFrontier() {
-        return this.frontier;
-    }
-    @Autowired
-    public void setFrontier(Frontier frontier) {
-        this.frontier = frontier;
-    }
-
     /**
      * Mapping of classKey ranges (as represented by their start) to 
      * crawlers (by abstract name/filename)
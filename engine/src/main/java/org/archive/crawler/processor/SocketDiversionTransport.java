@@ -0,0 +1,680 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.processor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * {@link DiversionTransport} over plain TCP connections between crawler
+ * nodes. Each node listens on a port for its peers, and keeps a connection
+ * and sending thread per peer.
+ *
+ * <p>Lines for a peer are queued, then sent in batches of up to
+ * batchSize lines (or whatever has queued after lingerMs), each batch
+ * deflate-compressed. The receiver acknowledges each batch once it has
+ * handed all its lines on; unacknowledged batches are resent, after a
+ * reconnect, so a line may arrive twice but isn't lost while its peer is
+ * briefly unreachable. (The receiving frontier's already-seen filter
+ * drops any duplicate.)
+ *
+ * <p>Every node should be configured with the same set of nodes -- its
+ * peers plus itself -- so that all map URIs alike. The peers may be
+ * changed while crawling; see {@link #setPeers(Map)}.
+ *
+ * <p>Received URIs are crawled, so only peers that know the shared
+ * secret are heard: each connecting peer must answer a random challenge
+ * with its HMAC under the secret. By default a node listens only on the
+ * loopback interface; to listen for peers on other hosts, set the
+ * bindAddress, and then a secret is required.
+ */
+public class SocketDiversionTransport implements DiversionTransport {
+    private static final Logger logger =
+        Logger.getLogger(SocketDiversionTransport.class.getName());
+
+    protected static final int MAGIC = 0x48444956; // "HDIV"
+    protected static final int ACK = 1;
+    protected static final int CHALLENGE_BYTES = 16;
+    protected static final String MAC_ALGORITHM = "HmacSHA256";
+    /** most bytes accepted in one compressed batch */
+    protected static final int MAX_BATCH_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Address on which to listen for peers. The default, loopback, hears
+     * only other nodes on this host; "0.0.0.0" hears all interfaces, but
+     * needs a secret.
+     */
+    protected String bindAddress = "127.0.0.1";
+    public String getBindAddress() {
+        return bindAddress;
+    }
+    public void setBindAddress(String bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    /**
+     * Secret shared by all the nodes, which peers must prove they know
+     * before their URIs are accepted. Required unless listening only on
+     * loopback.
+     */
+    protected String secret = null;
+    public String getSecret() {
+        return secret;
+    }
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+
+    /**
+     * Port on which to listen for peers. The default, 0, picks any free
+     * port (see {@link #getLocalPort()}), which suits only testing: peers
+     * need a fixed port to connect to.
+     */
+    protected int port = 0;
+    public int getPort() {
+        return port;
+    }
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Peer nodes, as name to "host:port".
+     */
+    protected Map<String,String> peers = new TreeMap<String,String>();
+    public Map<String,String> getPeers() {
+        return peers;
+    }
+    /**
+     * Set the peer nodes. If already open, connects to any new peers, and
+     * hands lines still queued for departed ones back to the receiver, to
+     * be mapped afresh.
+     */
+    public synchronized void setPeers(Map<String,String> peers) {
+        this.peers = new TreeMap<String,String>(peers);
+        if (receiver != null) {
+            connectPeers();
+        }
+    }
+
+    /**
+     * Most lines sent in one batch.
+     */
+    protected int batchSize = 1000;
+    public int getBatchSize() {
+        return batchSize;
+    }
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * How long to wait for a batch to fill before sending what there is,
+     * in milliseconds.
+     */
+    protected long lingerMs = 500;
+    public long getLingerMs() {
+        return lingerMs;
+    }
+    public void setLingerMs(long lingerMs) {
+        this.lingerMs = lingerMs;
+    }
+
+    /**
+     * Most lines queued for a peer; beyond this, {@link #send(String, String)}
+     * refuses more (and the mapper logs them instead).
+     */
+    protected int maxQueued = 100000;
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Timeout for connecting to a peer and for its acknowledgement of a
+     * batch, in milliseconds.
+     */
+    protected int timeoutMs = 30000;
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+    public void setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    protected String localName;
+    protected Consumer<String> receiver;
+    protected BiConsumer<String,String> undeliverable;
+    protected ServerSocket serverSocket;
+    protected final Map<String,Peer> senders = new ConcurrentHashMap<String,Peer>();
+    protected final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    protected volatile Collection<String> nodes = Collections.emptySet();
+    protected volatile boolean closed = false;
+    protected final SecureRandom random = new SecureRandom();
+
+    protected final AtomicLong sentLines = new AtomicLong();
+    protected final AtomicLong receivedLines = new AtomicLong();
+    protected final AtomicLong rawBytes = new AtomicLong();
+    protected final AtomicLong compressedBytes = new AtomicLong();
+
+    public long getSentLines() {
+        return sentLines.get();
+    }
+    public long getReceivedLines() {
+        return receivedLines.get();
+    }
+    /** ratio of bytes sent to bytes before compression */
+    public double getCompressionRatio() {
+        long raw = rawBytes.get();
+        return raw == 0 ? 1.0 : (double) compressedBytes.get() / raw;
+    }
+
+    /**
+     * Port actually listened on, once open.
+     */
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public synchronized void open(String localName, Consumer<String> receiver,
+            BiConsumer<String,String> undeliverable) throws IOException {
+        this.localName = localName;
+        this.receiver = receiver;
+        this.undeliverable = undeliverable;
+        this.closed = false;
+        InetAddress address = InetAddress.getByName(bindAddress);
+        if ((secret == null || secret.isEmpty()) && !address.isLoopbackAddress()) {
+            throw new IOException("a secret is required to listen on " + bindAddress);
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(address, port));
+        Thread acceptor = new Thread(this::acceptConnections,
+                "diversion-listener-" + localName);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        connectPeers();
+    }
+
+    /**
+     * Start senders for new peers, stop those of departed ones.
+     */
+    protected synchronized void connectPeers() {
+        for (Map.Entry<String,String> entry : peers.entrySet()) {
+            Peer peer = senders.get(entry.getKey());
+            if (peer != null && peer.address.equals(entry.getValue())) {
+                continue;
+            }
+            if (peer != null) {
+                // moved; new lines, then anything left queued, go to the
+                // new address
+                Peer moved = new Peer(entry.getKey(), entry.getValue());
+                senders.put(entry.getKey(), moved);
+                peer.stop(false);
+                for (String line : peer.drain()) {
+                    if (!moved.offer(line)) {
+                        undeliverable.accept(moved.name, line);
+                    }
+                }
+                moved.start();
+            } else {
+                peer = new Peer(entry.getKey(), entry.getValue());
+                senders.put(entry.getKey(), peer);
+                peer.start();
+            }
+        }
+        for (String name : new ArrayList<String>(senders.keySet())) {
+            if (!peers.containsKey(name)) {
+                Peer departed = senders.remove(name);
+                departed.stop(false);
+                for (String line : departed.drain()) {
+                    receiver.accept(line);
+                }
+            }
+        }
+        TreeSet<String> all = new TreeSet<String>(peers.keySet());
+        all.add(localName);
+        nodes = Collections.unmodifiableSet(all);
+    }
+
+    @Override
+    public Collection<String> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public boolean send(String target, String line) {
+        Peer peer = senders.get(target);
+        while (peer != null) {
+            if (peer.offer(line)) {
+                return true;
+            }
+            Peer current = senders.get(target);
+            if (current == peer) {
+                // full, or closing with the transport
+                return false;
+            }
+            // drained since got: moved, or departed
+            peer = current;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+        for (Socket socket : connections) {
+            closeQuietly(socket);
+        }
+        for (Peer peer : senders.values()) {
+            peer.stop(true);
+            for (String line : peer.drain()) {
+                undeliverable.accept(peer.name, line);
+            }
+        }
+        senders.clear();
+        receiver = null;
+    }
+
+    protected static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    protected byte[] compress(List<String> lines) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long raw = 0;
+        try (OutputStream out = new DeflaterOutputStream(bytes,
+                new Deflater(Deflater.BEST_SPEED))) {
+            for (String line : lines) {
+                byte[] utf8 = (line + "\n").getBytes(StandardCharsets.UTF_8);
+                raw += utf8.length;
+                out.write(utf8);
+            }
+        }
+        rawBytes.addAndGet(raw);
+        compressedBytes.addAndGet(bytes.size());
+        return bytes.toByteArray();
+    }
+
+    protected List<String> decompress(byte[] compressed, int count) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(compressed.length * 4);
+        try (InputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(compressed))) {
+            in.transferTo(bytes);
+        }
+        String all = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<String>(count);
+        for (int start = 0, end; (end = all.indexOf('\n', start)) >= 0; start = end + 1) {
+            lines.add(all.substring(start, end));
+        }
+        if (lines.size() != count) {
+            throw new IOException("expected " + count + " lines, got " + lines.size());
+        }
+        return lines;
+    }
+
+    /**
+     * Proof of knowing the secret: its HMAC of the challenge and the
+     * peer's name.
+     */
+    protected byte[] answer(byte[] challenge, String name) throws IOException {
+        // a key even without a secret, when only loopback is heard
+        String key = "HDIV" + (secret == null ? "" : secret);
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM));
+            mac.update(challenge);
+            return mac.doFinal(name.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    protected void acceptConnections() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                Thread reader = new Thread(() -> receiveFrom(socket),
+                        "diversion-receiver-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    logger.log(Level.WARNING, "problem accepting peer connection", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read batches from a peer, handing on their lines and acknowledging
+     * each, until the peer disconnects.
+     */
+    protected void receiveFrom(Socket socket) {
+        String from = String.valueOf(socket.getRemoteSocketAddress());
+        try (socket) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            // don't wait long on a stranger
+            socket.setSoTimeout(getTimeoutMs());
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a diversion peer");
+            }
+            from = in.readUTF();
+            byte[] challenge = new byte[CHALLENGE_BYTES];
+            random.nextBytes(challenge);
+            out.write(challenge);
+            out.flush();
+            byte[] expected = answer(challenge, from);
+            byte[] response = new byte[expected.length];
+            in.readFully(response);
+            if (!MessageDigest.isEqual(expected, response)) {
+                throw new IOException("peer " + from + " failed the secret challenge");
+            }
+            out.writeByte(ACK);
+            out.flush();
+            // batches come when they come
+            socket.setSoTimeout(0);
+            while (!closed) {
+                int count = in.readInt();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_BATCH_BYTES) {
+                    throw new IOException("bad batch length " + length);
+                }
+                byte[] compressed = new byte[length];
+                in.readFully(compressed);
+                Consumer<String> r = receiver;
+                if (r == null) {
+                    // closing; leave the batch unacknowledged
+                    break;
+                }
+                for (String line : decompress(compressed, count)) {
+                    try {
+                        r.accept(line);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "problem receiving " + line
+                                + " from " + from, e);
+                    }
+                }
+                receivedLines.addAndGet(count);
+                out.writeByte(ACK);
+                out.flush();
+            }
+        } catch (EOFException e) {
+            // peer disconnected
+        } catch (IOException e) {
+            if (!closed) {
+                logger.log(Level.WARNING, "problem receiving from " + from, e);
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * A peer node, with its queue of lines to send and the thread sending
+     * them.
+     */
+    protected class Peer implements Runnable {
+        protected final String name;
+        protected final String address;
+        protected final LinkedBlockingQueue<String> queue;
+        /** batch being sent, until acknowledged */
+        protected final List<String> batch = new ArrayList<String>();
+        protected final Thread thread;
+        protected volatile boolean stopping = false;
+        protected volatile Socket socket;
+        /** once drained, taking no more lines; guarded by this */
+        protected boolean drained = false;
+        protected DataOutputStream out;
+        protected DataInputStream in;
+        protected int failures = 0;
+
+        protected Peer(String name, String address) {
+            this.name = name;
+            this.address = address;
+            this.queue = new LinkedBlockingQueue<String>(getMaxQueued());
+            this.thread = new Thread(this, "diversion-sender-" + name);
+            thread.setDaemon(true);
+        }
+
+        protected void start() {
+            thread.start();
+        }
+
+        /**
+         * Queue a line, unless full or already drained.
+         */
+        protected synchronized boolean offer(String line) {
+            return !drained && queue.offer(line);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    if (batch.isEmpty() && !fill()) {
+                        if (stopping) {
+                            break;
+                        }
+                        continue;
+                    }
+                    if (deliver()) {
+                        batch.clear();
+                    } else if (stopping) {
+                        break;
+                    } else {
+                        Thread.sleep(Math.min(30000, 500L << Math.min(failures, 6)));
+                    }
+                }
+            } catch (InterruptedException e) {
+                // stopping
+            } finally {
+                disconnect();
+            }
+        }
+
+        /**
+         * Gather up to batchSize lines into the batch, waiting up to
+         * lingerMs for more after the first.
+         * @return false if none arrived
+         */
+        protected boolean fill() throws InterruptedException {
+            String first = queue.poll(getLingerMs(), TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return false;
+            }
+            batch.add(first);
+            long deadline = System.currentTimeMillis() + getLingerMs();
+            while (batch.size() < getBatchSize()) {
+                queue.drainTo(batch, getBatchSize() - batch.size());
+                long wait = deadline - System.currentTimeMillis();
+                if (batch.size() >= getBatchSize() || wait <= 0 || stopping) {
+                    break;
+                }
+                String next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+            return true;
+        }
+
+        /**
+         * Send the batch and await its acknowledgement.
+         * @return whether acknowledged
+         */
+        protected boolean deliver() {
+            try {
+                if (socket == null) {
+                    connect();
+                }
+                byte[] compressed = compress(batch);
+                out.writeInt(batch.size());
+                out.writeInt(compressed.length);
+                out.write(compressed);
+                out.flush();
+                if (in.readByte() != ACK) {
+                    throw new IOException("bad acknowledgement");
+                }
+                sentLines.addAndGet(batch.size());
+                failures = 0;
+                return true;
+            } catch (IOException e) {
+                if (failures++ == 0 && !stopping) {
+                    logger.log(Level.WARNING, "problem sending to " + name
+                            + " at " + address + "; will retry", e);
+                }
+                disconnect();
+                return false;
+            }
+        }
+
+        protected void connect() throws IOException {
+            int colon = address.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IOException("no port in peer address " + address);
+            }
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1))), getTimeoutMs());
+            socket.setSoTimeout(getTimeoutMs());
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new DataInputStream(socket.getInputStream());
+            out.writeInt(MAGIC);
+            out.writeUTF(localName);
+            out.flush();
+            byte[] challenge = new byte[CHALLENGE_BYTES];
+            in.readFully(challenge);
+            out.write(answer(challenge, localName));
+            out.flush();
+            if (in.readByte() != ACK) {
+                throw new IOException("refused by peer");
+            }
+        }
+
+        protected void disconnect() {
+            if (socket != null) {
+                closeQuietly(socket);
+                socket = null;
+            }
+        }
+
+        /**
+         * Stop sending, optionally after a last attempt to deliver what's
+         * queued, returning only once the sending thread has ended (so
+         * that {@link #drain()} is safe).
+         */
+        protected void stop(boolean deliverFirst) {
+            stopping = true;
+            boolean interrupted = false;
+            if (deliverFirst) {
+                try {
+                    thread.join(2L * getTimeoutMs());
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            while (thread.isAlive()) {
+                // again each time round, in case it was connecting anew
+                thread.interrupt();
+                Socket s = socket;
+                if (s != null) {
+                    closeQuietly(s);
+                }
+                try {
+                    thread.join(1000);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Lines not delivered, once stopped; any later {@link #offer(String)}
+         * is refused. Only to be called after {@link #stop(boolean)}, from
+         * the thread that called it.
+         */
+        protected synchronized List<String> drain() {
+            drained = true;
+            List<String> lines = new ArrayList<String>(batch);
+            batch.clear();
+            queue.drainTo(lines);
+            return lines;
+        }
+    }
+}
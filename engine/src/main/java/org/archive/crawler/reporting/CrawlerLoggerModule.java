@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
@@ -34,6 +35,7 @@ import org.archive.url.URIException;
 import org.archive.checkpointing.Checkpoint;
 import org.archive.checkpointing.Checkpointable;
 import org.archive.crawler.framework.Engine;
+import org.archive.crawler.io.AsyncCrawlLogHandler;
 import org.archive.crawler.io.NonFatalErrorFormatter;
 import org.archive.crawler.io.RuntimeErrorFormatter;
 import org.archive.crawler.io.StatisticsLogFormatter;
@@ -84,6 +86,68 @@ public class CrawlerLoggerModule
     public void setLogExtraInfo(boolean logExtraInfo) {
         this.logExtraInfo = logExtraInfo;
     }
+
+    /**
+     * Whether to write crawl.log through an asynchronous handler: logging
+     * threads hand each formatted line to a lock-free buffer, and a single
+     * writer thread appends them to the file. Lines are never dropped; if
+     * the buffer fills, logging threads wait.
+     */
+    protected boolean asyncCrawlLog = false;
+    public boolean getAsyncCrawlLog() {
+        return asyncCrawlLog;
+    }
+    public void setAsyncCrawlLog(boolean asyncCrawlLog) {
+        this.asyncCrawlLog = asyncCrawlLog;
+    }
+
+    /**
+     * Number of crawl.log lines the asynchronous handler can buffer before
+     * logging threads must wait. Only applies if asyncCrawlLog is true.
+     */
+    protected int crawlLogBufferLines = 65536;
+    public int getCrawlLogBufferLines() {
+        return crawlLogBufferLines;
+    }
+    public void setCrawlLogBufferLines(int crawlLogBufferLines) {
+        this.crawlLogBufferLines = crawlLogBufferLines;
+    }
+
+    /**
+     * Whether to gzip crawl.log (written as crawl.log.gz). Only applies if
+     * asyncCrawlLog is true.
+     */
+    protected boolean crawlLogCompress = false;
+    public boolean getCrawlLogCompress() {
+        return crawlLogCompress;
+    }
+    public void setCrawlLogCompress(boolean crawlLogCompress) {
+        this.crawlLogCompress = crawlLogCompress;
+    }
+
+    /**
+     * Rotate crawl.log once it exceeds this many bytes (0 for no limit).
+     * Only applies if asyncCrawlLog is true.
+     */
+    protected long crawlLogRotateBytes = 0;
+    public long getCrawlLogRotateBytes() {
+        return crawlLogRotateBytes;
+    }
+    public void setCrawlLogRotateBytes(long crawlLogRotateBytes) {
+        this.crawlLogRotateBytes = crawlLogRotateBytes;
+    }
+
+    /**
+     * Rotate crawl.log once it has been open this many seconds (0 for no
+     * limit). Only applies if asyncCrawlLog is true.
+     */
+    protected long crawlLogRotateIntervalSeconds = 0;
+    public long getCrawlLogRotateIntervalSeconds() {
+        return crawlLogRotateIntervalSeconds;
+    }
+    public void setCrawlLogRotateIntervalSeconds(long crawlLogRotateIntervalSeconds) {
+        this.crawlLogRotateIntervalSeconds = crawlLogRotateIntervalSeconds;
+    }
     
     // manifest support
     /** abbreviation label for config files in manifest */
@@ -200,6 +264,12 @@ public class CrawlerLoggerModule
      */
     transient private Map<Logger,FileHandler> fileHandlers;
 
+    /**
+     * Handler for crawl.log, if asynchronous; kept apart from the
+     * fileHandlers, which are all GenerationFileHandlers.
+     */
+    transient private AsyncCrawlLogHandler crawlLogHandler;
+
     private StringBuffer manifest = new StringBuffer();
     
     private transient AlertThreadGroup atg;
@@ -246,9 +316,13 @@ public class CrawlerLoggerModule
             logsPath);
 
         this.fileHandlers = new HashMap<Logger,FileHandler>();
-        setupLogFile(uriProcessing,
-            getCrawlLogPath().getFile().getAbsolutePath(),
-            new UriProcessingFormatter(getLogExtraInfo()), true);
+        if (getAsyncCrawlLog()) {
+            setupAsyncCrawlLog();
+        } else {
+            setupLogFile(uriProcessing,
+                getCrawlLogPath().getFile().getAbsolutePath(),
+                new UriProcessingFormatter(getLogExtraInfo()), true);
+        }
 
         setupLogFile(runtimeErrors,
             getRuntimeErrorsLogPath().getFile().getAbsolutePath(),
@@ -281,6 +355,22 @@ public class CrawlerLoggerModule
         this.fileHandlers.put(logger, fh);
     }
     
+    private void setupAsyncCrawlLog() throws IOException {
+        uriProcessing.setLevel(Level.INFO);
+        crawlLogHandler = new AsyncCrawlLogHandler(
+                getCrawlLogPath().getFile(),
+                new UriProcessingFormatter(getLogExtraInfo()),
+                getCrawlLogBufferLines(), getCrawlLogCompress(),
+                f -> addToManifest(f.getAbsolutePath(), MANIFEST_LOG_FILE, true));
+        crawlLogHandler.setRotateBytes(getCrawlLogRotateBytes());
+        crawlLogHandler.setRotateIntervalMs(
+                TimeUnit.SECONDS.toMillis(getCrawlLogRotateIntervalSeconds()));
+        uriProcessing.addHandler(crawlLogHandler);
+        addToManifest(crawlLogHandler.getActiveFile().getAbsolutePath(),
+                MANIFEST_LOG_FILE, true);
+        uriProcessing.setUseParentHandlers(false);
+    }
+
     public Logger setupSimpleLog(String logName) {
         Formatter f = new Formatter() {
             public String format(java.util.logging.LogRecord record) {
@@ -339,6 +429,10 @@ public class CrawlerLoggerModule
             l.addHandler(newGfh);
             fileHandlers.put(l, newGfh);
         }
+        if (crawlLogHandler != null) {
+            File rotated = crawlLogHandler.rotate(generationSuffix, mergeOld);
+            addToManifest(rotated.getAbsolutePath(), MANIFEST_LOG_FILE, true);
+        }
     }
     
     /**
@@ -353,6 +447,11 @@ public class CrawlerLoggerModule
                 l.removeHandler(gfh);
             }
         }
+        if (crawlLogHandler != null) {
+            crawlLogHandler.close();
+            uriProcessing.removeHandler(crawlLogHandler);
+            crawlLogHandler = null;
+        }
     }
 
     
@@ -0,0 +1,132 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.reporting;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.archive.crawler.util.CrawledBytesHistotable;
+import org.archive.modules.CrawlURI;
+import org.archive.util.MimetypeUtils;
+
+/**
+ * One thread's tallies of successfully finished URIs, accumulated in
+ * plain (unshared) arrays and maps and periodically drained into the
+ * {@link StatisticsTracker}'s shared tallies.
+ *
+ * <p>The only synchronization is on this object, which only its own
+ * thread and the occasional drain ever take, so it is uncontended.
+ */
+class DispositionTallies {
+    /** status codes tallied by array index rather than map key */
+    protected static final int DIRECT_STATUS_CODES = 1000;
+
+    protected final Thread owner;
+
+    protected long[] statusCounts = new long[DIRECT_STATUS_CODES];
+    protected Map<Integer,long[]> otherStatusCounts = new HashMap<Integer,long[]>();
+    /** mime type -&gt; {count, bytes} */
+    protected Map<String,long[]> mimeTallies = new HashMap<String,long[]>();
+    protected long[] crawledBytes = new long[CrawledBytesHistotable.TALLY_KEYS.length];
+    protected Map<String,SourceTallies> sourceTallies = new HashMap<String,SourceTallies>();
+    protected boolean empty = true;
+
+    protected static class SourceTallies {
+        final long[] crawledBytes = new long[CrawledBytesHistotable.TALLY_KEYS.length];
+        /** host -&gt; {count} */
+        final Map<String,long[]> hostCounts = new HashMap<String,long[]>();
+    }
+
+    DispositionTallies(Thread owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * @param source source tag, or null if not tracking sources
+     * @param hostname host of the URI, for source tallies
+     */
+    synchronized void tally(CrawlURI curi, String source, String hostname) {
+        empty = false;
+        CrawledBytesHistotable.accumulate(curi, crawledBytes);
+
+        int status = curi.getFetchStatus();
+        if (status >= 0 && status < DIRECT_STATUS_CODES) {
+            statusCounts[status]++;
+        } else {
+            otherStatusCounts.computeIfAbsent(status, k -> new long[1])[0]++;
+        }
+
+        long[] mime = mimeTallies.computeIfAbsent(
+                MimetypeUtils.truncate(curi.getContentType()), k -> new long[2]);
+        mime[0]++;
+        mime[1] += curi.getContentSize();
+
+        if (source != null) {
+            SourceTallies st = sourceTallies.computeIfAbsent(source,
+                    k -> new SourceTallies());
+            CrawledBytesHistotable.accumulate(curi, st.crawledBytes);
+            st.hostCounts.computeIfAbsent(hostname, k -> new long[1])[0]++;
+        }
+    }
+
+    /**
+     * Add everything tallied since the last drain to the tracker's shared
+     * tallies, and start over.
+     */
+    synchronized void drainTo(StatisticsTracker stats) {
+        if (empty) {
+            return;
+        }
+        stats.crawledBytes.tallyAll(crawledBytes);
+        for (int i = 0; i < DIRECT_STATUS_CODES; i++) {
+            if (statusCounts[i] != 0) {
+                StatisticsTracker.incrementMapCount(stats.statusCodeDistribution,
+                        Integer.toString(i), statusCounts[i]);
+            }
+        }
+        for (Map.Entry<Integer,long[]> entry : otherStatusCounts.entrySet()) {
+            StatisticsTracker.incrementMapCount(stats.statusCodeDistribution,
+                    entry.getKey().toString(), entry.getValue()[0]);
+        }
+        for (Map.Entry<String,long[]> entry : mimeTallies.entrySet()) {
+            StatisticsTracker.incrementMapCount(stats.mimeTypeDistribution,
+                    entry.getKey(), entry.getValue()[0]);
+            StatisticsTracker.incrementMapCount(stats.mimeTypeBytes,
+                    entry.getKey(), entry.getValue()[1]);
+        }
+        for (Map.Entry<String,SourceTallies> entry : sourceTallies.entrySet()) {
+            String source = entry.getKey();
+            stats.getOrCreateSourceStats(source).tallyAll(entry.getValue().crawledBytes);
+            for (Map.Entry<String,long[]> host : entry.getValue().hostCounts.entrySet()) {
+                stats.saveSourceStats(source, host.getKey(), host.getValue()[0]);
+            }
+        }
+
+        statusCounts = new long[DIRECT_STATUS_CODES];
+        otherStatusCounts.clear();
+        mimeTallies.clear();
+        crawledBytes = new long[CrawledBytesHistotable.TALLY_KEYS.length];
+        sourceTallies.clear();
+        empty = true;
+    }
+
+    boolean isOwnerAlive() {
+        return owner.isAlive();
+    }
+}
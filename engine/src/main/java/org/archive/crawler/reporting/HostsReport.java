@@ -20,7 +20,6 @@
 package org.archive.crawler.reporting;
 
 import java.io.PrintWriter;
-import java.util.Collection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,52 +73,84 @@ public class HostsReport extends Report {
 		this.suppressEmptyHosts = suppressEmptyHosts;
 	}
 	
+	/**
+	 * Write the report in a single pass over the hosts. When sorting, each
+	 * finished line (rather than just the hostname, which would require
+	 * looking every host up again) goes to a disk-backed map ordered by
+	 * URL count, so memory use stays bounded however many hosts there are.
+	 */
 	@Override
     public void write(final PrintWriter writer, StatisticsTracker stats) {
-    	Collection<String> keys = null;
-    	DisposableStoredSortedMap<Long, String> hd = null;
+        writer.print("[#urls] [#bytes] [host] [#robots] [#remaining] [#novel-urls] [#novel-bytes] [#dup-by-hash-urls] [#dup-by-hash-bytes] [#not-modified-urls] [#not-modified-bytes]\n"); 
     	if (maxSortSize<0 || maxSortSize>stats.serverCache.hostKeys().size()) {
-    		hd = stats.calcReverseSortedHostsDistribution();
-        	keys = hd.values();
+    	    final DisposableStoredSortedMap<Long,String> sortedLines =
+    	            stats.bdb.getStoredMap(null, Long.class, String.class, true, false);
+    	    try {
+    	        stats.serverCache.forAllHostsDo(hostObj -> {
+    	            CrawlHost host = (CrawlHost) hostObj;
+    	            String line = reportLine(host);
+    	            if (line != null) {
+    	                // key is -count, value is report line
+    	                sortedLines.put(-host.getSubstats().getFetchSuccesses(), line);
+    	            }
+    	        });
+    	        for (String line : sortedLines.values()) {
+    	            writer.print(line);
+    	        }
+    	    } finally {
+    	        sortedLines.dispose();
+    	    }
         } else {
-        	keys = stats.serverCache.hostKeys();
-        }
-        writer.print("[#urls] [#bytes] [host] [#robots] [#remaining] [#novel-urls] [#novel-bytes] [#dup-by-hash-urls] [#dup-by-hash-bytes] [#not-modified-urls] [#not-modified-bytes]\n"); 
-        for (String key : keys) {
-            // key is -count, value is hostname
-            try {
-                CrawlHost host = stats.serverCache.getHostFor(key);
-                long fetchSuccesses = host.getSubstats().getFetchSuccesses();
-                if (!suppressEmptyHosts || fetchSuccesses>0) {
-	                writeReportLine(writer,
-	                        fetchSuccesses,
-	                        host.getSubstats().getTotalBytes(),
-	                        host.fixUpName(),
-	                        host.getSubstats().getRobotsDenials(),
-	                        host.getSubstats().getRemaining(), 
-	                        host.getSubstats().getNovelUrls(),
-	                        host.getSubstats().getNovelBytes(),
-	                        host.getSubstats().getDupByHashUrls(),
-	                        host.getSubstats().getDupByHashBytes(),
-	                        host.getSubstats().getNotModifiedUrls(),
-	                        host.getSubstats().getNotModifiedBytes());
+            stats.serverCache.forAllHostsDo(hostObj -> {
+                String line = reportLine((CrawlHost) hostObj);
+                if (line != null) {
+                    writer.print(line);
                 }
-            } catch (Exception e) {
-                logger.log(Level.WARNING, "unable to tally host stats for " + key, e);
-            }
+            });
         }
-        if (hd!=null) {
-        	hd.dispose();
+    }
+
+    /**
+     * @return the report line for the host, or null if it is to be
+     * suppressed
+     */
+    protected String reportLine(CrawlHost host) {
+        try {
+            long fetchSuccesses = host.getSubstats().getFetchSuccesses();
+            if (suppressEmptyHosts && fetchSuccesses<=0) {
+                return null;
+            }
+            return formatReportLine(
+                    fetchSuccesses,
+                    host.getSubstats().getTotalBytes(),
+                    host.fixUpName(),
+                    host.getSubstats().getRobotsDenials(),
+                    host.getSubstats().getRemaining(), 
+                    host.getSubstats().getNovelUrls(),
+                    host.getSubstats().getNovelBytes(),
+                    host.getSubstats().getDupByHashUrls(),
+                    host.getSubstats().getDupByHashBytes(),
+                    host.getSubstats().getNotModifiedUrls(),
+                    host.getSubstats().getNotModifiedBytes());
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "unable to tally host stats for " + host.getHostName(), e);
+            return null;
         }
     }
 
     protected void writeReportLine(PrintWriter writer, Object  ... fields) {
+        writer.print(formatReportLine(fields));
+    }
+
+    protected String formatReportLine(Object ... fields) {
+        StringBuilder line = new StringBuilder();
         for(Object field : fields) {
-            writer.print(field);
-            writer.print(" ");
+            line.append(field);
+            line.append(' ');
         }
-        writer.print("\n");
-     }
+        line.append('\n');
+        return line.toString();
+    }
 
     @Override
     public String getFilename() {
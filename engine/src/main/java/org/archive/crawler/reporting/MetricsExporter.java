@@ -0,0 +1,174 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.reporting;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+import org.archive.crawler.framework.CrawlController;
+import org.archive.crawler.framework.Frontier;
+import org.archive.crawler.frontier.AbstractFrontier;
+import org.archive.crawler.frontier.BdbFrontier;
+import org.archive.modules.Processor;
+import org.archive.modules.ProcessorChain;
+import org.archive.util.LatencyHistogram;
+
+/**
+ * Writes a crawl's processor, chain, frontier and BDB timings and counters
+ * in the Prometheus text exposition format (version 0.0.4), which
+ * OpenMetrics scrapers also accept.
+ *
+ * <p>Latencies are exported as summaries (in seconds) with 0.5, 0.9 and
+ * 0.99 quantiles, taken from each component's {@link LatencyHistogram}.
+ */
+public class MetricsExporter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+    protected static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    protected final PrintWriter writer;
+
+    public MetricsExporter(PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Write all metrics of the given crawl.
+     */
+    public void write(CrawlController controller) {
+        ProcessorChain[] chains = {
+            controller.getCandidateChain(),
+            controller.getFetchChain(),
+            controller.getDispositionChain()
+        };
+        String[] chainNames = {"candidate", "fetch", "disposition"};
+
+        header("heritrix_chain_latency_seconds", "summary",
+                "Time for a URI to pass through a processor chain");
+        for (int i = 0; i < chains.length; i++) {
+            summary("heritrix_chain_latency_seconds",
+                    "chain=\"" + chainNames[i] + "\"",
+                    chains[i].getChainLatency());
+        }
+
+        header("heritrix_processor_latency_seconds", "summary",
+                "Time for a processor to handle a URI");
+        for (int i = 0; i < chains.length; i++) {
+            for (Processor p : chains[i]) {
+                summary("heritrix_processor_latency_seconds",
+                        labels(chainNames[i], p), p.getProcessLatency());
+            }
+        }
+
+        header("heritrix_processor_uris_total", "counter",
+                "URIs handled by a processor");
+        for (int i = 0; i < chains.length; i++) {
+            for (Processor p : chains[i]) {
+                sample("heritrix_processor_uris_total",
+                        labels(chainNames[i], p), p.getURICount());
+            }
+        }
+
+        header("heritrix_processor_outcomes_total", "counter",
+                "URIs handled by a processor, by outcome other than proceeding");
+        for (int i = 0; i < chains.length; i++) {
+            for (Processor p : chains[i]) {
+                String labels = labels(chainNames[i], p);
+                sample("heritrix_processor_outcomes_total",
+                        labels + ",outcome=\"finish\"", p.getFinishCount());
+                sample("heritrix_processor_outcomes_total",
+                        labels + ",outcome=\"jump\"", p.getJumpCount());
+                sample("heritrix_processor_outcomes_total",
+                        labels + ",outcome=\"error\"", p.getErrorCount());
+            }
+        }
+
+        header("heritrix_processor_bytes_total", "counter",
+                "Content bytes obtained by a processor");
+        for (int i = 0; i < chains.length; i++) {
+            for (Processor p : chains[i]) {
+                sample("heritrix_processor_bytes_total",
+                        labels(chainNames[i], p), p.getByteCount());
+            }
+        }
+
+        Frontier frontier = controller.getFrontier();
+        if (frontier instanceof AbstractFrontier) {
+            header("heritrix_frontier_next_wait_seconds", "summary",
+                    "Time a ToeThread waits for the frontier to supply a URI");
+            summary("heritrix_frontier_next_wait_seconds", null,
+                    ((AbstractFrontier) frontier).getNextLatency());
+        }
+        if (frontier instanceof BdbFrontier) {
+            header("heritrix_bdb_operation_seconds", "summary",
+                    "Time for an operation on the frontier's pending-URI database");
+            for (Map.Entry<String, LatencyHistogram> entry
+                    : ((BdbFrontier) frontier).getBdbLatencies().entrySet()) {
+                summary("heritrix_bdb_operation_seconds",
+                        "operation=\"" + escape(entry.getKey()) + "\"",
+                        entry.getValue());
+            }
+        }
+        writer.flush();
+    }
+
+    protected String labels(String chain, Processor p) {
+        return "chain=\"" + chain + "\",processor=\""
+                + escape(p.getBeanName()) + "\"";
+    }
+
+    protected void header(String name, String type, String help) {
+        writer.print("# HELP " + name + " " + help + "\n");
+        writer.print("# TYPE " + name + " " + type + "\n");
+    }
+
+    protected void summary(String name, String labels,
+            LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        String prefix = labels == null ? "" : labels + ",";
+        for (double q : QUANTILES) {
+            writer.print(name + "{" + prefix + "quantile=\"" + q + "\"} "
+                    + seconds(snapshot.getValueAtPercentile(100 * q)) + "\n");
+        }
+        String suffix = labels == null ? "" : "{" + labels + "}";
+        writer.print(name + "_sum" + suffix + " "
+                + seconds(snapshot.getSum()) + "\n");
+        writer.print(name + "_count" + suffix + " "
+                + snapshot.getCount() + "\n");
+    }
+
+    protected void sample(String name, String labels, long value) {
+        writer.print(name + "{" + labels + "} " + value + "\n");
+    }
+
+    protected static String seconds(long micros) {
+        return Double.toString(micros / 1000000.0);
+    }
+
+    /**
+     * Escape a label value per the exposition format.
+     */
+    protected static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+}
@@ -19,6 +19,9 @@
 package org.archive.crawler.reporting;
 
 import java.io.PrintWriter;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -32,6 +35,21 @@ import org.archive.bdb.DisposableStoredSortedMap;
  */
 public class SourceTagsReport extends Report {
 
+    protected int maxInMemorySortSize = 10000;
+    public int getMaxInMemorySortSize() {
+        return maxInMemorySortSize;
+    }
+    /**
+     * Sources with up to this many hosts have their hosts sorted in memory;
+     * those with more are sorted through a disk-backed map, so that memory
+     * use stays bounded.
+     * 
+     * @param maxInMemorySortSize
+     */
+    public void setMaxInMemorySortSize(int maxInMemorySortSize) {
+        this.maxInMemorySortSize = maxInMemorySortSize;
+    }
+
     @Override
     public void write(PrintWriter writer, StatisticsTracker stats) {
 
@@ -47,6 +65,10 @@ public class SourceTagsReport extends Report {
         for (String sourceKey : sourceTags) {
             Map<String,AtomicLong> hostCounts = 
                 (Map<String,AtomicLong>)stats.sourceHostDistribution.get(sourceKey);
+            if (hostCounts.size() <= maxInMemorySortSize) {
+                writeSortedInMemory(writer, sourceKey, hostCounts);
+                continue;
+            }
             // sort hosts by #urls
             DisposableStoredSortedMap<Long,String> sortedHostCounts = 
                 stats.getReverseSortedHostCounts(hostCounts);
@@ -63,6 +85,30 @@ public class SourceTagsReport extends Report {
         }
     }
 
+    /**
+     * Write one source's hosts, by descending #urls then host, sorting a
+     * snapshot of the counts in memory.
+     */
+    protected void writeSortedInMemory(PrintWriter writer, String sourceKey,
+            Map<String,AtomicLong> hostCounts) {
+        List<Map.Entry<String,Long>> entries =
+            new ArrayList<Map.Entry<String,Long>>(hostCounts.size());
+        for (Map.Entry<String,AtomicLong> entry : hostCounts.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<String,Long>(
+                    entry.getKey(), entry.getValue().get()));
+        }
+        entries.sort(Map.Entry.<String,Long>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        for (Map.Entry<String,Long> entry : entries) {
+            writer.print(sourceKey);
+            writer.print(" ");
+            writer.print(entry.getKey());
+            writer.print(" ");
+            writer.print(entry.getValue());
+            writer.print("\n");
+        }
+    }
+
     @Override
     public String getFilename() {
         return "source-report.txt";
@@ -0,0 +1,480 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.reporting;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.util.VarLongUtils;
+
+/**
+ * Append-only, compact file of every statistics sample (a
+ * {@link CrawlStatSnapshot}'s fields plus per-processor counters) taken
+ * over a crawl, with range queries that downsample to a requested number
+ * of points.
+ *
+ * <p>Each sample is a row of named numeric columns. Rows are stored as
+ * zigzag varint deltas from the previous row, so slowly changing counters
+ * take a byte or two each. Every {@link #KEYFRAME_INTERVAL} rows, and
+ * whenever the set of columns changes, a row is stored with absolute
+ * values instead; an in-memory index of these keyframes lets queries start
+ * reading near the requested time. Integral values are stored exactly;
+ * floating point values are stored to three decimal places.
+ *
+ * <p>Record layout: a type byte, then for a header ('H') the column count
+ * and each column's name and scale, or for a keyframe ('K') or delta
+ * ('D') row one value per column of the preceding header.
+ */
+public class StatSnapshotHistory implements Closeable {
+    private static final Logger logger =
+        Logger.getLogger(StatSnapshotHistory.class.getName());
+
+    public static final String TIMESTAMP = "timestamp";
+    public static final int KEYFRAME_INTERVAL = 256;
+    /** scale of floating point columns: stored as thousandths */
+    protected static final int FLOAT_SCALE = 1000;
+
+    protected static final byte HEADER = 'H';
+    protected static final byte KEYFRAME = 'K';
+    protected static final byte DELTA = 'D';
+
+    /** Column names and scales in effect from a keyframe on. */
+    protected static class Columns {
+        final String[] names;
+        final int[] scales;
+        Columns(String[] names, int[] scales) {
+            this.names = names;
+            this.scales = scales;
+        }
+        boolean sameAs(String[] otherNames, int[] otherScales) {
+            return Arrays.equals(names, otherNames)
+                    && Arrays.equals(scales, otherScales);
+        }
+        int indexOf(String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /** A keyframe's (or header's, if at a column change) file position. */
+    protected static class Keyframe {
+        final long timestamp;
+        final long offset;
+        final Columns columns;
+        Keyframe(long timestamp, long offset, Columns columns) {
+            this.timestamp = timestamp;
+            this.offset = offset;
+            this.columns = columns;
+        }
+    }
+
+    protected final File file;
+    protected DataOutputStream out;
+    /** length of the file when opened; {@link #out} counts the rest */
+    protected long startLength;
+    protected Columns columns;
+    protected long[] lastValues;
+    protected int rowsSinceKeyframe;
+    protected List<Keyframe> keyframes = new ArrayList<Keyframe>();
+
+    /**
+     * Open the given file for appending, first indexing (and, if the last
+     * write was interrupted, truncating) any rows it already holds.
+     */
+    public StatSnapshotHistory(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            recover();
+        }
+        out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file, true)));
+    }
+
+    protected void recover() throws IOException {
+        long good = 0;
+        try (CountingInput in = new CountingInput(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            Columns current = null;
+            long headerOffset = -1;
+            long offset = 0;
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                if (type == HEADER) {
+                    current = readHeader(new DataInputStream(in));
+                    headerOffset = offset;
+                } else if (current != null && (type == KEYFRAME || type == DELTA)) {
+                    long[] values = readValues(in, current,
+                            type == KEYFRAME ? null : lastValues);
+                    if (type == KEYFRAME) {
+                        keyframes.add(new Keyframe(values[0],
+                                headerOffset >= 0 ? headerOffset : offset, current));
+                        rowsSinceKeyframe = 0;
+                        headerOffset = -1;
+                    } else {
+                        rowsSinceKeyframe++;
+                    }
+                    columns = current;
+                    lastValues = values;
+                    // a header is only kept along with the row after it
+                    good = in.count;
+                } else {
+                    throw new IOException("corrupt record type " + type
+                            + " at offset " + offset + " of " + file);
+                }
+                offset = in.count;
+            }
+        } catch (EOFException e) {
+            logger.warning("discarding partial record at offset " + good
+                    + " of " + file);
+        }
+        if (good < file.length()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(good);
+            }
+        }
+        startLength = good;
+    }
+
+    protected long length() {
+        return startLength + out.size();
+    }
+
+    /**
+     * Append a row. Integer-typed values are stored exactly, others to
+     * three decimal places.
+     *
+     * @param timestamp milliseconds since the epoch
+     * @param values column name -&gt; value, in a stable iteration order
+     */
+    public synchronized void append(long timestamp, Map<String,? extends Number> values)
+            throws IOException {
+        String[] names = new String[values.size() + 1];
+        int[] scales = new int[names.length];
+        long[] row = new long[names.length];
+        names[0] = TIMESTAMP;
+        scales[0] = 1;
+        row[0] = timestamp;
+        int i = 1;
+        for (Map.Entry<String,? extends Number> entry : values.entrySet()) {
+            Number value = entry.getValue();
+            names[i] = entry.getKey();
+            if (value instanceof Double || value instanceof Float) {
+                scales[i] = FLOAT_SCALE;
+                double d = value.doubleValue();
+                row[i] = Double.isNaN(d) || Double.isInfinite(d)
+                        ? 0 : Math.round(d * FLOAT_SCALE);
+            } else {
+                scales[i] = 1;
+                row[i] = value.longValue();
+            }
+            i++;
+        }
+
+        boolean keyframe = columns == null || rowsSinceKeyframe + 1 >= KEYFRAME_INTERVAL;
+        if (columns == null || !columns.sameAs(names, scales)) {
+            columns = new Columns(names, scales);
+            keyframes.add(new Keyframe(timestamp, length(), columns));
+            writeHeader(columns);
+            keyframe = true;
+        } else if (keyframe) {
+            keyframes.add(new Keyframe(timestamp, length(), columns));
+        }
+
+        out.writeByte(keyframe ? KEYFRAME : DELTA);
+        for (int j = 0; j < row.length; j++) {
+            VarLongUtils.writeVarLong(out, keyframe ? row[j] : row[j] - lastValues[j]);
+        }
+        out.flush();
+        rowsSinceKeyframe = keyframe ? 0 : rowsSinceKeyframe + 1;
+        lastValues = row;
+    }
+
+    protected void writeHeader(Columns columns) throws IOException {
+        out.writeByte(HEADER);
+        VarLongUtils.writeVarLong(out, columns.names.length);
+        for (int i = 0; i < columns.names.length; i++) {
+            out.writeUTF(columns.names[i]);
+            VarLongUtils.writeVarLong(out, columns.scales[i]);
+        }
+    }
+
+    protected static Columns readHeader(DataInputStream in) throws IOException {
+        int count = (int) VarLongUtils.readVarLong(in);
+        String[] names = new String[count];
+        int[] scales = new int[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = in.readUTF();
+            scales[i] = (int) VarLongUtils.readVarLong(in);
+        }
+        return new Columns(names, scales);
+    }
+
+    protected static long[] readValues(InputStream in, Columns columns,
+            long[] previous) throws IOException {
+        long[] values = new long[columns.names.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = VarLongUtils.readVarLong(in) + (previous == null ? 0 : previous[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Names of the columns of the most recent row, starting with
+     * {@link #TIMESTAMP}.
+     */
+    public synchronized List<String> getColumnNames() {
+        if (columns == null) {
+            return new ArrayList<String>();
+        }
+        return Arrays.asList(columns.names);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Result of a query: one row per point, each starting with the
+     * timestamp, then the requested columns in order. A column absent
+     * from the samples in a point is NaN.
+     */
+    public static class Series {
+        protected final List<String> columns;
+        protected final List<double[]> rows = new ArrayList<double[]>();
+        protected Series(List<String> columns) {
+            this.columns = columns;
+        }
+        public List<String> getColumns() {
+            return columns;
+        }
+        public List<double[]> getRows() {
+            return rows;
+        }
+    }
+
+    /**
+     * Samples between the given times (inclusive), downsampled if there are
+     * more than {@code maxPoints}: the range is divided into
+     * {@code maxPoints} equal intervals, and each interval holding samples
+     * becomes one point, timestamped as its last sample, whose values are
+     * the mean of its samples' values.
+     *
+     * @param from start time, milliseconds since the epoch
+     * @param to end time, milliseconds since the epoch
+     * @param wanted column names, or null for all columns of the latest row
+     * @param maxPoints greatest number of points to return, or 0 for every
+     *        sample
+     */
+    public Series query(long from, long to, Collection<String> wanted,
+            int maxPoints) throws IOException {
+        Keyframe start;
+        long end;
+        List<String> names = new ArrayList<String>();
+        names.add(TIMESTAMP);
+        synchronized (this) {
+            out.flush();
+            end = length();
+            if (wanted == null) {
+                if (columns != null) {
+                    names.addAll(Arrays.asList(columns.names).subList(1,
+                            columns.names.length));
+                }
+            } else {
+                for (String name : wanted) {
+                    if (!TIMESTAMP.equals(name)) {
+                        names.add(name);
+                    }
+                }
+            }
+            if (keyframes.isEmpty()) {
+                return new Series(names);
+            }
+            start = keyframeBefore(from);
+            from = Math.max(from, keyframes.get(0).timestamp);
+            to = Math.min(to, lastValues[0]);
+        }
+
+        Downsampler sampler = new Downsampler(names, from, to, maxPoints);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(start.offset);
+            InputStream in = new BufferedInputStream(new InputStream() {
+                        public int read() throws IOException {
+                            return raf.read();
+                        }
+                        public int read(byte[] b, int off, int len) throws IOException {
+                            return raf.read(b, off, len);
+                        }
+                    });
+            long offset = start.offset;
+            Columns current = start.columns;
+            int[] mapping = mapping(current, names);
+            long[] values = null;
+            CountingInput counter = new CountingInput(in);
+            while (offset < end) {
+                counter.count = 0;
+                int type = counter.read();
+                if (type == -1) {
+                    break;
+                } else if (type == HEADER) {
+                    current = readHeader(new DataInputStream(counter));
+                    mapping = mapping(current, names);
+                } else {
+                    values = readValues(counter, current,
+                            type == KEYFRAME ? null : values);
+                    if (values[0] > to) {
+                        break;
+                    }
+                    if (values[0] >= from) {
+                        sampler.add(values, current, mapping);
+                    }
+                }
+                offset += counter.count;
+            }
+        }
+        return sampler.finish();
+    }
+
+    protected Keyframe keyframeBefore(long time) {
+        int lo = 0;
+        int hi = keyframes.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (keyframes.get(mid).timestamp <= time) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return keyframes.get(lo);
+    }
+
+    /** index of each wanted column in the given columns, or -1 */
+    protected static int[] mapping(Columns columns, List<String> names) {
+        int[] mapping = new int[names.size()];
+        for (int i = 0; i < mapping.length; i++) {
+            mapping[i] = columns.indexOf(names.get(i));
+        }
+        return mapping;
+    }
+
+    /** Averages samples into fixed time intervals as they're read. */
+    protected static class Downsampler {
+        final Series series;
+        final long from;
+        final double width;
+        long bucket = -1;
+        long lastTimestamp;
+        double[] sums;
+        int[] counts;
+
+        Downsampler(List<String> names, long from, long to, int maxPoints) {
+            series = new Series(names);
+            this.from = from;
+            width = maxPoints > 0 ? Math.max(1d, (to - from + 1) / (double) maxPoints) : 0;
+            sums = new double[names.size()];
+            counts = new int[names.size()];
+        }
+
+        void add(long[] values, Columns columns, int[] mapping) {
+            long b = width > 0 ? (long) ((values[0] - from) / width) : values[0];
+            if (b != bucket || width == 0) {
+                flush();
+                bucket = b;
+            }
+            lastTimestamp = values[0];
+            for (int i = 1; i < mapping.length; i++) {
+                if (mapping[i] >= 0) {
+                    sums[i] += values[mapping[i]] / (double) columns.scales[mapping[i]];
+                    counts[i]++;
+                }
+            }
+            counts[0]++;
+        }
+
+        void flush() {
+            if (counts[0] == 0) {
+                return;
+            }
+            double[] row = new double[sums.length];
+            row[0] = lastTimestamp;
+            for (int i = 1; i < row.length; i++) {
+                row[i] = counts[i] == 0 ? Double.NaN : sums[i] / counts[i];
+            }
+            series.rows.add(row);
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+        }
+
+        Series finish() {
+            flush();
+            return series;
+        }
+    }
+
+    /** Counts bytes read, so record offsets are known despite buffering. */
+    protected static class CountingInput extends InputStream {
+        final InputStream in;
+        long count;
+        CountingInput(InputStream in) {
+            this.in = in;
+        }
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "problem closing " + file, e);
+        }
+    }
+}
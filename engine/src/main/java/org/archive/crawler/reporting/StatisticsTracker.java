@@ -27,10 +27,13 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -50,7 +53,10 @@ import org.archive.crawler.event.StatSnapshotEvent;
 import org.archive.crawler.framework.CrawlController;
 import org.archive.crawler.framework.Engine;
 import org.archive.crawler.util.CrawledBytesHistotable;
+import org.archive.crawler.util.TopNSet;
 import org.archive.modules.CrawlURI;
+import org.archive.modules.Processor;
+import org.archive.modules.ProcessorChain;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.ServerCache;
 import org.archive.modules.seeds.SeedListener;
@@ -238,6 +244,29 @@ public class StatisticsTracker
     public void setKeepSnapshotsCount(int count) {
         this.keepSnapshotsCount = count;
     }
+
+    /**
+     * Whether to record every snapshot, plus per-processor counters, in a
+     * compact history file in the reports directory, for charting over the
+     * life of the crawl.
+     */
+    protected boolean keepSnapshotHistory = true;
+    public boolean getKeepSnapshotHistory() {
+        return this.keepSnapshotHistory;
+    }
+    public void setKeepSnapshotHistory(boolean keepSnapshotHistory) {
+        this.keepSnapshotHistory = keepSnapshotHistory;
+    }
+
+    public static final String SNAPSHOT_HISTORY_FILENAME = "stats-history.bin";
+
+    protected StatSnapshotHistory snapshotHistory;
+    /**
+     * @return history of all snapshots, or null if not kept
+     */
+    public StatSnapshotHistory getSnapshotHistory() {
+        return snapshotHistory;
+    }
     
     protected CrawlController controller;
     public CrawlController getCrawlController() {
@@ -269,9 +298,41 @@ public class StatisticsTracker
     protected CrawledBytesHistotable crawledBytes = new CrawledBytesHistotable();
     
     public CrawledBytesHistotable getCrawledBytes() {
+        mergeTallies();
         return crawledBytes;
     }
 
+    /**
+     * Each thread's tallies of finished URIs, merged into the shared
+     * tallies (crawledBytes, mimeTypeDistribution, etc.) on each snapshot
+     * and whenever the shared tallies are read, so that finishing a URI
+     * touches no shared, contended state.
+     */
+    protected Queue<DispositionTallies> threadTallies =
+        new ConcurrentLinkedQueue<DispositionTallies>();
+    protected ThreadLocal<DispositionTallies> localTallies =
+        ThreadLocal.withInitial(() -> {
+            DispositionTallies tallies = new DispositionTallies(Thread.currentThread());
+            threadTallies.add(tallies);
+            return tallies;
+        });
+
+    /**
+     * Bring the shared tallies up to date with all threads' tallies.
+     */
+    public void mergeTallies() {
+        Iterator<DispositionTallies> iter = threadTallies.iterator();
+        while (iter.hasNext()) {
+            DispositionTallies tallies = iter.next();
+            // check before draining, so nothing tallied after is lost
+            boolean finished = !tallies.isOwnerAlive();
+            tallies.drainTo(this);
+            if (finished) {
+                iter.remove();
+            }
+        }
+    }
+
     // TODO: fortify these against key explosion with bigmaps like other tallies
     /** Keep track of the file types we see (mime type -&gt; count) */
     protected ConcurrentMap<String,AtomicLong> mimeTypeDistribution
@@ -299,6 +360,16 @@ public class StatisticsTracker
      */
     protected ObjectIdentityCache<SeedRecord> processedSeedsRecords = 
         new ObjectIdentityMemCache<SeedRecord>();
+
+    /**
+     * Hosts with the most URLs fetched, kept up to date as URIs finish, so
+     * the largest hosts can be shown without a pass over all hosts. (Not
+     * checkpointed: hosts re-enter as they are crawled after a resume.)
+     */
+    protected TopNSet largestHosts = new TopNSet(20);
+    public TopNSet getLargestHosts() {
+        return largestHosts;
+    }
     protected long seedsTotal = -1; 
     protected long seedsCrawled = -1;
     
@@ -340,6 +411,9 @@ public class StatisticsTracker
         executor.shutdownNow();
         progressStatisticsEvent();
         dumpReports();
+        if (snapshotHistory != null) {
+            snapshotHistory.close();
+        }
     }
     
     @SuppressWarnings("unchecked")
@@ -400,6 +474,16 @@ public class StatisticsTracker
         } catch (JSONException e) {
             throw new IllegalStateException(e);
         }
+        if (getKeepSnapshotHistory()) {
+            File f = new File(getReportsDir().getFile(), SNAPSHOT_HISTORY_FILENAME);
+            try {
+                FileUtils.ensureWriteableDirectory(f.getParentFile());
+                snapshotHistory = new StatSnapshotHistory(f);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "unable to open " + f
+                        + "; snapshot history will not be kept", e);
+            }
+        }
         // Log the legend
         this.controller.logProgressStatistics(progressStatisticsLegend());
         executor.scheduleAtFixedRate(this, 0, getIntervalSeconds(), TimeUnit.SECONDS);
@@ -471,6 +555,13 @@ public class StatisticsTracker
         while(snapshots.size()>getKeepSnapshotsCount()) {
             snapshots.removeLast();
         }
+        if (snapshotHistory != null) {
+            try {
+                snapshotHistory.append(snapshot.timestamp, historySample(snapshot));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "unable to record snapshot history", e);
+            }
+        }
         
         // publish app event 
         appCtx.publishEvent(new StatSnapshotEvent(this,snapshot));
@@ -481,7 +572,78 @@ public class StatisticsTracker
         Lookup.getDefaultCache(DClass.IN).clearCache();
     }
     
+    /**
+     * Values recorded in the snapshot history: the snapshot's fields, heap
+     * use, and each processor's counters, as "processor.{name}.{counter}"
+     * (see {@link #historyName(Processor, Map)}).
+     */
+    protected Map<String,Number> historySample(CrawlStatSnapshot snapshot) {
+        Map<String,Number> sample = new LinkedHashMap<String,Number>();
+        sample.put("discoveredUriCount", snapshot.discoveredUriCount);
+        sample.put("queuedUriCount", snapshot.queuedUriCount);
+        sample.put("futureUriCount", snapshot.futureUriCount);
+        sample.put("finishedUriCount", snapshot.finishedUriCount);
+        sample.put("downloadedUriCount", snapshot.downloadedUriCount);
+        sample.put("downloadFailures", snapshot.downloadFailures);
+        sample.put("downloadDisregards", snapshot.downloadDisregards);
+        sample.put("bytesProcessed", snapshot.bytesProcessed);
+        sample.put("elapsedMilliseconds", snapshot.elapsedMilliseconds);
+        sample.put("docsPerSecond", snapshot.docsPerSecond);
+        sample.put("currentDocsPerSecond", snapshot.currentDocsPerSecond);
+        sample.put("totalKiBPerSec", snapshot.totalKiBPerSec);
+        sample.put("currentKiBPerSec", snapshot.currentKiBPerSec);
+        sample.put("busyThreads", snapshot.busyThreads);
+        sample.put("congestionRatio", (double) snapshot.congestionRatio);
+        sample.put("deepestUri", snapshot.deepestUri);
+        sample.put("averageDepth", snapshot.averageDepth);
+        sample.put("novelBytes", snapshot.novelBytes);
+        sample.put("novelUriCount", snapshot.novelUriCount);
+        sample.put("warcNovelBytes", snapshot.warcNovelBytes);
+        sample.put("warcNovelUriCount", snapshot.warcNovelUriCount);
+        sample.put("heapUsedKiB", (Runtime.getRuntime().totalMemory()
+                - Runtime.getRuntime().freeMemory()) / 1024);
+
+        if (controller != null) {
+            ProcessorChain[] chains = {
+                controller.getCandidateChain(),
+                controller.getFetchChain(),
+                controller.getDispositionChain()
+            };
+            for (ProcessorChain chain : chains) {
+                if (chain == null) {
+                    continue;
+                }
+                for (Processor p : chain) {
+                    String prefix = "processor." + historyName(p, sample) + ".";
+                    sample.put(prefix + "uris", p.getURICount());
+                    sample.put(prefix + "bytes", p.getByteCount());
+                    sample.put(prefix + "errors", p.getErrorCount());
+                }
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * @return the processor's bean name or, for an unnamed processor, its
+     * class name; suffixed "-2", "-3"... if already in the sample (as for
+     * a second unnamed processor of the same class)
+     */
+    protected String historyName(Processor p, Map<String,Number> sample) {
+        String name = p.getBeanName();
+        if (name == null) {
+            name = p.getClass().getSimpleName().isEmpty()
+                    ? p.getClass().getName() : p.getClass().getSimpleName();
+        }
+        String unique = name;
+        for (int i = 2; sample.containsKey("processor." + unique + ".uris"); i++) {
+            unique = name + "-" + i;
+        }
+        return unique;
+    }
+
     public CrawlStatSnapshot getSnapshot() {
+        mergeTallies();
         // TODO: take snapshot implementation from a spring prototype?
         CrawlStatSnapshot snapshot = new CrawlStatSnapshot();
         snapshot.collect(controller,this); 
@@ -583,6 +745,7 @@ public class StatisticsTracker
      * @return mimeTypeDistribution
      */
     public Map<String, AtomicLong> getFileDistribution() {
+        mergeTallies();
         return mimeTypeDistribution;
     }
 
@@ -674,6 +837,7 @@ public class StatisticsTracker
      * @return statusCodeDistribution
      */
     public Map<String, AtomicLong> getStatusCodeDistribution() {
+        mergeTallies();
         return statusCodeDistribution;
     }
     
@@ -705,6 +869,7 @@ public class StatisticsTracker
      * @return the accumulated number of bytes from files of a given mime type
      */
     public long getBytesPerFileType(String filetype){
+        mergeTallies();
         return getReportValue(mimeTypeBytes, filetype);
     }
 
@@ -718,6 +883,7 @@ public class StatisticsTracker
     }
             
     public String crawledBytesSummary() {
+        mergeTallies();
         return crawledBytes.summary();
     }
     
@@ -743,27 +909,27 @@ public class StatisticsTracker
 
     public void crawledURISuccessful(CrawlURI curi) {
         handleSeed(curi,"Seed successfully crawled");
-        // save crawled bytes tally
-        crawledBytes.accumulate(curi);
-
-        // Save status codes
-        incrementMapCount(statusCodeDistribution,
-            Integer.toString(curi.getFetchStatus()));
-
-        // Save mime types
-        String mime = MimetypeUtils.truncate(curi.getContentType());
-        incrementMapCount(mimeTypeDistribution, mime);
-        incrementMapCount(mimeTypeBytes, mime, curi.getContentSize());
 
         ServerCache sc = serverCache;
+        CrawlHost host = sc.getHostFor(curi.getUURI());
+        if (host != null) {
+            largestHosts.update(host.getHostName(),
+                    host.getSubstats().getFetchSuccesses());
+        }
+        String source = null;
         if (getTrackSources() && curi.getData().containsKey(A_SOURCE_TAG)) {
-        	saveSourceStats(curi.getSourceTag(), 
-        	        sc.getHostFor(curi.getUURI()).getHostName());
-        	tallySourceStats(curi);
+            source = curi.getSourceTag();
         }
+        // crawled bytes, status code, mime type and source tallies
+        localTallies.get().tally(curi, source,
+                source != null ? host.getHostName() : null);
     }
          
     protected void saveSourceStats(String source, String hostname) {
+        saveSourceStats(source, hostname, 1);
+    }
+
+    protected void saveSourceStats(String source, String hostname, long count) {
         ConcurrentMap<String,AtomicLong> hostUriCount = sourceHostDistribution.get(source); 
         if(hostUriCount == null) {
             hostUriCount = new ConcurrentHashMap<String,AtomicLong>();
@@ -772,17 +938,16 @@ public class StatisticsTracker
                 hostUriCount = prevVal; 
             }
         }
-        incrementMapCount(hostUriCount, hostname);
+        incrementMapCount(hostUriCount, hostname, count);
     }
 
     protected void tallySourceStats(CrawlURI curi) {
-        String source = curi.getSourceTag();
-        CrawledBytesHistotable sourceStats = statsBySource.get(source);
-        if (sourceStats == null) {
-            sourceStats = new CrawledBytesHistotable();
-            statsBySource.put(source, sourceStats);
-        }
-        sourceStats.accumulate(curi);
+        getOrCreateSourceStats(curi.getSourceTag()).accumulate(curi);
+    }
+
+    protected CrawledBytesHistotable getOrCreateSourceStats(String source) {
+        return statsBySource.computeIfAbsent(source,
+                k -> new CrawledBytesHistotable());
     }
     
     public void crawledURINeedRetry(CrawlURI curi) {
@@ -879,6 +1044,7 @@ public class StatisticsTracker
     }
 
     protected File writeReportFile(Report report, boolean force) {
+        mergeTallies();
         File f = new File(getReportsDir().getFile(), report.getFilename());
         
         if(f.exists() && !controller.isRunning() && controller.hasStarted() && !force
@@ -1050,6 +1216,7 @@ public class StatisticsTracker
     // Checkpointable
     public void startCheckpoint(Checkpoint checkpointInProgress) {}
     public void doCheckpoint(Checkpoint checkpointInProgress) throws IOException {
+        mergeTallies();
         JSONObject json = new JSONObject();
         try {
             json.put("crawlStartTime",crawlStartTime);
@@ -1085,6 +1252,7 @@ public class StatisticsTracker
     }
     
     public CrawledBytesHistotable getSourceStats(String source) {
+        mergeTallies();
         return statsBySource.get(source);
     }
     
@@ -120,6 +120,8 @@ public class EngineApplication extends Application {
         router.attach("/engine/job/{job}/beans",BeanBrowseResource.class);
         router.attach("/engine/job/{job}/beans/{beanPath}",BeanBrowseResource.class);
         router.attach("/engine/job/{job}/script",ScriptResource.class);
+        router.attach("/engine/job/{job}/metrics",MetricsResource.class);
+        router.attach("/engine/job/{job}/stats-history",StatsHistoryResource.class);
 
         // static files (won't serve directory, but will serve files in it)
         String resource = "clap://class/org/archive/crawler/restlet";
@@ -104,7 +104,9 @@ public class EnhDirectoryResource extends DirectoryServerResource {
                                 this,
                                 f.getFirstValue("pos"),
                                 f.getFirstValue("lines"),
-                                f.getFirstValue("reverse")));
+                                f.getFirstValue("reverse"),
+                                f.getFirstValue("grep"),
+                                f.getFirstValue("time")));
                     };
                 }
             }
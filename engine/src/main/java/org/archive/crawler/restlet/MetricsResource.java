@@ -0,0 +1,56 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.restlet;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.archive.crawler.reporting.MetricsExporter;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.representation.Variant;
+import org.restlet.resource.ResourceException;
+
+/**
+ * Restlet Resource exposing a running job's timings and counters in the
+ * Prometheus text format, for scraping.
+ */
+public class MetricsResource extends JobRelatedResource {
+    protected static final MediaType METRICS_TYPE =
+        MediaType.valueOf(MetricsExporter.CONTENT_TYPE);
+
+    @Override
+    public void init(Context ctx, Request req, Response res) throws ResourceException {
+        super.init(ctx, req, res);
+        getVariants().add(new Variant(METRICS_TYPE));
+    }
+
+    @Override
+    protected Representation get(Variant variant) throws ResourceException {
+        StringWriter out = new StringWriter();
+        if (cj.getCrawlController() != null) {
+            new MetricsExporter(new PrintWriter(out)).write(cj.getCrawlController());
+        }
+        return new StringRepresentation(out.toString(), METRICS_TYPE);
+    }
+}
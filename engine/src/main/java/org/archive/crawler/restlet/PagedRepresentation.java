@@ -28,15 +28,19 @@ import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.text.ParseException;
 import java.util.*;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.LongRange;
+import org.archive.crawler.util.LogIndex;
 import org.archive.modules.fetcher.FetchStatusCodes;
+import org.archive.util.ArchiveUtils;
 import org.archive.util.FileUtils;
 import org.eclipse.jetty.http.HttpStatus;
 import org.restlet.data.CharacterSet;
@@ -50,6 +54,11 @@ import org.restlet.representation.FileRepresentation;
  * Representation wrapping a FileRepresentation, displaying its contents
  * in batches of lines at a time, with forward and backward navigation. 
  * 
+ * Lines may be filtered by a regular expression, and logs with timestamped
+ * lines (crawl.log) may be entered at a given time; both use the file's
+ * {@link LogIndex}, as does paging through gzipped files. Positions in
+ * gzipped files are offsets into their uncompressed content.
+ * 
  * @author gojomo
  */
 public class PagedRepresentation extends CharacterRepresentation {
@@ -65,6 +74,10 @@ public class PagedRepresentation extends CharacterRepresentation {
     protected int lineCount;
     /** whether to display lines in reversed order (latest first) **/
     protected boolean reversedOrder; 
+    /** only show lines matching this, if not null **/
+    protected String grep;
+    /** time to seek to, if not null; replaces position **/
+    protected String time;
     
     // created when file is scanned
     /** text lines **/
@@ -73,6 +86,10 @@ public class PagedRepresentation extends CharacterRepresentation {
     protected LongRange range;
     /** File **/ 
     protected File file; 
+    /** length of (uncompressed) file content **/
+    protected long length;
+    /** note of a problem with grep or time, if any **/
+    protected String problem;
     // TODO: maybe, freeze length for more consistent display of growing files
     // (now, as length/%/bumper are written after lines retrieved, they 
     // sometimes are indicative the file has grown before the page is 
@@ -81,6 +98,12 @@ public class PagedRepresentation extends CharacterRepresentation {
     public PagedRepresentation(FileRepresentation representation,
             EnhDirectoryResource resource, String pos, String lines,
             String reverse) {
+        this(representation, resource, pos, lines, reverse, null, null);
+    }
+
+    public PagedRepresentation(FileRepresentation representation,
+            EnhDirectoryResource resource, String pos, String lines,
+            String reverse, String grep, String time) {
         super(MediaType.TEXT_HTML);
         fileRepresentation = representation;
         dirResource = resource; 
@@ -88,6 +111,8 @@ public class PagedRepresentation extends CharacterRepresentation {
         position = StringUtils.isBlank(pos) ? 0 : Long.parseLong(pos);
         lineCount = StringUtils.isBlank(lines) ? 128 : Integer.parseInt(lines);
         reversedOrder = "y".equals(reverse);
+        this.grep = StringUtils.isBlank(grep) ? null : grep;
+        this.time = StringUtils.isBlank(time) ? null : time;
         
         // TODO: remove if not necessary in future?
         setCharacterSet(CharacterSet.UTF_8);
@@ -112,6 +137,51 @@ public class PagedRepresentation extends CharacterRepresentation {
     protected void loadLines() throws IOException {
         this.file = fileRepresentation.getFile();
         this.lines = new LinkedList<String>();
+        this.length = file.length();
+        LogIndex index = null;
+        if (grep != null || time != null || isGzip(file)) {
+            index = LogIndex.forFile(file);
+            this.length = index.getLength();
+        }
+        if (time != null) {
+            if (index.isTimestamped()) {
+                try {
+                    position = index.offsetOfTime(parseTime(time));
+                    lineCount = Math.abs(lineCount);
+                } catch (ParseException e) {
+                    problem = "unrecognized time: " + time;
+                }
+            } else {
+                problem = "lines are not timestamped";
+            }
+        }
+        if (grep != null) {
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(grep);
+            } catch (PatternSyntaxException e) {
+                problem = "bad regular expression: " + e.getDescription();
+                pattern = Pattern.compile(Pattern.quote(grep));
+            }
+            if (lineCount < 0) {
+                this.range = index.grepBackward(pattern, position, -lineCount, lines);
+            } else {
+                this.range = index.grep(pattern, position, lineCount, lines);
+            }
+        } else if (index != null && index.isGzipped()) {
+            this.range = index.pagedLines(position, lineCount, lines);
+        } else {
+            loadPlainLines();
+        }
+        if(reversedOrder) {
+            Collections.reverse(lines);
+        }
+    }
+
+    /**
+     * Read lines of an uncompressed file, without any index. 
+     */
+    protected void loadPlainLines() throws IOException {
         this.range = FileUtils.pagedLines(file, position, lineCount, lines, 128);
         // bounce against the front of the file: don't show runt (fewer
         // lines than requested) unless absolutely necessary)
@@ -121,9 +191,26 @@ public class PagedRepresentation extends CharacterRepresentation {
             this.lines = new LinkedList<String>();
             this.range = FileUtils.pagedLines(file, 0, Math.abs(lineCount), lines, 128);
         }
-        if(reversedOrder) {
-            Collections.reverse(lines);
+    }
+
+    protected static boolean isGzip(File file) {
+        return file.getName().endsWith(".gz") || file.getName().contains(".gz.");
+    }
+
+    /**
+     * Parse a time given in any form with the digits of a 17-digit
+     * timestamp in order (eg "2024-01-31T12:00"), missing trailing digits
+     * taken as zeros.
+     * 
+     * @return epoch milliseconds
+     */
+    protected static long parseTime(String time) throws ParseException {
+        String digits = time.replaceAll("[^0-9]", "");
+        if (digits.length() < 4 || digits.length() > 17) {
+            throw new ParseException(time, 0);
         }
+        digits = StringUtils.rightPad(digits, 17, '0');
+        return ArchiveUtils.parse17DigitDate(digits).getTime();
     }
     
     /** 
@@ -137,10 +224,11 @@ public class PagedRepresentation extends CharacterRepresentation {
         
         PrintWriter pw = new PrintWriter(writer); 
         pw.println("<b>Paged view:</b> "+file);
+        emitFilterForm(pw);
         emitControls(pw);
 
         Function<String, String> syntaxHighlighter = Function.identity();
-        if (file.getName().equals("crawl.log")) {
+        if (file.getName().startsWith("crawl.log")) {
             pw.println("<style>\n" +
                     ".status-neg { color: #777; }\n" +
                     ".status-2xx { color: #070; }\n" +
@@ -222,7 +310,7 @@ public class PagedRepresentation extends CharacterRepresentation {
      * @param atTop boolean, true if at top of page
      */
     protected void emitBumper(PrintWriter pw, boolean atTop) {
-        if((!reversedOrder ^ atTop)&&(range.getMaximumLong()==file.length())) {
+        if((!reversedOrder ^ atTop)&&(range.getMaximumLong()==length)) {
             pw.println("<span class='endBumper' style='font-weight:bold; color:white; background-color:#400'>&laquo;EOF&raquo;</span>");
             return; 
         }
@@ -231,6 +319,30 @@ public class PagedRepresentation extends CharacterRepresentation {
         }
     }
 
+    /**
+     * Emit the form for filtering lines and seeking to a time. 
+     * 
+     * @param pw PrintWriter
+     */
+    protected void emitFilterForm(PrintWriter pw) {
+        pw.println("<form method='get'>");
+        pw.println("<input type='hidden' name='format' value='paged'>");
+        if(reversedOrder) {
+            pw.println("<input type='hidden' name='reverse' value='y'>");
+        }
+        pw.print("matching <input type='text' name='grep' size='30' value='");
+        pw.print(grep == null ? "" : StringEscapeUtils.escapeHtml(grep));
+        pw.println("'>");
+        pw.println("from time <input type='text' name='time' size='20'"
+                + " placeholder='2024-01-31T12:00'>");
+        pw.println("<input type='submit' value='go'>");
+        if(problem != null) {
+            pw.println("<span style='color:#700'>"
+                    + StringEscapeUtils.escapeHtml(problem) + "</span>");
+        }
+        pw.println("</form>");
+    }
+
     /**
      * Emit the navigational controls. 
      * 
@@ -247,14 +359,14 @@ public class PagedRepresentation extends CharacterRepresentation {
             pw.println("'>&laquo; end</a>");
             pw.print("<a href='");
             pw.print(getControlUri(
-                    Math.min(file.length()-1, range.getMaximumLong()),Math.abs(lineCount),reversedOrder));
+                    Math.min(length-1, range.getMaximumLong()),Math.abs(lineCount),reversedOrder));
             pw.println("'>&lsaquo; later</a>");
             pw.println("bytes "
                     +range.getMaximumLong()
                     +"-"+range.getMinimumLong()
-                    +"/"+file.length()
+                    +"/"+length
                     +" "
-                    +(int)(100*(range.getMaximumLong()/(float)file.length()))
+                    +(int)(100*(range.getMaximumLong()/(float)length))
                     +"%");
             pw.print("<a href='");
             pw.print(getControlUri(
@@ -279,16 +391,16 @@ public class PagedRepresentation extends CharacterRepresentation {
             pw.println("bytes "
                     +range.getMinimumLong()
                     +"-"+range.getMaximumLong()
-                    +"/"+file.length()
+                    +"/"+length
                     +" "
-                    +(int)(100*(range.getMaximumLong()/(float)file.length()))
+                    +(int)(100*(range.getMaximumLong()/(float)length))
                     +"%");
             pw.print("<a href='");
             pw.print(getControlUri(
-                    Math.min(file.length()-1, range.getMaximumLong()),Math.abs(lineCount),reversedOrder));
+                    Math.min(length-1, range.getMaximumLong()),Math.abs(lineCount),reversedOrder));
             pw.println("'>later &rsaquo;</a>");
             pw.print("<a href='");
-            pw.print(getControlUri(file.length(),-Math.abs(lineCount),reversedOrder));
+            pw.print(getControlUri(length,-Math.abs(lineCount),reversedOrder));
             pw.println("'>end &raquo;</a>");
             pw.println("</td>");
             
@@ -329,6 +441,9 @@ public class PagedRepresentation extends CharacterRepresentation {
         if(reverse) {
             query.add("reverse","y");
         }
+        if(grep != null) {
+            query.add("grep", grep);
+        }
         Reference viewRef = dirResource.getRequest().getOriginalRef().clone(); 
         viewRef.setQuery(query.getQueryString());
         
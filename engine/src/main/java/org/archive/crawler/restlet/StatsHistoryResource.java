@@ -0,0 +1,140 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.restlet;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.archive.crawler.reporting.StatSnapshotHistory;
+import org.archive.crawler.reporting.StatisticsTracker;
+import org.archive.util.ArchiveUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Form;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.representation.Variant;
+import org.restlet.resource.ResourceException;
+
+/**
+ * Restlet Resource serving range queries over a running job's statistics
+ * history (see {@link StatSnapshotHistory}) as JSON, for charting.
+ *
+ * <p>Query parameters, all optional:
+ * <ul>
+ * <li>from, to: range, as milliseconds since the epoch or a 14- or
+ * 17-digit timestamp (default: the whole crawl)
+ * <li>columns: comma-separated column names (default: all)
+ * <li>points: most points to return, downsampling if necessary
+ * (default 500; 0 for every sample)
+ * </ul>
+ *
+ * <p>The response is an object with a "columns" array, starting with
+ * "timestamp", and a "rows" array of arrays of values in that order;
+ * values missing from a point are null.
+ */
+public class StatsHistoryResource extends JobRelatedResource {
+    public static final int DEFAULT_POINTS = 500;
+
+    @Override
+    public void init(Context ctx, Request req, Response res) throws ResourceException {
+        super.init(ctx, req, res);
+        getVariants().add(new Variant(MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    protected Representation get(Variant variant) throws ResourceException {
+        StatisticsTracker stats = cj.getCrawlController() == null ? null
+                : cj.getCrawlController().getStatisticsTracker();
+        StatSnapshotHistory history = stats == null ? null : stats.getSnapshotHistory();
+        if (history == null) {
+            throw new ResourceException(Status.CLIENT_ERROR_NOT_FOUND,
+                    "no statistics history for job " + cj.getShortName());
+        }
+
+        Form query = getRequest().getResourceRef().getQueryAsForm();
+        long from = parseTime(query.getFirstValue("from"), 0);
+        long to = parseTime(query.getFirstValue("to"), Long.MAX_VALUE);
+        String columns = query.getFirstValue("columns");
+        List<String> wanted = StringUtils.isBlank(columns) ? null
+                : Arrays.asList(columns.trim().split("\\s*,\\s*"));
+        int points = DEFAULT_POINTS;
+        try {
+            if (query.getFirstValue("points") != null) {
+                points = Integer.parseInt(query.getFirstValue("points"));
+            }
+        } catch (NumberFormatException e) {
+            throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST, e);
+        }
+
+        StatSnapshotHistory.Series series;
+        try {
+            series = history.query(from, to, wanted, points);
+        } catch (IOException e) {
+            throw new ResourceException(Status.SERVER_ERROR_INTERNAL, e);
+        }
+
+        JSONArray rows = new JSONArray();
+        for (double[] values : series.getRows()) {
+            JSONArray row = new JSONArray();
+            row.put((long) values[0]);
+            for (int i = 1; i < values.length; i++) {
+                if (Double.isNaN(values[i])) {
+                    row.put(JSONObject.NULL);
+                } else if (values[i] == Math.rint(values[i])
+                        && Math.abs(values[i]) < Long.MAX_VALUE) {
+                    row.put((long) values[i]);
+                } else {
+                    row.put(values[i]);
+                }
+            }
+            rows.put(row);
+        }
+        JSONObject result = new JSONObject();
+        result.put("columns", new JSONArray(series.getColumns()));
+        result.put("rows", rows);
+        return new StringRepresentation(result.toString(), MediaType.APPLICATION_JSON);
+    }
+
+    protected long parseTime(String value, long defaultValue) throws ResourceException {
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        value = value.trim();
+        try {
+            if (value.length() == 14) {
+                return ArchiveUtils.parse14DigitDate(value).getTime();
+            } else if (value.length() == 17) {
+                return ArchiveUtils.parse17DigitDate(value).getTime();
+            }
+            return Long.parseLong(value);
+        } catch (ParseException | NumberFormatException e) {
+            throw new ResourceException(Status.CLIENT_ERROR_BAD_REQUEST,
+                    "unparseable time: " + value);
+        }
+    }
+}
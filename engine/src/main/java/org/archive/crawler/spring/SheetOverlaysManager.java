@@ -19,6 +19,7 @@
  
 package org.archive.crawler.spring;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -30,14 +31,17 @@ import java.util.SortedSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.archive.modules.CrawlURI;
 import org.archive.spring.OverlayMapsSource;
 import org.archive.spring.Sheet;
-import org.archive.util.PrefixFinder;
 import org.archive.util.SurtPrefixSet;
+import org.archive.util.SurtPrefixTrie;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.TypeMismatchException;
 import org.springframework.beans.factory.BeanFactory;
@@ -62,7 +66,127 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
     /** all SheetAssociations by DecideRule evaluation */ 
     protected SortedSet<DecideRuledSheetAssociation> ruleAssociations = 
         new ConcurrentSkipListSet<DecideRuledSheetAssociation>();
-    protected NavigableMap<String,List<String>> sheetNamesBySurt = new ConcurrentSkipListMap<String,List<String>>(); 
+    protected ModCountingMap<String,List<String>> sheetNamesBySurt = new ModCountingMap<String,List<String>>(); 
+
+    /**
+     * Sorted map counting its modifications, including those made through
+     * its views and iterators (which go through the map's own remove; the
+     * one exception is polling a submap or descending view), so structures 
+     * derived from it can tell when they're stale. 
+     */
+    @SuppressWarnings("serial")
+    protected static class ModCountingMap<K,V> extends ConcurrentSkipListMap<K,V> {
+        protected final AtomicLong modCount = new AtomicLong();
+        public long getModCount() {
+            return modCount.get();
+        }
+        @Override
+        public V put(K key, V value) {
+            try {
+                return super.put(key, value);
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public V putIfAbsent(K key, V value) {
+            try {
+                return super.putIfAbsent(key, value);
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public V remove(Object key) {
+            try {
+                return super.remove(key);
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public boolean remove(Object key, Object value) {
+            try {
+                return super.remove(key, value);
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public void clear() {
+            try {
+                super.clear();
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public Map.Entry<K,V> pollFirstEntry() {
+            try {
+                return super.pollFirstEntry();
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public Map.Entry<K,V> pollLastEntry() {
+            try {
+                return super.pollLastEntry();
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public V computeIfAbsent(K key, Function<? super K,? extends V> f) {
+            try {
+                return super.computeIfAbsent(key, f);
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public V computeIfPresent(K key, BiFunction<? super K,? super V,? extends V> f) {
+            try {
+                return super.computeIfPresent(key, f);
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public V compute(K key, BiFunction<? super K,? super V,? extends V> f) {
+            try {
+                return super.compute(key, f);
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+        @Override
+        public V merge(K key, V value, BiFunction<? super V,? super V,? extends V> f) {
+            try {
+                return super.merge(key, value, f);
+            } finally {
+                modCount.incrementAndGet();
+            }
+        }
+    }
+
+    /** trie of the sheetNamesBySurt keys, valued by position in keys */
+    protected static class SurtKeys {
+        final String[] keys;
+        final SurtPrefixTrie trie;
+        /** sheetNamesBySurt's modification count when keys were taken */
+        final long modCount;
+        SurtKeys(List<String> keys, long modCount) {
+            this.keys = keys.toArray(new String[keys.size()]);
+            this.trie = SurtPrefixTrie.build(keys);
+            this.modCount = modCount;
+        }
+    }
+    /** 
+     * lookup structure for sheetNamesBySurt, rebuilt (lazily) whenever 
+     * the map changes 
+     */
+    protected volatile SurtKeys surtKeys = null;
     
     /** all sheets by (bean)name*/
     protected Map<String,Sheet> sheetsByName = new ConcurrentHashMap<String, Sheet>();
@@ -304,6 +428,29 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
         return sheet;
     }
     
+    /**
+     * Trie of the current SURT prefixes with associated sheets, rebuilt
+     * after any change to the sheetNamesBySurt map, including changes
+     * made directly (through {@link #getSheetsNamesBySurt()}). 
+     */
+    protected SurtKeys getSurtKeys() {
+        SurtKeys index = surtKeys;
+        if(index == null || index.modCount != sheetNamesBySurt.getModCount()) {
+            synchronized(this) {
+                index = surtKeys;
+                long modCount = sheetNamesBySurt.getModCount();
+                if(index == null || index.modCount != modCount) {
+                    // taken after the count: a change made meanwhile just
+                    // means another rebuild
+                    index = new SurtKeys(
+                            new ArrayList<String>(sheetNamesBySurt.keySet()), modCount);
+                    surtKeys = index;
+                }
+            }
+        }
+        return index;
+    }
+
     /**
      * Apply the proper overlays (by Sheet beanName) to the given CrawlURI,
      * according to configured associations.  
@@ -317,10 +464,20 @@ BeanFactoryAware, OverlayMapsSource, ApplicationListener<ApplicationEvent> {
         // apply SURT-based overlays
         curi.getOverlayNames().clear(); // clear previous info
         String effectiveSurt = SurtPrefixSet.getCandidateSurt(curi.getPolicyBasisUURI());
-        List<String> foundPrefixes = PrefixFinder.findKeys(sheetNamesBySurt, effectiveSurt);       
-        for(String prefix : foundPrefixes) {
-            for(String name : sheetNamesBySurt.get(prefix)) {
-                curi.getOverlayNames().add(name);
+        if(effectiveSurt != null) {
+            SurtKeys index = getSurtKeys();
+            int[] found = new int[8];
+            int count = index.trie.prefixValues(effectiveSurt, found);
+            if(count > found.length) {
+                found = new int[count];
+                index.trie.prefixValues(effectiveSurt, found);
+            }
+            // shortest prefix first, so more-specific sheets apply later
+            for(int i = 0; i < count; i++) {
+                List<String> names = sheetNamesBySurt.get(index.keys[found[i]]);
+                if(names != null) {
+                    curi.getOverlayNames().addAll(names);
+                }
             }
         }
         // apply deciderule-based overlays
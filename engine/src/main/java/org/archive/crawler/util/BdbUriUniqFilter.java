@@ -20,6 +20,8 @@ package org.archive.crawler.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -350,6 +352,52 @@ implements Lifecycle, Checkpointable, BeanNameAware, DisposableBean {
         }
     }
 
+    /**
+     * Add the keys in key order, through one cursor, so that a batch's
+     * inserts touch neighbouring btree nodes together (keys are grouped 
+     * by scheme and authority) rather than each in its own lookup. 
+     */
+    @Override
+    protected boolean[] setAddAll(List<? extends CharSequence> uris) {
+        int n = uris.size();
+        long[] keys = new long[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = createKey(uris.get(i));
+            order[i] = i;
+        }
+        // stable, so of duplicates in the batch the first is the one added
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        boolean[] added = new boolean[n];
+        DatabaseEntry key = new DatabaseEntry();
+        Cursor cursor = null;
+        try {
+            cursor = alreadySeen.openCursor(null, null);
+            for (int i : order) {
+                LongBinding.longToEntry(keys[i], key);
+                OperationStatus status = null;
+                try {
+                    status = cursor.putNoOverwrite(key, ZERO_LENGTH_ENTRY);
+                } catch (DatabaseException e) {
+                    logger.severe(e.getMessage());
+                }
+                if (status == OperationStatus.SUCCESS) {
+                    count.incrementAndGet();
+                }
+                // as in setAdd(), only a known duplicate isn't added
+                added[i] = (status != OperationStatus.KEYEXIST);
+            }
+        } catch (DatabaseException e) {
+            logger.severe(e.getMessage());
+            return super.setAddAll(uris);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return added;
+    }
+
     protected long setCount() {
         return count.get();
     }
@@ -0,0 +1,597 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.lang.math.LongRange;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Sparse index of a log file, for viewing arbitrary parts of large (and
+ * growing, rotated or gzipped) logs without scanning them from the start.
+ *
+ * <p>Every {@link #getInterval()} lines the index records the byte offset
+ * at which the line starts, so that any line can be reached by a seek and
+ * a scan of at most one interval. For logs whose lines begin with an ISO8601
+ * timestamp (such as crawl.log), it also records the latest timestamp seen
+ * up to the end of each interval, so the first line at or after a given
+ * time can be found the same way.
+ *
+ * <p>The index is built on first use and extended with whatever has been
+ * appended to the file each time it is used again; only complete lines are
+ * indexed. Offsets in a gzipped file are offsets in its uncompressed
+ * content. Gzip streams cannot be entered part way, so reaching an offset
+ * there still means decompressing everything before it, but without the
+ * cost of splitting it into lines.
+ */
+public class LogIndex {
+    public static final int DEFAULT_INTERVAL = 2048;
+
+    /** length of an ISO8601 timestamp, eg "2024-01-31T12:00:00.000Z" */
+    protected static final int TIMESTAMP_LENGTH = 24;
+    protected static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    protected static final Cache<String, LogIndex> INDEXES =
+        CacheBuilder.newBuilder().softValues().build();
+
+    /**
+     * Get the (shared, brought up to date) index for the given file.
+     */
+    public static LogIndex forFile(final File file) throws IOException {
+        LogIndex index;
+        try {
+            index = INDEXES.get(file.getAbsolutePath(), () -> new LogIndex(file));
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+        index.update();
+        return index;
+    }
+
+    protected final File file;
+    protected final int interval;
+    protected boolean gzipped;
+
+    /** start offset of line k*interval, for each k */
+    protected long[] offsets = new long[16];
+    /** latest timestamp of any line before (k+1)*interval, for each k */
+    protected long[] latestTimes = new long[16];
+    /** number of entries in offsets */
+    protected int checkpoints;
+    /** number of complete lines indexed */
+    protected long lines;
+    /** offset just past the last complete line indexed */
+    protected long indexedLength;
+    /** latest timestamp of all lines indexed */
+    protected long latestTime;
+    /** whether any line indexed began with a timestamp */
+    protected boolean timestamped;
+    /** (compressed) file length when last updated */
+    protected long fileLength;
+
+    public LogIndex(File file) {
+        this(file, DEFAULT_INTERVAL);
+    }
+
+    public LogIndex(File file, int interval) {
+        this.file = file;
+        this.interval = interval;
+        reset();
+    }
+
+    protected void reset() {
+        checkpoints = 1;
+        offsets[0] = 0;
+        latestTimes[0] = Long.MIN_VALUE;
+        lines = 0;
+        indexedLength = 0;
+        latestTime = Long.MIN_VALUE;
+        timestamped = false;
+        fileLength = 0;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public boolean isGzipped() {
+        return gzipped;
+    }
+
+    /** @return whether lines begin with timestamps usable for seeking */
+    public synchronized boolean isTimestamped() {
+        return timestamped;
+    }
+
+    /** @return number of complete lines indexed */
+    public synchronized long getLineCount() {
+        return lines;
+    }
+
+    /** @return (uncompressed) length of the indexed part of the file */
+    public synchronized long getLength() {
+        return indexedLength;
+    }
+
+    /**
+     * Extend the index over anything appended to the file since the last
+     * update. Starts over if the file has shrunk (been replaced).
+     */
+    public synchronized void update() throws IOException {
+        long length = file.length();
+        if (length == fileLength) {
+            return;
+        }
+        if (length < fileLength || fileLength == 0) {
+            reset();
+            gzipped = isGzip(file);
+        }
+        fileLength = length;
+        try (LineCursor cursor = openAt(indexedLength)) {
+            while (cursor.next() && cursor.isComplete()) {
+                long time = parseTimestamp(cursor.buf, cursor.start, cursor.end);
+                if (time != Long.MIN_VALUE) {
+                    timestamped = true;
+                    latestTime = Math.max(latestTime, time);
+                }
+                lines++;
+                indexedLength = cursor.position();
+                if (lines % interval == 0) {
+                    latestTimes[checkpoints - 1] = latestTime;
+                    addCheckpoint(indexedLength);
+                }
+            }
+        }
+        latestTimes[checkpoints - 1] = latestTime;
+    }
+
+    protected void addCheckpoint(long offset) {
+        if (checkpoints == offsets.length) {
+            offsets = Arrays.copyOf(offsets, checkpoints * 2);
+            latestTimes = Arrays.copyOf(latestTimes, checkpoints * 2);
+        }
+        offsets[checkpoints] = offset;
+        latestTimes[checkpoints] = Long.MIN_VALUE;
+        checkpoints++;
+    }
+
+    /**
+     * @param line line number, counting from zero
+     * @return offset at which the line starts, or the indexed length if
+     * there is no such line
+     */
+    public long offsetOfLine(long line) throws IOException {
+        long start;
+        long skip;
+        synchronized (this) {
+            if (line >= lines) {
+                return indexedLength;
+            }
+            int k = (int) (line / interval);
+            start = offsets[k];
+            skip = line - (long) k * interval;
+        }
+        try (LineCursor cursor = openAt(start)) {
+            for (long i = 0; i < skip; i++) {
+                cursor.next();
+            }
+            return cursor.position();
+        }
+    }
+
+    /**
+     * Find the line containing the given offset.
+     *
+     * @return line number (counting from zero) and the offset at which that
+     * line starts; line count and indexed length if beyond indexed lines
+     */
+    public long[] locate(long offset) throws IOException {
+        long line;
+        long start;
+        synchronized (this) {
+            if (offset >= indexedLength) {
+                return new long[] {lines, indexedLength};
+            }
+            int k = Arrays.binarySearch(offsets, 0, checkpoints, offset);
+            if (k < 0) {
+                k = -k - 2;
+            }
+            line = (long) k * interval;
+            start = offsets[k];
+        }
+        try (LineCursor cursor = openAt(start)) {
+            while (cursor.next() && cursor.position() <= offset) {
+                line++;
+                start = cursor.position();
+            }
+        }
+        return new long[] {line, start};
+    }
+
+    /**
+     * Find the first line whose timestamp is at or after the given time.
+     * Lines without timestamps are passed over.
+     *
+     * @param time time in epoch milliseconds
+     * @return offset at which that line starts, or the indexed length if
+     * there is no such line
+     */
+    public long offsetOfTime(long time) throws IOException {
+        long start;
+        long end;
+        synchronized (this) {
+            // latestTimes is nondecreasing: search for the first interval
+            // containing a line at or after the time
+            int lo = 0;
+            int hi = checkpoints;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (latestTimes[mid] < time) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            if (lo == checkpoints) {
+                return indexedLength;
+            }
+            start = offsets[lo];
+            end = lo + 1 < checkpoints ? offsets[lo + 1] : indexedLength;
+        }
+        try (LineCursor cursor = openAt(start)) {
+            long lineStart = start;
+            while (lineStart < end && cursor.next()) {
+                if (parseTimestamp(cursor.buf, cursor.start, cursor.end) >= time) {
+                    return lineStart;
+                }
+                lineStart = cursor.position();
+            }
+            return lineStart;
+        }
+    }
+
+    /**
+     * Read lines around an offset, for paging. With a positive count, reads
+     * lines starting with the one containing the offset; with a negative
+     * count, reads lines ending with the one containing the offset.
+     *
+     * @return range of offsets [start of first line, end of last line]
+     */
+    public LongRange pagedLines(long offset, int count, List<String> out)
+            throws IOException {
+        long[] located = locate(offset);
+        long firstLine = located[0];
+        long start = located[1];
+        if (count < 0) {
+            long lastLine = Math.min(firstLine, getLineCount() - 1);
+            firstLine = Math.max(0, lastLine + 1 + count);
+            start = offsetOfLine(firstLine);
+            count = -count;
+        }
+        long limit = getLength();
+        try (LineCursor cursor = openAt(start)) {
+            for (int i = 0; i < count && cursor.position() < limit
+                    && cursor.next(); i++) {
+                out.add(cursor.line());
+            }
+            return new LongRange(start, cursor.position());
+        }
+    }
+
+    /**
+     * Collect lines matching the pattern, reading forward from the line
+     * containing the offset and stopping as soon as enough are found.
+     *
+     * @return range of offsets scanned
+     */
+    public LongRange grep(Pattern pattern, long offset, int max,
+            List<String> out) throws IOException {
+        long start = locate(offset)[1];
+        long limit = getLength();
+        try (LineCursor cursor = openAt(start)) {
+            int found = 0;
+            while (found < max && cursor.position() < limit && cursor.next()) {
+                String line = cursor.line();
+                if (pattern.matcher(line).find()) {
+                    out.add(line);
+                    found++;
+                }
+            }
+            return new LongRange(start, cursor.position());
+        }
+    }
+
+    /**
+     * Collect the last lines matching the pattern up to and including the
+     * line containing the offset, in file order, reading backward an
+     * interval at a time and stopping as soon as enough are found.
+     *
+     * @return range of offsets scanned
+     */
+    public LongRange grepBackward(Pattern pattern, long offset, int max,
+            List<String> out) throws IOException {
+        long[] located = locate(offset);
+        long end = located[0] < getLineCount()
+                ? offsetOfLine(located[0] + 1) : located[1];
+        if (gzipped) {
+            // blocks can't be read in reverse cheaply; make one pass
+            Deque<String> matches = new ArrayDeque<String>();
+            try (LineCursor cursor = openAt(0)) {
+                while (cursor.position() < end && cursor.next()) {
+                    String line = cursor.line();
+                    if (pattern.matcher(line).find()) {
+                        matches.addLast(line);
+                        if (matches.size() > max) {
+                            matches.removeFirst();
+                        }
+                    }
+                }
+            }
+            out.addAll(matches);
+            return new LongRange(0, end);
+        }
+        Deque<String> matches = new ArrayDeque<String>();
+        long blockEnd = end;
+        int k;
+        synchronized (this) {
+            k = Arrays.binarySearch(offsets, 0, checkpoints, Math.max(0, end - 1));
+            if (k < 0) {
+                k = -k - 2;
+            }
+        }
+        long blockStart = 0;
+        while (k >= 0 && matches.size() < max) {
+            synchronized (this) {
+                blockStart = offsets[k];
+            }
+            Deque<String> blockMatches = new ArrayDeque<String>();
+            try (LineCursor cursor = openAt(blockStart)) {
+                while (cursor.position() < blockEnd && cursor.next()) {
+                    String line = cursor.line();
+                    if (pattern.matcher(line).find()) {
+                        blockMatches.addLast(line);
+                    }
+                }
+            }
+            while (!blockMatches.isEmpty() && matches.size() < max) {
+                matches.addFirst(blockMatches.removeLast());
+            }
+            blockEnd = blockStart;
+            k--;
+        }
+        out.addAll(matches);
+        return new LongRange(blockStart, end);
+    }
+
+    /**
+     * Read lines starting at the given line.
+     *
+     * @param firstLine line number, counting from zero
+     */
+    public void readLines(long firstLine, int count, List<String> out)
+            throws IOException {
+        long start = offsetOfLine(firstLine);
+        try (LineCursor cursor = openAt(start)) {
+            for (int i = 0; i < count && cursor.next(); i++) {
+                out.add(cursor.line());
+            }
+        }
+    }
+
+    /**
+     * Open a cursor over the lines of the file, starting at the given
+     * (uncompressed) offset, which should be the start of a line.
+     */
+    public LineCursor openAt(long offset) throws IOException {
+        FileInputStream fileIn = new FileInputStream(file);
+        InputStream in = fileIn;
+        try {
+            if (gzipped) {
+                in = new GZIPInputStream(fileIn, READ_BUFFER_SIZE);
+                long remaining = offset;
+                while (remaining > 0) {
+                    long skipped = in.skip(remaining);
+                    if (skipped <= 0) {
+                        break;
+                    }
+                    remaining -= skipped;
+                }
+            } else {
+                fileIn.getChannel().position(offset);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new LineCursor(in, offset);
+    }
+
+    protected static boolean isGzip(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    /**
+     * Parse a leading "yyyy-MM-ddTHH:mm:ss.SSSZ" timestamp.
+     *
+     * @return epoch milliseconds, or Long.MIN_VALUE if the line doesn't
+     * begin with a timestamp
+     */
+    protected static long parseTimestamp(byte[] b, int start, int end) {
+        if (end - start < TIMESTAMP_LENGTH || b[start + 4] != '-'
+                || b[start + 10] != 'T' || b[start + 23] != 'Z') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(b, start, 4);
+        int month = digits(b, start + 5, 2);
+        int day = digits(b, start + 8, 2);
+        int hour = digits(b, start + 11, 2);
+        int minute = digits(b, start + 14, 2);
+        int second = digits(b, start + 17, 2);
+        int millis = digits(b, start + 20, 3);
+        if ((year | month | day | hour | minute | second | millis) < 0) {
+            return Long.MIN_VALUE;
+        }
+        // days from civil, proleptic Gregorian
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        long days = era * 146097L + doe - 719468;
+        return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+    }
+
+    protected static int digits(byte[] b, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int d = b[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * Reads lines from a stream, exposing each as a range of bytes, and
+     * tracking the offset reached.
+     */
+    public static class LineCursor implements Closeable {
+        protected final InputStream in;
+        protected byte[] buf = new byte[READ_BUFFER_SIZE];
+        /** buffered bytes are buf[pos..limit) */
+        protected int pos;
+        protected int limit;
+        /** current line is buf[start..end), excluding any newline */
+        protected int start;
+        protected int end;
+        protected boolean complete;
+        /** offset of buf[0] */
+        protected long bufOffset;
+        protected boolean eof;
+
+        protected LineCursor(InputStream in, long offset) {
+            this.in = in;
+            this.bufOffset = offset;
+        }
+
+        /**
+         * Advance to the next line.
+         *
+         * @return false if there are no more lines
+         */
+        public boolean next() throws IOException {
+            int scan = pos;
+            while (true) {
+                for (int i = scan; i < limit; i++) {
+                    if (buf[i] == '\n') {
+                        start = pos;
+                        end = i;
+                        complete = true;
+                        pos = i + 1;
+                        return true;
+                    }
+                }
+                if (eof) {
+                    if (pos == limit) {
+                        return false;
+                    }
+                    // final unterminated line
+                    start = pos;
+                    end = limit;
+                    complete = false;
+                    pos = limit;
+                    return true;
+                }
+                scan = limit - pos;
+                fill();
+            }
+        }
+
+        /**
+         * Move unconsumed bytes to the front of the buffer (growing it for
+         * long lines) and read more.
+         */
+        protected void fill() throws IOException {
+            int remaining = limit - pos;
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, remaining);
+                bufOffset += pos;
+                pos = 0;
+                limit = remaining;
+            } else if (limit == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            try {
+                int n = in.read(buf, limit, buf.length - limit);
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    limit += n;
+                }
+            } catch (EOFException e) {
+                // truncated gzip stream, eg one still being written
+                eof = true;
+            }
+        }
+
+        /** @return whether the current line ended with a newline */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /** @return current line, decoded */
+        public String line() {
+            return new String(buf, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        /** @return offset just past the current line */
+        public long position() {
+            return bufOffset + pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -27,7 +27,9 @@ import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -106,10 +108,20 @@ public class LogReader
     public static String[] get(String aFileName, int lineNumber, int n)
     {
         File f = new File(aFileName);
-        long logsize = f.length();
         try {
-            return get(new FileReader(aFileName),lineNumber,n,logsize);
-        } catch (FileNotFoundException e) {
+            // seek via the file's index rather than reading from the start
+            LogIndex index = LogIndex.forFile(f);
+            List<String> lines = new ArrayList<String>();
+            index.readLines(Math.max(0, lineNumber - 1), n, lines);
+            StringBuilder ret = new StringBuilder();
+            for (String line : lines) {
+                ret.append(line);
+                ret.append('\n');
+            }
+            String[] tmp = {ret.toString(),
+                    buildDisplayingHeader(ret.length(), index.getLength())};
+            return tmp;
+        } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
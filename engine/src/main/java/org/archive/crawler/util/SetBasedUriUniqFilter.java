@@ -24,6 +24,8 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -58,6 +60,21 @@ public abstract class SetBasedUriUniqFilter implements UriUniqFilter, Serializab
     
     protected abstract boolean setAdd(CharSequence key);
 
+    /**
+     * Add each of the given keys, in order, as if by 
+     * {@link #setAdd(CharSequence)}. This implementation adds each in turn;
+     * subclasses may do better. 
+     * 
+     * @return for each key, whether it was newly added
+     */
+    protected boolean[] setAddAll(List<? extends CharSequence> keys) {
+        boolean[] added = new boolean[keys.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = setAdd(keys.get(i));
+        }
+        return added;
+    }
+
     protected abstract boolean setRemove(CharSequence key);
 
     protected abstract long setCount();
@@ -102,6 +119,26 @@ public abstract class SetBasedUriUniqFilter implements UriUniqFilter, Serializab
         }
     }
 
+    @Override
+    public void addAll(List<String> keys, List<CrawlURI> values) {
+        addedCount.addAndGet(keys.size());
+        for (String key : keys) {
+            profileLog(key);
+        }
+        boolean[] added = setAddAll(keys);
+        List<CrawlURI> received = new ArrayList<CrawlURI>(values.size());
+        for (int i = 0; i < added.length; i++) {
+            if (added[i]) {
+                received.add(values.get(i));
+            } else {
+                duplicateCount++;
+            }
+        }
+        if (!received.isEmpty()) {
+            this.receiver.receiveAll(received);
+        }
+    }
+
     public void addNow(String key, CrawlURI value) {
         add(key, value);
     }
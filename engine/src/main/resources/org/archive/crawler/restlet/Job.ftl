@@ -246,6 +246,16 @@
 							</#if>
 						</td>
 					</tr>
+					<tr>
+						<th><a href="report/HostsReport">Largest hosts</a></th>
+						<td>
+							<#if !job.largestHostsReport?? || !job.largestHostsReport?has_content>
+							<i>n/a</i>
+							<#else>
+							<#list job.largestHostsReport?keys as host>${host} (${job.largestHostsReport[host]})<#if host_has_next>, </#if></#list>
+							</#if>
+						</td>
+					</tr>
 					<tr>
 						<th>Memory</th>
 						<td>${(heapReport.usedBytes/1024)?string("0")} KiB used; ${(heapReport.totalBytes/1024)?string("0")} KiB current heap; ${(heapReport.maxBytes/1024)?string("0")} KiB max heap</td>
@@ -0,0 +1,232 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.frontier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.archive.crawler.framework.Frontier;
+import org.archive.modules.CrawlURI;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RecoverLogImporterTest {
+    @TempDir
+    File tempDir;
+
+    /**
+     * Frontier recording the URIs it's given, which fails once it has been
+     * given failAfter of them.
+     */
+    protected Frontier recordingFrontier(final List<String> included,
+            final List<String> scheduled, final int failAfter) {
+        return (Frontier) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Frontier.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "considerIncluded":
+                        if (included.size() >= failAfter) {
+                            throw new IllegalStateException("simulated crash");
+                        }
+                        included.add(((CrawlURI) args[0]).getURI());
+                        return null;
+                    case "scheduleAll":
+                        for (Object curi : (Collection<?>) args[0]) {
+                            scheduled.add(((CrawlURI) curi).getURI());
+                        }
+                        return null;
+                    case "discoveredUriCount":
+                    case "queuedUriCount":
+                        return 0L;
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    protected File writeLog(int lines) throws IOException {
+        File log = new File(tempDir, "frontier.recover");
+        try (PrintWriter out = new PrintWriter(log, "UTF-8")) {
+            for (int i = 0; i < lines; i++) {
+                out.println((i % 3 == 0 ? FrontierJournal.F_SUCCESS : FrontierJournal.F_ADD)
+                        + "http://host" + (i % 7) + ".example.com/" + i + " L http://example.com/");
+            }
+        }
+        return log;
+    }
+
+    @Test
+    public void testSchedule() throws IOException {
+        File log = writeLog(1000);
+        List<String> scheduled = new ArrayList<String>();
+        RecoverLogImporter importer = new RecoverLogImporter(
+                recordingFrontier(new ArrayList<String>(), scheduled, Integer.MAX_VALUE), log);
+        importer.setThreads(4);
+        importer.setChunkLines(64);
+        importer.setAcceptTags(Pattern.compile(Pattern.quote(FrontierJournal.F_ADD)));
+        assertEquals(1000, importer.run());
+        assertEquals(666, scheduled.size());
+        assertEquals(666, importer.getUrisApplied());
+        // chunks are applied in log order, each sorted by host
+        assertEquals("http://host0.example.com/14", scheduled.get(0));
+        assertTrue(scheduled.indexOf("http://host1.example.com/64")
+                > scheduled.indexOf("http://host6.example.com/62"));
+    }
+
+    @Test
+    public void testBadUriSkippedAlone() throws IOException {
+        File log = writeLog(1000);
+        final String bad = "http://host3.example.com/31";
+        final List<String> scheduled = new ArrayList<String>();
+        Frontier frontier = (Frontier) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Frontier.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "scheduleAll":
+                        for (Object curi : (Collection<?>) args[0]) {
+                            if (((CrawlURI) curi).getURI().equals(bad)) {
+                                throw new IllegalStateException("simulated bad uri");
+                            }
+                        }
+                        for (Object curi : (Collection<?>) args[0]) {
+                            scheduled.add(((CrawlURI) curi).getURI());
+                        }
+                        return null;
+                    case "schedule":
+                        if (((CrawlURI) args[0]).getURI().equals(bad)) {
+                            throw new IllegalStateException("simulated bad uri");
+                        }
+                        scheduled.add(((CrawlURI) args[0]).getURI());
+                        return null;
+                    case "discoveredUriCount":
+                    case "queuedUriCount":
+                        return 0L;
+                    default:
+                        return null;
+                    }
+                });
+        RecoverLogImporter importer = new RecoverLogImporter(frontier, log);
+        importer.setChunkLines(100);
+        importer.setAcceptTags(Pattern.compile(Pattern.quote(FrontierJournal.F_ADD)));
+        assertEquals(1000, importer.run());
+        // only the bad one lost from its chunk, and not counted
+        assertEquals(665, scheduled.size());
+        assertFalse(scheduled.contains(bad));
+        assertTrue(scheduled.contains("http://host4.example.com/32"));
+        assertEquals(665, importer.getUrisApplied());
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        File log = writeLog(1000);
+        File progress = new File(tempDir, "frontier.recover.import-progress");
+        List<String> included = new ArrayList<String>();
+
+        RecoverLogImporter importer = new RecoverLogImporter(
+                recordingFrontier(included, new ArrayList<String>(), 100), log);
+        importer.setChunkLines(50);
+        importer.setAcceptTags(Pattern.compile(Pattern.quote(FrontierJournal.F_SUCCESS)));
+        importer.setIncludeOnly(true);
+        importer.setProgressFile(progress, "include");
+        try {
+            importer.run();
+        } catch (IllegalStateException e) {
+            // simulated crash partway
+        }
+        assertEquals(100, included.size());
+        // successes are lines 0, 3, ... 999: the 100th is in the sixth
+        // chunk, and the crash comes in the seventh
+        assertEquals(300, importer.getLinesApplied());
+
+        List<String> resumed = new ArrayList<String>();
+        importer = new RecoverLogImporter(
+                recordingFrontier(resumed, new ArrayList<String>(), Integer.MAX_VALUE), log);
+        importer.setChunkLines(50);
+        importer.setAcceptTags(Pattern.compile(Pattern.quote(FrontierJournal.F_SUCCESS)));
+        importer.setIncludeOnly(true);
+        importer.setProgressFile(progress, "include");
+        assertEquals(1000, importer.run());
+        assertEquals(334 - 100, resumed.size());
+        assertFalse(resumed.contains("http://host3.example.com/297"));
+        assertTrue(resumed.contains("http://host6.example.com/300"));
+
+        // a completed pass is skipped
+        List<String> again = new ArrayList<String>();
+        importer = new RecoverLogImporter(
+                recordingFrontier(again, new ArrayList<String>(), Integer.MAX_VALUE), log);
+        importer.setIncludeOnly(true);
+        importer.setProgressFile(progress, "include");
+        assertEquals(1000, importer.run());
+        assertTrue(again.isEmpty());
+        importer.clearProgress();
+        assertFalse(progress.exists());
+    }
+
+    @Test
+    public void testUnwritableProgress() throws IOException {
+        File log = writeLog(1000);
+        // a "directory" that's a plain file, so progress can't be saved
+        File notDir = new File(tempDir, "not-a-dir");
+        notDir.createNewFile();
+        File progress = new File(notDir, "frontier.recover.import-progress");
+        List<String> included = new ArrayList<String>();
+        RecoverLogImporter importer = new RecoverLogImporter(
+                recordingFrontier(included, new ArrayList<String>(), Integer.MAX_VALUE), log);
+        importer.setAcceptTags(Pattern.compile(Pattern.quote(FrontierJournal.F_SUCCESS)));
+        importer.setIncludeOnly(true);
+        importer.setProgressFile(progress, "include");
+        assertEquals(1000, importer.run());
+        assertEquals(334, included.size());
+        assertFalse(progress.exists());
+    }
+
+    @Test
+    public void testProgressIgnoredByEmptyFrontier() throws IOException {
+        File log = writeLog(1000);
+        File progress = new File(tempDir, "frontier.recover.import-progress");
+        // progress from an import into some earlier, since discarded, frontier
+        RecoverLogImporter earlier = new RecoverLogImporter(
+                recordingFrontier(new ArrayList<String>(), new ArrayList<String>(),
+                        Integer.MAX_VALUE), log);
+        earlier.setAcceptTags(Pattern.compile(Pattern.quote(FrontierJournal.F_SUCCESS)));
+        earlier.setIncludeOnly(true);
+        earlier.setProgressFile(progress, "include");
+        earlier.run();
+        assertTrue(progress.exists());
+
+        // the recording frontier reports itself empty
+        List<String> included = new ArrayList<String>();
+        JSONObject params = new JSONObject();
+        params.put("path", log.getPath());
+        params.put("includeSuccesses", true);
+        params.put("progressPath", progress.getPath());
+        FrontierJournal.importRecoverLog(params, recordingFrontier(
+                included, new ArrayList<String>(), Integer.MAX_VALUE));
+        assertEquals(334, included.size());
+    }
+}
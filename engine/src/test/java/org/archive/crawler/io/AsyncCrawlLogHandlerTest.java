@@ -0,0 +1,232 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AsyncCrawlLogHandlerTest {
+    @TempDir
+    File tempDir;
+
+    protected List<String> errors =
+        Collections.synchronizedList(new ArrayList<String>());
+
+    protected static class LineFormatter extends Formatter {
+        @Override
+        public String format(LogRecord record) {
+            return record.getMessage() + "\n";
+        }
+    }
+
+    protected class RecordingErrorManager extends ErrorManager {
+        @Override
+        public synchronized void error(String msg, Exception ex, int code) {
+            errors.add(code + " " + (msg != null ? msg : ex));
+        }
+    }
+
+    protected AsyncCrawlLogHandler open(int bufferLines,
+            Consumer<File> rotationListener) throws IOException {
+        AsyncCrawlLogHandler handler = new AsyncCrawlLogHandler(
+                new File(tempDir, "crawl.log"), new LineFormatter(),
+                bufferLines, false, rotationListener);
+        handler.setErrorManager(new RecordingErrorManager());
+        return handler;
+    }
+
+    protected static void log(AsyncCrawlLogHandler handler, String line) {
+        handler.publish(new LogRecord(Level.INFO, line));
+    }
+
+    protected static List<String> read(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testOrderingAcrossThreads() throws Exception {
+        final AsyncCrawlLogHandler handler = open(16, null);
+        final int threads = 8;
+        final int perThread = 2000;
+        List<Thread> loggers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread thread = new Thread() {
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        log(handler, id + " " + i);
+                    }
+                }
+            };
+            loggers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : loggers) {
+            thread.join();
+        }
+        handler.close();
+
+        List<String> lines = read(handler.getActiveFile());
+        assertEquals(threads * perThread, lines.size());
+        int[] next = new int[threads];
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            int id = Integer.parseInt(parts[0]);
+            // each thread's lines appear in the order it logged them
+            assertEquals(next[id]++, Integer.parseInt(parts[1]), line);
+        }
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    @Test
+    public void testCloseDrains() throws Exception {
+        AsyncCrawlLogHandler handler = open(4, null);
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            log(handler, "line " + i);
+            expected.add("line " + i);
+        }
+        handler.close();
+        assertEquals(expected, read(handler.getActiveFile()));
+
+        // discarded once closed
+        log(handler, "too late");
+        handler.close();
+        assertEquals(expected, read(handler.getActiveFile()));
+    }
+
+    @Test
+    public void testRotate() throws Exception {
+        List<File> notified = new ArrayList<File>();
+        AsyncCrawlLogHandler handler = open(16, notified::add);
+        log(handler, "a");
+        log(handler, "b");
+        File first = handler.rotate(".cp00001", false);
+        assertEquals(new File(tempDir, "crawl.log.cp00001"), first);
+        assertEquals(Arrays.asList("a", "b"), read(first));
+
+        log(handler, "c");
+        File second = handler.rotate(".cp00002", false);
+        assertEquals(Arrays.asList("c"), read(second));
+
+        log(handler, "d");
+        File merged = handler.rotate(".cp00003", true);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), read(merged));
+        assertFalse(first.exists());
+        assertFalse(second.exists());
+
+        log(handler, "e");
+        handler.close();
+        assertEquals(Arrays.asList("e"), read(handler.getActiveFile()));
+        // explicit rotations are not reported to the listener
+        assertTrue(notified.isEmpty());
+    }
+
+    @Test
+    public void testRotateBySize() throws Exception {
+        List<File> notified =
+            Collections.synchronizedList(new ArrayList<File>());
+        AsyncCrawlLogHandler handler = open(16, notified::add);
+        handler.setRotateBytes(10);
+        log(handler, "0123456789");
+        log(handler, "abcdefghij");
+        log(handler, "short");
+        handler.close();
+
+        // both in the same second, so distinctly named
+        assertEquals(2, notified.size());
+        assertEquals(Arrays.asList("0123456789"), read(notified.get(0)));
+        assertEquals(Arrays.asList("abcdefghij"), read(notified.get(1)));
+        assertEquals(Arrays.asList("short"), read(handler.getActiveFile()));
+    }
+
+    @Test
+    public void testWriterContinuesAfterFailure() throws Exception {
+        final List<File> notified = new ArrayList<File>();
+        AsyncCrawlLogHandler handler = open(4, file -> {
+            notified.add(file);
+            if (notified.size() == 1) {
+                throw new IllegalStateException("listener failed");
+            }
+        });
+        // each line (9 bytes) to a file of its own
+        handler.setRotateBytes(9);
+        for (int i = 0; i < 100; i++) {
+            log(handler, "line " + (100 + i));
+        }
+        handler.close();
+
+        assertEquals(1, errors.size(), errors.toString());
+        assertTrue(errors.get(0).contains("listener failed"));
+        // every line still written
+        assertEquals(100, notified.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Arrays.asList("line " + (100 + i)),
+                    read(notified.get(i)));
+        }
+        assertEquals(0, handler.getDroppedLines());
+    }
+
+    @Test
+    public void testWriterDeathDoesNotBlockLoggers() throws Exception {
+        final AsyncCrawlLogHandler handler = new AsyncCrawlLogHandler(
+                new File(tempDir, "crawl.log"), new LineFormatter(), 2, false,
+                null) {
+            @Override
+            protected void writeLoop() {
+                throw new IllegalStateException("writer died");
+            }
+        };
+        handler.setErrorManager(new RecordingErrorManager());
+        handler.writerThread.join();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int i = 0; i < 100; i++) {
+                log(handler, "line " + i);
+            }
+            assertThrows(IOException.class,
+                    () -> handler.rotate(".cp00001", false));
+            handler.close();
+        });
+        // the ring took two lines before filling
+        assertEquals(98, handler.getDroppedLines());
+        assertEquals(1, errors.size(), errors.toString());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.prefetch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.archive.crawler.framework.CrawlerProcessorTestBase;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.fetcher.DefaultServerCache;
+import org.archive.modules.net.CrawlHost;
+import org.archive.net.UURIFactory;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit test for {@link PreconditionPrefetcher}.
+ */
+public class PreconditionPrefetcherTest extends CrawlerProcessorTestBase {
+
+    protected DefaultServerCache serverCache = new DefaultServerCache();
+    protected List<CrawlURI> scheduled = new ArrayList<CrawlURI>();
+
+    protected PreconditionPrefetcher makePrefetcher() {
+        PreconditionPrefetcher prefetcher = new PreconditionPrefetcher() {
+            @Override
+            protected void schedulePending() {
+                // leave queued prerequisites for inspection
+            }
+            @Override
+            protected void schedule(CrawlURI curi) {
+                scheduled.add(curi);
+            }
+        };
+        prefetcher.setServerCache(serverCache);
+        prefetcher.start();
+        return prefetcher;
+    }
+
+    protected List<String> pendingUris(PreconditionPrefetcher prefetcher) {
+        List<String> uris = new ArrayList<String>();
+        for (CrawlURI curi : prefetcher.pending) {
+            uris.add(curi.toString());
+        }
+        return uris;
+    }
+
+    @Test
+    public void testPrefetchForCandidate() throws Exception {
+        PreconditionPrefetcher prefetcher = makePrefetcher();
+        CrawlURI curi = new CrawlURI(
+                UURIFactory.getInstance("https://www.example.com:8443/page"));
+        prefetcher.innerProcess(curi);
+        assertEquals(Arrays.asList("dns:www.example.com",
+                "https://www.example.com:8443/robots.txt"),
+                pendingUris(prefetcher));
+        for (CrawlURI prereq : prefetcher.pending) {
+            assertTrue(prereq.isPrerequisite());
+            assertEquals(curi.getUURI(), prereq.getVia());
+            assertEquals("P", prereq.getLastHop());
+        }
+
+        // known host, new server on the default https port
+        prefetcher.pending.clear();
+        prefetcher.innerProcess(new CrawlURI(
+                UURIFactory.getInstance("https://www.example.com/other")));
+        assertEquals(Arrays.asList("https://www.example.com/robots.txt"),
+                pendingUris(prefetcher));
+
+        // known host and server
+        prefetcher.pending.clear();
+        prefetcher.innerProcess(new CrawlURI(
+                UURIFactory.getInstance("https://www.example.com/third")));
+        assertTrue(prefetcher.pending.isEmpty());
+        prefetcher.stop();
+    }
+
+    @Test
+    public void testIgnoresHostsCreatedElsewhere() throws Exception {
+        PreconditionPrefetcher prefetcher = makePrefetcher();
+        // as for an out-of-scope URI, never passed to the prefetcher
+        serverCache.getServerFor(
+                UURIFactory.getInstance("http://offsite.example.net/"));
+        serverCache.getHostFor(
+                UURIFactory.getInstance("http://offsite.example.net/"));
+        assertTrue(prefetcher.pending.isEmpty());
+        prefetcher.stop();
+    }
+
+    @Test
+    public void testRobotsAwaitsDns() throws Exception {
+        PreconditionPrefetcher prefetcher = makePrefetcher();
+        prefetcher.innerProcess(new CrawlURI(
+                UURIFactory.getInstance("http://www.example.org/")));
+        CrawlURI dns = prefetcher.pending.poll();
+        CrawlURI robots = prefetcher.pending.poll();
+        assertEquals("http://www.example.org/robots.txt", robots.toString());
+        assertFalse(prefetcher.isAwaitingDns(dns));
+        assertTrue(prefetcher.isAwaitingDns(robots));
+
+        prefetcher.awaitingDns.add(
+                new PreconditionPrefetcher.Held(robots, System.currentTimeMillis()));
+        prefetcher.awaitingDnsCount.incrementAndGet();
+        prefetcher.releaseAwaitingDns();
+        assertTrue(scheduled.isEmpty());
+
+        CrawlHost host = serverCache.getHostFor(robots.getUURI());
+        host.setIP(InetAddress.getByAddress("www.example.org",
+                new byte[] {127, 0, 0, 1}), 3600);
+        assertFalse(prefetcher.isAwaitingDns(robots));
+        prefetcher.releaseAwaitingDns();
+        assertEquals(Arrays.asList(robots), scheduled);
+        assertTrue(prefetcher.awaitingDns.isEmpty());
+        assertEquals(0, prefetcher.awaitingDnsCount.get());
+        prefetcher.stop();
+    }
+
+    @Test
+    public void testRobotsStopsAwaitingDnsAfterLimit() throws Exception {
+        PreconditionPrefetcher prefetcher = makePrefetcher();
+        prefetcher.innerProcess(new CrawlURI(
+                UURIFactory.getInstance("http://www.example.org/")));
+        prefetcher.pending.poll();
+        CrawlURI robots = prefetcher.pending.poll();
+        assertTrue(prefetcher.isAwaitingDns(robots));
+
+        long longAgo = System.currentTimeMillis()
+                - prefetcher.getMaxDnsWaitSeconds() * 1000L;
+        prefetcher.awaitingDns.add(
+                new PreconditionPrefetcher.Held(robots, longAgo));
+        prefetcher.awaitingDnsCount.incrementAndGet();
+        prefetcher.releaseAwaitingDns();
+        assertEquals(Arrays.asList(robots), scheduled);
+        prefetcher.stop();
+    }
+}
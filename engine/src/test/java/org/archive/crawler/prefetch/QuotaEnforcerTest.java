@@ -22,6 +22,7 @@ package org.archive.crawler.prefetch;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -195,6 +196,9 @@ public class QuotaEnforcerTest extends CrawlerProcessorTestBase {
         public void schedule(CrawlURI caURI) {
         }
         @Override
+        public void scheduleAll(Collection<CrawlURI> caURIs) {
+        }
+        @Override
         public void finished(CrawlURI cURI) {
         }
         @Override
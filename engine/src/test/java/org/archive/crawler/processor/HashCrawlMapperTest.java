@@ -18,17 +18,238 @@
  */
 package org.archive.crawler.processor;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import org.archive.crawler.framework.CrawlerProcessorTestBase;
+import org.archive.crawler.framework.Frontier;
+import org.archive.crawler.postprocessor.CandidatesProcessor;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.extractor.Hop;
+import org.archive.modules.extractor.LinkContext;
+import org.archive.spring.ConfigPath;
+import org.archive.util.ConsistentHashRing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 
 /**
- * Unit test for {@link HashCrawlMapper}.
+ * Unit test for {@link HashCrawlMapper}, with a transport.
  *
  * @author pjack
  */
 public class HashCrawlMapperTest extends CrawlerProcessorTestBase {
+    @TempDir
+    File divertDir;
+
+    /**
+     * Transport between nodes held in memory; lines for unreachable nodes
+     * are held until close, then handed back as undeliverable.
+     */
+    protected static class MemoryTransport implements DiversionTransport {
+        volatile Collection<String> nodes = new TreeSet<String>(Set.of("a", "b", "c"));
+        Set<String> unreachable = new HashSet<String>();
+        List<String> sent = new ArrayList<String>();
+        List<String> held = new ArrayList<String>();
+        Consumer<String> receiver;
+        BiConsumer<String,String> undeliverable;
+
+        @Override
+        public void open(String localName, Consumer<String> receiver,
+                BiConsumer<String,String> undeliverable) {
+            this.receiver = receiver;
+            this.undeliverable = undeliverable;
+        }
+
+        @Override
+        public synchronized boolean send(String target, String line) {
+            if (!nodes.contains(target)) {
+                return false;
+            }
+            (unreachable.contains(target) ? held : sent).add(target + " " + line);
+            return true;
+        }
+
+        @Override
+        public Collection<String> getNodes() {
+            return nodes;
+        }
+
+        @Override
+        public synchronized void close() {
+            for (String targetLine : held) {
+                int space = targetLine.indexOf(' ');
+                undeliverable.accept(targetLine.substring(0, space),
+                        targetLine.substring(space + 1));
+            }
+            held.clear();
+        }
+    }
+
+    protected MemoryTransport transport = new MemoryTransport();
+    protected List<String> candidates = Collections.synchronizedList(new ArrayList<String>());
+    protected List<String> frontierCalls = Collections.synchronizedList(new ArrayList<String>());
+    protected HashCrawlMapper mapper;
+
+    /**
+     * Frontier giving each URI its host's SURT authority as classKey, and
+     * noting any other use made of it.
+     */
+    protected Frontier surtFrontier() {
+        return (Frontier) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Frontier.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getClassKey")) {
+                        return surt(((CrawlURI) args[0]).getUURI().getHost());
+                    }
+                    frontierCalls.add(method.getName());
+                    return null;
+                });
+    }
+
+    protected static String surt(String host) {
+        List<String> labels = new ArrayList<String>(List.of(host.split("\\.")));
+        Collections.reverse(labels);
+        return String.join(",", labels) + ",";
+    }
+
+    @BeforeEach
+    public void startMapper() {
+        mapper = new HashCrawlMapper();
+        mapper.setFrontier(surtFrontier());
+        mapper.setCandidates(new CandidatesProcessor() {
+            @Override
+            public int runCandidateChain(CrawlURI candidate, CrawlURI source,
+                    List<CrawlURI> batch) {
+                candidates.add(candidate.getURI() + " " + candidate.getPathFromSeed()
+                        + " " + candidate.flattenVia());
+                return 0;
+            }
+        });
+        mapper.setTransport(transport);
+        mapper.setLocalName("a");
+        mapper.setDiversionDir(new ConfigPath("diversion", divertDir.getAbsolutePath()));
+        mapper.start();
+    }
+
+    @AfterEach
+    public void stopMapper() {
+        if (mapper.isRunning()) {
+            mapper.stop();
+        }
+    }
+
+    /** a page on the numbered site, with outlinks to each other site */
+    protected CrawlURI pageLinkingTo(int site, int siteCount) throws Exception {
+        CrawlURI curi = makeCrawlURI("http://www.example" + site + ".com/");
+        curi.setFetchStatus(200);
+        for (int i = 0; i < siteCount; i++) {
+            if (i != site) {
+                curi.getOutLinks().add(curi.createCrawlURI("http://www.example" + i
+                        + ".com/page.html", LinkContext.NAVLINK_MISC, Hop.NAVLINK));
+            }
+        }
+        return curi;
+    }
+
+    @Test
+    public void testMapsThroughRing() throws Exception {
+        ConsistentHashRing ring = new ConsistentHashRing(transport.getNodes());
+        List<String> before = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            String target = mapper.map(makeCrawlURI("http://www.example" + i + ".com/"));
+            assertEquals(ring.nodeFor("com,example" + i + ","), target);
+            // by assignment-level domain
+            assertEquals(target, mapper.map(makeCrawlURI("http://img.example" + i + ".com/")));
+            before.add(target);
+        }
+        assertTrue(before.containsAll(Set.of("a", "b", "c")));
+
+        // c leaves: only its sites move
+        transport.nodes = new TreeSet<String>(Set.of("a", "b"));
+        for (int i = 0; i < 50; i++) {
+            String target = mapper.map(makeCrawlURI("http://www.example" + i + ".com/"));
+            if (before.get(i).equals("c")) {
+                assertNotEquals("c", target);
+            } else {
+                assertEquals(before.get(i), target);
+            }
+        }
+    }
+
+    @Test
+    public void testOutlinksSent() throws Exception {
+        CrawlURI curi = pageLinkingTo(0, 30);
+        mapper.process(curi);
+
+        Set<String> expected = new TreeSet<String>();
+        for (int i = 1; i < 30; i++) {
+            CrawlURI link = makeCrawlURI("http://www.example" + i + ".com/page.html");
+            String target = mapper.map(link);
+            if (!target.equals("a")) {
+                expected.add(target + " http://www.example" + i
+                        + ".com/page.html L http://www.example0.com/");
+            }
+        }
+        assertEquals(expected, new TreeSet<String>(transport.sent));
+        assertEquals(29, transport.sent.size() + curi.getOutLinks().size());
+        for (CrawlURI kept : curi.getOutLinks()) {
+            assertEquals("a", mapper.map(kept));
+        }
+    }
+
+    @Test
+    public void testReceivedScoped() throws Exception {
+        transport.receiver.accept("http://www.example.org/ L http://www.example.com/");
+        transport.receiver.accept("http://www.example.net/ LL http://www.example.org/");
+        // already received
+        transport.receiver.accept("http://www.example.org/ L http://www.example.com/");
+
+        assertEquals(List.of("http://www.example.org/ L http://www.example.com/",
+                "http://www.example.net/ LL http://www.example.org/"), candidates);
+        // never straight into the frontier
+        assertTrue(frontierCalls.isEmpty());
+    }
+
+    @Test
+    public void testUndeliverableLogged() throws Exception {
+        transport.unreachable.add("b");
+        CrawlURI curi = pageLinkingTo(0, 30);
+        mapper.process(curi);
+        List<String> toB = new ArrayList<String>();
+        for (int i = 1; i < 30; i++) {
+            String uri = "http://www.example" + i + ".com/page.html";
+            if (mapper.map(makeCrawlURI(uri)).equals("b")) {
+                toB.add(uri);
+            }
+        }
+        assertTrue(toB.size() > 0);
+        mapper.stop();
 
-    // TODO TESTME!
-    
+        File[] logs = divertDir.listFiles((dir, name) -> name.endsWith("-a-to-b.divert"));
+        assertEquals(1, logs.length);
+        String log = new String(Files.readAllBytes(logs[0].toPath()), StandardCharsets.UTF_8);
+        for (String uri : toB) {
+            assertTrue(log.contains(uri), uri);
+        }
+        assertEquals(toB.size(), log.split("\n").length);
+        // none left open
+        assertEquals(0, divertDir.listFiles((dir, name) -> name.endsWith(".open")).length);
+    }
 }
@@ -0,0 +1,222 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.processor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Exchanges URIs between transports on the loopback interface.
+ */
+public class SocketDiversionTransportTest {
+
+    protected List<String> received = Collections.synchronizedList(new ArrayList<String>());
+    protected List<String> undelivered = Collections.synchronizedList(new ArrayList<String>());
+
+    protected SocketDiversionTransport open(String name, List<String> received)
+            throws IOException {
+        return open(name, received, "secret");
+    }
+
+    protected SocketDiversionTransport open(String name, List<String> received,
+            String secret) throws IOException {
+        SocketDiversionTransport transport = new SocketDiversionTransport();
+        transport.setSecret(secret);
+        transport.setBatchSize(100);
+        transport.setLingerMs(50);
+        transport.setTimeoutMs(2000);
+        transport.open(name, received::add,
+                (target, line) -> undelivered.add(target + " " + line));
+        return transport;
+    }
+
+    protected void awaitSize(List<String> list, int size) throws InterruptedException {
+        for (int i = 0; i < 200 && list.size() < size; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(size, list.size());
+    }
+
+    /** an address nothing listens on */
+    protected String deadAddress() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "127.0.0.1:" + socket.getLocalPort();
+        }
+    }
+
+    @Test
+    public void testExchange() throws Exception {
+        List<String> receivedByA = Collections.synchronizedList(new ArrayList<String>());
+        SocketDiversionTransport a = open("a", receivedByA);
+        SocketDiversionTransport b = open("b", received);
+        try {
+            a.setPeers(Collections.singletonMap("b", "127.0.0.1:" + b.getLocalPort()));
+            b.setPeers(Collections.singletonMap("a", "127.0.0.1:" + a.getLocalPort()));
+            assertEquals(new TreeSet<String>(Set.of("a", "b")), a.getNodes());
+            assertEquals(a.getNodes(), b.getNodes());
+
+            List<String> sent = new ArrayList<String>();
+            for (int i = 0; i < 1000; i++) {
+                String line = "http://www.example.com/page" + i + ".html L http://www.example.com/";
+                sent.add(line);
+                assertTrue(a.send("b", line));
+            }
+            assertTrue(b.send("a", "http://example.org/ L http://example.com/"));
+            assertFalse(a.send("c", "http://example.net/ L http://example.com/"));
+
+            awaitSize(received, 1000);
+            // in order, from a single sender
+            assertEquals(sent, received);
+            awaitSize(receivedByA, 1);
+            assertEquals(1000, a.getSentLines());
+            assertEquals(1000, b.getReceivedLines());
+            assertTrue(a.getCompressionRatio() < 0.5);
+        } finally {
+            a.close();
+            b.close();
+        }
+        assertTrue(undelivered.isEmpty());
+    }
+
+    @Test
+    public void testUndeliverable() throws Exception {
+        SocketDiversionTransport a = open("a", received);
+        a.setPeers(Collections.singletonMap("gone", deadAddress()));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(a.send("gone", "http://example.com/" + i));
+        }
+        a.close();
+        assertEquals(10, undelivered.size());
+        assertTrue(undelivered.contains("gone http://example.com/3"));
+        assertTrue(received.isEmpty());
+        // closed; refuses more
+        assertFalse(a.send("gone", "http://example.com/10"));
+    }
+
+    @Test
+    public void testNothingLostSendingWhileClosing() throws Exception {
+        SocketDiversionTransport a = open("a", received);
+        a.setPeers(Collections.singletonMap("gone", deadAddress()));
+        AtomicInteger accepted = new AtomicInteger();
+        Thread sender = new Thread(() -> {
+            for (int i = 0; i < 100000; i++) {
+                if (a.send("gone", "http://example.com/" + i)) {
+                    accepted.incrementAndGet();
+                }
+            }
+        });
+        sender.start();
+        Thread.sleep(20);
+        a.close();
+        sender.join();
+        // every line taken was either handed back or is refused
+        assertEquals(accepted.get(), undelivered.size());
+    }
+
+    @Test
+    public void testPeerMoving() throws Exception {
+        SocketDiversionTransport a = open("a", received);
+        SocketDiversionTransport b = open("b", received);
+        try {
+            a.setPeers(Collections.singletonMap("b", deadAddress()));
+            for (int i = 0; i < 10; i++) {
+                assertTrue(a.send("b", "http://example.com/" + i));
+            }
+            a.setPeers(Collections.singletonMap("b", "127.0.0.1:" + b.getLocalPort()));
+            assertTrue(a.send("b", "http://example.com/10"));
+            awaitSize(received, 11);
+        } finally {
+            a.close();
+            b.close();
+        }
+        assertTrue(undelivered.isEmpty());
+    }
+
+    @Test
+    public void testWrongSecretRefused() throws Exception {
+        SocketDiversionTransport a = open("a", received, "guess");
+        SocketDiversionTransport b = open("b", received, "secret");
+        try {
+            a.setPeers(Collections.singletonMap("b", "127.0.0.1:" + b.getLocalPort()));
+            for (int i = 0; i < 10; i++) {
+                assertTrue(a.send("b", "http://example.com/" + i));
+            }
+            Thread.sleep(500);
+        } finally {
+            a.close();
+            b.close();
+        }
+        assertEquals(0, b.getReceivedLines());
+        assertTrue(received.isEmpty());
+        assertEquals(10, undelivered.size());
+    }
+
+    @Test
+    public void testSecretNeededBeyondLoopback() throws Exception {
+        SocketDiversionTransport transport = new SocketDiversionTransport();
+        transport.setBindAddress("0.0.0.0");
+        assertThrows(IOException.class, () -> transport.open("a", received::add,
+                (target, line) -> undelivered.add(target + " " + line)));
+
+        transport.setSecret("secret");
+        transport.open("a", received::add,
+                (target, line) -> undelivered.add(target + " " + line));
+        transport.close();
+    }
+
+    @Test
+    public void testPeerLeaving() throws Exception {
+        SocketDiversionTransport a = open("a", received);
+        try {
+            Map<String,String> peers = new HashMap<String,String>();
+            peers.put("b", deadAddress());
+            peers.put("c", deadAddress());
+            a.setPeers(peers);
+            Set<String> nodes = new TreeSet<String>(a.getNodes());
+            assertEquals(Set.of("a", "b", "c"), nodes);
+            for (int i = 0; i < 10; i++) {
+                assertTrue(a.send("b", "http://example.com/" + i));
+            }
+
+            peers.remove("b");
+            a.setPeers(peers);
+            assertEquals(Set.of("a", "c"), new TreeSet<String>(a.getNodes()));
+            // handed back, to be mapped afresh
+            assertEquals(10, received.size());
+            assertFalse(a.send("b", "http://example.com/10"));
+        } finally {
+            a.close();
+        }
+    }
+}
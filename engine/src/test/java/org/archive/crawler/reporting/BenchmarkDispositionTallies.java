@@ -0,0 +1,185 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.reporting;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.archive.crawler.util.CrawledBytesHistotable;
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+import org.archive.util.MimetypeUtils;
+
+/**
+ * Simple benchmarking of tallying finished URIs from many threads at once:
+ * straight into the shared maps (as StatisticsTracker once did), against
+ * into per-thread {@link DispositionTallies} drained by a concurrent
+ * "snapshot" thread.
+ *
+ * Take care when interpreting results; the effect of GC, dynamic
+ * compilation, and any other activity on test machine may affect
+ * relative time tallies in unpredictable ways.
+ */
+public class BenchmarkDispositionTallies {
+
+    public static void main(String[] args) throws Exception {
+        (new BenchmarkDispositionTallies()).instanceMain(args);
+    }
+
+    public void instanceMain(String[] args) throws Exception {
+        int reps =
+            (args.length > 0) ? Integer.parseInt(args[0]) : 3;
+        int threads =
+            (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+        int urisPerThread =
+            (args.length > 2) ? Integer.parseInt(args[2]) : 10000;
+        long drainIntervalMs =
+            (args.length > 3) ? Long.parseLong(args[3]) : 20;
+
+        System.out.println(
+                "reps=" + reps + " threads=" + threads
+                + " urisPerThread=" + urisPerThread
+                + " drainIntervalMs=" + drainIntervalMs);
+
+        CrawlURI[] samples = makeSamples();
+        for (int r = 0; r < reps; r++) {
+            testShared(samples, threads, urisPerThread);
+            testPerThread(samples, threads, urisPerThread, drainIntervalMs);
+        }
+    }
+
+    protected CrawlURI[] makeSamples() throws Exception {
+        String[] types = {"text/html", "image/jpeg", "text/css",
+                "application/javascript"};
+        int[] statuses = {200, 200, 200, 404, 301, 200, 500, 200};
+        CrawlURI[] samples = new CrawlURI[64];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new CrawlURI(UURIFactory.getInstance(
+                    "http://host" + (i % 16) + ".example.com/" + i));
+            samples[i].setFetchStatus(statuses[i % statuses.length]);
+            samples[i].setContentType(types[i % types.length]);
+            samples[i].setContentSize(1000 + i);
+        }
+        return samples;
+    }
+
+    /**
+     * Tally as crawledURISuccessful() did before per-thread tallies.
+     */
+    protected void testShared(final CrawlURI[] samples, int threads,
+            final int urisPerThread) throws InterruptedException {
+        final StatisticsTracker stats = new StatisticsTracker();
+        long elapsed = run(threads, new Runnable() {
+            public void run() {
+                for (int i = 0; i < urisPerThread; i++) {
+                    CrawlURI curi = samples[i & (samples.length - 1)];
+                    stats.crawledBytes.accumulate(curi);
+                    StatisticsTracker.incrementMapCount(
+                            stats.statusCodeDistribution,
+                            Integer.toString(curi.getFetchStatus()));
+                    String mime = MimetypeUtils.truncate(curi.getContentType());
+                    StatisticsTracker.incrementMapCount(
+                            stats.mimeTypeDistribution, mime);
+                    StatisticsTracker.incrementMapCount(
+                            stats.mimeTypeBytes, mime, curi.getContentSize());
+                }
+            }
+        }, null);
+        report("shared maps", elapsed, stats);
+    }
+
+    /**
+     * Tally into per-thread buffers, drained meanwhile as by snapshots.
+     */
+    protected void testPerThread(final CrawlURI[] samples, int threads,
+            final int urisPerThread, final long drainIntervalMs)
+            throws InterruptedException {
+        final StatisticsTracker stats = new StatisticsTracker();
+        Thread drainer = new Thread("drainer") {
+            public void run() {
+                while (!isInterrupted()) {
+                    stats.mergeTallies();
+                    try {
+                        Thread.sleep(drainIntervalMs);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        long elapsed = run(threads, new Runnable() {
+            public void run() {
+                DispositionTallies tallies = stats.localTallies.get();
+                for (int i = 0; i < urisPerThread; i++) {
+                    tallies.tally(samples[i & (samples.length - 1)],
+                            null, null);
+                }
+            }
+        }, drainer);
+        stats.mergeTallies();
+        report("per-thread tallies", elapsed, stats);
+    }
+
+    /**
+     * Run the task on the given number of threads, released together.
+     *
+     * @return ms from release until all threads finished
+     */
+    protected long run(int threads, final Runnable task, Thread alongside)
+            throws InterruptedException {
+        System.gc();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    task.run();
+                }
+            };
+            workers[t].start();
+        }
+        long startTime = System.currentTimeMillis();
+        start.countDown();
+        if (alongside != null) {
+            alongside.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long finishTime = System.currentTimeMillis();
+        if (alongside != null) {
+            alongside.interrupt();
+            alongside.join();
+        }
+        return finishTime - startTime;
+    }
+
+    protected void report(String note, long elapsed, StatisticsTracker stats) {
+        System.out.println(note + ":\n "
+                + elapsed + "ms "
+                + stats.crawledBytes.get(CrawledBytesHistotable.NOVELCOUNT)
+                + " uris "
+                + stats.statusCodeDistribution.get("200") + " 200s "
+                + stats.mimeTypeBytes.get("text/html") + " html bytes");
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.reporting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.archive.crawler.framework.CrawlController;
+import org.archive.modules.CandidateChain;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.DispositionChain;
+import org.archive.modules.FetchChain;
+import org.archive.modules.ProcessResult;
+import org.archive.modules.Processor;
+import org.archive.net.UURIFactory;
+import org.junit.jupiter.api.Test;
+
+public class MetricsExporterTest {
+
+    /** a sample line: name, optional labels, and a value */
+    protected static final Pattern SAMPLE = Pattern.compile(
+            "[a-z_]+(\\{([a-z_]+=\"([^\"\\\\]|\\\\.)*\",?)+\\})? "
+            + "-?[0-9]+(\\.[0-9]+)?(E-?[0-9]+)?");
+
+    protected static Processor processor(String name, final int bytes,
+            final ProcessResult result) {
+        Processor p = new Processor() {
+            @Override
+            protected boolean shouldProcess(CrawlURI curi) {
+                return true;
+            }
+            @Override
+            protected void innerProcess(CrawlURI curi) {
+            }
+            @Override
+            protected ProcessResult innerProcessResult(CrawlURI curi) {
+                if (result == null) {
+                    throw new IllegalStateException("failed");
+                }
+                curi.setContentSize(curi.getContentSize() + bytes);
+                return result;
+            }
+        };
+        p.setBeanName(name);
+        return p;
+    }
+
+    protected CrawlController makeController() throws Exception {
+        Processor fetcher = processor("fetchHttp", 100, ProcessResult.PROCEED);
+        Processor finisher = processor("odd\"name\\", 0, ProcessResult.FINISH);
+        Processor failer = processor("failer", 0, null);
+
+        FetchChain fetchChain = new FetchChain();
+        fetchChain.setProcessors(Arrays.asList(fetcher, finisher));
+        DispositionChain dispositionChain = new DispositionChain();
+        dispositionChain.setProcessors(Arrays.<Processor>asList(failer));
+        CandidateChain candidateChain = new CandidateChain();
+        candidateChain.setProcessors(new ArrayList<Processor>());
+
+        for (String uri : Arrays.asList("http://example.com/a",
+                "http://example.com/b")) {
+            CrawlURI curi = new CrawlURI(UURIFactory.getInstance(uri));
+            fetcher.process(curi);
+            finisher.process(curi);
+            assertThrows(IllegalStateException.class, () -> failer.process(curi));
+        }
+        fetchChain.getChainLatency().record(5000);
+        fetchChain.getChainLatency().record(7000);
+
+        CrawlController controller = new CrawlController();
+        controller.setCandidateChain(candidateChain);
+        controller.setFetchChain(fetchChain);
+        controller.setDispositionChain(dispositionChain);
+        return controller;
+    }
+
+    protected List<String> export(CrawlController controller) {
+        StringWriter out = new StringWriter();
+        new MetricsExporter(new PrintWriter(out)).write(controller);
+        String text = out.toString();
+        assertTrue(text.endsWith("\n"));
+        return Arrays.asList(text.split("\n"));
+    }
+
+    @Test
+    public void testExpositionFormat() throws Exception {
+        List<String> lines = export(makeController());
+        String family = null;
+        for (String line : lines) {
+            if (line.startsWith("# HELP ")) {
+                family = line.split(" ")[2];
+            } else if (line.startsWith("# TYPE ")) {
+                String[] parts = line.split(" ");
+                assertEquals(4, parts.length, line);
+                assertEquals(family, parts[2], line);
+                assertTrue(parts[3].equals("summary")
+                        || parts[3].equals("counter"), line);
+            } else {
+                assertTrue(SAMPLE.matcher(line).matches(), line);
+                // every sample belongs to the family last declared
+                assertTrue(line.startsWith(family), line);
+            }
+        }
+        assertEquals("text/plain; version=0.0.4", MetricsExporter.CONTENT_TYPE);
+    }
+
+    @Test
+    public void testChainSummary() throws Exception {
+        List<String> lines = export(makeController());
+        int start = lines.indexOf("# TYPE heritrix_chain_latency_seconds summary");
+        assertTrue(start > 0);
+        assertEquals("# HELP heritrix_chain_latency_seconds "
+                + "Time for a URI to pass through a processor chain",
+                lines.get(start - 1));
+        assertEquals(Arrays.asList(
+                "heritrix_chain_latency_seconds{chain=\"candidate\",quantile=\"0.5\"} 0.0",
+                "heritrix_chain_latency_seconds{chain=\"candidate\",quantile=\"0.9\"} 0.0",
+                "heritrix_chain_latency_seconds{chain=\"candidate\",quantile=\"0.99\"} 0.0",
+                "heritrix_chain_latency_seconds_sum{chain=\"candidate\"} 0.0",
+                "heritrix_chain_latency_seconds_count{chain=\"candidate\"} 0",
+                "heritrix_chain_latency_seconds{chain=\"fetch\",quantile=\"0.5\"} 5.0E-6",
+                "heritrix_chain_latency_seconds{chain=\"fetch\",quantile=\"0.9\"} 7.0E-6",
+                "heritrix_chain_latency_seconds{chain=\"fetch\",quantile=\"0.99\"} 7.0E-6",
+                "heritrix_chain_latency_seconds_sum{chain=\"fetch\"} 1.2E-5",
+                "heritrix_chain_latency_seconds_count{chain=\"fetch\"} 2"),
+                lines.subList(start + 1, start + 11));
+    }
+
+    @Test
+    public void testProcessorCounters() throws Exception {
+        List<String> lines = export(makeController());
+        assertTrue(lines.contains(
+                "heritrix_processor_uris_total{chain=\"fetch\",processor=\"fetchHttp\"} 2"));
+        assertTrue(lines.contains(
+                "heritrix_processor_bytes_total{chain=\"fetch\",processor=\"fetchHttp\"} 200"));
+        assertTrue(lines.contains(
+                "heritrix_processor_outcomes_total{chain=\"fetch\",processor=\"odd\\\"name\\\\\",outcome=\"finish\"} 2"));
+        assertTrue(lines.contains(
+                "heritrix_processor_outcomes_total{chain=\"fetch\",processor=\"odd\\\"name\\\\\",outcome=\"jump\"} 0"));
+        assertTrue(lines.contains(
+                "heritrix_processor_outcomes_total{chain=\"disposition\",processor=\"failer\",outcome=\"error\"} 2"));
+        assertTrue(lines.contains(
+                "heritrix_processor_latency_seconds_count{chain=\"disposition\",processor=\"failer\"} 2"));
+        // no frontier configured
+        for (String line : lines) {
+            assertTrue(!line.contains("frontier") && !line.contains("bdb"), line);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.reporting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class StatSnapshotHistoryTest {
+    @TempDir
+    File tempDir;
+
+    protected static final long BASE_TIME = 1704067200000L;
+
+    protected Map<String,Number> sample(int i) {
+        Map<String,Number> sample = new LinkedHashMap<String,Number>();
+        sample.put("downloadedUriCount", 100L * i);
+        sample.put("queuedUriCount", 5000L - 3 * i);
+        sample.put("congestionRatio", i / 4.0);
+        return sample;
+    }
+
+    protected StatSnapshotHistory write(File file, int count) throws IOException {
+        StatSnapshotHistory history = new StatSnapshotHistory(file);
+        for (int i = 0; i < count; i++) {
+            history.append(BASE_TIME + i * 20000L, sample(i));
+        }
+        return history;
+    }
+
+    @Test
+    public void testFullResolution() throws IOException {
+        File file = new File(tempDir, "history.bin");
+        StatSnapshotHistory history = write(file, 1000);
+        // deltas of a few bytes per row
+        assertTrue(file.length() < 1000 * 10);
+
+        StatSnapshotHistory.Series series = history.query(
+                BASE_TIME + 300 * 20000L, BASE_TIME + 599 * 20000L, null, 0);
+        assertEquals(Arrays.asList("timestamp", "downloadedUriCount",
+                "queuedUriCount", "congestionRatio"), series.getColumns());
+        assertEquals(300, series.getRows().size());
+        double[] first = series.getRows().get(0);
+        assertEquals(BASE_TIME + 300 * 20000L, (long) first[0]);
+        assertEquals(30000, first[1], 0);
+        assertEquals(4100, first[2], 0);
+        assertEquals(75.0, first[3], 0);
+        history.close();
+    }
+
+    @Test
+    public void testDownsample() throws IOException {
+        StatSnapshotHistory history = write(new File(tempDir, "history.bin"), 1000);
+        StatSnapshotHistory.Series series = history.query(0, Long.MAX_VALUE,
+                Arrays.asList("downloadedUriCount", "absent"), 100);
+        assertEquals(100, series.getRows().size());
+        double[] first = series.getRows().get(0);
+        // mean of the first ten samples
+        assertEquals(450, first[1], 0);
+        assertTrue(Double.isNaN(first[2]));
+        assertEquals(BASE_TIME + 9 * 20000L, (long) first[0]);
+        history.close();
+    }
+
+    @Test
+    public void testColumnChangeAndReopen() throws IOException {
+        File file = new File(tempDir, "history.bin");
+        StatSnapshotHistory history = write(file, 300);
+        Map<String,Number> wider = sample(300);
+        wider.put("processor.fetchHttp.uris", 7L);
+        history.append(BASE_TIME + 300 * 20000L, wider);
+        history.close();
+
+        // simulate a write interrupted mid-record
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write('D');
+        }
+
+        history = new StatSnapshotHistory(file);
+        history.append(BASE_TIME + 301 * 20000L, wider);
+        StatSnapshotHistory.Series series = history.query(0, Long.MAX_VALUE, null, 0);
+        assertEquals(302, series.getRows().size());
+        assertEquals("processor.fetchHttp.uris", series.getColumns().get(4));
+        assertTrue(Double.isNaN(series.getRows().get(299)[4]));
+        assertEquals(7, series.getRows().get(301)[4], 0);
+        assertEquals(29900, series.getRows().get(299)[1], 0);
+        assertEquals(30000, series.getRows().get(301)[1], 0);
+        history.close();
+    }
+}
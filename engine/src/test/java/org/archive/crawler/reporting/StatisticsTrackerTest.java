@@ -0,0 +1,117 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.reporting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.archive.crawler.util.CrawledBytesHistotable;
+import org.archive.modules.CrawlURI;
+import org.archive.modules.Processor;
+import org.archive.modules.fetcher.DefaultServerCache;
+import org.archive.net.UURIFactory;
+import org.junit.jupiter.api.Test;
+
+public class StatisticsTrackerTest {
+
+    protected CrawlURI makeCrawlURI(int i) throws Exception {
+        CrawlURI curi = new CrawlURI(UURIFactory.getInstance(
+                "http://host" + (i % 10) + ".example.com/" + i));
+        curi.setFetchStatus(i % 2 == 0 ? 200 : 404);
+        curi.setContentType("text/html; charset=UTF-8");
+        curi.setContentSize(100);
+        curi.setSourceTag("seeds.txt");
+        return curi;
+    }
+
+    protected static class NoopProcessor extends Processor {
+        @Override
+        protected boolean shouldProcess(CrawlURI uri) {
+            return true;
+        }
+        @Override
+        protected void innerProcess(CrawlURI uri) {
+        }
+    }
+
+    @Test
+    public void testHistoryProcessorNames() {
+        StatisticsTracker stats = new StatisticsTracker();
+        Map<String,Number> sample = new LinkedHashMap<String,Number>();
+        Processor named = new NoopProcessor();
+        named.setBeanName("fetchHttp");
+        assertEquals("fetchHttp", stats.historyName(named, sample));
+
+        // unnamed: class name, made unique within the sample
+        Processor unnamed = new NoopProcessor();
+        assertEquals("NoopProcessor", stats.historyName(unnamed, sample));
+        sample.put("processor.NoopProcessor.uris", 0);
+        assertEquals("NoopProcessor-2", stats.historyName(unnamed, sample));
+        sample.put("processor.NoopProcessor-2.uris", 0);
+        assertEquals("NoopProcessor-3", stats.historyName(unnamed, sample));
+    }
+
+    @Test
+    public void testConcurrentTallies() throws Exception {
+        final StatisticsTracker stats = new StatisticsTracker();
+        stats.setServerCache(new DefaultServerCache());
+        final int threadCount = 8;
+        final int perThread = 1000;
+
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            stats.crawledURISuccessful(makeCrawlURI(i));
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = threadCount * perThread;
+        assertEquals(total / 2, stats.getStatusCodeDistribution().get("200").get());
+        assertEquals(total / 2, stats.getStatusCodeDistribution().get("404").get());
+        assertEquals(total, stats.getFileDistribution().get("text/html").get());
+        assertEquals(total * 100L, stats.getBytesPerFileType("text/html"));
+        assertEquals(total, (long) stats.getCrawledBytes().get(
+                CrawledBytesHistotable.NOVELCOUNT));
+        assertEquals(total, (long) stats.getSourceStats("seeds.txt").get(
+                CrawledBytesHistotable.NOVELCOUNT));
+        assertEquals(total / 10, stats.sourceHostDistribution.get("seeds.txt")
+                .get("host3.example.com").get());
+        // buffers of finished threads are dropped once drained
+        assertTrue(stats.threadTallies.isEmpty());
+
+        // a further merge changes nothing
+        stats.mergeTallies();
+        assertEquals(total, stats.getFileDistribution().get("text/html").get());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.spring;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the SURT prefix lookup follows changes to the
+ * sheet-names-by-SURT map, however they're made.
+ */
+public class SheetOverlaysManagerTest {
+
+    @Test
+    public void testSurtKeysFollowDirectChanges() {
+        SheetOverlaysManager manager = new SheetOverlaysManager();
+        manager.addSurtAssociation("http://(com,example,", "a");
+        manager.addSurtAssociation("http://(org,example,", "b");
+        SheetOverlaysManager.SurtKeys keys = manager.getSurtKeys();
+        assertSame(keys, manager.getSurtKeys());
+
+        // replace one key with another, leaving the size unchanged
+        List<String> names = manager.getSheetsNamesBySurt().remove("http://(com,example,");
+        manager.getSheetsNamesBySurt().put("http://(net,example,", names);
+        assertArrayEquals(new String[] {"http://(net,example,", "http://(org,example,"},
+                manager.getSurtKeys().keys);
+
+        // and through the key set's iterator
+        Iterator<String> iter = manager.getSheetsNamesBySurt().keySet().iterator();
+        iter.next();
+        iter.remove();
+        manager.getSheetsNamesBySurt().put("http://(com,example,", new LinkedList<String>());
+        assertArrayEquals(new String[] {"http://(com,example,", "http://(org,example,"},
+                manager.getSurtKeys().keys);
+    }
+}
@@ -128,6 +128,11 @@ implements UriUniqFilter.CrawlUriReceiver {
 		this.received = true;
 	}
 
+    @Test
+    public void testAddAll() throws URIException {
+        UriUniqFilterChecks.checkAddAll(this.filter);
+    }
+
 	public String getUri() {
 		return "http://www.archive.org";
 	}
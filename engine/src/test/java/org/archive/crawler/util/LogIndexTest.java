@@ -0,0 +1,161 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.crawler.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang.math.LongRange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LogIndexTest {
+    @TempDir
+    File tempDir;
+
+    /** 2024-01-01T00:00:00.000Z */
+    protected static final long BASE_TIME = 1704067200000L;
+
+    protected static final DateTimeFormatter LOG_DATE = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    protected static String line(int i) {
+        return LOG_DATE.format(Instant.ofEpochMilli(BASE_TIME + i * 1000L))
+                + " " + (i % 7 == 0 ? 404 : 200) + " http://example.com/" + i;
+    }
+
+    protected File writeLog(String name, int count, boolean gzip) throws IOException {
+        File file = new File(tempDir, name);
+        OutputStream out = new FileOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        }
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < count; i++) {
+                writer.write(line(i) + "\n");
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testPaging() throws IOException {
+        for (boolean gzip : new boolean[] {false, true}) {
+            File file = writeLog("crawl.log" + (gzip ? ".gz" : ""), 1000, gzip);
+            LogIndex index = new LogIndex(file, 16);
+            index.update();
+            assertEquals(gzip, index.isGzipped());
+            assertEquals(1000, index.getLineCount());
+            assertTrue(index.isTimestamped());
+
+            List<String> lines = new ArrayList<String>();
+            index.readLines(500, 3, lines);
+            assertEquals(line(500), lines.get(0));
+            assertEquals(line(502), lines.get(2));
+
+            long offset = index.offsetOfLine(700);
+            lines.clear();
+            LongRange range = index.pagedLines(offset + 3, 5, lines);
+            assertEquals(offset, range.getMinimumLong());
+            assertEquals(line(700), lines.get(0));
+            assertEquals(5, lines.size());
+
+            lines.clear();
+            index.pagedLines(offset + 3, -5, lines);
+            assertEquals(line(696), lines.get(0));
+            assertEquals(line(700), lines.get(4));
+
+            lines.clear();
+            range = index.pagedLines(index.getLength(), -2, lines);
+            assertEquals(line(999), lines.get(1));
+            assertEquals(index.getLength(), range.getMaximumLong());
+        }
+    }
+
+    @Test
+    public void testTimeSeek() throws IOException {
+        File file = writeLog("crawl.log", 1000, false);
+        LogIndex index = new LogIndex(file, 16);
+        index.update();
+        assertEquals(index.offsetOfLine(321),
+                index.offsetOfTime(BASE_TIME + 320500));
+        assertEquals(0, index.offsetOfTime(0));
+        assertEquals(index.getLength(), index.offsetOfTime(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testGrep() throws IOException {
+        for (boolean gzip : new boolean[] {false, true}) {
+            File file = writeLog("crawl.log" + (gzip ? ".gz" : ""), 1000, gzip);
+            LogIndex index = new LogIndex(file, 16);
+            index.update();
+            Pattern notFound = Pattern.compile(" 404 ");
+
+            List<String> lines = new ArrayList<String>();
+            index.grep(notFound, index.offsetOfLine(100), 3, lines);
+            assertEquals(line(105), lines.get(0));
+            assertEquals(line(119), lines.get(2));
+
+            lines.clear();
+            index.grepBackward(notFound, index.offsetOfLine(100), 10, lines);
+            assertEquals(10, lines.size());
+            assertEquals(line(98), lines.get(9));
+            assertEquals(line(98 - 9 * 7), lines.get(0));
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws IOException {
+        File file = new File(tempDir, "growing.log");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8)) {
+            writer.write("one\ntwo\nthr");
+        }
+        LogIndex index = new LogIndex(file, 2);
+        index.update();
+        assertEquals(2, index.getLineCount());
+        assertEquals(8, index.getLength());
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file, true),
+                StandardCharsets.UTF_8)) {
+            writer.write("ee\nfour\n");
+        }
+        index.update();
+        assertEquals(4, index.getLineCount());
+        List<String> lines = new ArrayList<String>();
+        index.readLines(2, 2, lines);
+        assertEquals("three", lines.get(0));
+        assertEquals("four", lines.get(1));
+    }
+}
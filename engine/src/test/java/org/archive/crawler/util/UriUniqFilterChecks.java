@@ -0,0 +1,89 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.crawler.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.archive.crawler.datamodel.UriUniqFilter;
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+import org.archive.url.URIException;
+
+/**
+ * Checks shared by the tests of each {@link UriUniqFilter} implementation.
+ */
+public class UriUniqFilterChecks {
+
+    /**
+     * Check that addAll() passes on, as one batch, the first of each new
+     * key, in the order given. The filter's destination is replaced.
+     *
+     * @param filter empty filter
+     */
+    public static void checkAddAll(UriUniqFilter filter) throws URIException {
+        final List<CrawlURI> received = new ArrayList<CrawlURI>();
+        final List<List<CrawlURI>> receivedBatches = new ArrayList<List<CrawlURI>>();
+        filter.setDestination(new UriUniqFilter.CrawlUriReceiver() {
+            public void receive(CrawlURI item) {
+                received.add(item);
+            }
+            public void receiveAll(List<CrawlURI> items) {
+                receivedBatches.add(items);
+            }
+        });
+
+        filter.add("http://www.example.com/seen",
+                new CrawlURI(UURIFactory.getInstance("http://www.example.com/seen")));
+        assertEquals(1, received.size());
+
+        List<String> keys = new ArrayList<String>();
+        List<CrawlURI> values = new ArrayList<CrawlURI>();
+        for (String uri : new String[] {
+                "http://www.example.com/c",
+                "http://www.example.com/seen",
+                "http://www.example.org/a",
+                "http://www.example.com/c",
+                "http://www.example.com/b" }) {
+            keys.add(uri);
+            values.add(new CrawlURI(UURIFactory.getInstance(uri)));
+        }
+        filter.addAll(keys, values);
+
+        // one batch of the new, first of any repeated, in the order given
+        assertEquals(1, receivedBatches.size());
+        List<CrawlURI> batch = receivedBatches.get(0);
+        assertEquals(3, batch.size());
+        assertSame(values.get(0), batch.get(0));
+        assertSame(values.get(2), batch.get(1));
+        assertSame(values.get(4), batch.get(2));
+        assertEquals(4, filter.count());
+        assertEquals(6, filter.addedCount());
+
+        // all already seen: nothing passed on
+        filter.addAll(keys, values);
+        assertEquals(1, receivedBatches.size());
+        assertEquals(1, received.size());
+        assertEquals(4, filter.count());
+    }
+}
@@ -48,6 +48,16 @@ implements CoreAttributeConstants {
     public static final String WARC_NOVEL_CONTENT_BYTES = "warcNovelContentBytes";
     public static final String WARC_NOVEL_URLS = "warcNovelUrls";
 
+    /**
+     * Keys of the tallies made for each URI, in the order used by
+     * {@link #accumulate(CrawlURI, long[])}.
+     */
+    public static final String[] TALLY_KEYS = {
+        NOTMODIFIED, NOTMODIFIEDCOUNT, DUPLICATE, DUPLICATECOUNT,
+        OTHERDUPLICATE, OTHERDUPLICATECOUNT, NOVEL, NOVELCOUNT,
+        WARC_NOVEL_CONTENT_BYTES, WARC_NOVEL_URLS
+    };
+
     public CrawledBytesHistotable() {
         super();
     }
@@ -56,29 +66,48 @@ implements CoreAttributeConstants {
         super(comparator);
     }
 
-    @SuppressWarnings("unchecked")
     public void accumulate(CrawlURI curi) {
+        long[] tallies = new long[TALLY_KEYS.length];
+        accumulate(curi, tallies);
+        tallyAll(tallies);
+    }
+
+    /**
+     * Add the URI's tallies to the given array, indexed as
+     * {@link #TALLY_KEYS}, without touching any shared Histotable.
+     */
+    @SuppressWarnings("unchecked")
+    public static void accumulate(CrawlURI curi, long[] tallies) {
         if (curi.getRevisitProfile() instanceof ServerNotModifiedRevisit) {
-            tally(NOTMODIFIED, curi.getContentSize());
-            tally(NOTMODIFIEDCOUNT,1);
+            tallies[0] += curi.getContentSize();
+            tallies[1]++;
         } else if (curi.getRevisitProfile() instanceof IdenticalPayloadDigestRevisit) {
-            tally(DUPLICATE,curi.getContentSize());
-            tally(DUPLICATECOUNT,1);
+            tallies[2] += curi.getContentSize();
+            tallies[3]++;
         } else if (curi.getRevisitProfile() != null) {
-            tally(OTHERDUPLICATE, curi.getContentSize());
-            tally(OTHERDUPLICATECOUNT, 1);
+            tallies[4] += curi.getContentSize();
+            tallies[5]++;
         } else {
-            tally(NOVEL,curi.getContentSize());
-            tally(NOVELCOUNT,1);
+            tallies[6] += curi.getContentSize();
+            tallies[7]++;
         }
         Map<String,Map<String,Long>> warcStats = (Map<String,Map<String,Long>>) curi.getData().get(A_WARC_STATS);
         if (warcStats != null) {
-            tally(WARC_NOVEL_CONTENT_BYTES,
-                    WARCWriter.getStat(warcStats, "response", "contentBytes")
-                    + WARCWriter.getStat(warcStats, "resource", "contentBytes"));
-            tally(WARC_NOVEL_URLS,
-                    WARCWriter.getStat(warcStats, "response", "numRecords")
-                    + WARCWriter.getStat(warcStats, "resource", "numRecords"));
+            tallies[8] += WARCWriter.getStat(warcStats, "response", "contentBytes")
+                    + WARCWriter.getStat(warcStats, "resource", "contentBytes");
+            tallies[9] += WARCWriter.getStat(warcStats, "response", "numRecords")
+                    + WARCWriter.getStat(warcStats, "resource", "numRecords");
+        }
+    }
+
+    /**
+     * Add tallies indexed as {@link #TALLY_KEYS}.
+     */
+    public synchronized void tallyAll(long[] tallies) {
+        for (int i = 0; i < TALLY_KEYS.length; i++) {
+            if (tallies[i] != 0) {
+                tally(TALLY_KEYS[i], tallies[i]);
+            }
         }
     }
     
@@ -35,6 +35,7 @@ import org.archive.modules.fetcher.FetchStatusCodes;
 import org.archive.net.UURI;
 import org.archive.spring.HasKeyedProperties;
 import org.archive.spring.KeyedProperties;
+import org.archive.util.LatencyHistogram;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.beans.factory.BeanNameAware;
@@ -103,6 +104,16 @@ implements HasKeyedProperties,
      */
     protected AtomicLong uriCount = new AtomicLong(0);
 
+    /**
+     * Time spent in {@link #innerProcessResult(CrawlURI)}, and tallies of
+     * its outcomes.
+     */
+    protected LatencyHistogram processLatency = new LatencyHistogram();
+    protected AtomicLong finishCount = new AtomicLong(0);
+    protected AtomicLong jumpCount = new AtomicLong(0);
+    protected AtomicLong errorCount = new AtomicLong(0);
+    protected AtomicLong byteCount = new AtomicLong(0);
+
     
     /**
      * Processes the given URI.  First checks {@link #getEnabled()} and
@@ -140,7 +151,33 @@ implements HasKeyedProperties,
         
         if (shouldProcess(uri)) {
             uriCount.incrementAndGet();
-            return innerProcessResult(uri);
+            long startNanos = System.nanoTime();
+            long startSize = uri.getContentSize();
+            boolean completed = false;
+            try {
+                ProcessResult result = innerProcessResult(uri);
+                switch (result.getProcessStatus()) {
+                    case FINISH:
+                        finishCount.incrementAndGet();
+                        break;
+                    case JUMP:
+                        jumpCount.incrementAndGet();
+                        break;
+                    default:
+                        break;
+                }
+                completed = true;
+                return result;
+            } finally {
+                processLatency.recordSince(startNanos);
+                if (!completed) {
+                    errorCount.incrementAndGet();
+                }
+                long bytes = uri.getContentSize() - startSize;
+                if (bytes > 0) {
+                    byteCount.addAndGet(bytes);
+                }
+            }
         } else {
             return ProcessResult.PROCEED;
         }
@@ -158,6 +195,44 @@ implements HasKeyedProperties,
         return uriCount.get();
     }
 
+    /**
+     * @return histogram of time taken by each URI this processor handled
+     */
+    public LatencyHistogram getProcessLatency() {
+        return processLatency;
+    }
+
+    /** @return number of handled URIs for which the chain was finished */
+    public long getFinishCount() {
+        return finishCount.get();
+    }
+
+    /** @return number of handled URIs sent to another processor */
+    public long getJumpCount() {
+        return jumpCount.get();
+    }
+
+    /** @return number of handled URIs for which an exception was thrown */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /** @return content bytes obtained while handling URIs (by fetchers) */
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    /**
+     * @return one-line summary of handled URIs, outcomes and latencies
+     */
+    public String metricsReport() {
+        return "  " + getURICount() + " handled, " + getFinishCount()
+                + " finished, " + getJumpCount() + " jumped, "
+                + getErrorCount() + " errors, " + getByteCount()
+                + " bytes; latency "
+                + processLatency.snapshot().toSummaryString() + "\n";
+    }
+
 
     /**
      * Determines whether the given uri should be processed by this 
@@ -9,6 +9,7 @@ import java.util.Map;
 import org.archive.spring.HasKeyedProperties;
 import org.archive.spring.KeyedProperties;
 import org.archive.util.ArchiveUtils;
+import org.archive.util.LatencyHistogram;
 import org.archive.util.Reporter;
 import org.springframework.context.Lifecycle;
 
@@ -51,6 +52,14 @@ implements Iterable<Processor>,
         kp.put("processors",processors);
     }
 
+    /**
+     * Time taken by each URI to pass through the whole chain.
+     */
+    protected LatencyHistogram chainLatency = new LatencyHistogram();
+    public LatencyHistogram getChainLatency() {
+        return chainLatency;
+    }
+
     protected boolean isRunning = false; 
     public boolean isRunning() {
         return isRunning;
@@ -85,10 +94,13 @@ implements Iterable<Processor>,
                 + ArchiveUtils.get12DigitDate()
                 + "\n");
  
-        writer.print("  Number of Processors: " + size() + "\n\n");
+        writer.print("  Number of Processors: " + size() + "\n");
+        writer.print("  Chain latency: "
+                + chainLatency.snapshot().toSummaryString() + "\n\n");
 
         for (Processor p: this) {
             writer.print(p.report());
+            writer.print(p.metricsReport());
             writer.println();
         }
         writer.println();
@@ -116,6 +128,15 @@ implements Iterable<Processor>,
 
     public void process(CrawlURI curi, ChainStatusReceiver thread) throws InterruptedException {
         assert KeyedProperties.overridesActiveFrom(curi);
+        long startNanos = System.nanoTime();
+        try {
+            processThrough(curi, thread);
+        } finally {
+            chainLatency.recordSince(startNanos);
+        }
+    }
+
+    protected void processThrough(CrawlURI curi, ChainStatusReceiver thread) throws InterruptedException {
         String skipToProc = null; 
         
         ploop: for(Processor curProc : this ) {
@@ -86,5 +86,146 @@ implements CanonicalizationRule, Serializable, HasKeyedProperties {
     private String checkForNull(String string) {
         return (string != null)? string: "";
     }
+
+    /**
+     * Apply this rule to the url in the given buffer, in place, with the
+     * same result as {@link #canonicalize(String)}. 
+     * 
+     * Rules able to do so override this to avoid the intermediate strings
+     * and regex matching of canonicalize(String). They should only do so
+     * for their own class, as a subclass may override canonicalize(String).
+     * 
+     * @param url buffer holding the url
+     * @return true if applied; false (with the buffer unchanged) if this
+     * rule can't be applied in place to this url
+     */
+    boolean canonicalize(StringBuilder url) {
+        return false;
+    }
+
+    /**
+     * Matcher of a single (session id) parameter.
+     */
+    interface ParamMatcher {
+        /**
+         * @return length of the parameter found at pos in s, or -1
+         */
+        int matchAt(CharSequence s, int pos);
+    }
+
+    /**
+     * In-place equivalent of {@link #doStripRegexMatch(String, String)}
+     * with a pattern of the form <code>^(.+)PARAM(?:&amp;(.*))?$</code>:
+     * strips the last occurrence (not at the very start) of the parameter
+     * matched by param, plus any '&amp;' following it, if it's followed by
+     * nothing else.
+     * 
+     * Only valid for a url without line terminators, which '.' doesn't
+     * match.
+     */
+    static void stripLastParam(StringBuilder url, ParamMatcher param) {
+        int length = url.length();
+        for (int p = length - 1; p >= 1; p--) {
+            int found = param.matchAt(url, p);
+            if (found < 0) {
+                continue;
+            }
+            int end = p + found;
+            if (end == length) {
+                url.setLength(p);
+                return;
+            }
+            if (url.charAt(end) == '&') {
+                url.delete(p, end + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Whether s contains, at pos, the given lowercase string, ignoring
+     * the case of ASCII letters only (as does a regex's CASE_INSENSITIVE
+     * flag, without UNICODE_CASE).
+     */
+    static boolean regionMatchesAsciiIgnoreCase(CharSequence s, int pos, String lower) {
+        int n = lower.length();
+        if (pos + n > s.length()) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(pos + i);
+            char t = lower.charAt(i);
+            if (c != t && !(t >= 'a' && t <= 'z' && c == t - ('a' - 'A'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether s contains, at pos, count ASCII letters (or letters and
+     * digits, if alsoDigits).
+     */
+    static boolean regionIsAsciiAlpha(CharSequence s, int pos, int count,
+            boolean alsoDigits) {
+        if (pos + count > s.length()) {
+            return false;
+        }
+        for (int i = pos; i < pos + count; i++) {
+            char c = s.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (alsoDigits && c >= '0' && c <= '9'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether s contains any of the characters a regex's '.' doesn't
+     * match; the in-place rules leave urls with these to their regexes.
+     */
+    static boolean hasLineTerminator(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028'
+                    || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Length of the prefix 'scheme://' (or, if allowS, 'schemes://') at
+     * the start of s, matched case-sensitively unless ignoreCase; or -1.
+     */
+    static int schemePrefixLength(CharSequence s, String scheme, boolean allowS,
+            boolean ignoreCase) {
+        int n = scheme.length();
+        if (!matches(s, 0, scheme, ignoreCase)) {
+            return -1;
+        }
+        if (allowS && matches(s, n, "s", ignoreCase)) {
+            n++;
+        }
+        return matches(s, n, "://", false) ? n + 3 : -1;
+    }
+
+    private static boolean matches(CharSequence s, int pos, String lower,
+            boolean ignoreCase) {
+        if (ignoreCase) {
+            return regionMatchesAsciiIgnoreCase(s, pos, lower);
+        }
+        if (pos + lower.length() > s.length()) {
+            return false;
+        }
+        for (int i = 0; i < lower.length(); i++) {
+            if (s.charAt(pos + i) != lower.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
     
 }
@@ -72,4 +72,27 @@ extends BaseRule {
         }
         return url;
     }
+
+    @Override
+    boolean canonicalize(StringBuilder url) {
+        if (getClass() != FixupQueryString.class) {
+            return false;
+        }
+        int length = url.length();
+        int index = url.lastIndexOf("?");
+        if (index > 0) {
+            if (index == (length - 1)) {
+                url.setLength(length - 1);
+            } else if (url.charAt(index + 1) == '&') {
+                if (length == (index + 2)) {
+                    url.setLength(index);
+                } else {
+                    url.deleteCharAt(index + 1);
+                }
+            } else if (url.charAt(length - 1) == '&') {
+                url.setLength(length - 1);
+            }
+        }
+        return true;
+    }
 }
@@ -18,6 +18,8 @@
  */
 package org.archive.modules.canonicalize;
 
+import java.util.Locale;
+
 /**
  * Lowercases the URL.
  * @author stack
@@ -41,4 +43,31 @@ extends BaseRule {
     public String canonicalize(String url) {
         return url.toLowerCase();
     }
+
+    @Override
+    boolean canonicalize(StringBuilder url) {
+        if (getClass() != LowercaseRule.class) {
+            return false;
+        }
+        // toLowerCase() follows the default locale; only a few locales
+        // lowercase ASCII letters differently
+        String language = Locale.getDefault().getLanguage();
+        if ("tr".equals(language) || "az".equals(language)
+                || "lt".equals(language)) {
+            return false;
+        }
+        int length = url.length();
+        for (int i = 0; i < length; i++) {
+            if (url.charAt(i) > 0x7f) {
+                return false;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            char c = url.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                url.setCharAt(i, (char) (c + ('a' - 'A')));
+            }
+        }
+        return true;
+    }
 }
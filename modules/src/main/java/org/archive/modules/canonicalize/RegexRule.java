@@ -83,4 +83,24 @@ extends BaseRule {
         matcher.appendReplacement(buffer,getFormat());
         return buffer.toString();
     }
+
+    /**
+     * Matches against the buffer itself, so a url the regex doesn't match
+     * (the usual case) costs no copy.
+     */
+    @Override
+    boolean canonicalize(StringBuilder url) {
+        if (getClass() != RegexRule.class) {
+            return false;
+        }
+        Matcher matcher = getRegex().matcher(url);
+        if (!matcher.matches()) {
+            return true;
+        }
+        StringBuilder replaced = new StringBuilder(url.length() * 2);
+        matcher.appendReplacement(replaced, getFormat());
+        url.setLength(0);
+        url.append(replaced);
+        return true;
+    }
 }
\ No newline at end of file
@@ -55,16 +55,57 @@ public class RulesCanonicalizationPolicy
         kp.put("rules", rules);
     }
     
+    /** per-thread buffer in which rules canonicalize in place */
+    protected static final ThreadLocal<StringBuilder> BUFFER =
+        ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    /** longest buffer worth keeping for the next url */
+    protected static final int MAX_KEPT_BUFFER = 8 * 1024;
+
     /**
      * Run the passed uuri through the list of rules.
+     * 
+     * Rules able to (as the built-in rules are) work in place on a single
+     * per-thread buffer, so that a url passing through several rules
+     * unchanged, or only shortened, costs no intermediate strings. 
+     * 
      * @param before Url to canonicalize.
      * @return Canonicalized URL.
      */
     public String canonicalize(String before) {
-        String canonical = before;
         if (logger.isLoggable(Level.FINER)) {
-            logger.finer("Canonicalizing: "+before);
+            return canonicalizeLogging(before);
+        }
+        StringBuilder buffer = BUFFER.get();
+        buffer.setLength(0);
+        buffer.append(before);
+        for (CanonicalizationRule rule : getRules()) {
+            if (!rule.getEnabled()) {
+                continue;
+            }
+            if (rule instanceof BaseRule
+                    && ((BaseRule) rule).canonicalize(buffer)) {
+                continue;
+            }
+            String canonical = rule.canonicalize(buffer.toString());
+            buffer.setLength(0);
+            buffer.append(canonical);
         }
+        String canonical = buffer.length() == before.length()
+                && before.contentEquals(buffer) ? before : buffer.toString();
+        if (buffer.capacity() > MAX_KEPT_BUFFER) {
+            BUFFER.remove();
+        }
+        return canonical;
+    }
+
+    /**
+     * Run the passed url through the list of rules, one string at a time,
+     * logging each step.
+     */
+    protected String canonicalizeLogging(String before) {
+        String canonical = before;
+        logger.finer("Canonicalizing: "+before);
         for (CanonicalizationRule rule : getRules()) {
             if(rule.getEnabled()) {
                 canonical = rule.canonicalize(canonical);
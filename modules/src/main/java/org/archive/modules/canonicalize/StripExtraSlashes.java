@@ -45,4 +45,26 @@ public class StripExtraSlashes extends BaseRule {
         }
         return url;
     }
+
+    @Override
+    boolean canonicalize(StringBuilder url) {
+        if (getClass() != StripExtraSlashes.class || hasLineTerminator(url)) {
+            return false;
+        }
+        int start = schemePrefixLength(url, "http", true, false);
+        if (start < 0) {
+            return true;
+        }
+        // collapse each run of slashes after the scheme to one
+        int out = start;
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' && out > start && url.charAt(out - 1) == '/') {
+                continue;
+            }
+            url.setCharAt(out++, c);
+        }
+        url.setLength(out);
+        return true;
+    }
 }
@@ -56,4 +56,38 @@ extends BaseRule {
         return doStripRegexMatch(url, REGEX);
     }
 
+    @Override
+    boolean canonicalize(StringBuilder url) {
+        if (getClass() != StripSessionCFIDs.class || hasLineTerminator(url)) {
+            return false;
+        }
+        stripLastParam(url, StripSessionCFIDs::cfidAt);
+        return true;
+    }
+
+    /**
+     * As REGEX's parameters: each value runs to the next '&amp;', so an 
+     * optional trailing jsession parameter never changes where they end.
+     */
+    static int cfidAt(CharSequence s, int pos) {
+        if (!regionMatchesAsciiIgnoreCase(s, pos, "cfid=")) {
+            return -1;
+        }
+        int end = valueEnd(s, pos + 5);
+        if (end < 0 || !regionMatchesAsciiIgnoreCase(s, end, "&cftoken=")) {
+            return -1;
+        }
+        end = valueEnd(s, end + 9);
+        return end < 0 ? -1 : end - pos;
+    }
+
+    /** end of a nonempty value starting at pos, or -1 */
+    private static int valueEnd(CharSequence s, int pos) {
+        int i = pos;
+        while (i < s.length() && s.charAt(i) != '&') {
+            i++;
+        }
+        return i > pos ? i : -1;
+    }
+
 }
\ No newline at end of file
@@ -69,4 +69,42 @@ extends BaseRule {
         url = doStripRegexMatch(url, ASPSESSION_PATTERN);
         return url;
     }
+
+    @Override
+    boolean canonicalize(StringBuilder url) {
+        if (getClass() != StripSessionIDs.class || hasLineTerminator(url)) {
+            return false;
+        }
+        stripLastParam(url, StripSessionIDs::baseIdAt);
+        stripLastParam(url, StripSessionIDs::sidAt);
+        stripLastParam(url, StripSessionIDs::aspSessionIdAt);
+        return true;
+    }
+
+    /** as BASE_PATTERN's parameter */
+    static int baseIdAt(CharSequence s, int pos) {
+        int name;
+        if (regionMatchesAsciiIgnoreCase(s, pos, "jsessionid=")) {
+            name = 11;
+        } else if (regionMatchesAsciiIgnoreCase(s, pos, "phpsessid=")) {
+            name = 10;
+        } else {
+            return -1;
+        }
+        return regionIsAsciiAlpha(s, pos + name, 32, true) ? name + 32 : -1;
+    }
+
+    /** as SID_PATTERN's parameter */
+    static int sidAt(CharSequence s, int pos) {
+        return regionMatchesAsciiIgnoreCase(s, pos, "sid=")
+                && regionIsAsciiAlpha(s, pos + 4, 32, true) ? 4 + 32 : -1;
+    }
+
+    /** as ASPSESSION_PATTERN's parameter */
+    static int aspSessionIdAt(CharSequence s, int pos) {
+        return regionMatchesAsciiIgnoreCase(s, pos, "aspsessionid")
+                && regionIsAsciiAlpha(s, pos + 12, 8, false)
+                && regionMatchesAsciiIgnoreCase(s, pos + 20, "=")
+                && regionIsAsciiAlpha(s, pos + 21, 24, false) ? 21 + 24 : -1;
+    }
 }
\ No newline at end of file
@@ -48,4 +48,27 @@ public class StripUserinfoRule extends BaseRule {
     public String canonicalize(String url) {
         return doStripRegexMatch(url, REGEX.pattern());
     }
+
+    @Override
+    boolean canonicalize(StringBuilder url) {
+        if (getClass() != StripUserinfoRule.class || hasLineTerminator(url)) {
+            return false;
+        }
+        // REGEX.pattern() leaves behind its flags, so the scheme is 
+        // matched case-sensitively
+        int start = schemePrefixLength(url, "http", true, false);
+        if (start < 0) {
+            start = schemePrefixLength(url, "ftp", true, false);
+        }
+        if (start < 0) {
+            return true;
+        }
+        int slash = url.indexOf("/", start);
+        int end = slash < 0 ? url.length() : slash;
+        int at = url.lastIndexOf("@", end - 1);
+        if (at > start) {
+            url.delete(start, at + 1);
+        }
+        return true;
+    }
 }
@@ -55,4 +55,28 @@ public class StripWWWNRule extends BaseRule {
     public String canonicalize(String url) {
         return doStripRegexMatch(url, REGEX.pattern());
     }
+
+    @Override
+    boolean canonicalize(StringBuilder url) {
+        if (getClass() != StripWWWNRule.class || hasLineTerminator(url)) {
+            return false;
+        }
+        int start = schemePrefixLength(url, "http", true, true);
+        if (start < 0 || !regionMatchesAsciiIgnoreCase(url, start, "www")) {
+            return true;
+        }
+        int dot = start + 3;
+        while (dot < url.length() && url.charAt(dot) >= '0' && url.charAt(dot) <= '9') {
+            dot++;
+        }
+        if (dot >= url.length() || url.charAt(dot) != '.') {
+            return true;
+        }
+        // the rest must have a path/query: a '/' with something after it
+        int slash = url.indexOf("/", dot + 1);
+        if (slash >= 0 && slash < url.length() - 1) {
+            url.delete(start, dot + 1);
+        }
+        return true;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,256 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.deciderules;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.archive.modules.CrawlURI;
+
+/**
+ * The rules of a {@link DecideRuleSequence}, compiled into a plan that
+ * reaches the same decision, by the same decisive rule, as consulting
+ * each rule in turn, with less work per URI:
+ * <ul>
+ * <li>disabled rules are dropped;
+ * <li>each rule's only possible decision is looked up once, here, rather
+ * than for every URI;
+ * <li>each run of consecutive {@link MatchesRegexDecideRule}s with the
+ * same decision is merged into a single pattern, matched once;
+ * <li>evaluation stops as soon as no remaining rule could change the
+ * decision.
+ * </ul>
+ * The plan is a snapshot of the rules' settings, so it's only valid while
+ * no sheet overlays are in effect, and only until the rules are
+ * reconfigured.
+ */
+class CompiledDecideRuleSequence {
+
+    /** one or more rules, evaluated together */
+    static abstract class Step {
+        /** the only decision the step can make, or null if it varies */
+        final DecideResult only;
+        Step(DecideResult only) {
+            this.only = only;
+        }
+        /**
+         * @return number (in the sequence) of the rule deciding, or -1
+         */
+        abstract int decide(CrawlURI uri, DecideResult[] result);
+    }
+
+    static class RuleStep extends Step {
+        final DecideRule rule;
+        final int number;
+        RuleStep(DecideRule rule, int number, DecideResult only) {
+            super(only);
+            this.rule = rule;
+            this.number = number;
+        }
+        @Override
+        int decide(CrawlURI uri, DecideResult[] result) {
+            // already known to be enabled
+            DecideResult r = rule.innerDecide(uri);
+            if (r == DecideResult.NONE) {
+                return -1;
+            }
+            result[0] = r;
+            return number;
+        }
+    }
+
+    /**
+     * Consecutive MatchesRegexDecideRules with the same decision, as one
+     * alternation with a group per rule: the first group matching is the
+     * first rule that would have.
+     */
+    static class RegexStep extends Step {
+        final Pattern combined;
+        final int[] groups;
+        final int[] numbers;
+        RegexStep(Pattern combined, int[] groups, int[] numbers, DecideResult only) {
+            super(only);
+            this.combined = combined;
+            this.groups = groups;
+            this.numbers = numbers;
+        }
+        @Override
+        int decide(CrawlURI uri, DecideResult[] result) {
+            Matcher m = combined.matcher(uri.toString());
+            if (!m.matches()) {
+                return -1;
+            }
+            result[0] = only;
+            for (int i = 0; i < groups.length; i++) {
+                if (m.start(groups[i]) >= 0) {
+                    return numbers[i];
+                }
+            }
+            return numbers[numbers.length - 1];
+        }
+    }
+
+    /** patterns that can't safely be wrapped in a group and alternated */
+    protected static final Pattern UNMERGEABLE =
+        Pattern.compile("\\\\[1-9]|\\\\k<|\\\\Q|\\(\\?[a-zA-Z-]*x");
+
+    final List<DecideRule> rules;
+    final int size;
+    final Step[] steps;
+    /**
+     * for each step, whether all it and all later steps can only make
+     * the given decision; indexed by step, then decision ordinal
+     */
+    final boolean[][] onlyFromHere;
+
+    CompiledDecideRuleSequence(List<DecideRule> rules) {
+        this.rules = rules;
+        this.size = rules.size();
+        List<Step> compiled = new ArrayList<Step>();
+        List<Integer> run = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            DecideRule rule = rules.get(i);
+            if (!rule.getEnabled()) {
+                continue;
+            }
+            if (isMergeable(rule) && !run.isEmpty() && sameDecision(rules.get(run.get(0)), rule)) {
+                run.add(i);
+                continue;
+            }
+            flushRun(run, compiled);
+            if (isMergeable(rule)) {
+                run.add(i);
+            } else {
+                compiled.add(new RuleStep(rule, i, onlyDecisionOf(rule)));
+            }
+        }
+        flushRun(run, compiled);
+        this.steps = compiled.toArray(new Step[compiled.size()]);
+
+        DecideResult[] decisions = DecideResult.values();
+        onlyFromHere = new boolean[steps.length + 1][decisions.length];
+        for (DecideResult d : decisions) {
+            onlyFromHere[steps.length][d.ordinal()] = true;
+        }
+        for (int s = steps.length - 1; s >= 0; s--) {
+            for (DecideResult d : decisions) {
+                onlyFromHere[s][d.ordinal()] = onlyFromHere[s + 1][d.ordinal()]
+                        && steps[s].only == d;
+            }
+        }
+    }
+
+    /**
+     * Whether this plan was compiled from the given (unaltered) rules.
+     */
+    boolean isFor(List<DecideRule> rules) {
+        return this.rules == rules && this.size == rules.size();
+    }
+
+    /**
+     * Decide, as {@link DecideRuleSequence#innerDecide(CrawlURI)} would.
+     *
+     * @param result holder for the decision
+     * @return number of the decisive rule, or -1 if none
+     */
+    int decide(CrawlURI uri, DecideResult[] result) {
+        result[0] = DecideResult.NONE;
+        int decisive = -1;
+        for (int s = 0; s < steps.length; s++) {
+            if (onlyFromHere[s][result[0].ordinal()]) {
+                // nothing further can change the decision
+                break;
+            }
+            Step step = steps[s];
+            if (step.only != result[0]) {
+                int number = step.decide(uri, result);
+                if (number >= 0) {
+                    decisive = number;
+                }
+            }
+        }
+        return decisive;
+    }
+
+    protected static DecideResult onlyDecisionOf(DecideRule rule) {
+        if (rule instanceof PredicatedDecideRule || rule instanceof AcceptDecideRule
+                || rule instanceof RejectDecideRule) {
+            // these don't consult the uri
+            return rule.onlyDecision(null);
+        }
+        return null;
+    }
+
+    protected static boolean isMergeable(DecideRule rule) {
+        if (rule.getClass() != MatchesRegexDecideRule.class) {
+            // subclasses may match against something other than the uri
+            return false;
+        }
+        Pattern p = ((MatchesRegexDecideRule) rule).getRegex();
+        return (p.flags() & Pattern.COMMENTS) == 0
+                && !UNMERGEABLE.matcher(p.pattern()).find();
+    }
+
+    protected static boolean sameDecision(DecideRule a, DecideRule b) {
+        MatchesRegexDecideRule ra = (MatchesRegexDecideRule) a;
+        MatchesRegexDecideRule rb = (MatchesRegexDecideRule) b;
+        return ra.getDecision() == rb.getDecision()
+                && ra.getRegex().flags() == rb.getRegex().flags();
+    }
+
+    protected void flushRun(List<Integer> run, List<Step> compiled) {
+        if (run.isEmpty()) {
+            return;
+        }
+        MatchesRegexDecideRule first = (MatchesRegexDecideRule) rules.get(run.get(0));
+        if (run.size() > 1) {
+            StringBuilder alternation = new StringBuilder();
+            int[] groups = new int[run.size()];
+            int[] numbers = new int[run.size()];
+            int group = 1;
+            for (int i = 0; i < run.size(); i++) {
+                Pattern p = ((MatchesRegexDecideRule) rules.get(run.get(i))).getRegex();
+                if (i > 0) {
+                    alternation.append('|');
+                }
+                alternation.append('(').append(p.pattern()).append(')');
+                groups[i] = group;
+                numbers[i] = run.get(i);
+                group += 1 + p.matcher("").groupCount();
+            }
+            try {
+                compiled.add(new RegexStep(
+                        Pattern.compile(alternation.toString(), first.getRegex().flags()),
+                        groups, numbers, first.getDecision()));
+                run.clear();
+                return;
+            } catch (PatternSyntaxException e) {
+                // as with clashing group names; leave the rules separate
+            }
+        }
+        for (int number : run) {
+            DecideRule rule = rules.get(number);
+            compiled.add(new RuleStep(rule, number, onlyDecisionOf(rule)));
+        }
+        run.clear();
+    }
+}
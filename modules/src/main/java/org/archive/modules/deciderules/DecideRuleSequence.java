@@ -27,6 +27,7 @@ import org.archive.modules.CrawlURI;
 import org.archive.modules.SimpleFileLoggerProvider;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.ServerCache;
+import org.archive.spring.KeyedProperties;
 import org.json.JSONObject;
 import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -89,6 +90,38 @@ public class DecideRuleSequence extends DecideRule implements BeanNameAware, Lif
     }
     public void setRules(List<DecideRule> rules) {
         kp.put("rules", rules);
+        recompile();
+    }
+
+    /**
+     * Whether to compile the rules into a plan that reaches the same
+     * decisions with less work per URI: disabled rules are skipped,
+     * consecutive MatchesRegexDecideRules with the same decision are
+     * matched as one combined pattern, and evaluation stops once no later
+     * rule could change the decision. URIs with sheet overlays in effect
+     * are still decided rule by rule.
+     *
+     * The plan is a snapshot of the rules' settings; if rules are
+     * reconfigured mid-crawl (other than by replacing the rules list),
+     * call {@link #recompile()}.
+     */
+    protected boolean compile = false;
+    public boolean getCompile() {
+        return compile;
+    }
+    public void setCompile(boolean compile) {
+        this.compile = compile;
+        recompile();
+    }
+
+    protected transient volatile CompiledDecideRuleSequence compiled = null;
+
+    /**
+     * Discard any compiled plan, so the next decision compiles a new one
+     * from the rules' current settings.
+     */
+    public void recompile() {
+        compiled = null;
     }
 
     protected ServerCache serverCache;
@@ -101,6 +134,10 @@ public class DecideRuleSequence extends DecideRule implements BeanNameAware, Lif
     }
 
     public DecideResult innerDecide(CrawlURI uri) {
+        if (getCompile() && !KeyedProperties.anyOverridesActive()
+                && !LOGGER.isLoggable(Level.FINEST)) {
+            return compiledDecide(uri);
+        }
         DecideRule decisiveRule = null;
         int decisiveRuleNumber = -1;
         DecideResult result = DecideResult.NONE;
@@ -128,6 +165,23 @@ public class DecideRuleSequence extends DecideRule implements BeanNameAware, Lif
         return result;
     }
 
+    protected DecideResult compiledDecide(CrawlURI uri) {
+        List<DecideRule> rules = getRules();
+        CompiledDecideRuleSequence plan = compiled;
+        if (plan == null || !plan.isFor(rules)) {
+            plan = new CompiledDecideRuleSequence(rules);
+            compiled = plan;
+        }
+        DecideResult[] result = new DecideResult[1];
+        int decisiveRuleNumber = plan.decide(uri, result);
+        DecideRule decisiveRule = 
+                decisiveRuleNumber >= 0 ? rules.get(decisiveRuleNumber) : null;
+
+        decisionMade(uri, decisiveRule, decisiveRuleNumber, result[0]);
+
+        return result[0];
+    }
+
     protected void decisionMade(CrawlURI uri, DecideRule decisiveRule,
             int decisiveRuleNumber, DecideResult result) {
         if (fileLogger != null) {
@@ -170,6 +224,7 @@ public class DecideRuleSequence extends DecideRule implements BeanNameAware, Lif
     }
     @Override
     public void start() {
+        recompile();
         if (getLogToFile() && fileLogger == null) {
             // loggerModule.start() creates the log directory, and evidently
             // it's possible for this module to start before loggerModule,
@@ -22,7 +22,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.archive.modules.CrawlURI;
-import org.archive.net.PublicSuffixes;
+import org.archive.net.PublicSuffixMatcher;
 import org.archive.net.UURI;
 
 /**
@@ -66,8 +66,13 @@ public class HopCrossesAssignmentLevelDomainDecideRule extends PredicatedDecideR
     }
     
     private String getAssignmentLevelSurt(UURI uuri){
-        String surt = uuri.getSurtForm().replaceFirst(".*://\\((.*?)\\).*", "$1");
-        return PublicSuffixes.reduceSurtToAssignmentLevel(surt);
-        
+        // the SURT authority, between "://(" and ")"
+        String surt = uuri.getSurtForm();
+        int open = surt.indexOf("://(");
+        int start = open < 0 ? 0 : open + 4;
+        int close = surt.indexOf(')', start);
+        int end = close < 0 ? surt.length() : close;
+        int reduced = PublicSuffixMatcher.getDefault().assignmentLevelEnd(surt, start, end);
+        return surt.substring(start, reduced < 0 ? end : reduced);
     }
 }
@@ -24,6 +24,7 @@ import java.util.List;
 
 import org.archive.modules.CrawlURI;
 import org.archive.spring.Required;
+import org.archive.util.SurtPrefixIndex;
 import org.archive.util.SurtPrefixSet;
 
 /**
@@ -37,7 +38,7 @@ public class ViaSurtPrefixedDecideRule extends PredicatedDecideRule {
 
     private static final long serialVersionUID = 1L;
     
-    protected SurtPrefixSet surtPrefixes = new SurtPrefixSet();
+    protected SurtPrefixIndex surtPrefixes = new SurtPrefixIndex();
 
     public List<String> getSurtPrefixes() {
         return new ArrayList<String>(surtPrefixes);
@@ -51,6 +52,7 @@ public class ViaSurtPrefixedDecideRule extends PredicatedDecideRule {
                 this.surtPrefixes.considerAsAddDirective(surt);
             }
         }
+        this.surtPrefixes.compact();
     }
 
     /**
@@ -62,11 +64,11 @@ public class ViaSurtPrefixedDecideRule extends PredicatedDecideRule {
      */
     @Override
     protected boolean evaluate(CrawlURI uri) {
-        if (uri.getVia() != null && getSurtPrefixes() !=null){
-            return surtPrefixes.containsPrefixOf(SurtPrefixSet.getCandidateSurt(uri.getVia()));
-        }
-        else
+        if (uri.getVia() == null) {
             return false;
+        }
+        String candidateSurt = SurtPrefixSet.getCandidateSurt(uri.getVia());
+        return candidateSurt != null && surtPrefixes.containsPrefixOf(candidateSurt);
     }
 
 }
@@ -23,6 +23,14 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,6 +46,8 @@ import org.archive.modules.seeds.SeedListener;
 import org.archive.modules.seeds.SeedModule;
 import org.archive.net.UURI;
 import org.archive.spring.ConfigFile;
+import org.archive.util.Base32;
+import org.archive.util.SurtPrefixIndex;
 import org.archive.util.SurtPrefixSet;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -128,6 +138,22 @@ public class SurtPrefixedDecideRule extends PredicatedDecideRule implements
     public void setSurtsDumpFile(ConfigFile cp) {
         this.surtsDumpFile.merge(cp);
     }
+
+    /**
+     * File in which to save the SURT prefixes read from the surtsSource, in
+     * a compact form that later launches memory-map rather than rebuild.
+     * Used in place of the surtsSource when it was built from the same
+     * surtsSource contents, as recorded by a digest saved alongside it
+     * (in a file of the same name plus ".key"). Useful for prefix sets of millions of entries;
+     * by default, no such file is kept.
+     */
+    protected ConfigFile surtsIndexFile = new ConfigFile("surtsIndexFile", "");
+    public ConfigFile getSurtsIndexFile() {
+        return surtsIndexFile;
+    }
+    public void setSurtsIndexFile(ConfigFile cp) {
+        this.surtsIndexFile.merge(cp);
+    }
     
     {
         setAlsoCheckVia(false);
@@ -159,12 +185,13 @@ public class SurtPrefixedDecideRule extends PredicatedDecideRule implements
         }
     }
     
-    protected SurtPrefixSet surtPrefixes = new SurtPrefixSet();
+    protected SurtPrefixIndex surtPrefixes = new SurtPrefixIndex();
 
     public SurtPrefixedDecideRule() {
     }
     
     public void concludedSeedBatch() {
+        surtPrefixes.compact();
         dumpSurtPrefixSet();
     }
  
@@ -228,6 +255,20 @@ public class SurtPrefixedDecideRule extends PredicatedDecideRule implements
      */
     protected void buildSurtPrefixSet() {
         if (getSurtsSource() != null) {
+            String key = null;
+            if (!StringUtils.isEmpty(getSurtsIndexFile().getPath())) {
+                key = surtsSourceKey();
+            }
+            File index = getUsableIndexFile(key);
+            if (index != null) {
+                try {
+                    loadSurtPrefixIndex(index);
+                    return;
+                } catch (IOException | IllegalArgumentException e) {
+                    logger.log(Level.WARNING, "unable to load surt prefix index "
+                            + index + "; rebuilding from " + getSurtsSource(), e);
+                }
+            }
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("reading surt prefixes from " + getSurtsSource());
             }
@@ -237,6 +278,99 @@ public class SurtPrefixedDecideRule extends PredicatedDecideRule implements
             } finally {
                 IOUtils.closeQuietly(reader);
             }
+            saveSurtPrefixIndex(key);
+        }
+    }
+
+    /** bump if what an index holds, for given surtsSource contents, changes */
+    protected static final String INDEX_KEY_VERSION = "surt-prefix-index 1 deduceFromSeeds";
+
+    /**
+     * Digest of the surtsSource contents (whether a file or inline text),
+     * and of how an index is built from them, identifying the index built
+     * from them; null if the source can't be read.
+     */
+    protected String surtsSourceKey() {
+        Reader reader = null;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA1");
+            digest.update(INDEX_KEY_VERSION.getBytes(StandardCharsets.UTF_8));
+            reader = getSurtsSource().obtainReader();
+            char[] buf = new char[8192];
+            for (int n = reader.read(buf); n >= 0; n = reader.read(buf)) {
+                digest.update(StandardCharsets.UTF_8.encode(CharBuffer.wrap(buf, 0, n)));
+            }
+            return Base32.encode(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            logger.log(Level.WARNING, "unable to read " + getSurtsSource(), e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    protected File getIndexKeyFile(File index) {
+        return new File(index.getPath() + ".key");
+    }
+
+    /**
+     * The configured index file, if it exists and was built from a
+     * surtsSource with the given key; otherwise null.
+     */
+    protected File getUsableIndexFile(String key) {
+        if (key == null || StringUtils.isEmpty(getSurtsIndexFile().getPath())) {
+            return null;
+        }
+        File index = getSurtsIndexFile().getFile();
+        File keyFile = getIndexKeyFile(index);
+        if (!index.isFile() || !keyFile.isFile()) {
+            return null;
+        }
+        try {
+            String indexKey = new String(Files.readAllBytes(keyFile.toPath()),
+                    StandardCharsets.UTF_8).trim();
+            if (!key.equals(indexKey)) {
+                logger.info("surt prefix index " + index + " is out of date");
+                return null;
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "unable to read " + keyFile, e);
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * Memory-map the given index, keeping any prefixes (as from seeds)
+     * already added.
+     */
+    protected void loadSurtPrefixIndex(File index) throws IOException {
+        logger.info("mapping surt prefixes from " + index);
+        List<String> earlier = new ArrayList<String>(surtPrefixes);
+        surtPrefixes.load(index);
+        for (String prefix : earlier) {
+            surtPrefixes.add(prefix);
+        }
+    }
+
+    /**
+     * Save the prefixes to the configured index file, if any, along with
+     * the key of the surtsSource they came from. The key is written last,
+     * so a partly written index is never taken as usable.
+     */
+    protected void saveSurtPrefixIndex(String key) {
+        if (key == null || StringUtils.isEmpty(getSurtsIndexFile().getPath())) {
+            return;
+        }
+        File index = getSurtsIndexFile().getFile();
+        File keyFile = getIndexKeyFile(index);
+        try {
+            index.getAbsoluteFile().getParentFile().mkdirs();
+            Files.deleteIfExists(keyFile.toPath());
+            surtPrefixes.writeTo(index);
+            Files.write(keyFile.toPath(), key.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "unable to save surt prefix index " + index, e);
         }
     }
 
@@ -251,6 +385,34 @@ public class SurtPrefixedDecideRule extends PredicatedDecideRule implements
         }
     }
     
+    /**
+     * If appropriate, add the prefixes of a batch of seeds in one sorted
+     * pass, skipping those covered by a shorter prefix in the batch before
+     * they reach the set.
+     * 
+     * @see org.archive.modules.seeds.SeedListener#addedSeeds(java.util.List)
+     */
+    @Override
+    public void addedSeeds(List<CrawlURI> curis) {
+        if(!getSeedsAsSurtPrefixes()) {
+            return;
+        }
+        List<String> prefixes = new ArrayList<String>(curis.size());
+        for (CrawlURI curi : curis) {
+            prefixes.add(prefixFrom(curi.getURI()));
+        }
+        Collections.sort(prefixes);
+        String last = null;
+        for (String prefix : prefixes) {
+            // sorted, so any shorter covering prefix comes just before
+            if (last != null && prefix.startsWith(last)) {
+                continue;
+            }
+            surtPrefixes.add(prefix);
+            last = prefix;
+        }
+    }
+    
     protected String prefixFrom(String uri) {
         return SurtPrefixSet.prefixFromPlainForceHttp(uri);
     }
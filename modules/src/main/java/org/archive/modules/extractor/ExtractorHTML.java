@@ -28,6 +28,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -35,6 +36,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.google.common.base.Ascii;
+import com.google.common.hash.HashCode;
 import org.archive.url.URIException;
 import org.apache.commons.io.IOUtils;
 import org.archive.io.ReplayCharSequence;
@@ -369,6 +371,28 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
         this.extractorJS = extractorJS;
     }
     
+    /**
+     * Optional per-host cache of the links found in markup repeated across
+     * a host's pages (navigation, headers, footers). If set, an open-tag
+     * already seen verbatim on the same host has its previously extracted
+     * links re-resolved against the current base instead of being parsed
+     * again. Default is null (no caching).
+     */
+    protected HTMLLinkBlockCache linkBlockCache;
+    public HTMLLinkBlockCache getLinkBlockCache() {
+        return linkBlockCache;
+    }
+    public void setLinkBlockCache(HTMLLinkBlockCache linkBlockCache) {
+        this.linkBlockCache = linkBlockCache;
+    }
+
+    /**
+     * Links being recorded for the tag currently under (uncached) processing
+     * by this thread, if any.
+     */
+    protected static final ThreadLocal<HTMLLinkBlockCache.Recording> blockRecording =
+            new ThreadLocal<HTMLLinkBlockCache.Recording>();
+
     // TODO: convert to Strings
     private String relevantTagPattern;
     private String eachAttributePattern;
@@ -496,6 +520,9 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
                 }
             } else if (attr.start(6) > -1) {
                 // CODEBASE
+                // resources get resolved against the page, so can't be
+                // replayed on another
+                markBlockUncacheable();
                 codebase = (value instanceof String)?
                     (String)value: value.toString();
                 CharSequence context = elementContext(element,
@@ -537,6 +564,7 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
             } else if (attr.start(11) > -1) {
                 // STYLE inline attribute
                 // then, parse for URIs
+                markBlockUncacheable();
                 numberOfLinksExtracted.addAndGet(ExtractorCSS.processStyleCode(
                         this, curi, value));        
             } else if (attr.start(12) > -1) {
@@ -729,6 +757,7 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
      * @param cs    CharSequence of javascript code
      */
     protected void processScriptCode(CrawlURI curi, CharSequence cs) {
+        markBlockUncacheable();
         if (getExtractorJS() != null && getExtractJavascript()) {
             numberOfLinksExtracted.addAndGet(
                 getExtractorJS().considerStrings(this, curi, cs));
@@ -753,7 +782,7 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
                 logger.finest("link: " + value.toString() + " from " + curi);
             }
             addLinkFromString(curi, value, context, Hop.NAVLINK);
-            numberOfLinksExtracted.incrementAndGet();
+            countLinkExtracted();
         }
     }
 
@@ -764,6 +793,10 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
             // the underlying ReplayCharSequence and the link its about
             // to become a part of is expected to outlive the current
             // ReplayCharSequence.
+            HTMLLinkBlockCache.Recording recording = blockRecording.get();
+            if (recording != null) {
+                recording.add(uri, context, hop);
+            }
             HTMLLinkContext hc = HTMLLinkContext.get(context.toString());
             int max = getExtractorParameters().getMaxOutlinks();
             addRelativeToBase(curi, max, uri, hc, hop);
@@ -772,6 +805,78 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
         }
     }
 
+    /**
+     * Process a generic open-tag, consulting the link block cache: if the
+     * same tag has been seen on this host before, replay its links against
+     * the current base; otherwise process it in full, recording its links
+     * for next time.
+     */
+    protected void processGeneralTagCached(CrawlURI curi, String element,
+            CharSequence attributes) {
+        HTMLLinkBlockCache cache = getLinkBlockCache();
+        HTMLLinkBlockCache.HostBlocks blocks = cache.blocksFor(curi);
+        if (blocks == null) {
+            processGeneralTag(curi, element, attributes);
+            return;
+        }
+        HashCode key = cache.blockKey(settingsFingerprint(), element, attributes);
+        HTMLLinkBlockCache.CachedBlock block = blocks.get(key);
+        if (block != null) {
+            for (HTMLLinkBlockCache.CachedLink link : block.getLinks()) {
+                addLinkFromString(curi, link.getUri(), link.getContext(), link.getHop());
+            }
+            numberOfLinksExtracted.addAndGet(block.getLinksCounted());
+            return;
+        }
+        HTMLLinkBlockCache.Recording recording = new HTMLLinkBlockCache.Recording();
+        blockRecording.set(recording);
+        try {
+            processGeneralTag(curi, element, attributes);
+        } finally {
+            blockRecording.remove();
+        }
+        if (recording.isCacheable()) {
+            blocks.put(key, recording.toBlock());
+        }
+    }
+
+    /**
+     * Count a link toward the extractor's total, and toward the tag being
+     * recorded for the link block cache (if any).
+     */
+    protected void countLinkExtracted() {
+        numberOfLinksExtracted.incrementAndGet();
+        HTMLLinkBlockCache.Recording recording = blockRecording.get();
+        if (recording != null) {
+            recording.countLink();
+        }
+    }
+
+    /**
+     * Note that the tag being recorded for the link block cache (if any)
+     * yielded links by some route other than {@link #addLinkFromString}, and
+     * so must not be cached.
+     */
+    protected void markBlockUncacheable() {
+        HTMLLinkBlockCache.Recording recording = blockRecording.get();
+        if (recording != null) {
+            recording.markUncacheable();
+        }
+    }
+
+    /**
+     * @return bits for the (possibly overlaid) settings which affect how
+     * a tag's attributes are turned into links
+     */
+    protected int settingsFingerprint() {
+        return (getTreatFramesAsEmbedLinks() ? 1 : 0)
+                | (getIgnoreFormActionUrls() ? 2 : 0)
+                | (getExtractOnlyFormGets() ? 4 : 0)
+                | (getExtractValueAttributes() ? 8 : 0)
+                | (getObeyRelNofollow() ? 16 : 0)
+                | (getExtractJavascript() ? 32 : 0);
+    }
+
     protected final void processEmbed(CrawlURI curi, CharSequence value,
             CharSequence context) {
         processEmbed(curi, value, context, Hop.EMBED);
@@ -804,12 +909,12 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
                 matcher.region(matcher.end(), matcher.regionEnd());
                 logger.log(Level.FINER, "Found {0} adding to outlinks.", link);
                 addLinkFromString(curi, link, context, hop);
-                numberOfLinksExtracted.incrementAndGet();
+                countLinkExtracted();
             }
             TextUtils.recycleMatcher(matcher);
         } else {
             addLinkFromString(curi, value, context, hop);
-            numberOfLinksExtracted.incrementAndGet();
+            countLinkExtracted();
         }
     }
 
@@ -965,9 +1070,14 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
                 assert end6 >= 0: "End is :" + end6 + ", " + curi;
                 String element = cs.subSequence(start6, end6).toString();
                 CharSequence attributes = cs.subSequence(start5, end5);
-                processGeneralTag(curi,
-                    element,
-                    attributes);
+                if (getLinkBlockCache() != null
+                        && getLinkBlockCache().isCacheable(element, attributes)) {
+                    processGeneralTagCached(curi, element, attributes);
+                } else {
+                    processGeneralTag(curi,
+                        element,
+                        attributes);
+                }
                 // remember FORM to help later extra processing
                 if ("form".equalsIgnoreCase(element)) {
                     curi.getDataList(A_FORM_OFFSETS).add((Integer)(start6-1));
@@ -1139,6 +1249,15 @@ public class ExtractorHTML extends ContentExtractor implements InitializingBean
                 sequence.subSequence(endOfOpenTag,sequence.length())));
     }   
     
+    @Override
+    public String report() {
+        String report = super.report();
+        if (getLinkBlockCache() != null) {
+            report += getLinkBlockCache().report(20);
+        }
+        return report;
+    }
+
     /**
      * Create a suitable XPath-like context from an element name and optional
      * attribute name. 
@@ -0,0 +1,317 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.extractor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archive.modules.CrawlURI;
+import org.archive.url.URIException;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Per-host cache of the links found in repeated HTML markup blocks.
+ *
+ * <p>Sites tend to repeat the same navigation, header and footer markup on
+ * every page. When set on an {@link ExtractorHTML}, each open-tag is keyed
+ * by a hash of its exact text (plus the extractor settings that influence
+ * its interpretation); when the same tag turns up again on the same host,
+ * the links it yielded the first time are re-resolved against the current
+ * page's base rather than re-parsed from the markup.
+ *
+ * <p>Only tags whose links all pass through the extractor's ordinary
+ * link-adding path, unresolved, are cached: tags carrying inline script or
+ * style, BASE tags (which change the page's base) and tags with a CODEBASE
+ * (whose resources are resolved against the page before being added) are
+ * always processed in full.
+ *
+ * <p>Both the number of hosts and the number of blocks remembered per host
+ * are bounded; least-recently used entries are evicted first. Hit and miss
+ * tallies are kept per host, for reporting.
+ */
+public class HTMLLinkBlockCache {
+
+    /**
+     * Maximum number of hosts for which blocks are remembered.
+     */
+    protected int maxHosts = 1000;
+    public int getMaxHosts() {
+        return maxHosts;
+    }
+    public void setMaxHosts(int maxHosts) {
+        this.maxHosts = maxHosts;
+    }
+
+    /**
+     * Maximum number of distinct blocks remembered for any one host.
+     */
+    protected int maxBlocksPerHost = 2000;
+    public int getMaxBlocksPerHost() {
+        return maxBlocksPerHost;
+    }
+    public void setMaxBlocksPerHost(int maxBlocksPerHost) {
+        this.maxBlocksPerHost = maxBlocksPerHost;
+    }
+
+    /**
+     * Blocks longer than this many characters are not cached; such blocks
+     * are rarely repeated boilerplate, and hashing them costs about as much
+     * as parsing them.
+     */
+    protected int maxBlockLength = 4096;
+    public int getMaxBlockLength() {
+        return maxBlockLength;
+    }
+    public void setMaxBlockLength(int maxBlockLength) {
+        this.maxBlockLength = maxBlockLength;
+    }
+
+    protected static final HashFunction BLOCK_HASH = Hashing.murmur3_128();
+
+    protected volatile ConcurrentMap<String, HostBlocks> hosts;
+
+    /**
+     * A link as originally extracted from a block: the string as it appeared
+     * (to be resolved against the base of whichever page it is replayed on),
+     * its context and its hop type.
+     */
+    public static class CachedLink {
+        protected final String uri;
+        protected final String context;
+        protected final Hop hop;
+
+        public CachedLink(String uri, String context, Hop hop) {
+            this.uri = uri;
+            this.context = context;
+            this.hop = hop;
+        }
+        public String getUri() {
+            return uri;
+        }
+        public String getContext() {
+            return context;
+        }
+        public Hop getHop() {
+            return hop;
+        }
+    }
+
+    /**
+     * The links of a cached block, and how many links processing the block
+     * counted toward the extractor's total (not always one per link added),
+     * so that a replay counts the same.
+     */
+    public static class CachedBlock {
+        protected final List<CachedLink> links;
+        protected final int linksCounted;
+
+        public CachedBlock(List<CachedLink> links, int linksCounted) {
+            this.links = Collections.unmodifiableList(links);
+            this.linksCounted = linksCounted;
+        }
+        public List<CachedLink> getLinks() {
+            return links;
+        }
+        public int getLinksCounted() {
+            return linksCounted;
+        }
+    }
+
+    /**
+     * Links gathered while a not-yet-cached block is processed. A block
+     * whose processing strays outside the cacheable link path is marked
+     * uncacheable.
+     */
+    public static class Recording {
+        protected List<CachedLink> links = new ArrayList<CachedLink>();
+        protected int linksCounted = 0;
+        protected boolean cacheable = true;
+
+        public void add(CharSequence uri, CharSequence context, Hop hop) {
+            if (cacheable) {
+                links.add(new CachedLink(uri.toString(), context.toString(), hop));
+            }
+        }
+        public void countLink() {
+            linksCounted++;
+        }
+        public void markUncacheable() {
+            cacheable = false;
+            links = null;
+        }
+        public boolean isCacheable() {
+            return cacheable;
+        }
+        public CachedBlock toBlock() {
+            return new CachedBlock(links, linksCounted);
+        }
+    }
+
+    /**
+     * Blocks remembered for a single host, with hit/miss tallies.
+     */
+    public static class HostBlocks {
+        protected final String host;
+        protected final ConcurrentMap<HashCode, CachedBlock> blocks;
+        protected final AtomicLong hits = new AtomicLong(0);
+        protected final AtomicLong misses = new AtomicLong(0);
+
+        protected HostBlocks(String host, int maxBlocks) {
+            this.host = host;
+            this.blocks = CacheBuilder.newBuilder()
+                    .maximumSize(maxBlocks)
+                    .<HashCode, CachedBlock>build().asMap();
+        }
+
+        /**
+         * @return the block as previously recorded, or null (counted as a
+         * miss) if the block is not cached
+         */
+        public CachedBlock get(HashCode key) {
+            CachedBlock block = blocks.get(key);
+            if (block == null) {
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            return block;
+        }
+
+        public void put(HashCode key, CachedBlock block) {
+            blocks.put(key, block);
+        }
+
+        public String getHost() {
+            return host;
+        }
+        public long getHits() {
+            return hits.get();
+        }
+        public long getMisses() {
+            return misses.get();
+        }
+        public int size() {
+            return blocks.size();
+        }
+    }
+
+    protected ConcurrentMap<String, HostBlocks> getHosts() {
+        if (hosts == null) {
+            synchronized (this) {
+                if (hosts == null) {
+                    hosts = CacheBuilder.newBuilder()
+                            .maximumSize(getMaxHosts())
+                            .<String, HostBlocks>build().asMap();
+                }
+            }
+        }
+        return hosts;
+    }
+
+    /**
+     * @param curi page whose blocks are being extracted
+     * @return the blocks remembered for the page's host, created if
+     * necessary, or null if the page has no host
+     */
+    public HostBlocks blocksFor(CrawlURI curi) {
+        String host;
+        try {
+            host = curi.getUURI().getReferencedHost();
+        } catch (URIException e) {
+            return null;
+        }
+        if (host == null) {
+            return null;
+        }
+        ConcurrentMap<String, HostBlocks> map = getHosts();
+        HostBlocks blocks = map.get(host);
+        if (blocks == null) {
+            HostBlocks created = new HostBlocks(host, getMaxBlocksPerHost());
+            blocks = map.putIfAbsent(host, created);
+            if (blocks == null) {
+                blocks = created;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * @return whether a block of the given element and text is worth
+     * looking up (and, on a miss, recording)
+     */
+    public boolean isCacheable(String element, CharSequence block) {
+        return block.length() <= getMaxBlockLength()
+                && !ExtractorHTML.BASE.equalsIgnoreCase(element);
+    }
+
+    /**
+     * Key for a block: a 128-bit hash of the element name, the block's
+     * exact text, and the extractor settings in effect (since a tag's links
+     * may be interpreted differently under different settings).
+     */
+    public HashCode blockKey(int settings, String element, CharSequence block) {
+        return BLOCK_HASH.newHasher()
+                .putInt(settings)
+                .putUnencodedChars(element)
+                .putChar('\u0000')
+                .putUnencodedChars(block)
+                .hash();
+    }
+
+    /**
+     * Report hit rates for up to maxLines hosts, busiest first.
+     */
+    public String report(int maxLines) {
+        List<HostBlocks> all = new ArrayList<HostBlocks>(getHosts().values());
+        Collections.sort(all, (a, b) -> Long.compare(
+                b.getHits() + b.getMisses(), a.getHits() + a.getMisses()));
+        long hits = 0;
+        long misses = 0;
+        for (HostBlocks blocks : all) {
+            hits += blocks.getHits();
+            misses += blocks.getMisses();
+        }
+        StringBuilder ret = new StringBuilder();
+        ret.append("  link block cache: " + all.size() + " hosts, "
+                + hits + " hits, " + misses + " misses ("
+                + percent(hits, misses) + "% hit)\n");
+        for (int i = 0; i < all.size() && i < maxLines; i++) {
+            HostBlocks blocks = all.get(i);
+            ret.append("    " + blocks.getHost() + " " + blocks.size()
+                    + " blocks, " + blocks.getHits() + " hits, "
+                    + blocks.getMisses() + " misses ("
+                    + percent(blocks.getHits(), blocks.getMisses())
+                    + "% hit)\n");
+        }
+        return ret.toString();
+    }
+
+    protected static long percent(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (100 * hits) / total;
+    }
+}
@@ -0,0 +1,618 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.fetcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.http.client.CookieStore;
+import org.apache.http.cookie.ClientCookie;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.archive.bdb.BdbModule;
+import org.archive.checkpointing.Checkpoint;
+import org.archive.net.PublicSuffixMatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sleepycat.bind.ByteArrayBinding;
+import com.sleepycat.bind.tuple.StringBinding;
+import com.sleepycat.collections.StoredSortedMap;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseException;
+
+/**
+ * Cookie store using bdb for storage, partitioned by registrable domain (as
+ * "example.co.uk" for "www.example.co.uk", per {@link PublicSuffixMatcher}).
+ * Each cookie domain's cookies are one compactly-encoded record, keyed by
+ * registrable domain then cookie domain, so a site's cookies are stored
+ * together.
+ *
+ * <p>Unlike {@link BdbCookieStore}, which scans a range of its sorted map
+ * for each of a host's domains on every request, the parsed cookies of
+ * recently used registrable domains are kept in memory, in an LRU cache:
+ * {@link #cookieStoreFor(String)} usually just returns lists already
+ * built, and the max-cookies check of {@link #addCookie(Cookie)} is a sum
+ * of a few list sizes.
+ *
+ * <p>Records are written through on every change. Expired cookies are
+ * removed lazily, when a registrable domain holding any is next used.
+ * Hosts with no registrable domain (IP addresses, public suffixes) are
+ * partitions of their own.
+ */
+public class BdbDomainCookieStore extends AbstractCookieStore implements
+        FetchHTTPCookieStore, CookieStore {
+
+    public static String COOKIEDB_NAME = "hc_domain_cookies";
+
+    /** record encoding version */
+    protected static final byte FORMAT = 1;
+    /** a BasicClientCookie, field by field */
+    protected static final byte BASIC = 0;
+    /** any other Cookie, java-serialized */
+    protected static final byte SERIALIZED = 1;
+
+    /**
+     * Attributes kept with each BasicClientCookie; the cookie specs
+     * consult only those httpclient defines (the domain attribute, to
+     * tell host-only cookies apart), but the rest are cheap to keep.
+     */
+    protected static final String[] ATTRIBUTE_NAMES = {
+        ClientCookie.VERSION_ATTR, ClientCookie.PATH_ATTR,
+        ClientCookie.DOMAIN_ATTR, ClientCookie.MAX_AGE_ATTR,
+        ClientCookie.SECURE_ATTR, ClientCookie.COMMENT_ATTR,
+        ClientCookie.EXPIRES_ATTR, ClientCookie.PORT_ATTR,
+        ClientCookie.COMMENTURL_ATTR, ClientCookie.DISCARD_ATTR,
+        "httponly", "samesite",
+    };
+
+    protected BdbModule bdb;
+    @Autowired
+    public void setBdbModule(BdbModule bdb) {
+        this.bdb = bdb;
+    }
+
+    /**
+     * Number of registrable domains whose parsed cookies are kept in
+     * memory (including domains found to have none).
+     */
+    protected int cachedDomains = 10000;
+    public int getCachedDomains() {
+        return cachedDomains;
+    }
+    public void setCachedDomains(int cachedDomains) {
+        this.cachedDomains = cachedDomains;
+    }
+
+    private transient Database cookieDb;
+    /** encoded cookies of each cookie domain, by {@link #recordName(String, String)} */
+    private transient StoredSortedMap<String,byte[]> records;
+    protected transient Cache<String,DomainCookies> cache;
+
+    /** changes to a registrable domain's cookies happen holding its lock */
+    protected final Object[] locks = new Object[64];
+    {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public void prepare() {
+        try {
+            BdbModule.BdbConfig dbConfig = new BdbModule.BdbConfig();
+            dbConfig.setTransactional(false);
+            dbConfig.setAllowCreate(true);
+            dbConfig.setSortedDuplicates(false);
+            cookieDb = bdb.openDatabase(COOKIEDB_NAME, dbConfig,
+                    isCheckpointRecovery);
+            records = new StoredSortedMap<String,byte[]>(cookieDb,
+                    new StringBinding(), new ByteArrayBinding(), true);
+        } catch (DatabaseException e) {
+            throw new RuntimeException(e);
+        }
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(getCachedDomains())
+                .<String,DomainCookies>build();
+    }
+
+    /**
+     * The parsed cookies of one registrable domain, for each of its cookie
+     * domains (normalized) used so far. Each list is immutable, replaced
+     * whole on any change, so it may be handed out and read without
+     * locking.
+     */
+    protected static class DomainCookies {
+        /** loaded cookies of each cookie domain; empty if none */
+        protected final Map<String,List<Cookie>> byDomain =
+            new ConcurrentHashMap<String,List<Cookie>>();
+        /** earliest expiry date of any cookie loaded, in ms */
+        protected volatile long nextExpiry = Long.MAX_VALUE;
+
+        /** @return the domain's cookies, or null if not yet loaded */
+        public List<Cookie> get(String domain) {
+            return byDomain.get(domain);
+        }
+
+        protected void set(String domain, List<Cookie> cookies) {
+            byDomain.put(domain, cookies);
+            for (Cookie c : cookies) {
+                if (c.getExpiryDate() != null) {
+                    nextExpiry = Math.min(nextExpiry, c.getExpiryDate().getTime());
+                }
+            }
+        }
+    }
+
+    protected static boolean sameIdentity(Cookie a, Cookie b) {
+        // as in sortableKey(), given the same normalized domain
+        String pathA = a.getPath() != null ? a.getPath() : "/";
+        String pathB = b.getPath() != null ? b.getPath() : "/";
+        return a.getName().equals(b.getName()) && pathA.equals(pathB);
+    }
+
+    /** the cookies, with any of the same identity replaced by the given one */
+    protected static List<Cookie> with(List<Cookie> cookies, Cookie cookie) {
+        List<Cookie> result = new ArrayList<Cookie>(cookies.size() + 1);
+        for (Cookie c : cookies) {
+            if (!sameIdentity(c, cookie)) {
+                result.add(c);
+            }
+        }
+        result.add(cookie);
+        return Collections.unmodifiableList(result);
+    }
+
+    /** the cookies without any of the same identity as the given one */
+    protected static List<Cookie> without(List<Cookie> cookies, Cookie cookie) {
+        List<Cookie> result = new ArrayList<Cookie>(cookies.size());
+        for (Cookie c : cookies) {
+            if (!sameIdentity(c, cookie)) {
+                result.add(c);
+            }
+        }
+        if (result.size() == cookies.size()) {
+            return cookies;
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Registrable domain of the given host -- the public suffix plus one
+     * label -- or null if it has none.
+     */
+    protected String registrableDomain(String host) {
+        return PublicSuffixMatcher.getDefault().registrableDomain(host);
+    }
+
+    /**
+     * Whether the given host is a plain dotted domain name, rather than an
+     * IP address or anything odder.
+     */
+    protected static boolean isDomainName(String host) {
+        if (host.isEmpty() || host.startsWith(".") || host.endsWith(".")
+                || host.contains("..") || host.indexOf(':') >= 0) {
+            return false;
+        }
+        // an IPv4 address ends in a number, no top-level domain does
+        char last = host.charAt(host.length() - 1);
+        return last < '0' || last > '9';
+    }
+
+    /**
+     * Domains whose cookies apply to the given (normalized) host: the host
+     * and, if it's a domain name, its parent domains; most specific first,
+     * each followed by its registrable domain (or itself, if none).
+     */
+    protected String[] domainsAndKeys(String host) {
+        if (!isDomainName(host)) {
+            return new String[] {host, host};
+        }
+        String registrable = registrableDomain(host);
+        int labels = 1;
+        for (int i = host.indexOf('.'); i >= 0; i = host.indexOf('.', i + 1)) {
+            labels++;
+        }
+        String[] domainsAndKeys = new String[2 * labels];
+        String domain = host;
+        for (int i = 0; i < domainsAndKeys.length; i += 2) {
+            domainsAndKeys[i] = domain;
+            // domain and registrable are both suffixes of the host
+            boolean within = registrable != null
+                    && domain.length() >= registrable.length();
+            domainsAndKeys[i + 1] = within ? registrable : domain;
+            domain = domain.substring(domain.indexOf('.') + 1);
+        }
+        return domainsAndKeys;
+    }
+
+    /** registrable domain of the given (normalized) domain, or itself */
+    protected String recordKey(String domain) {
+        return domainsAndKeys(domain)[1];
+    }
+
+    /** key in bdb of the cookies of the given domain */
+    protected String recordName(String key, String domain) {
+        // ";" can't appear in a host name
+        return key + ";" + domain;
+    }
+
+    protected Object lockFor(String key) {
+        return locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    /**
+     * The in-memory cookies of the given registrable domain.
+     */
+    protected DomainCookies entry(String key) {
+        DomainCookies dc = cache.getIfPresent(key);
+        if (dc == null) {
+            synchronized (lockFor(key)) {
+                dc = cache.getIfPresent(key);
+                if (dc == null) {
+                    dc = new DomainCookies();
+                    cache.put(key, dc);
+                }
+            }
+        }
+        return dc;
+    }
+
+    /**
+     * The cookies of the given domain, loading them if need be; call
+     * holding the key's lock.
+     */
+    protected List<Cookie> loaded(DomainCookies dc, String key, String domain) {
+        List<Cookie> cookies = dc.get(domain);
+        if (cookies == null) {
+            byte[] encoded = records.get(recordName(key, domain));
+            cookies = encoded != null ? decode(encoded) : Collections.<Cookie>emptyList();
+            dc.set(domain, cookies);
+        }
+        return cookies;
+    }
+
+    /**
+     * The cookies of the given domain, within the given registrable
+     * domain.
+     */
+    protected List<Cookie> cookiesFor(String key, String domain) {
+        List<Cookie> cookies = entry(key).get(domain);
+        if (cookies == null) {
+            synchronized (lockFor(key)) {
+                cookies = loaded(entry(key), key, domain);
+            }
+        }
+        return cookies;
+    }
+
+    /**
+     * Replace the cookies of the given domain, writing them through to
+     * bdb; call holding the key's lock.
+     */
+    protected void save(DomainCookies dc, String key, String domain, List<Cookie> cookies) {
+        dc.set(domain, cookies);
+        if (cookies.isEmpty()) {
+            records.remove(recordName(key, domain));
+        } else {
+            records.put(recordName(key, domain), encode(cookies));
+        }
+    }
+
+    /**
+     * Remove any expired cookies loaded for the given registrable domain.
+     * @return whether any were removed
+     */
+    protected boolean expire(String key, Date date) {
+        synchronized (lockFor(key)) {
+            DomainCookies dc = entry(key);
+            if (dc.nextExpiry > date.getTime()) {
+                return false;
+            }
+            boolean removed = false;
+            long next = Long.MAX_VALUE;
+            for (Map.Entry<String,List<Cookie>> entry : dc.byDomain.entrySet()) {
+                List<Cookie> kept = new ArrayList<Cookie>(entry.getValue().size());
+                for (Cookie c : entry.getValue()) {
+                    if (c.isExpired(date)) {
+                        continue;
+                    }
+                    kept.add(c);
+                    if (c.getExpiryDate() != null) {
+                        next = Math.min(next, c.getExpiryDate().getTime());
+                    }
+                }
+                if (kept.size() < entry.getValue().size()) {
+                    removed = true;
+                    save(dc, key, entry.getKey(), Collections.unmodifiableList(kept));
+                }
+            }
+            dc.nextExpiry = next;
+            return removed;
+        }
+    }
+
+    public void addCookieImpl(Cookie cookie) {
+        String domain = normalizeHost(cookie.getDomain());
+        String key = recordKey(domain);
+        synchronized (lockFor(key)) {
+            DomainCookies dc = entry(key);
+            List<Cookie> old = loaded(dc, key, domain);
+            List<Cookie> cookies = cookie.isExpired(new Date())
+                    ? without(old, cookie) : with(old, cookie);
+            if (cookies != old) {
+                save(dc, key, domain, cookies);
+            }
+        }
+    }
+
+    public boolean expireCookie(Cookie cookie, Date date) {
+        if (!cookie.isExpired(date)) {
+            return false;
+        }
+        String domain = normalizeHost(cookie.getDomain());
+        String key = recordKey(domain);
+        synchronized (lockFor(key)) {
+            DomainCookies dc = entry(key);
+            List<Cookie> old = loaded(dc, key, domain);
+            List<Cookie> cookies = without(old, cookie);
+            if (cookies != old) {
+                save(dc, key, domain, cookies);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCookieCountMaxedForDomain(String domain) {
+        String[] domainsAndKeys = domainsAndKeys(normalizeHost(domain));
+        int count = 0;
+        for (int i = 0; i < domainsAndKeys.length; i += 2) {
+            count += cookiesFor(domainsAndKeys[i + 1], domainsAndKeys[i]).size();
+        }
+        return count >= MAX_COOKIES_FOR_DOMAIN;
+    }
+
+    /**
+     * Returns a {@link LimitedCookieStoreFacade} whose
+     * {@link LimitedCookieStoreFacade#getCookies()} method returns only cookies
+     * from {@code host} and its parent domains, if applicable.
+     */
+    public CookieStore cookieStoreFor(String host) {
+        String[] domainsAndKeys = domainsAndKeys(normalizeHost(host));
+        Date now = new Date();
+        List<Cookie> cookies = Collections.emptyList();
+        boolean copied = false;
+        for (int i = 0; i < domainsAndKeys.length; i += 2) {
+            String key = domainsAndKeys[i + 1];
+            List<Cookie> some = cookiesFor(key, domainsAndKeys[i]);
+            if (entry(key).nextExpiry <= now.getTime() && expire(key, now)) {
+                some = cookiesFor(key, domainsAndKeys[i]);
+            }
+            if (some.isEmpty()) {
+                continue;
+            }
+            if (cookies.isEmpty()) {
+                // usually the only list, so handed out as is
+                cookies = some;
+            } else {
+                if (!copied) {
+                    cookies = new ArrayList<Cookie>(cookies);
+                    copied = true;
+                }
+                cookies.addAll(some);
+            }
+        }
+        return new LimitedCookieStoreFacade(cookies);
+    }
+
+    protected byte[] encode(List<Cookie> cookies) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(FORMAT);
+            out.writeInt(cookies.size());
+            for (Cookie cookie : cookies) {
+                if (cookie.getClass() == BasicClientCookie.class) {
+                    out.writeByte(BASIC);
+                    writeBasic(out, (BasicClientCookie) cookie);
+                } else {
+                    out.writeByte(SERIALIZED);
+                    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+                    try (ObjectOutputStream oos = new ObjectOutputStream(serialized)) {
+                        oos.writeObject(cookie);
+                    }
+                    out.writeInt(serialized.size());
+                    serialized.writeTo(out);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e); // impossible
+        }
+    }
+
+    protected List<Cookie> decode(byte[] encoded) {
+        List<Cookie> cookies = new ArrayList<Cookie>();
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+            if (in.readByte() != FORMAT) {
+                throw new IOException("unknown cookie record format");
+            }
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                Cookie cookie;
+                if (in.readByte() == BASIC) {
+                    cookie = readBasic(in);
+                } else {
+                    byte[] serialized = new byte[in.readInt()];
+                    in.readFully(serialized);
+                    try (ObjectInputStream ois = new ObjectInputStream(
+                            new ByteArrayInputStream(serialized))) {
+                        cookie = (Cookie) ois.readObject();
+                    }
+                }
+                cookies.add(cookie);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new RuntimeException("corrupt cookie record", e);
+        }
+        return Collections.unmodifiableList(cookies);
+    }
+
+    protected void writeBasic(DataOutputStream out, BasicClientCookie cookie)
+            throws IOException {
+        writeString(out, cookie.getName());
+        writeString(out, cookie.getValue());
+        writeString(out, cookie.getDomain());
+        writeString(out, cookie.getPath());
+        writeString(out, cookie.getComment());
+        writeDate(out, cookie.getExpiryDate());
+        writeDate(out, cookie.getCreationDate());
+        out.writeBoolean(cookie.isSecure());
+        out.writeInt(cookie.getVersion());
+        int attributes = 0;
+        for (String name : ATTRIBUTE_NAMES) {
+            if (cookie.containsAttribute(name)) {
+                attributes++;
+            }
+        }
+        out.writeByte(attributes);
+        for (String name : ATTRIBUTE_NAMES) {
+            if (cookie.containsAttribute(name)) {
+                writeString(out, name);
+                writeString(out, cookie.getAttribute(name));
+            }
+        }
+    }
+
+    protected BasicClientCookie readBasic(DataInputStream in) throws IOException {
+        BasicClientCookie cookie = new BasicClientCookie(readString(in), readString(in));
+        cookie.setDomain(readString(in));
+        cookie.setPath(readString(in));
+        cookie.setComment(readString(in));
+        cookie.setExpiryDate(readDate(in));
+        cookie.setCreationDate(readDate(in));
+        cookie.setSecure(in.readBoolean());
+        cookie.setVersion(in.readInt());
+        int attributes = in.readByte();
+        for (int i = 0; i < attributes; i++) {
+            cookie.setAttribute(readString(in), readString(in));
+        }
+        return cookie;
+    }
+
+    protected static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    protected static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    protected static void writeDate(DataOutputStream out, Date date) throws IOException {
+        out.writeLong(date != null ? date.getTime() : Long.MIN_VALUE);
+    }
+
+    protected static Date readDate(DataInputStream in) throws IOException {
+        long time = in.readLong();
+        return time != Long.MIN_VALUE ? new Date(time) : null;
+    }
+
+    @Override
+    public void startCheckpoint(Checkpoint checkpointInProgress) {
+        // do nothing; handled by map checkpoint via BdbModule
+    }
+    @Override
+    public void doCheckpoint(Checkpoint checkpointInProgress)
+            throws IOException {
+        // do nothing; handled by map checkpoint via BdbModule
+    }
+    @Override
+    public void finishCheckpoint(Checkpoint checkpointInProgress) {
+        // do nothing; handled by map checkpoint via BdbModule
+    }
+
+    /** are we a checkpoint recovery? (in which case, reuse stored cookie data?) */
+    protected boolean isCheckpointRecovery = false;
+    @Override
+    public void setRecoveryCheckpoint(Checkpoint recoveryCheckpoint) {
+        // just remember that we are doing checkpoint-recovery;
+        // actual state recovery happens via BdbModule
+        isCheckpointRecovery = true;
+    }
+
+    @Override
+    public void clear() {
+        records.clear();
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return all the cookies, decoded afresh
+     */
+    @Override
+    public List<Cookie> getCookies() {
+        if (records == null) {
+            return null;
+        }
+        List<Cookie> cookies = new ArrayList<Cookie>();
+        for (byte[] encoded : records.values()) {
+            cookies.addAll(decode(encoded));
+        }
+        return cookies;
+    }
+
+    @Override
+    public boolean clearExpired(Date date) {
+        boolean expired = false;
+        for (String name : new ArrayList<String>(records.keySet())) {
+            int delim = name.indexOf(';');
+            String key = name.substring(0, delim);
+            cookiesFor(key, name.substring(delim + 1));
+            expired |= expire(key, date);
+        }
+        return expired;
+    }
+}
@@ -81,13 +81,20 @@ public class DefaultServerCache extends ServerCache implements Closeable, Serial
      * @return CrawlServer instance that matches the passed server name.
      */
     public CrawlServer getServerFor(final String serverKey) {
+        // remember any instance we create, to notify listeners only if it
+        // is the one actually cached (and not discarded after a lost race)
+        final CrawlServer[] created = new CrawlServer[1];
         CrawlServer cserver = servers.getOrUse(
                 serverKey,
                 new Supplier<CrawlServer>() {
                     public CrawlServer get() {
                         String skey = new String(serverKey); // ensure private minimal key
-                        return new CrawlServer(skey);
+                        created[0] = new CrawlServer(skey);
+                        return created[0];
                     }});
+        if (created[0] != null && created[0] == cserver) {
+            fireServerCreated(cserver);
+        }
         return cserver;
     }
     
@@ -100,17 +107,22 @@ public class DefaultServerCache extends ServerCache implements Closeable, Serial
         if (hostname == null || hostname.length() == 0) {
             return null;
         }
+        final CrawlHost[] created = new CrawlHost[1];
         CrawlHost host = hosts.getOrUse(
                 hostname,
                 new Supplier<CrawlHost>() {
                     public CrawlHost get() {
                         String hkey = new String(hostname); // ensure private minimal key
-                        return new CrawlHost(hkey);
+                        created[0] = new CrawlHost(hkey);
+                        return created[0];
                     }});
         if (host != null && host.getIP() != null
                 && "0.0.0.0".equals(host.getIP().getHostAddress())) {
             throw new IllegalStateException("got suspicious value 0.0.0.0 for " + hostname);
         }
+        if (created[0] != null && created[0] == host) {
+            fireHostCreated(host);
+        }
         return host;
     }
 
@@ -38,6 +38,7 @@ import org.archive.url.URIException;
 import org.apache.commons.lang.StringUtils;
 import org.archive.modules.CrawlURI;
 import org.archive.modules.Processor;
+import org.archive.modules.net.CachingDnsResolver;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.ServerCache;
 import org.archive.util.ArchiveUtils;
@@ -142,6 +143,21 @@ public class FetchDNS extends Processor {
     public void setServerCache(ServerCache serverCache) {
         this.serverCache = serverCache;
     }
+
+    /**
+     * Optional shared resolver, caching (positive and negative) answers and
+     * coalescing concurrent lookups of the same name. If set, it is used in
+     * place of a fresh dnsjava Lookup per URI, unless DNS-over-HTTP(S) is
+     * configured.
+     */
+    protected CachingDnsResolver dnsResolver;
+    public CachingDnsResolver getDnsResolver() {
+        return this.dnsResolver;
+    }
+    @Autowired(required=false)
+    public void setDnsResolver(CachingDnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+    }
     
     {
         setDigestContent(true);
@@ -207,11 +223,25 @@ public class FetchDNS extends Processor {
         // TODO: Bug #935119 concerns potential hang here
         String lookupName = dnsName.endsWith(".") ? dnsName : dnsName + ".";
         // If we have not disabled JavaDNS, use that:
+        // TTL to give the host's IP, if not that of the A record
+        long ttlSeconds = -1;
         if (!getDisableJavaDnsResolves()) {
-            try {
-                rrecordSet = createDNSLookup(lookupName).run();
-            } catch (TextParseException e) {
-                rrecordSet = null;
+            if (getDnsResolver() != null
+                    && StringUtils.isEmpty(getDnsOverHttpServer())) {
+                CachingDnsResolver.DnsResult result =
+                    getDnsResolver().lookup(lookupName);
+                // answers without an A record (say, only a CNAME) are
+                // failures, as when Lookup returned no A records
+                rrecordSet = result.isNegative() ? null : result.getRecords();
+                // a cached answer holds only for what is left of its TTL
+                ttlSeconds = result.getRemainingTtlSeconds(
+                        System.currentTimeMillis());
+            } else {
+                try {
+                    rrecordSet = createDNSLookup(lookupName).run();
+                } catch (TextParseException e) {
+                    rrecordSet = null;
+                }
             }
         }
         curi.setContentType("text/dns");
@@ -219,7 +249,7 @@ public class FetchDNS extends Processor {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("Found recordset for " + lookupName);
             }
-        	storeDNSRecord(curi, dnsName, targetHost, rrecordSet);
+        	storeDNSRecord(curi, dnsName, targetHost, rrecordSet, ttlSeconds);
         } else {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("Failed find of recordset for " + lookupName);
@@ -256,6 +286,16 @@ public class FetchDNS extends Processor {
     
     protected void storeDNSRecord(final CrawlURI curi, final String dnsName,
     		final CrawlHost targetHost, final Record[] rrecordSet) {
+        storeDNSRecord(curi, dnsName, targetHost, rrecordSet, -1);
+    }
+
+    /**
+     * @param ttlSeconds TTL to give the host's IP, or -1 to use that of
+     * the first A record
+     */
+    protected void storeDNSRecord(final CrawlURI curi, final String dnsName,
+            final CrawlHost targetHost, final Record[] rrecordSet,
+            long ttlSeconds) {
         // Get TTL and IP info from the first A record (there may be
         // multiple, e.g. www.washington.edu) then update the CrawlServer
         ARecord arecord = getFirstARecord(rrecordSet);
@@ -263,7 +303,8 @@ public class FetchDNS extends Processor {
             throw new NullPointerException("Got null arecord for " +
                 dnsName);
         }
-        targetHost.setIP(arecord.getAddress(), arecord.getTTL());
+        targetHost.setIP(arecord.getAddress(),
+                ttlSeconds >= 0 ? ttlSeconds : arecord.getTTL());
         try {
         	recordDNS(curi, rrecordSet);
             curi.setFetchStatus(S_DNS_SUCCESS);
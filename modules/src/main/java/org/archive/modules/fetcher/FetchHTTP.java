@@ -79,6 +79,7 @@ import org.archive.modules.credential.HttpAuthenticationCredential;
 import org.archive.modules.deciderules.AcceptDecideRule;
 import org.archive.modules.deciderules.DecideResult;
 import org.archive.modules.deciderules.DecideRule;
+import org.archive.modules.net.CachingDnsResolver;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.CrawlServer;
 import org.archive.modules.net.ServerCache;
@@ -117,6 +118,19 @@ public class FetchHTTP extends Processor implements Lifecycle {
         this.serverCache = serverCache;
     }
 
+    protected CachingDnsResolver dnsResolver;
+    public CachingDnsResolver getDnsResolver() {
+        return this.dnsResolver;
+    }
+    /**
+     * Optional shared resolver, consulted for hosts not (yet) resolved in
+     * the ServerCache, in place of a blocking InetAddress lookup.
+     */
+    @Autowired(required=false)
+    public void setDnsResolver(CachingDnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+    }
+
     {
         setDigestContent(true);
     }
@@ -28,6 +28,7 @@ import org.archive.io.RecorderLengthExceededException;
 import org.archive.io.RecorderTimeoutException;
 import org.archive.modules.CrawlURI;
 import org.archive.modules.Processor;
+import org.archive.modules.net.CachingDnsResolver;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.CrawlServer;
 import org.archive.modules.net.ServerCache;
@@ -92,6 +93,19 @@ public class FetchHTTP2 extends Processor implements Lifecycle, InitializingBean
         this.cookieStore = cookieStore;
     }
 
+    protected CachingDnsResolver dnsResolver;
+    public CachingDnsResolver getDnsResolver() {
+        return dnsResolver;
+    }
+    /**
+     * Optional shared resolver, queried (without blocking) for hosts not
+     * resolved in the ServerCache.
+     */
+    @Autowired(required = false)
+    public void setDnsResolver(CachingDnsResolver dnsResolver) {
+        this.dnsResolver = dnsResolver;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         if (useHTTP3) {
@@ -150,29 +164,41 @@ public class FetchHTTP2 extends Processor implements Lifecycle, InitializingBean
     }
 
     /**
-     * Resolves a socket address using the ServerCache (instead of a live DNS query).
+     * Resolves a socket address using the ServerCache (instead of a live DNS query), falling back
+     * to the shared dnsResolver, if any.
      */
     protected void resolveSocketAddress(String host, int port, Promise<List<InetSocketAddress>> promise) {
         CrawlHost crawlHost = serverCache.getHostFor(host);
         if (crawlHost != null && crawlHost.getIP() != null) {
-            var ip = crawlHost.getIP();
-            if (!ip.getHostName().equals(host)) {
-                // The host part of the address in serverCache can be a resolved CNAME so we need to set it back the
-                // original host to avoid this:
-                // javax.net.ssl.SSLHandshakeException: No subject alternative DNS name matching ${ip.hostName} found.
-                try {
-                    ip = InetAddress.getByAddress(host, crawlHost.getIP().getAddress());
-                } catch (UnknownHostException e) {
-                    promise.failed(e);
-                    return;
+            succeed(host, port, crawlHost.getIP(), promise);
+        } else if (dnsResolver != null) {
+            dnsResolver.resolve(host).thenAccept(result -> {
+                if (result.getAddress() != null) {
+                    succeed(host, port, result.getAddress(), promise);
+                } else {
+                    promise.failed(new UnknownHostException(host));
                 }
-            }
-            promise.succeeded(List.of(new InetSocketAddress(ip, port)));
+            });
         } else {
             promise.failed(new UnknownHostException());
         }
     }
 
+    private static void succeed(String host, int port, InetAddress ip, Promise<List<InetSocketAddress>> promise) {
+        if (!ip.getHostName().equals(host)) {
+            // The host part of the address in serverCache can be a resolved CNAME so we need to set it back the
+            // original host to avoid this:
+            // javax.net.ssl.SSLHandshakeException: No subject alternative DNS name matching ${ip.hostName} found.
+            try {
+                ip = InetAddress.getByAddress(host, ip.getAddress());
+            } catch (UnknownHostException e) {
+                promise.failed(e);
+                return;
+            }
+        }
+        promise.succeeded(List.of(new InetSocketAddress(ip, port)));
+    }
+
     @Override
     protected boolean shouldProcess(CrawlURI curi) {
         String scheme = curi.getUURI().getScheme();
@@ -112,6 +112,7 @@ import org.archive.modules.credential.HtmlFormCredential;
 import org.archive.modules.credential.HttpAuthenticationCredential;
 import org.archive.modules.extractor.LinkContext;
 import org.archive.modules.forms.HTMLForm.NameValue;
+import org.archive.modules.net.CachingDnsResolver;
 import org.archive.modules.net.CrawlHost;
 import org.archive.modules.net.CrawlServer;
 import org.archive.modules.net.ServerCache;
@@ -139,9 +140,16 @@ public class FetchHTTPRequest {
     protected static class ServerCacheResolver implements DnsResolver {
         private static Logger logger = Logger.getLogger(DnsResolver.class.getName());
         protected ServerCache serverCache;
+        protected CachingDnsResolver dnsResolver;
 
         public ServerCacheResolver(ServerCache serverCache) {
+            this(serverCache, null);
+        }
+
+        public ServerCacheResolver(ServerCache serverCache,
+                CachingDnsResolver dnsResolver) {
             this.serverCache = serverCache;
+            this.dnsResolver = dnsResolver;
         }
 
         @Override
@@ -154,6 +162,15 @@ public class FetchHTTPRequest {
                 }
             }
 
+            if (dnsResolver != null) {
+                logger.info("host \"" + host + "\" is not in serverCache, resolving with shared resolver");
+                InetAddress ip = dnsResolver.lookup(host).getAddress();
+                if (ip == null) {
+                    throw new UnknownHostException(host);
+                }
+                return new InetAddress[] {ip};
+            }
+
             logger.info("host \"" + host + "\" is not in serverCache, allowing java to resolve it");
             return new InetAddress[] {InetAddress.getByName(host)};
         }
@@ -628,7 +645,8 @@ public class FetchHTTPRequest {
         }
 
 
-        DnsResolver dnsResolver = new ServerCacheResolver(fetcher.getServerCache());
+        DnsResolver dnsResolver = new ServerCacheResolver(fetcher.getServerCache(),
+                fetcher.getDnsResolver());
 
         ManagedHttpClientConnectionFactory connFactory = new ManagedHttpClientConnectionFactory(){
             private static final int DEFAULT_BUFSIZE = 8 * 1024;
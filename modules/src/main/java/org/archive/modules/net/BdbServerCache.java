@@ -46,6 +46,21 @@ implements Lifecycle, Checkpointable {
         this.bdb = bdb;
     }
     
+    /**
+     * If positive, the memory budget, in estimated bytes, for holding
+     * servers and hosts, split evenly between them; beyond it, the least
+     * used are left only on disk, as BdbModule's objectCacheEviction
+     * chooses. If 0 (the default), they're cached as BdbModule's
+     * objectCacheMaxBytes says, like the other object caches.
+     */
+    protected long maxBytes = 0;
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
     public BdbServerCache() {
     }
     
@@ -54,8 +69,15 @@ implements Lifecycle, Checkpointable {
             return;
         }
         try {
-            this.servers = bdb.getObjectCache("servers", isCheckpointRecovery, CrawlServer.class, CrawlServer.class);
-            this.hosts = bdb.getObjectCache("hosts", isCheckpointRecovery, CrawlHost.class, CrawlHost.class);
+            if (maxBytes > 0) {
+                this.servers = bdb.getBoundedCache("servers", isCheckpointRecovery,
+                        CrawlServer.class, maxBytes / 2);
+                this.hosts = bdb.getBoundedCache("hosts", isCheckpointRecovery,
+                        CrawlHost.class, maxBytes - maxBytes / 2);
+            } else {
+                this.servers = bdb.getObjectCache("servers", isCheckpointRecovery, CrawlServer.class, CrawlServer.class);
+                this.hosts = bdb.getObjectCache("hosts", isCheckpointRecovery, CrawlHost.class, CrawlHost.class);
+            }
         } catch (DatabaseException e) {
             throw new IllegalStateException(e);
         }
@@ -0,0 +1,410 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.net;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Shared, non-blocking DNS resolver with a bounded, TTL-respecting cache of
+ * both positive and negative answers.
+ *
+ * <p>Queries go out over UDP through dnsjava's asynchronous resolver, so
+ * many may be in flight at once without tying up a thread each. Concurrent
+ * requests for the same name are coalesced onto a single query.
+ *
+ * <p>Answers are cached for their DNS TTL; authoritative denials
+ * (NXDOMAIN, or NOERROR with no address records) for the SOA minimum TTL if
+ * the server supplies one, or else {@link #getNegativeTtlSeconds()}, in
+ * either case capped by {@link #getMaxTtlSeconds()}. Error responses such
+ * as SERVFAIL, timeouts and other transport errors are not cached. The cache holds at most {@link #getMaxCacheEntries()} names.
+ *
+ * <p>{@link org.archive.modules.fetcher.FetchDNS}, the HTTP fetchers and
+ * the PreconditionEnforcer consult this resolver when one is configured.
+ */
+public class CachingDnsResolver {
+    private static final Logger logger =
+        Logger.getLogger(CachingDnsResolver.class.getName());
+
+    /**
+     * DNS server to query, as "host" or "host:port". If unset, the
+     * system's configured resolver is used.
+     */
+    protected String server = null;
+    public String getServer() {
+        return server;
+    }
+    public void setServer(String server) {
+        this.server = server;
+    }
+
+    /**
+     * Time to wait for an answer, in milliseconds.
+     */
+    protected int timeoutMs = 5000;
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+    public void setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Maximum number of names (resolved or unresolvable) to remember.
+     */
+    protected int maxCacheEntries = 100000;
+    public int getMaxCacheEntries() {
+        return maxCacheEntries;
+    }
+    public void setMaxCacheEntries(int maxCacheEntries) {
+        this.maxCacheEntries = maxCacheEntries;
+    }
+
+    /**
+     * Time to remember that a name is unresolvable, when the server gives no
+     * SOA minimum TTL.
+     */
+    protected long negativeTtlSeconds = 10 * 60;
+    public long getNegativeTtlSeconds() {
+        return negativeTtlSeconds;
+    }
+    public void setNegativeTtlSeconds(long negativeTtlSeconds) {
+        this.negativeTtlSeconds = negativeTtlSeconds;
+    }
+
+    /**
+     * Longest time any answer is cached, whatever its TTL.
+     */
+    protected long maxTtlSeconds = 24 * 60 * 60;
+    public long getMaxTtlSeconds() {
+        return maxTtlSeconds;
+    }
+    public void setMaxTtlSeconds(long maxTtlSeconds) {
+        this.maxTtlSeconds = maxTtlSeconds;
+    }
+
+    /**
+     * Outcome of resolving one name.
+     */
+    public static class DnsResult {
+        protected final String name;
+        protected final int rcode;
+        protected final Record[] records;
+        protected final InetAddress address;
+        protected final long ttlSeconds;
+        protected final long fetchedTime;
+
+        public DnsResult(String name, int rcode, Record[] records,
+                InetAddress address, long ttlSeconds, long fetchedTime) {
+            this.name = name;
+            this.rcode = rcode;
+            this.records = records;
+            this.address = address;
+            this.ttlSeconds = ttlSeconds;
+            this.fetchedTime = fetchedTime;
+        }
+
+        /** @return name resolved, with trailing '.' */
+        public String getName() {
+            return name;
+        }
+        /** @return DNS response code, or -1 if no response was had */
+        public int getRcode() {
+            return rcode;
+        }
+        /** @return answer records, or null if none */
+        public Record[] getRecords() {
+            return records;
+        }
+        /** @return first address found, or null if unresolvable */
+        public InetAddress getAddress() {
+            return address;
+        }
+        public long getTtlSeconds() {
+            return ttlSeconds;
+        }
+        public long getFetchedTime() {
+            return fetchedTime;
+        }
+        public long getExpiresTime() {
+            return fetchedTime + 1000 * ttlSeconds;
+        }
+        /** @return seconds left of the TTL at the given time, at least 0 */
+        public long getRemainingTtlSeconds(long now) {
+            return Math.max(0, (getExpiresTime() - now) / 1000);
+        }
+        public boolean isNegative() {
+            return address == null;
+        }
+        /** @return true if no response was received (eg timeout) */
+        public boolean isFailure() {
+            return rcode < 0;
+        }
+        /**
+         * @return true if an answer or authoritative denial, which may be
+         * cached; false for error responses (eg SERVFAIL) and failures
+         */
+        public boolean isCacheable() {
+            return rcode == Rcode.NOERROR || rcode == Rcode.NXDOMAIN;
+        }
+    }
+
+    protected volatile Resolver resolver;
+    protected volatile Cache<String, DnsResult> cache;
+    protected ConcurrentMap<String, CompletableFuture<DnsResult>> inFlight =
+        new ConcurrentHashMap<String, CompletableFuture<DnsResult>>();
+
+    protected AtomicLong cacheHits = new AtomicLong(0);
+    protected AtomicLong coalesced = new AtomicLong(0);
+    protected AtomicLong queries = new AtomicLong(0);
+    protected AtomicLong failures = new AtomicLong(0);
+
+    public CachingDnsResolver() {
+    }
+
+    protected Resolver getResolver() throws java.net.UnknownHostException {
+        if (resolver == null) {
+            synchronized (this) {
+                if (resolver == null) {
+                    SimpleResolver r;
+                    if (server == null || server.length() == 0) {
+                        r = new SimpleResolver();
+                    } else {
+                        int colon = server.lastIndexOf(':');
+                        if (colon > 0 && server.indexOf(':') == colon) {
+                            r = new SimpleResolver(new InetSocketAddress(
+                                    InetAddress.getByName(server.substring(0, colon)),
+                                    Integer.parseInt(server.substring(colon + 1))));
+                        } else {
+                            r = new SimpleResolver(server);
+                        }
+                    }
+                    r.setTimeout(Duration.ofMillis(getTimeoutMs()));
+                    resolver = r;
+                }
+            }
+        }
+        return resolver;
+    }
+
+    protected Cache<String, DnsResult> getCache() {
+        if (cache == null) {
+            synchronized (this) {
+                if (cache == null) {
+                    cache = CacheBuilder.newBuilder()
+                            .maximumSize(getMaxCacheEntries())
+                            .<String, DnsResult>build();
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return name in the form used as cache key: lowercase, with trailing dot
+     */
+    protected static String normalize(String name) {
+        name = name.toLowerCase(Locale.ROOT);
+        return name.endsWith(".") ? name : name + ".";
+    }
+
+    /**
+     * Consult only the cache.
+     *
+     * @param name hostname
+     * @return unexpired cached result, or null
+     */
+    public DnsResult getCached(String name) {
+        String key = normalize(name);
+        DnsResult result = getCache().getIfPresent(key);
+        if (result != null
+                && result.getExpiresTime() < System.currentTimeMillis()) {
+            getCache().invalidate(key);
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Resolve the given name, from cache if possible, otherwise by a query
+     * shared with any other requests for the same name already in flight.
+     * The returned future always completes normally (failures are reported
+     * as a result with {@link DnsResult#isFailure()}).
+     *
+     * @param name hostname
+     * @return future result
+     */
+    public CompletableFuture<DnsResult> resolve(String name) {
+        final String key = normalize(name);
+        DnsResult cached = getCached(key);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached);
+        }
+        final CompletableFuture<DnsResult> future = new CompletableFuture<DnsResult>();
+        CompletableFuture<DnsResult> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        queries.incrementAndGet();
+        final long start = System.currentTimeMillis();
+        Message query;
+        try {
+            query = Message.newQuery(Record.newRecord(
+                    Name.fromString(key), Type.A, DClass.IN));
+            getResolver().sendAsync(query).whenComplete((response, error) -> {
+                DnsResult result;
+                if (error != null) {
+                    logger.log(Level.FINE, "failed lookup of " + key, error);
+                    result = failed(key, start);
+                } else {
+                    result = toResult(key, response, start);
+                    if (result.isCacheable()) {
+                        getCache().put(key, result);
+                    }
+                }
+                finish(key, future, result);
+            });
+        } catch (TextParseException e) {
+            logger.log(Level.FINE, "unparseable name " + key, e);
+            finish(key, future, failed(key, start));
+        } catch (java.net.UnknownHostException e) {
+            logger.log(Level.WARNING, "unknown dns server " + getServer(), e);
+            finish(key, future, failed(key, start));
+        }
+        return future;
+    }
+
+    /**
+     * Resolve the given name, waiting for the answer.
+     *
+     * @param name hostname
+     * @return result; on timeout or interrupt, a failure result
+     */
+    public DnsResult lookup(String name) {
+        CompletableFuture<DnsResult> future = resolve(name);
+        try {
+            // the resolver itself times out; allow it a margin to do so
+            return future.get(2L * getTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.log(Level.WARNING, "failed lookup of " + name, e);
+        } catch (TimeoutException e) {
+            logger.log(Level.FINE, "timed out lookup of " + name, e);
+        }
+        return failed(normalize(name), System.currentTimeMillis());
+    }
+
+    protected void finish(String key, CompletableFuture<DnsResult> future,
+            DnsResult result) {
+        // result is cached before the in-flight entry goes, so no request
+        // can slip between and issue a redundant query
+        inFlight.remove(key, future);
+        future.complete(result);
+    }
+
+    protected DnsResult failed(String key, long start) {
+        failures.incrementAndGet();
+        return new DnsResult(key, -1, null, null, 0, start);
+    }
+
+    protected DnsResult toResult(String key, Message response, long start) {
+        int rcode = response.getRcode();
+        List<Record> answers = response.getSection(Section.ANSWER);
+        InetAddress address = null;
+        long ttl = Long.MAX_VALUE;
+        if (rcode == Rcode.NOERROR) {
+            for (Record record : answers) {
+                ttl = Math.min(ttl, record.getTTL());
+                if (address == null && record.getType() == Type.A) {
+                    address = ((ARecord) record).getAddress();
+                }
+            }
+        }
+        if (address == null) {
+            ttl = getNegativeTtlSeconds();
+            for (Record record : response.getSection(Section.AUTHORITY)) {
+                if (record.getType() == Type.SOA) {
+                    SOARecord soa = (SOARecord) record;
+                    ttl = Math.min(soa.getTTL(), soa.getMinimum());
+                }
+            }
+        }
+        ttl = Math.min(ttl, getMaxTtlSeconds());
+        Record[] records = answers.isEmpty()
+                ? null : answers.toArray(new Record[answers.size()]);
+        return new DnsResult(key, rcode, records, address, ttl, start);
+    }
+
+    /**
+     * Drop all cached answers.
+     */
+    public void clearCache() {
+        getCache().invalidateAll();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+    public long getQueries() {
+        return queries.get();
+    }
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public String report() {
+        return "  dns: " + queries + " queries, " + cacheHits + " cache hits, "
+                + coalesced + " coalesced, " + failures + " failures, "
+                + getCache().size() + " cached\n";
+    }
+}
@@ -64,6 +64,8 @@ public class CrawlServer implements Serializable, FetchStats.HasFetchStats, Iden
     private String server; // actually, host+port in the https case
     private int port;
     protected Robotstxt robotstxt;
+    /** whether robotstxt is the shared instance; false after deserialization */
+    transient protected boolean robotstxtInterned = false;
     protected long robotsFetched = ROBOTS_NOT_FETCHED;
     protected boolean validRobots = false;
     protected FetchStats substats = new FetchStats();
@@ -127,6 +129,11 @@ public class CrawlServer implements Serializable, FetchStats.HasFetchStats, Iden
     }
     
     public Robotstxt getRobotstxt() {
+        if (!robotstxtInterned && robotstxt != null) {
+            // share with other servers having identical robots.txt
+            robotstxt = Robotstxt.intern(robotstxt);
+            robotstxtInterned = true;
+        }
         return robotstxt;
     }
 
@@ -180,7 +187,8 @@ public class CrawlServer implements Serializable, FetchStats.HasFetchStats, Iden
             contentBodyStream = curi.getRecorder().getContentReplayInputStream();
 
             InputStreamReader reader = new InputStreamReader(contentBodyStream);
-            robotstxt = new Robotstxt(reader);
+            robotstxt = Robotstxt.intern(new Robotstxt(reader));
+            robotstxtInterned = true;
             validRobots = true;
         } catch (IOException e) {
             robotstxt = Robotstxt.NO_ROBOTS;
@@ -27,32 +27,46 @@ import org.archive.bdb.AutoKryo;
 /**
  * Represents the directives that apply to a user-agent (or set of
  * user-agents)
+ *
+ * <p>Allow and Disallow prefixes are collected in sorted sets while a
+ * robots.txt is parsed; {@link #compact()} then builds from them a shared,
+ * immutable {@link RobotsPrefixTrie}, by which paths are checked. No further
+ * prefixes may be added after compaction. Only the sets are serialized, as
+ * before, so that stored servers still load; the trie is rebuilt on first
+ * use after deserialization.
  */
 public class RobotsDirectives implements Serializable {
     private static final long serialVersionUID = 5386542759286155383L;
     
     protected ConcurrentSkipListSet<String> disallows = new ConcurrentSkipListSet<String>();
     protected ConcurrentSkipListSet<String> allows = new ConcurrentSkipListSet<String>();
+    protected transient volatile RobotsPrefixTrie trie = null;
     protected float crawlDelay = -1; 
     public transient boolean hasDirectives = false;
 
     public boolean allows(String path) {
-        return !(longestPrefixLength(disallows, path) > longestPrefixLength(allows, path));
+        return compactTrie().allows(path);
     }
 
     /**
-     * @param prefixSet
-     * @param str
-     * @return length of longest entry in {@code prefixSet} that prefixes {@code str}, or zero
-     *         if no entry prefixes {@code str}
+     * @return the (interned) trie of this directives' prefixes, compacting
+     * first if necessary
      */
-    protected int longestPrefixLength(ConcurrentSkipListSet<String> prefixSet,
-            String str) {
-        String possiblePrefix = prefixSet.floor(str);
-        if (possiblePrefix != null && str.startsWith(possiblePrefix)) {
-            return possiblePrefix.length();
-        } else {
-            return 0;
+    protected RobotsPrefixTrie compactTrie() {
+        RobotsPrefixTrie t = trie;
+        if (t == null) {
+            compact();
+            t = trie;
+        }
+        return t;
+    }
+
+    /**
+     * Build the interned trie of the prefix sets, if not already built.
+     */
+    public synchronized void compact() {
+        if (trie == null) {
+            trie = RobotsPrefixTrie.intern(RobotsPrefixTrie.build(allows, disallows));
         }
     }
 
@@ -63,14 +77,22 @@ public class RobotsDirectives implements Serializable {
             // (they really mean allow, when alone)
             return;
         }
+        checkNotCompacted();
         disallows.add(path);
     }
 
     public void addAllow(String path) {
         hasDirectives = true;
+        checkNotCompacted();
         allows.add(path);
     }
 
+    protected void checkNotCompacted() {
+        if (trie != null) {
+            throw new IllegalStateException("directives already compacted");
+        }
+    }
+
     public void setCrawlDelay(float i) {
         hasDirectives = true;
         crawlDelay=i;
@@ -0,0 +1,250 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.net;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.archive.bdb.AutoKryo;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+/**
+ * Immutable trie of the Allow and Disallow path prefixes of a
+ * {@link RobotsDirectives}, flattened into a few primitive arrays.
+ *
+ * <p>Nodes are numbered breadth-first from the root (0). The edges leaving
+ * node n are at indexes firstEdge[n] to firstEdge[n+1] of the edge arrays,
+ * sorted by label; marks[n] records whether the path to node n is an Allow
+ * prefix, a Disallow prefix, or both. {@link #allows(String)} walks the
+ * trie once, without allocation.
+ *
+ * <p>Tries are compared by content, and may be shared among all the
+ * directives (across all servers) with the same rules via
+ * {@link #intern(RobotsPrefixTrie)}.
+ */
+public class RobotsPrefixTrie implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    protected static final byte ALLOW = 1;
+    protected static final byte DISALLOW = 2;
+
+    /** trie with no prefixes; allows everything */
+    public static final RobotsPrefixTrie EMPTY = build(
+            Collections.<String>emptyList(), Collections.<String>emptyList());
+
+    protected static final Interner<RobotsPrefixTrie> INTERNER =
+        Interners.newWeakInterner();
+
+    protected final int[] firstEdge;
+    protected final byte[] marks;
+    protected final char[] labels;
+    protected final int[] targets;
+    protected final int hash;
+
+    protected RobotsPrefixTrie(int[] firstEdge, byte[] marks, char[] labels,
+            int[] targets) {
+        this.firstEdge = firstEdge;
+        this.marks = marks;
+        this.labels = labels;
+        this.targets = targets;
+        int h = Arrays.hashCode(marks);
+        h = 31 * h + Arrays.hashCode(labels);
+        h = 31 * h + Arrays.hashCode(targets);
+        this.hash = h;
+    }
+
+    /**
+     * Build a trie of the given prefixes.
+     *
+     * @param allows Allow prefixes
+     * @param disallows Disallow prefixes
+     * @return new trie
+     */
+    public static RobotsPrefixTrie build(Collection<String> allows,
+            Collection<String> disallows) {
+        TreeMap<String, Byte> marked = new TreeMap<String, Byte>();
+        int chars = 0;
+        for (String path : allows) {
+            marked.merge(path, ALLOW, (a, b) -> (byte) (a | b));
+        }
+        for (String path : disallows) {
+            marked.merge(path, DISALLOW, (a, b) -> (byte) (a | b));
+        }
+        List<String> paths = new ArrayList<String>(marked.keySet());
+        byte[] pathMarks = new byte[paths.size()];
+        for (int i = 0; i < paths.size(); i++) {
+            pathMarks[i] = marked.get(paths.get(i));
+            chars += paths.get(i).length();
+        }
+
+        // at most one node per char, plus the root
+        int maxNodes = chars + 1;
+        int[] firstEdge = new int[maxNodes + 1];
+        byte[] marks = new byte[maxNodes];
+        char[] labels = new char[maxNodes];
+        int[] targets = new int[maxNodes];
+
+        // each pending node is the run of paths [lo,hi) sharing the
+        // prefix of length depth; nodes are numbered in queue order
+        ArrayDeque<int[]> queue = new ArrayDeque<int[]>();
+        queue.add(new int[] {0, paths.size(), 0});
+        int node = 0;
+        int nodes = 1;
+        int edges = 0;
+        while (!queue.isEmpty()) {
+            int[] run = queue.remove();
+            int lo = run[0];
+            int hi = run[1];
+            int depth = run[2];
+            firstEdge[node] = edges;
+            if (lo < hi && paths.get(lo).length() == depth) {
+                // sorted first, as a prefix of the rest of the run
+                marks[node] = pathMarks[lo];
+                lo++;
+            }
+            while (lo < hi) {
+                char c = paths.get(lo).charAt(depth);
+                int end = lo + 1;
+                while (end < hi && paths.get(end).charAt(depth) == c) {
+                    end++;
+                }
+                labels[edges] = c;
+                targets[edges] = nodes++;
+                edges++;
+                queue.add(new int[] {lo, end, depth + 1});
+                lo = end;
+            }
+            node++;
+        }
+        firstEdge[nodes] = edges;
+
+        return new RobotsPrefixTrie(Arrays.copyOf(firstEdge, nodes + 1),
+                Arrays.copyOf(marks, nodes), Arrays.copyOf(labels, edges),
+                Arrays.copyOf(targets, edges));
+    }
+
+    /**
+     * @return the canonical instance of a trie with the given content
+     */
+    public static RobotsPrefixTrie intern(RobotsPrefixTrie trie) {
+        return INTERNER.intern(trie);
+    }
+
+    /**
+     * Whether the path is allowed: true unless the longest Disallow prefix
+     * of the path is longer than its longest Allow prefix.
+     *
+     * @param path path (and query) to test
+     * @return true if allowed
+     */
+    public boolean allows(String path) {
+        int longestAllow = 0;
+        int longestDisallow = 0;
+        int node = 0;
+        int length = path.length();
+        for (int i = 0; i < length; i++) {
+            node = child(node, path.charAt(i));
+            if (node < 0) {
+                break;
+            }
+            byte mark = marks[node];
+            if ((mark & ALLOW) != 0) {
+                longestAllow = i + 1;
+            }
+            if ((mark & DISALLOW) != 0) {
+                longestDisallow = i + 1;
+            }
+        }
+        return !(longestDisallow > longestAllow);
+    }
+
+    /**
+     * @return the child of node by the edge labeled c, or -1 if none
+     */
+    protected int child(int node, char c) {
+        int lo = firstEdge[node];
+        int hi = firstEdge[node + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char label = labels[mid];
+            if (label < c) {
+                lo = mid + 1;
+            } else if (label > c) {
+                hi = mid - 1;
+            } else {
+                return targets[mid];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the trie holds no Disallow prefixes
+     */
+    public boolean allowsAll() {
+        for (byte mark : marks) {
+            if ((mark & DISALLOW) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getNodeCount() {
+        return marks.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RobotsPrefixTrie)) {
+            return false;
+        }
+        RobotsPrefixTrie other = (RobotsPrefixTrie) obj;
+        return hash == other.hash
+                && Arrays.equals(marks, other.marks)
+                && Arrays.equals(labels, other.labels)
+                && Arrays.equals(targets, other.targets)
+                && Arrays.equals(firstEdge, other.firstEdge);
+    }
+
+    // Kryo support
+    public static void autoregisterTo(AutoKryo kryo) {
+        kryo.register(RobotsPrefixTrie.class);
+        kryo.useReferencesFor(RobotsPrefixTrie.class);
+        kryo.autoregister(int[].class);
+        kryo.autoregister(byte[].class);
+        kryo.autoregister(char[].class);
+    }
+}
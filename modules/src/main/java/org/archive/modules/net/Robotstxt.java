@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -35,6 +36,11 @@ import org.apache.commons.io.IOUtils;
 import org.archive.bdb.AutoKryo;
 import org.archive.io.ReadSource;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
 /**
  * Utility class for parsing and representing 'robots.txt' format 
  * directives, into a list of named user-agents and map from user-agents 
@@ -58,6 +64,20 @@ public class Robotstxt implements Serializable {
     protected RobotsDirectives wildcardDirectives = null; 
     
     protected boolean hasErrors = false;
+
+    /**
+     * hash of the parsed rules, by which equivalent robots.txt are shared;
+     * not serialized (so that stored servers still load), but recomputed
+     * when first needed
+     */
+    protected transient byte[] contentDigest = null;
+    
+    /**
+     * Parsed robots.txt, by hash of their rules, so that servers with 
+     * equivalent robots.txt may share a single instance. 
+     */
+    protected static final ConcurrentMap<HashCode,Robotstxt> INTERNED = 
+        CacheBuilder.newBuilder().weakValues().<HashCode,Robotstxt>build().asMap();
     
     protected static RobotsDirectives NO_DIRECTIVES = new RobotsDirectives();
     /** empty, reusable instance for all sites providing no rules */
@@ -198,6 +218,67 @@ public class Robotstxt implements Serializable {
                 // unknown line; do nothing for now
             }
         }
+        compact();
+    }
+
+    /**
+     * Build the shared prefix tries of all the directives.
+     */
+    protected void compact() {
+        if (wildcardDirectives != null) {
+            wildcardDirectives.compact();
+        }
+        for (RobotsDirectives directives : agentsToDirectives.values()) {
+            directives.compact();
+        }
+    }
+
+    /**
+     * Return the shared instance with the same rules, if any, or else the
+     * given instance (which becomes the shared instance).
+     * 
+     * @param robotstxt parsed robots.txt
+     * @return equivalent shared instance
+     */
+    public static Robotstxt intern(Robotstxt robotstxt) {
+        if (robotstxt == null) {
+            return robotstxt;
+        }
+        Robotstxt existing = INTERNED.putIfAbsent(
+                HashCode.fromBytes(robotstxt.getContentDigest()), robotstxt);
+        return existing != null ? existing : robotstxt;
+    }
+
+    /**
+     * @return hash of the rules: each user-agent in order of declaration,
+     * with its crawl-delay and allow and disallow prefixes
+     */
+    protected synchronized byte[] getContentDigest() {
+        if (contentDigest == null) {
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            hashDirectives(hasher, "*", wildcardDirectives);
+            for (String ua : namedUserAgents) {
+                hashDirectives(hasher, ua, agentsToDirectives.get(ua));
+            }
+            hasher.putBoolean(hasErrors);
+            contentDigest = hasher.hash().asBytes();
+        }
+        return contentDigest;
+    }
+
+    protected static void hashDirectives(Hasher hasher, String ua, 
+            RobotsDirectives directives) {
+        hasher.putUnencodedChars(ua).putChar('\n');
+        if (directives == null) {
+            return;
+        }
+        hasher.putFloat(directives.getCrawlDelay());
+        for (String path : directives.allows) {
+            hasher.putChar('A').putUnencodedChars(path).putChar('\n');
+        }
+        for (String path : directives.disallows) {
+            hasher.putChar('D').putUnencodedChars(path).putChar('\n');
+        }
     }
 
     /**
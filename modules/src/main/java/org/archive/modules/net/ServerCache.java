@@ -19,7 +19,9 @@
 
 package org.archive.modules.net;
 
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,6 +49,50 @@ public abstract class ServerCache {
     
     private static Logger logger =
         Logger.getLogger(ServerCache.class.getName());
+
+    /**
+     * Listeners to be told of newly-created hosts and servers.
+     */
+    protected List<ServerCacheListener> listeners = 
+        new CopyOnWriteArrayList<ServerCacheListener>();
+
+    public void addListener(ServerCacheListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ServerCacheListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Notify listeners that a CrawlHost has been created. Implementations 
+     * should call this once per newly-created host, after it is available 
+     * from {@link #getHostFor(String)}.
+     */
+    protected void fireHostCreated(CrawlHost host) {
+        for (ServerCacheListener listener : listeners) {
+            try {
+                listener.hostCreated(host);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "listener failed on " + host, e);
+            }
+        }
+    }
+
+    /**
+     * Notify listeners that a CrawlServer has been created. Implementations 
+     * should call this once per newly-created server, after it is available 
+     * from {@link #getServerFor(String)}.
+     */
+    protected void fireServerCreated(CrawlServer server) {
+        for (ServerCacheListener listener : listeners) {
+            try {
+                listener.serverCreated(server);
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "listener failed on " + server, e);
+            }
+        }
+    }
     
     /**
      * Get the {@link CrawlHost} associated with <code>curi</code>.
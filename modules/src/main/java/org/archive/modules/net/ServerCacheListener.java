@@ -0,0 +1,38 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual 
+ *  contributors. 
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.net;
+
+/**
+ * Listener for the creation of new {@link CrawlHost} and {@link CrawlServer}
+ * instances by a {@link ServerCache}. 
+ * 
+ * Callbacks happen on whichever thread first asked the cache for the new
+ * host or server, so should return quickly.
+ */
+public interface ServerCacheListener {
+    /**
+     * @param host CrawlHost just created (never before seen this crawl)
+     */
+    public void hostCreated(CrawlHost host);
+
+    /**
+     * @param server CrawlServer just created (never before seen this crawl)
+     */
+    public void serverCreated(CrawlServer server);
+}
@@ -18,6 +18,8 @@
  */
 package org.archive.modules.seeds;
 
+import java.util.List;
+
 import org.archive.modules.CrawlURI;
 
 /**
@@ -28,6 +30,17 @@ import org.archive.modules.CrawlURI;
  */
 public interface SeedListener {
     void addedSeed(final CrawlURI uuri);
+    /**
+     * Notification of many seeds at once, as from a bulk load. By default,
+     * equivalent to {@link #addedSeed(CrawlURI)} for each; listeners that
+     * can handle a batch more efficiently than one seed at a time should
+     * override.
+     */
+    default void addedSeeds(List<CrawlURI> curis) {
+        for (CrawlURI curi : curis) {
+            addedSeed(curi);
+        }
+    }
     boolean nonseedLine(String line);
     void concludedSeedBatch();
 }
@@ -22,6 +22,7 @@ package org.archive.modules.seeds;
 import java.io.File;
 import java.io.Serializable;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.archive.modules.CrawlURI;
@@ -60,6 +61,11 @@ public abstract class SeedModule implements Serializable
             l.addedSeed(curi);
         }
     }
+    protected void publishAddedSeeds(List<CrawlURI> curis) {
+        for (SeedListener l: seedListeners) {
+            l.addedSeeds(curis);
+        }
+    }
     protected void publishNonSeedLine(String line) {
         for (SeedListener l: seedListeners) {
             l.nonseedLine(line);
@@ -24,8 +24,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -85,6 +94,35 @@ implements ReadSource {
         this.blockAwaitingSeedLines = blockAwaitingSeedLines;
     }
 
+    /**
+     * Number of seed lines to load as one batch, or 0 (the default) to load
+     * seeds one line at a time. When set, lines are parsed into seeds by
+     * several threads at once, and each batch is announced to SeedListeners
+     * together (sorted, so seeds of the same host are adjacent), letting
+     * listeners such as the frontier and SURT-prefix rules handle the batch
+     * in one pass. Useful with very large seed lists, especially together
+     * with blockAwaitingSeedLines so fetching begins after the first
+     * batches while the rest load.
+     */
+    protected int bulkLoadBatchSize = 0;
+    public int getBulkLoadBatchSize() {
+        return bulkLoadBatchSize;
+    }
+    public void setBulkLoadBatchSize(int bulkLoadBatchSize) {
+        this.bulkLoadBatchSize = bulkLoadBatchSize;
+    }
+
+    /**
+     * Number of threads parsing seed lines when bulkLoadBatchSize is set.
+     */
+    protected int bulkLoadThreads = Runtime.getRuntime().availableProcessors();
+    public int getBulkLoadThreads() {
+        return bulkLoadThreads;
+    }
+    public void setBulkLoadThreads(int bulkLoadThreads) {
+        this.bulkLoadThreads = bulkLoadThreads;
+    }
+
     public TextSeedModule() {
     }
 
@@ -140,6 +178,11 @@ implements ReadSource {
                     RegexLineIterator.NONWHITESPACE_ENTRY_TRAILING_COMMENT,
                     RegexLineIterator.ENTRY);
 
+        if (getBulkLoadBatchSize() > 0) {
+            announceSeedBatches(iter, latchOrNull);
+            return;
+        }
+
         int count = 0; 
         while (iter.hasNext()) {
             s = (String) iter.next();
@@ -161,6 +204,107 @@ implements ReadSource {
         publishConcludedSeedBatch(); 
     }
     
+    /** seed and nonseed lines of one batch, in the order read */
+    protected static class SeedBatch {
+        final List<String> lines;
+        final List<CrawlURI> seeds = new ArrayList<CrawlURI>();
+        final List<String> nonseeds = new ArrayList<String>();
+        SeedBatch(List<String> lines) {
+            this.lines = lines;
+        }
+    }
+
+    /** orders seeds by URI, grouping those of the same host */
+    protected static final Comparator<CrawlURI> BY_URI =
+        Comparator.comparing(CrawlURI::getURI);
+
+    /**
+     * Announce seeds (and nonseed lines) in batches of bulkLoadBatchSize
+     * lines. This thread reads lines and announces each parsed batch, in
+     * the order read, while a pool of threads parses the batches ahead of
+     * it.
+     */
+    protected void announceSeedBatches(Iterator<String> iter, CountDownLatch latchOrNull) {
+        int threads = Math.max(1, getBulkLoadThreads());
+        ExecutorService parsers = Executors.newFixedThreadPool(threads);
+        Deque<Future<SeedBatch>> pending = new ArrayDeque<Future<SeedBatch>>();
+        long count = 0;
+        try {
+            List<String> lines = new ArrayList<String>(getBulkLoadBatchSize());
+            while (iter.hasNext()) {
+                lines.add(iter.next());
+                if (lines.size() >= getBulkLoadBatchSize()) {
+                    pending.add(submitBatch(parsers, lines));
+                    lines = new ArrayList<String>(getBulkLoadBatchSize());
+                    // announce what's parsed; wait if too far ahead
+                    while (!pending.isEmpty() && (pending.size() > 2 * threads
+                            || pending.peek().isDone())) {
+                        count += announceBatch(pending.poll().get(), latchOrNull);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                pending.add(submitBatch(parsers, lines));
+            }
+            while (!pending.isEmpty()) {
+                count += announceBatch(pending.poll().get(), latchOrNull);
+            }
+        } catch (InterruptedException e) {
+            logger.warning("interrupted loading seeds, after " + count);
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "problem loading seeds, after " + count,
+                    e.getCause());
+        } finally {
+            parsers.shutdownNow();
+        }
+        logger.info("loaded " + count + " seeds");
+        publishConcludedSeedBatch();
+    }
+
+    protected Future<SeedBatch> submitBatch(ExecutorService parsers,
+            final List<String> lines) {
+        return parsers.submit(() -> parseBatch(new SeedBatch(lines)));
+    }
+
+    protected SeedBatch parseBatch(SeedBatch batch) {
+        for (String s : batch.lines) {
+            if (Character.isLetterOrDigit(s.charAt(0))) {
+                String uri = withScheme(s);
+                try {
+                    batch.seeds.add(seedFrom(s, uri));
+                } catch (URIException e) {
+                    batch.nonseeds.add(uri);
+                }
+            } else {
+                batch.nonseeds.add(s);
+            }
+        }
+        batch.seeds.sort(BY_URI);
+        return batch;
+    }
+
+    /**
+     * Announce a parsed batch: first its nonseed lines (which may be
+     * directives, such as SURT prefixes, affecting how seeds are taken),
+     * then its seeds.
+     *
+     * @return number of seeds announced
+     */
+    protected int announceBatch(SeedBatch batch, CountDownLatch latchOrNull) {
+        for (String line : batch.nonseeds) {
+            nonseedLine(line);
+        }
+        if (!batch.seeds.isEmpty()) {
+            publishAddedSeeds(batch.seeds);
+        }
+        if (latchOrNull != null) {
+            for (int i = 0; i < batch.lines.size() && latchOrNull.getCount() > 0; i++) {
+                latchOrNull.countDown();
+            }
+        }
+        return batch.seeds.size();
+    }
+
     /**
      * Handle a read line that is probably a seed.
      * 
@@ -168,24 +312,43 @@ implements ReadSource {
      */
     protected void seedLine(String uri) {
         String originalUri = uri;
+        uri = withScheme(uri);
+        try {
+            publishAddedSeed(seedFrom(originalUri, uri));
+        } catch (URIException e) {
+            // try as nonseed line as fallback
+            nonseedLine(uri);
+        }
+    }
+
+    /**
+     * The given seed line, with http:// prepended if it doesn't begin with
+     * a scheme.
+     */
+    protected String withScheme(String uri) {
         if (!uri.matches("[a-zA-Z][\\w+\\-]+:.*")) { // Rfc2396 s3.1 scheme,
                                                      // minus '.'
             // Does not begin with scheme, so try http://
             uri = "http://" + uri;
         }
-        try {
-            UURI uuri = UURIFactory.getInstance(uri);
-            CrawlURI curi = new CrawlURI(uuri);
-            curi.setSeed(true);
-            curi.setSchedulingDirective(SchedulingConstants.MEDIUM);
-            if (getSourceTagSeeds()) {
-                curi.setSourceTag(originalUri);
-            }
-            publishAddedSeed(curi);
-        } catch (URIException e) {
-            // try as nonseed line as fallback
-            nonseedLine(uri);
+        return uri;
+    }
+
+    /**
+     * Make a seed CrawlURI.
+     * 
+     * @param originalUri seed line as read, for the source tag
+     * @param uri seed URI, with scheme
+     */
+    protected CrawlURI seedFrom(String originalUri, String uri) throws URIException {
+        UURI uuri = UURIFactory.getInstance(uri);
+        CrawlURI curi = new CrawlURI(uuri);
+        curi.setSeed(true);
+        curi.setSchedulingDirective(SchedulingConstants.MEDIUM);
+        if (getSourceTagSeeds()) {
+            curi.setSourceTag(originalUri);
         }
+        return curi;
     }
     
     /**
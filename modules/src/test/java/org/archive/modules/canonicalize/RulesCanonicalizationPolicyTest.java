@@ -19,6 +19,11 @@
 
 package org.archive.modules.canonicalize;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
 import org.archive.url.URIException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -64,4 +69,60 @@ public class RulesCanonicalizationPolicyTest {
         assertEquals(result, policy.canonicalize(tmp),
                 "Mangled sessionid");
     }
+
+    private static final String[] FRAGMENTS = {
+        "http://", "HTTPS://", "ftp://", "Http://", "www.", "WWW3.", "www12",
+        "archive.org", "user:pw@", "@", "/", "//", "///", "?", "&", "?&",
+        "=", "x=y", "index.html", "jsessionid=", "PHPSESSID=", "sid=",
+        "ASPSESSIONIDAQBSDSRT=", "EOHBLBDDPFCLHKPGGKLILNAM",
+        "0123456789abcdefghijklemopqrstuv", "0123456789ABCDEFGHIJKLEMOPQRSTUV",
+        "CFID=1169580", "&CFTOKEN=48630702", "&jsession=a63", ";", "%20",
+        "\u00e9", "\u0130", "\n", "ab", "Z"
+    };
+
+    protected List<CanonicalizationRule> allRules() {
+        List<CanonicalizationRule> rules = RulesCanonicalizationPolicy.getDefaultRules();
+        rules.add(new StripWWWRule());
+        rules.add(new StripExtraSlashes());
+        RegexRule regex = new RegexRule();
+        regex.setRegex(Pattern.compile("(.*/)index\\.html(.*)"));
+        regex.setFormat("$1$2");
+        rules.add(regex);
+        return rules;
+    }
+
+    /**
+     * Differential test: canonicalizing in place must give just what each
+     * rule's canonicalize(String) gives.
+     */
+    @Test
+    public void testInPlaceMatchesRuleByRule() {
+        List<CanonicalizationRule> rules = allRules();
+        policy.setRules(rules);
+        Random random = new Random(1);
+        List<String> urls = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder url = new StringBuilder();
+            for (int n = random.nextInt(12); n >= 0; n--) {
+                url.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            urls.add(url.toString());
+        }
+        urls.add("");
+        urls.add("http://www.archive.org/a?one=two&jsessionid=0123456789abcdefghijklemopqrstuv&x=y");
+        urls.add("http://archive.org/a?CFID=1&CFTOKEN=2&jsession=3&x=y");
+        for (String url : urls) {
+            String expected = url;
+            for (CanonicalizationRule rule : rules) {
+                String before = expected;
+                expected = rule.canonicalize(before);
+                StringBuilder buffer = new StringBuilder(before);
+                if (((BaseRule) rule).canonicalize(buffer)) {
+                    assertEquals(expected, buffer.toString(),
+                            rule.getClass().getSimpleName() + " on " + before);
+                }
+            }
+            assertEquals(expected, policy.canonicalize(url), url);
+        }
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.deciderules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+import org.archive.url.URIException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a compiled {@link DecideRuleSequence} reaches the same
+ * decisions, by the same decisive rules, as the rule-by-rule sequence.
+ */
+public class CompiledDecideRuleSequenceTest {
+
+    /** sequence remembering its last decisive rule */
+    public static class RecordingSequence extends DecideRuleSequence {
+        private static final long serialVersionUID = 1L;
+        int lastDecisive;
+        @Override
+        protected void decisionMade(CrawlURI uri, DecideRule decisiveRule,
+                int decisiveRuleNumber, DecideResult result) {
+            lastDecisive = decisiveRuleNumber;
+        }
+    }
+
+    protected MatchesRegexDecideRule regexRule(String regex, DecideResult decision) {
+        MatchesRegexDecideRule rule = new MatchesRegexDecideRule();
+        rule.setRegex(Pattern.compile(regex));
+        rule.setDecision(decision);
+        return rule;
+    }
+
+    protected List<DecideRule> rules() {
+        List<DecideRule> rules = new ArrayList<DecideRule>();
+        rules.add(new RejectDecideRule());
+        rules.add(regexRule("https?://(www\\.)?example\\.com/.*", DecideResult.ACCEPT));
+        rules.add(regexRule(".*\\.example\\.org/.*", DecideResult.ACCEPT));
+        rules.add(regexRule("http://([a-z]+)\\.example\\.net/\\1.*", DecideResult.ACCEPT));
+        TooManyHopsDecideRule hops = new TooManyHopsDecideRule();
+        hops.setMaxHops(3);
+        rules.add(hops);
+        AcceptDecideRule disabled = new AcceptDecideRule();
+        disabled.setEnabled(false);
+        rules.add(disabled);
+        rules.add(regexRule(".*/calendar/.*", DecideResult.REJECT));
+        rules.add(regexRule(".*\\.(js|css)", DecideResult.REJECT));
+        return rules;
+    }
+
+    protected CrawlURI curi(String uri, String hops) throws URIException {
+        return new CrawlURI(UURIFactory.getInstance(uri), hops, null, null);
+    }
+
+    @Test
+    public void testSameDecisions() throws URIException {
+        RecordingSequence interpreted = new RecordingSequence();
+        interpreted.setRules(rules());
+        RecordingSequence compiled = new RecordingSequence();
+        compiled.setRules(rules());
+        compiled.setCompile(true);
+
+        List<String> uris = Arrays.asList(
+                "http://example.com/a",
+                "https://www.example.com/calendar/2024",
+                "http://foo.example.org/x.js",
+                "http://foo.example.org/y.html",
+                "http://abc.example.net/abc/z",
+                "http://abc.example.net/xyz/z",
+                "http://elsewhere.com/calendar/",
+                "http://elsewhere.com/style.css",
+                "http://elsewhere.com/");
+        for (String uri : uris) {
+            for (String hops : Arrays.asList("", "LL", "LLLLL")) {
+                DecideResult expected = interpreted.decisionFor(curi(uri, hops));
+                DecideResult actual = compiled.decisionFor(curi(uri, hops));
+                assertEquals(expected, actual, uri + " " + hops);
+                assertEquals(interpreted.lastDecisive, compiled.lastDecisive, uri + " " + hops);
+            }
+        }
+    }
+
+    @Test
+    public void testPlan() {
+        CompiledDecideRuleSequence plan = new CompiledDecideRuleSequence(rules());
+        // reject; two regexes merged (the backreference keeps the third
+        // apart); hops; two rejecting regexes merged
+        assertEquals(5, plan.steps.length);
+        assertTrue(plan.steps[1] instanceof CompiledDecideRuleSequence.RegexStep);
+        assertTrue(plan.steps[4] instanceof CompiledDecideRuleSequence.RegexStep);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.deciderules.surt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.archive.modules.CrawlURI;
+import org.archive.net.UURIFactory;
+import org.archive.spring.ConfigFile;
+import org.archive.spring.ConfigString;
+import org.archive.url.URIException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests SURT prefixes deduced from seeds, announced one at a time and in
+ * batches, and the saved prefix index.
+ */
+public class SurtPrefixedDecideRuleTest {
+    @TempDir
+    File tempDir;
+
+    protected static final List<String> SEEDS = Arrays.asList(
+            "http://example.com/a/b/c",
+            "http://example.com/a/",
+            "http://www.example.org/",
+            "http://example.net/x/y");
+
+    protected static final List<String> PROBES = Arrays.asList(
+            "http://example.com/a/z",
+            "http://example.com/a/b/d",
+            "http://example.com/b",
+            "http://www.example.org/anything",
+            "http://example.org/",
+            "http://example.net/x/z",
+            "http://example.net/y");
+
+    protected List<CrawlURI> seeds(List<String> uris) throws URIException {
+        List<CrawlURI> seeds = new ArrayList<CrawlURI>();
+        for (String uri : uris) {
+            CrawlURI curi = new CrawlURI(UURIFactory.getInstance(uri));
+            curi.setSeed(true);
+            seeds.add(curi);
+        }
+        return seeds;
+    }
+
+    protected boolean accepts(SurtPrefixedDecideRule rule, String uri) throws URIException {
+        return rule.evaluate(new CrawlURI(UURIFactory.getInstance(uri)));
+    }
+
+    @Test
+    public void testAddedSeedsBatch() throws URIException {
+        SurtPrefixedDecideRule batched = new SurtPrefixedDecideRule();
+        batched.addedSeeds(seeds(SEEDS));
+        batched.surtPrefixes.compact();
+
+        SurtPrefixedDecideRule oneAtATime = new SurtPrefixedDecideRule();
+        for (CrawlURI seed : seeds(SEEDS)) {
+            oneAtATime.addedSeed(seed);
+        }
+        oneAtATime.surtPrefixes.compact();
+
+        for (String probe : PROBES) {
+            assertEquals(accepts(oneAtATime, probe), accepts(batched, probe), probe);
+        }
+        assertTrue(accepts(batched, "http://example.com/a/z"));
+        assertFalse(accepts(batched, "http://example.com/b"));
+        assertTrue(accepts(batched, "http://example.net/x/z"));
+        assertFalse(accepts(batched, "http://example.net/y"));
+        // ".../a/b/" is covered by ".../a/"
+        assertEquals(3, batched.surtPrefixes.size());
+    }
+
+    @Test
+    public void testAddedSeedsInSeveralBatches() throws URIException {
+        SurtPrefixedDecideRule rule = new SurtPrefixedDecideRule();
+        // the covering prefix arrives in a later batch
+        rule.addedSeeds(seeds(SEEDS.subList(0, 1)));
+        rule.addedSeeds(seeds(SEEDS.subList(1, 4)));
+        rule.surtPrefixes.compact();
+        SurtPrefixedDecideRule single = new SurtPrefixedDecideRule();
+        single.addedSeeds(seeds(SEEDS));
+        for (String probe : PROBES) {
+            assertEquals(accepts(single, probe), accepts(rule, probe), probe);
+        }
+        assertEquals(3, rule.surtPrefixes.size());
+    }
+
+    @Test
+    public void testSeedsNotAsPrefixes() throws URIException {
+        SurtPrefixedDecideRule rule = new SurtPrefixedDecideRule();
+        rule.setSeedsAsSurtPrefixes(false);
+        rule.addedSeeds(seeds(SEEDS));
+        assertEquals(0, rule.surtPrefixes.size());
+        assertFalse(accepts(rule, "http://example.com/a/z"));
+    }
+
+    protected SurtPrefixedDecideRule indexedRule(String surts) {
+        SurtPrefixedDecideRule rule = new SurtPrefixedDecideRule();
+        rule.setSurtsSource(new ConfigString(surts));
+        rule.setSurtsIndexFile(new ConfigFile("surtsIndexFile",
+                new File(tempDir, "surts.index").getAbsolutePath()));
+        return rule;
+    }
+
+    @Test
+    public void testIndexFollowsInlineSource() throws Exception {
+        SurtPrefixedDecideRule rule = indexedRule("+http://(com,example,\n");
+        rule.buildSurtPrefixSet();
+        assertTrue(accepts(rule, "http://example.com/"));
+        File index = new File(tempDir, "surts.index");
+        assertTrue(index.isFile());
+        assertTrue(rule.getIndexKeyFile(index).isFile());
+
+        // changed inline text: the index is rebuilt, not reused
+        rule = indexedRule("+http://(org,example,\n");
+        rule.buildSurtPrefixSet();
+        assertTrue(accepts(rule, "http://example.org/"));
+        assertFalse(accepts(rule, "http://example.com/"));
+
+        // same text again: the index is reused, not rewritten
+        index.setLastModified(1000);
+        rule = indexedRule("+http://(org,example,\n");
+        rule.buildSurtPrefixSet();
+        assertTrue(accepts(rule, "http://example.org/"));
+        assertEquals(1000, index.lastModified());
+    }
+}
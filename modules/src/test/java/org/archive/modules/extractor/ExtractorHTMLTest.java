@@ -33,6 +33,7 @@ import org.archive.util.Recorder;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ExtractorHTMLTest extends StringExtractorTestBase {
@@ -411,6 +412,83 @@ public class ExtractorHTMLTest extends StringExtractorTestBase {
         assertEquals(dest2, links[2].getURI(), "outlink2 from base href");
     }
 
+    @Test
+    public void testLinkBlockCache() throws URIException {
+        HTMLLinkBlockCache cache = new HTMLLinkBlockCache();
+        getExtractor().setLinkBlockCache(cache);
+        CharSequence nav =
+            "<a href=\"def/another1.html\">" +
+            "<img src=\"logo.gif\">" +
+            "<a href=\"javascript:go('/ghi/another2.html')\">";
+
+        CrawlURI first = new CrawlURI(UURIFactory
+                .getInstance("http://www.example.com/abc/index.html"));
+        getExtractor().extract(first, nav);
+        CrawlURI second = new CrawlURI(UURIFactory
+                .getInstance("http://www.example.com/xyz/index.html"));
+        getExtractor().extract(second, nav);
+
+        HTMLLinkBlockCache.HostBlocks blocks = cache.blocksFor(second);
+        // the two plain tags are cached; the javascript link is not
+        assertEquals(2, blocks.size());
+        assertEquals(2, blocks.getHits());
+        assertEquals(4, blocks.getMisses());
+
+        // cached relative links are resolved against the current page
+        assertTrue(CollectionUtils.exists(second.getOutLinks(),
+                destinationsIsPredicate("http://www.example.com/xyz/def/another1.html")));
+        assertTrue(CollectionUtils.exists(second.getOutLinks(),
+                destinationsIsPredicate("http://www.example.com/xyz/logo.gif")));
+        assertEquals(first.getOutLinks().size(), second.getOutLinks().size());
+    }
+
+    @Test
+    public void testLinkBlockCacheCodebase() throws URIException {
+        getExtractor().setLinkBlockCache(new HTMLLinkBlockCache());
+        CharSequence applet =
+            "<object codebase=\"applets/\" classid=\"Nav.class\">";
+
+        CrawlURI first = new CrawlURI(UURIFactory
+                .getInstance("http://www.example.com/abc/index.html"));
+        getExtractor().extract(first, applet);
+        CrawlURI second = new CrawlURI(UURIFactory
+                .getInstance("http://www.example.com/xyz/index.html"));
+        getExtractor().extract(second, applet);
+
+        // resolved against each page's own codebase, not replayed
+        assertTrue(CollectionUtils.exists(first.getOutLinks(),
+                destinationsIsPredicate("http://www.example.com/abc/applets/Nav.class")));
+        assertTrue(CollectionUtils.exists(second.getOutLinks(),
+                destinationsIsPredicate("http://www.example.com/xyz/applets/Nav.class")));
+        assertFalse(CollectionUtils.exists(second.getOutLinks(),
+                destinationsIsPredicate("http://www.example.com/abc/applets/Nav.class")));
+        assertEquals(0, getExtractor().getLinkBlockCache().blocksFor(second).size());
+    }
+
+    @Test
+    public void testLinkBlockCacheCountsLinks() throws URIException {
+        CharSequence nav =
+            "<a href=\"def/another1.html\">" +
+            "<img srcset=\"a.png 1x, b.png 2x\">" +
+            "<link rel=\"stylesheet\" href=\"site.css\">";
+        CrawlURI page = new CrawlURI(UURIFactory
+                .getInstance("http://www.example.com/abc/index.html"));
+
+        long before = getExtractor().numberOfLinksExtracted.get();
+        getExtractor().extract(page, nav);
+        long uncached = getExtractor().numberOfLinksExtracted.get() - before;
+
+        getExtractor().setLinkBlockCache(new HTMLLinkBlockCache());
+        for (int i = 0; i < 2; i++) {
+            // a miss, then a hit
+            before = getExtractor().numberOfLinksExtracted.get();
+            getExtractor().extract(new CrawlURI(UURIFactory
+                    .getInstance("http://www.example.com/abc/page" + i + ".html")), nav);
+            assertEquals(uncached, getExtractor().numberOfLinksExtracted.get() - before);
+        }
+        assertEquals(3, getExtractor().getLinkBlockCache().blocksFor(page).getHits());
+    }
+
     protected Predicate destinationContainsPredicate(final String fragment) {
         return new Predicate() {
             public boolean evaluate(Object object) {
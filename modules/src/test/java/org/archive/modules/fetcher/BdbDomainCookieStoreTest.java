@@ -0,0 +1,150 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.fetcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.http.cookie.ClientCookie;
+import org.apache.http.cookie.Cookie;
+import org.apache.http.impl.cookie.BasicClientCookie;
+import org.archive.bdb.BdbModule;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the {@link CookieStoreTest} checks against
+ * {@link BdbDomainCookieStore}, and checks its per-domain records.
+ */
+public class BdbDomainCookieStoreTest extends CookieStoreTest {
+
+    @Override
+    protected AbstractCookieStore newCookieStore(BdbModule bdb) {
+        BdbDomainCookieStore store = new BdbDomainCookieStore();
+        store.setBdbModule(bdb);
+        // few enough that records are often reloaded
+        store.setCachedDomains(2);
+        return store;
+    }
+
+    protected BasicClientCookie cookie(String name, String domain) {
+        BasicClientCookie cookie = new BasicClientCookie(name, "value-" + name);
+        cookie.setDomain(domain);
+        return cookie;
+    }
+
+    protected List<String> namesFor(String host) throws IOException {
+        List<String> names = new ArrayList<String>();
+        for (Cookie cookie : bdbCookieStore().cookieStoreFor(host).getCookies()) {
+            names.add(cookie.getName());
+        }
+        names.sort(null);
+        return names;
+    }
+
+    @Test
+    public void testHostAndParentDomains() throws IOException {
+        bdbCookieStore().clear();
+        bdbCookieStore().addCookie(cookie("a", "example.co.uk"));
+        bdbCookieStore().addCookie(cookie("b", "www.example.co.uk"));
+        bdbCookieStore().addCookie(cookie("c", "other.example.co.uk"));
+        bdbCookieStore().addCookie(cookie("d", "example.com"));
+        bdbCookieStore().addCookie(cookie("e", "co.uk"));
+
+        assertEquals(List.of("a", "b", "e"), namesFor("www.example.co.uk"));
+        assertEquals(List.of("a", "e"), namesFor("example.co.uk"));
+        assertEquals(List.of("a", "e"), namesFor("deep.sub.example.co.uk"));
+        assertEquals(List.of("d"), namesFor("www.example.com"));
+        assertEquals(List.of(), namesFor("example.org"));
+        assertEquals(List.of(), namesFor("192.168.1.1"));
+
+        // records of all of example.co.uk together, co.uk on its own
+        BdbDomainCookieStore store = (BdbDomainCookieStore) bdbCookieStore();
+        assertEquals("example.co.uk", store.recordKey("www.example.co.uk"));
+        assertEquals("co.uk", store.recordKey("co.uk"));
+        assertEquals("example.co.uk;www.example.co.uk",
+                store.recordName("example.co.uk", "www.example.co.uk"));
+    }
+
+    @Test
+    public void testCountsAcrossParentDomains() throws IOException {
+        bdbCookieStore().clear();
+        int half = BdbDomainCookieStore.MAX_COOKIES_FOR_DOMAIN / 2;
+        for (int i = 0; i < half; i++) {
+            bdbCookieStore().addCookie(cookie("parent" + i, "example.com"));
+            bdbCookieStore().addCookie(cookie("child" + i, "www.example.com"));
+        }
+        assertTrue(bdbCookieStore().isCookieCountMaxedForDomain("www.example.com"));
+        assertFalse(bdbCookieStore().isCookieCountMaxedForDomain("example.com"));
+        assertFalse(bdbCookieStore().isCookieCountMaxedForDomain("other.example.com"));
+    }
+
+    @Test
+    public void testLazyExpiry() throws IOException {
+        bdbCookieStore().clear();
+        BasicClientCookie soon = cookie("soon", "example.com");
+        soon.setExpiryDate(new Date(System.currentTimeMillis() + 200));
+        bdbCookieStore().addCookie(soon);
+        bdbCookieStore().addCookie(cookie("lasting", "example.com"));
+        assertEquals(List.of("lasting", "soon"), namesFor("example.com"));
+        assertEquals(2, bdbCookieStore().getCookies().size());
+
+        try {
+            Thread.sleep(300);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        assertEquals(List.of("lasting"), namesFor("example.com"));
+        // and removed from storage
+        assertEquals(1, bdbCookieStore().getCookies().size());
+    }
+
+    @Test
+    public void testRecordRoundTrip() throws IOException {
+        bdbCookieStore().clear();
+        BasicClientCookie cookie = cookie("full", "example.com");
+        cookie.setPath("/some/path");
+        cookie.setSecure(true);
+        cookie.setComment("comment");
+        cookie.setVersion(1);
+        cookie.setExpiryDate(new Date(System.currentTimeMillis() + 999999999L));
+        cookie.setAttribute(ClientCookie.DOMAIN_ATTR, "example.com");
+        cookie.setAttribute("httponly", null);
+        bdbCookieStore().addCookie(cookie);
+        // push the record out of memory
+        for (int i = 0; i < 4; i++) {
+            bdbCookieStore().addCookie(cookie("other", "example" + i + ".org"));
+        }
+
+        List<Cookie> cookies = bdbCookieStore().cookieStoreFor("www.example.com").getCookies();
+        assertEquals(1, cookies.size());
+        BasicClientCookie loaded = (BasicClientCookie) cookies.get(0);
+        assertCookiesIdentical(cookie, loaded);
+        assertEquals(cookie.isSecure(), loaded.isSecure());
+        assertEquals(cookie.getCreationDate(), loaded.getCreationDate());
+        assertEquals("example.com", loaded.getAttribute(ClientCookie.DOMAIN_ATTR));
+        assertTrue(loaded.containsAttribute("httponly"));
+        assertFalse(loaded.containsAttribute(ClientCookie.MAX_AGE_ATTR));
+    }
+}
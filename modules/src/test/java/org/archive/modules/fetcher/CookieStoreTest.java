@@ -59,7 +59,7 @@ public class CookieStoreTest {
     @TempDir
     Path tempDir;
     protected BdbModule bdb;
-    protected BdbCookieStore bdbCookieStore;
+    protected AbstractCookieStore bdbCookieStore;
     protected BasicCookieStore basicCookieStore;
 
     protected BdbModule bdb() throws IOException {
@@ -78,15 +78,21 @@ public class CookieStoreTest {
         return bdb;
     }
 
+    /** the store under test, not yet started */
+    protected AbstractCookieStore newCookieStore(BdbModule bdb) {
+        BdbCookieStore store = new BdbCookieStore();
+        store.setBdbModule(bdb);
+        return store;
+    }
+
     protected AbstractCookieStore bdbCookieStore() throws IOException {
         if (bdbCookieStore == null) {
-            bdbCookieStore = new BdbCookieStore();
+            bdbCookieStore = newCookieStore(bdb());
             ConfigPath basePath = new ConfigPath("testBase",
                     tempDir.toAbsolutePath().toString());
             ConfigFile cookiesSaveFile = new ConfigFile("cookiesSaveFile", "cookies.txt");
             cookiesSaveFile.setBase(basePath);
             bdbCookieStore.setCookiesSaveFile(cookiesSaveFile);
-            bdbCookieStore.setBdbModule(bdb());
             bdbCookieStore.start();
         }
         return bdbCookieStore;
@@ -353,7 +359,7 @@ public class CookieStoreTest {
         assertCookieListsEquivalent(bdbCookieList, basicCookieStore().getCookies());        
     }
 
-    protected void assertCookieStoreCountEquals(BdbCookieStore bdb, int count) {
+    protected void assertCookieStoreCountEquals(AbstractCookieStore bdb, int count) {
         assertEquals(bdb.getCookies().size(), count);
     }    
 
@@ -18,7 +18,24 @@
  */
 package org.archive.modules.fetcher;
 
+import static org.archive.modules.fetcher.FetchStatusCodes.S_DNS_SUCCESS;
+import static org.archive.modules.fetcher.FetchStatusCodes.S_DOMAIN_UNRESOLVABLE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.net.InetAddress;
+
+import org.archive.modules.CrawlURI;
 import org.archive.modules.ProcessorTestBase;
+import org.archive.modules.net.CachingDnsResolver;
+import org.archive.modules.net.DefaultServerCache;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
 
 /**
  * @author pjack
@@ -26,6 +43,60 @@ import org.archive.modules.ProcessorTestBase;
  */
 public class FetchDNSTest extends ProcessorTestBase {
 
-    // TODO TESTME!
-    
+    /**
+     * A FetchDNS whose resolver answers with the given records, as a
+     * recursive server would, without going to the network.
+     */
+    protected FetchDNS makeFetcher(final int rcode, final Record... records) {
+        FetchDNS fetcher = new FetchDNS();
+        fetcher.setServerCache(new DefaultServerCache());
+        fetcher.setDnsResolver(new CachingDnsResolver() {
+            @Override
+            public DnsResult lookup(String name) {
+                InetAddress address = null;
+                for (Record record : records) {
+                    if (address == null && record instanceof ARecord) {
+                        address = ((ARecord) record).getAddress();
+                    }
+                }
+                return new DnsResult(name, rcode, records.length == 0 ? null : records,
+                        address, 300, System.currentTimeMillis());
+            }
+        });
+        return fetcher;
+    }
+
+    protected CrawlURI fetch(FetchDNS fetcher, String host) throws Exception {
+        CrawlURI curi = makeCrawlURI("dns:" + host);
+        fetcher.process(curi);
+        return curi;
+    }
+
+    @Test
+    public void testAnswerWithoutARecordUnresolvable() throws Exception {
+        Name name = Name.fromString("alias.example.com.");
+        FetchDNS fetcher = makeFetcher(Rcode.NOERROR, new CNAMERecord(name,
+                DClass.IN, 300, Name.fromString("gone.example.com.")));
+        CrawlURI curi = fetch(fetcher, "alias.example.com");
+        assertEquals(S_DOMAIN_UNRESOLVABLE, curi.getFetchStatus());
+        assertNull(fetcher.getServerCache().getHostFor("alias.example.com").getIP());
+
+        fetcher = makeFetcher(Rcode.NXDOMAIN, new CNAMERecord(name,
+                DClass.IN, 300, Name.fromString("gone.example.com.")));
+        curi = fetch(fetcher, "alias.example.com");
+        assertEquals(S_DOMAIN_UNRESOLVABLE, curi.getFetchStatus());
+    }
+
+    @Test
+    public void testCnameFollowedToARecord() throws Exception {
+        Name name = Name.fromString("alias.example.com.");
+        Name target = Name.fromString("www.example.com.");
+        InetAddress ip = InetAddress.getByAddress(new byte[] {10, 1, 2, 3});
+        FetchDNS fetcher = makeFetcher(Rcode.NOERROR,
+                new CNAMERecord(name, DClass.IN, 300, target),
+                new ARecord(target, DClass.IN, 300, ip));
+        CrawlURI curi = fetch(fetcher, "alias.example.com");
+        assertEquals(S_DNS_SUCCESS, curi.getFetchStatus());
+        assertEquals(ip, fetcher.getServerCache().getHostFor("alias.example.com").getIP());
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.archive.modules.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.archive.modules.net.CachingDnsResolver.DnsResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+
+public class CachingDnsResolverTest {
+
+    /**
+     * Minimal UDP DNS server: answers example.com. with an A record,
+     * anything else with NXDOMAIN, after a short delay.
+     */
+    protected DatagramSocket socket;
+    protected Thread serverThread;
+    protected AtomicInteger received = new AtomicInteger(0);
+
+    protected CachingDnsResolver resolver;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        serverThread = new Thread("stub-dns") {
+            public void run() {
+                serve();
+            }
+        };
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        resolver = new CachingDnsResolver();
+        resolver.setServer("127.0.0.1:" + socket.getLocalPort());
+        resolver.setTimeoutMs(2000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        socket.close();
+    }
+
+    protected void serve() {
+        byte[] buf = new byte[512];
+        while (!socket.isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buf, buf.length);
+                socket.receive(packet);
+                received.incrementAndGet();
+                Message query = new Message(
+                        Arrays.copyOf(packet.getData(), packet.getLength()));
+                Thread.sleep(100);
+                byte[] out = answer(query).toWire();
+                socket.send(new DatagramPacket(out, out.length,
+                        packet.getSocketAddress()));
+            } catch (IOException | InterruptedException e) {
+                // socket closed
+                return;
+            }
+        }
+    }
+
+    protected Message answer(Message query) throws IOException {
+        Record question = query.getQuestion();
+        Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        response.getHeader().setFlag(Flags.RA);
+        response.addRecord(question, Section.QUESTION);
+        Name name = question.getName();
+        if (name.equals(Name.fromString("example.com."))) {
+            response.addRecord(new ARecord(name, DClass.IN, 300,
+                    InetAddress.getByAddress(new byte[] {10, 1, 2, 3})),
+                    Section.ANSWER);
+        } else if (name.equals(Name.fromString("servfail.com."))) {
+            response.getHeader().setRcode(Rcode.SERVFAIL);
+        } else {
+            response.getHeader().setRcode(Rcode.NXDOMAIN);
+            response.addRecord(new SOARecord(Name.fromString("com."),
+                    DClass.IN, 900, Name.fromString("ns.com."),
+                    Name.fromString("admin.com."), 1, 3600, 600, 86400, 60),
+                    Section.AUTHORITY);
+        }
+        return response;
+    }
+
+    @Test
+    public void testPositiveCached() throws Exception {
+        DnsResult result = resolver.lookup("example.com");
+        assertEquals(Rcode.NOERROR, result.getRcode());
+        assertEquals("10.1.2.3", result.getAddress().getHostAddress());
+        assertEquals(300, result.getTtlSeconds());
+        assertNotNull(result.getRecords());
+
+        assertSame(result, resolver.lookup("EXAMPLE.com."));
+        assertEquals(1, received.get());
+        assertEquals(1, resolver.getQueries());
+        assertEquals(1, resolver.getCacheHits());
+    }
+
+    @Test
+    public void testNegativeCached() throws Exception {
+        resolver.setNegativeTtlSeconds(3600);
+        DnsResult result = resolver.lookup("nonexistent.com");
+        assertEquals(Rcode.NXDOMAIN, result.getRcode());
+        assertTrue(result.isNegative());
+        assertFalse(result.isFailure());
+        assertNull(result.getRecords());
+        // SOA minimum, being lower than the configured negative TTL
+        assertEquals(60, result.getTtlSeconds());
+
+        assertSame(result, resolver.getCached("nonexistent.com"));
+        resolver.lookup("nonexistent.com");
+        assertEquals(1, received.get());
+    }
+
+    @Test
+    public void testServerFailureNotCached() throws Exception {
+        DnsResult result = resolver.lookup("servfail.com");
+        assertEquals(Rcode.SERVFAIL, result.getRcode());
+        assertTrue(result.isNegative());
+        assertFalse(result.isCacheable());
+        assertNull(resolver.getCached("servfail.com"));
+
+        resolver.lookup("servfail.com");
+        assertEquals(2, received.get());
+    }
+
+    @Test
+    public void testRemainingTtl() throws Exception {
+        DnsResult result = resolver.lookup("example.com");
+        long fetched = result.getFetchedTime();
+        assertEquals(300, result.getRemainingTtlSeconds(fetched));
+        assertEquals(200, result.getRemainingTtlSeconds(fetched + 100 * 1000));
+        assertEquals(0, result.getRemainingTtlSeconds(fetched + 400 * 1000));
+    }
+
+    @Test
+    public void testCoalesced() throws Exception {
+        CompletableFuture<DnsResult> first = resolver.resolve("example.com");
+        CompletableFuture<DnsResult> second = resolver.resolve("example.com");
+        assertSame(first, second);
+        assertEquals("10.1.2.3",
+                first.get(5, TimeUnit.SECONDS).getAddress().getHostAddress());
+        assertEquals(1, received.get());
+        assertEquals(1, resolver.getCoalesced());
+    }
+
+    @Test
+    public void testFailureNotCached() throws Exception {
+        socket.close();
+        resolver.setTimeoutMs(200);
+        DnsResult result = resolver.lookup("example.com");
+        assertTrue(result.isFailure());
+        assertNull(resolver.getCached("example.com"));
+    }
+}
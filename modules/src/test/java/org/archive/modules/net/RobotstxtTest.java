@@ -259,4 +259,57 @@ public class RobotstxtTest {
         }
         new Robotstxt(new StringReader(builder.toString()));
     }
+
+    @Test
+    public void testLongestPrefixes() throws IOException {
+        final String TEST_ROBOTS_TXT = "User-agent: *\n"
+                + "Disallow: /a\n"
+                + "Disallow: /ab\n"
+                + "Allow: /a/ok\n"
+                + "Disallow: /a/ok/not\n";
+        Robotstxt rt = new Robotstxt(new StringReader(TEST_ROBOTS_TXT));
+        RobotsDirectives d = rt.getDirectivesFor("anybot");
+        assertTrue(d.allows("/"));
+        assertTrue(d.allows("/b"));
+        assertFalse(d.allows("/a"));
+        assertFalse(d.allows("/ab"));
+        // "/ab" sorts between "/a" and "/ac", but does not prefix it
+        assertFalse(d.allows("/ac"));
+        assertTrue(d.allows("/a/ok"));
+        assertTrue(d.allows("/a/ok/fine"));
+        assertFalse(d.allows("/a/ok/not/fine"));
+    }
+
+    @Test
+    public void testInterning() throws IOException {
+        final String TEST_ROBOTS_TXT = "User-agent: a\n"
+                + "Disallow: /private\n"
+                + "User-agent: *\n"
+                + "Disallow: /private\n";
+        Robotstxt rt1 = Robotstxt.intern(new Robotstxt(new StringReader(TEST_ROBOTS_TXT)));
+        Robotstxt rt2 = Robotstxt.intern(new Robotstxt(new StringReader(TEST_ROBOTS_TXT)));
+        assertSame(rt1, rt2, "identical robots.txt shared");
+
+        // shared by rules, not text
+        Robotstxt rt2a = new Robotstxt(new StringReader("# comment\n" + TEST_ROBOTS_TXT));
+        assertSame(rt1, Robotstxt.intern(rt2a));
+
+        Robotstxt rt3 = new Robotstxt(new StringReader(TEST_ROBOTS_TXT + "Crawl-delay: 5\n"));
+        assertNotSame(rt1, Robotstxt.intern(rt3));
+        // identical rules share a trie, even across different robots.txt
+        assertSame(rt1.getDirectivesFor("a").trie, rt3.getDirectivesFor("b").trie);
+        assertSame(rt1.getDirectivesFor("a").trie, rt1.getDirectivesFor("b").trie);
+
+        // as read back from the server cache: no trie or hash stored
+        AutoKryo kryo = new AutoKryo();
+        kryo.autoregister(Robotstxt.class);
+        Output buffer = new Output(1024, -1);
+        kryo.writeObject(buffer, rt1);
+        Robotstxt stored = kryo.readObject(new Input(buffer.toBytes()), Robotstxt.class);
+        assertNull(stored.getDirectivesFor("a").trie);
+        assertFalse(stored.getDirectivesFor("a").allows("/private/page"));
+        assertTrue(stored.getDirectivesFor("a").allows("/public"));
+        assertSame(rt1.getDirectivesFor("a").trie, stored.getDirectivesFor("a").trie);
+        assertSame(rt1, Robotstxt.intern(stored));
+    }
 }
@@ -0,0 +1,163 @@
+/*
+ *  This file is part of the Heritrix web crawler (crawler.archive.org).
+ *
+ *  Licensed to the Internet Archive (IA) by one or more individual
+ *  contributors.
+ *
+ *  The IA licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.archive.modules.seeds;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.archive.modules.CrawlURI;
+import org.archive.spring.ConfigString;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests seed announcement, one at a time and in bulk-load batches.
+ */
+public class TextSeedModuleTest {
+
+    /** records what it's told, in order */
+    protected static class RecordingListener implements SeedListener {
+        List<String> events = new ArrayList<String>();
+        List<List<String>> batches = new ArrayList<List<String>>();
+        List<String> seeds = new ArrayList<String>();
+
+        @Override
+        public void addedSeed(CrawlURI curi) {
+            events.add("seed");
+            seeds.add(curi.getURI());
+        }
+        @Override
+        public boolean nonseedLine(String line) {
+            events.add("nonseed " + line);
+            return false;
+        }
+        @Override
+        public void concludedSeedBatch() {
+            events.add("concluded");
+        }
+    }
+
+    /** handles batches itself */
+    protected static class BatchListener extends RecordingListener {
+        @Override
+        public void addedSeeds(List<CrawlURI> curis) {
+            events.add("batch " + curis.size());
+            List<String> batch = new ArrayList<String>();
+            for (CrawlURI curi : curis) {
+                assertTrue(curi.isSeed());
+                batch.add(curi.getURI());
+            }
+            batches.add(batch);
+            seeds.addAll(batch);
+        }
+    }
+
+    /**
+     * A comment, then 25 seeds over 4 hosts with a SURT prefix directive
+     * among them, after the first 12.
+     */
+    protected String seedText() {
+        StringBuilder text = new StringBuilder("# seeds\n");
+        for (int i = 0; i < 25; i++) {
+            if (i == 12) {
+                text.append("+http://(org,example,\n");
+            }
+            text.append("host" + (i % 4) + ".example.com/" + i + "\n");
+        }
+        return text.toString();
+    }
+
+    protected List<String> expectedSeeds(int from, int to) {
+        List<String> seeds = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            seeds.add("http://host" + (i % 4) + ".example.com/" + i);
+        }
+        return seeds;
+    }
+
+    protected TextSeedModule seedModule(int batchSize, SeedListener listener) {
+        TextSeedModule seeds = new TextSeedModule();
+        seeds.setTextSource(new ConfigString(seedText()));
+        seeds.setBulkLoadBatchSize(batchSize);
+        seeds.setBulkLoadThreads(3);
+        seeds.setSeedListeners(new HashSet<SeedListener>(Arrays.asList(listener)));
+        return seeds;
+    }
+
+    @Test
+    public void testBatchBoundaries() {
+        BatchListener listener = new BatchListener();
+        seedModule(10, listener).announceSeeds();
+
+        // 26 lines in batches of 10: the directive is in the second, and
+        // is announced ahead of that batch's seeds
+        assertEquals(Arrays.asList("batch 10", "nonseed +http://(org,example,",
+                "batch 9", "batch 6", "concluded"), listener.events);
+        List<List<String>> expected = Arrays.asList(expectedSeeds(0, 10),
+                expectedSeeds(10, 19), expectedSeeds(19, 25));
+        for (int i = 0; i < expected.size(); i++) {
+            List<String> sorted = new ArrayList<String>(expected.get(i));
+            Collections.sort(sorted);
+            // each batch sorted by URI
+            assertEquals(sorted, listener.batches.get(i));
+        }
+    }
+
+    @Test
+    public void testBatchOfOneLine() {
+        BatchListener listener = new BatchListener();
+        seedModule(1, listener).announceSeeds();
+        assertEquals(25, listener.batches.size());
+        assertEquals(expectedSeeds(0, 25), listener.seeds);
+    }
+
+    @Test
+    public void testListenerWithoutBatchMethod() {
+        RecordingListener listener = new RecordingListener();
+        seedModule(10, listener).announceSeeds();
+
+        List<String> sorted = expectedSeeds(0, 10);
+        Collections.sort(sorted);
+        assertEquals(sorted, listener.seeds.subList(0, 10));
+        assertEquals(25, listener.seeds.size());
+        assertEquals(new HashSet<String>(expectedSeeds(0, 25)),
+                new HashSet<String>(listener.seeds));
+        assertEquals("nonseed +http://(org,example,", listener.events.get(10));
+        assertEquals("concluded", listener.events.get(listener.events.size() - 1));
+    }
+
+    @Test
+    public void testSameSeedsWithoutBatches() {
+        RecordingListener oneAtATime = new RecordingListener();
+        seedModule(0, oneAtATime).announceSeeds();
+        assertEquals(expectedSeeds(0, 25), oneAtATime.seeds);
+        assertEquals("nonseed +http://(org,example,", oneAtATime.events.get(12));
+
+        BatchListener batched = new BatchListener();
+        seedModule(7, batched).announceSeeds();
+        assertEquals(new HashSet<String>(oneAtATime.seeds),
+                new HashSet<String>(batched.seeds));
+    }
+}